@@ -18,6 +18,34 @@ import java.util.regex.PatternSyntaxException;
 public class FormatConfiguration {
 	private static final Logger logger = LoggerFactory.getLogger(FormatConfiguration.class);
 	private ArrayList<SupportSpec> supportSpecs;
+
+	/**
+	 * Number of distinct media signatures whose match is remembered.
+	 */
+	private static final int MATCH_CACHE_SIZE = 1024;
+
+	/**
+	 * Distinct limits of the support lines in ascending order, used to
+	 * reduce the numbers of a media signature to the limits they exceed.
+	 */
+	private int[] channelLimits;
+	private int[] frequencyLimits;
+	private int[] bitrateLimits;
+	private int[] widthLimits;
+	private int[] heightLimits;
+
+	/**
+	 * MIME types matched by media signatures, including the signatures that
+	 * match no support line. Guarded by itself.
+	 */
+	private final Map<String, String> matches = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MATCH_CACHE_SIZE;
+		}
+	};
 	// Use old parser for JPEG files (MediaInfo does not support EXIF)
 	private static final String[] PARSER_V1_EXTENSIONS = new String[] { ".jpg", ".jpe", ".jpeg" };
 
@@ -289,6 +317,58 @@ public class FormatConfiguration {
 				}
 			}
 		}
+
+		Set<Integer> channels = new TreeSet<Integer>();
+		Set<Integer> frequencies = new TreeSet<Integer>();
+		Set<Integer> bitrates = new TreeSet<Integer>();
+		Set<Integer> widths = new TreeSet<Integer>();
+		Set<Integer> heights = new TreeSet<Integer>();
+
+		for (SupportSpec supportSpec : supportSpecs) {
+			addLimit(channels, supportSpec.iMaxNbChannels);
+			addLimit(frequencies, supportSpec.iMaxFrequency);
+			addLimit(bitrates, supportSpec.iMaxBitrate);
+			addLimit(widths, supportSpec.iMaxVideoWidth);
+			addLimit(heights, supportSpec.iMaxVideoHeight);
+		}
+
+		channelLimits = toArray(channels);
+		frequencyLimits = toArray(frequencies);
+		bitrateLimits = toArray(bitrates);
+		widthLimits = toArray(widths);
+		heightLimits = toArray(heights);
+	}
+
+	private static void addLimit(Set<Integer> limits, int limit) {
+		// Limits that are not positive, or not set, never fail a match
+		if (limit > 0 && limit < Integer.MAX_VALUE) {
+			limits.add(limit);
+		}
+	}
+
+	private static int[] toArray(Set<Integer> limits) {
+		int[] result = new int[limits.size()];
+		int i = 0;
+
+		for (Integer limit : limits) {
+			result[i++] = limit;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of limits lower than a value. Values with the same
+	 * rank exceed the same limits, so they match the same support lines.
+	 */
+	private static int rank(int[] limits, int value) {
+		int rank = 0;
+
+		while (rank < limits.length && limits[rank] < value) {
+			rank++;
+		}
+
+		return rank;
 	}
 
 	public void parse(DLNAMediaInfo media, InputFile file, Format ext, int type) {
@@ -443,6 +523,14 @@ public class FormatConfiguration {
 		);
 	}
 
+	/**
+	 * Match media information to the "Supported" lines of the renderer and
+	 * return the MIME type of the first matching line. The result is
+	 * remembered by the signature of the information: its strings, and the
+	 * limits of the support lines its numbers exceed.
+	 *
+	 * @return The MIME type or null if no match was found.
+	 */
 	public String match(
 		String container,
 		String videoCodec,
@@ -454,6 +542,59 @@ public class FormatConfiguration {
 		int videoHeight,
 		Map<String,
 		String> extras
+	) {
+		StringBuilder sb = new StringBuilder(64);
+		sb.append(container).append('|');
+		sb.append(videoCodec).append('|');
+		sb.append(audioCodec).append('|');
+		sb.append(rank(channelLimits, nbAudioChannels)).append('|');
+		sb.append(rank(frequencyLimits, frequency)).append('|');
+		sb.append(rank(bitrateLimits, bitrate)).append('|');
+		sb.append(rank(widthLimits, videoWidth)).append('|');
+		sb.append(rank(heightLimits, videoHeight));
+
+		if (extras != null) {
+			// The only extras support lines can match
+			sb.append('|').append(extras.get(MI_QPEL));
+			sb.append('|').append(extras.get(MI_GMC));
+		}
+
+		String signature = sb.toString();
+
+		synchronized (matches) {
+			String mimeType = matches.get(signature);
+
+			if (mimeType != null || matches.containsKey(signature)) {
+				return mimeType;
+			}
+		}
+
+		String mimeType = matchSupportSpecs(container, videoCodec, audioCodec, nbAudioChannels, frequency, bitrate, videoWidth, videoHeight, extras);
+
+		synchronized (matches) {
+			matches.put(signature, mimeType);
+		}
+
+		return mimeType;
+	}
+
+	/**
+	 * Matches media information to the support lines, without looking up
+	 * or remembering the result.
+	 *
+	 * @return The MIME type of the first matching support line, or
+	 * 			<code>null</code> if no line matches.
+	 */
+	String matchSupportSpecs(
+		String container,
+		String videoCodec,
+		String audioCodec,
+		int nbAudioChannels,
+		int frequency,
+		int bitrate,
+		int videoWidth,
+		int videoHeight,
+		Map<String, String> extras
 	) {
 		String matchedMimeType = null;
 
@@ -24,9 +24,11 @@ import net.pms.io.SystemUtils;
 import net.pms.util.FileUtil;
 import net.pms.util.FileUtil.FileLocation;
 import net.pms.util.PropertiesUtil;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
 import org.apache.commons.configuration.event.ConfigurationListener;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -78,12 +80,16 @@ public class PmsConfiguration {
 	private static final String KEY_ASS_OUTLINE = "subtitle_ass_outline";
 	private static final String KEY_ASS_SCALE = "subtitle_ass_scale";
 	private static final String KEY_ASS_SHADOW = "subtitle_ass_shadow";
+	private static final String KEY_BUFFER_BACKEND = "buffer_backend";
+	private static final String KEY_BUFFER_EVENT_DRIVEN = "buffer_event_driven";
 	private static final String KEY_BUFFER_MAX = "buffer_max";
+	private static final String KEY_BUFFER_MEMORY_BUDGET = "buffer_memory_budget";
 	private static final String KEY_CHAPTER_INTERVAL = "chapter_interval";
 	private static final String KEY_CHAPTER_SUPPORT = "chapter_support";
 	private static final String KEY_MENCODER_CODEC_SPECIFIC_SCRIPT = "mencoder_codec_specific_script";
 	private static final String KEY_DISABLE_FAKESIZE = "disable_fakesize";
 	public static final String KEY_DISABLE_SUBTITLES = "disable_subtitles"; // used by MEncoderVideo
+	private static final String KEY_DIDL_CACHE_SIZE = "didl_cache_size";
 	private static final String KEY_DVD_ISO_THUMBNAILS = "dvd_iso_thumbnails";
 	private static final String KEY_AUDIO_EMBED_DTS_IN_PCM = "audio_embed_dts_in_pcm";
 	private static final String KEY_ENGINES = "engines";
@@ -104,14 +110,27 @@ public class PmsConfiguration {
 	private static final String KEY_HIDE_TRANSCODE_FOLDER = "hide_transcode_folder";
 	private static final String KEY_HIDE_VIDEO_SETTINGS = "hide_video_settings";
 	private static final String KEY_HTTP_ENGINE_V2 = "http_engine_v2";
+	private static final String KEY_HTTP_CHUNKED_RESPONSE_SIZE = "http_chunked_response_size";
+	private static final String KEY_HTTP_ZERO_COPY = "http_zero_copy";
 	private static final String KEY_IMAGE_THUMBNAILS_ENABLED = "image_thumbnails";
 	private static final String KEY_IP_FILTER = "ip_filter";
 	private static final String KEY_SHOW_IPHOTO_LIBRARY = "show_iphoto_library";
 	private static final String KEY_SHOW_ITUNES_LIBRARY = "show_itunes_library";
 	private static final String KEY_LANGUAGE = "language";
+	private static final String KEY_LIBRARY_FOLDER_PAGING = "library_folder_paging";
+	private static final String KEY_LIBRARY_FOLDER_READ_AHEAD = "library_folder_read_ahead";
+	private static final String KEY_LIBRARY_SCAN_CHECK_THREADS = "library_scan_check_threads";
+	private static final String KEY_LIBRARY_SCAN_CRAWL_THREADS = "library_scan_crawl_threads";
+	private static final String KEY_LIBRARY_SCAN_PARSE_THREADS = "library_scan_parse_threads";
+	private static final String KEY_LIBRARY_SCAN_PLUGIN_THREADS = "library_scan_plugin_threads";
+	private static final String KEY_LIBRARY_SCAN_QUEUE_SIZE = "library_scan_queue_size";
+	private static final String KEY_LIBRARY_SCAN_SNAPSHOT = "library_scan_snapshot";
+	private static final String KEY_LIBRARY_SCAN_WRITE_BATCH_SIZE = "library_scan_write_batch_size";
+	private static final String KEY_LIBRARY_SCAN_WRITE_THREADS = "library_scan_write_threads";
 	private static final String KEY_MAX_AUDIO_BUFFER = "maximum_audio_buffer_size";
 	private static final String KEY_MAX_BITRATE = "maximum_bitrate";
 	private static final String KEY_MAX_MEMORY_BUFFER_SIZE = "maximum_video_buffer_size";
+	private static final String KEY_MEDIAINFO_POOL_SIZE = "mediainfo_pool_size";
 	private static final String KEY_MENCODER_ASS = "mencoder_ass";
 	private static final String KEY_MENCODER_AC3_FIXED = "mencoder_ac3_fixed";
 	private static final String KEY_MENCODER_ASS_DEFAULTSTYLE = "mencoder_ass_defaultstyle";
@@ -140,6 +159,7 @@ public class PmsConfiguration {
 	private static final String KEY_MINIMIZED = "minimized";
 	private static final String KEY_MIN_MEMORY_BUFFER_SIZE = "minimum_video_buffer_size";
 	private static final String KEY_MIN_STREAM_BUFFER = "minimum_web_buffer_size";
+	private static final String KEY_MPEG_SEEK_INDEX = "mpeg_seek_index";
 	private static final String KEY_MPEG2_MAIN_SETTINGS = "mpeg2_main_settings";
 	private static final String KEY_MUX_ALLAUDIOTRACKS = "tsmuxer_mux_all_audiotracks";
 	private static final String KEY_NETWORK_INTERFACE = "network_interface";
@@ -153,6 +173,9 @@ public class PmsConfiguration {
 	private static final String KEY_RENDERER_DEFAULT = "renderer_default";
 	private static final String KEY_RENDERER_FORCE_DEFAULT = "renderer_force_default";
 	private static final String KEY_RENDERER_FORCE_IP = "renderer_force_ip";
+	private static final String KEY_RESOLVE_DEVICE_THREADS = "resolve_device_threads";
+	private static final String KEY_RESOLVE_QUEUE_SIZE = "resolve_queue_size";
+	private static final String KEY_RESOLVE_THREADS = "resolve_threads";
 	private static final String KEY_SERVER_HOSTNAME = "hostname";
 	private static final String KEY_SERVER_PORT = "port";
 	private static final String KEY_SHARES = "shares";
@@ -164,8 +187,14 @@ public class PmsConfiguration {
 	private static final String KEY_SUBTITLE_LANGUAGES = "subtitle_languages";
 	private static final String KEY_TEMP_FOLDER_PATH = "temp_directory";
 	private static final String KEY_THUMBNAIL_GENERATION_ENABLED = "generate_thumbnails";
+	private static final String KEY_THUMBNAIL_GENERATION_QUEUE_SIZE = "thumbnail_generation_queue_size";
+	private static final String KEY_THUMBNAIL_GENERATION_THREADS = "thumbnail_generation_threads";
 	private static final String KEY_THUMBNAIL_SEEK_POS = "thumbnail_seek_position";
+	private static final String KEY_THUMBNAIL_STORE_FOLDER = "thumbnail_store_folder";
+	private static final String KEY_THUMBNAIL_STORE_SIZE = "thumbnail_store_size";
 	private static final String KEY_TRANSCODE_BLOCKS_MULTIPLE_CONNECTIONS = "transcode_block_multiple_connections";
+	private static final String KEY_TRANSCODE_CACHE_FOLDER = "transcode_cache_folder";
+	private static final String KEY_TRANSCODE_CACHE_SIZE = "transcode_cache_size";
 	private static final String KEY_TRANSCODE_FOLDER_NAME = "transcode_folder_name";
 	private static final String KEY_TRANSCODE_KEEP_FIRST_CONNECTION = "transcode_keep_first_connection";
 	private static final String KEY_TSMUXER_FORCEFPS = "tsmuxer_forcefps";
@@ -198,12 +227,28 @@ public class PmsConfiguration {
 	private static int MAX_MAX_MEMORY_BUFFER_SIZE = MAX_MAX_MEMORY_DEFAULT_SIZE;
 	private static final char LIST_SEPARATOR = ',';
 	private static final String KEY_FOLDERS = "folders";
+
+	/**
+	 * Prefixes of the keys of the settings that change the output of the
+	 * transcoding engines, see {@link #getTranscodeSettingsChecksum()}.
+	 */
+	private static final String[] TRANSCODE_SETTING_PREFIXES = {
+		"audio_", "avisynth_", "ffmpeg_", "mencoder_", "mpeg2_", "subtitle_", "tsmuxer_", "vlc_",
+		KEY_FFMPEG_ALTERNATIVE_PATH, KEY_FIX_25FPS_AV_MISMATCH, KEY_FORCED_SUBTITLE_LANGUAGE,
+		KEY_FORCED_SUBTITLE_TAGS, KEY_MAX_BITRATE, KEY_VIDEO_HW_ACCELERATION
+	};
 	private final PropertiesConfiguration configuration;
 	private final ConfigurationReader configurationReader;
 	private final TempFolder tempFolder;
 	private final ProgramPaths programPaths;
 
 	private final IpFilter filter = new IpFilter();
+
+	/**
+	 * Typed values of the settings read for every request or browsed item,
+	 * replaced as a whole whenever the configuration changes.
+	 */
+	private volatile Snapshot snapshot;
 	
 	private static Map<String, String> supportedLanguages;
 
@@ -462,6 +507,35 @@ public class PmsConfiguration {
 		if (usableMemory > MAX_MAX_MEMORY_DEFAULT_SIZE) {
 			MAX_MAX_MEMORY_BUFFER_SIZE = (int) usableMemory;
 		}
+
+		snapshot = new Snapshot();
+		configuration.addConfigurationListener(new ConfigurationListener() {
+			@Override
+			public void configurationChanged(ConfigurationEvent event) {
+				if (!event.isBeforeUpdate()) {
+					snapshot = new Snapshot();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Immutable copy of the settings that are read on hot paths, so they can
+	 * be returned from plain fields instead of being looked up and converted
+	 * by the underlying configuration on every call.
+	 */
+	private final class Snapshot {
+		private final boolean autoloadExternalSubtitles = getBoolean(KEY_AUTOLOAD_SUBTITLES, true);
+		private final boolean disableSubtitles = getBoolean(KEY_DISABLE_SUBTITLES, false);
+		private final boolean hideEngineNames = getBoolean(KEY_HIDE_ENGINENAMES, false);
+		private final boolean hideExtensions = getBoolean(KEY_HIDE_EXTENSIONS, false);
+		private final boolean hideTranscodeEnabled = getBoolean(KEY_HIDE_TRANSCODE_FOLDER, false);
+		private final int httpChunkedResponseSize = getInt(KEY_HTTP_CHUNKED_RESPONSE_SIZE, 0);
+		private final boolean httpZeroCopy = getBoolean(KEY_HTTP_ZERO_COPY, true);
+		private final boolean imageThumbnailsEnabled = getBoolean(KEY_IMAGE_THUMBNAILS_ENABLED, true);
+		private final boolean thumbnailGenerationEnabled = getBoolean(KEY_THUMBNAIL_GENERATION_ENABLED, true);
+		private final boolean useCache = getBoolean(KEY_USE_CACHE, false);
+		private final boolean useMplayerForVideoThumbs = getBoolean(KEY_USE_MPLAYER_FOR_THUMBS, false);
 	}
 
 	/**
@@ -887,7 +961,7 @@ public class PmsConfiguration {
 	 * @return True if subtitles should be disabled, false otherwise.
 	 */
 	public boolean isDisableSubtitles() {
-		return getBoolean(KEY_DISABLE_SUBTITLES, false);
+		return snapshot.disableSubtitles;
 	}
 
 	/**
@@ -1338,7 +1412,7 @@ public class PmsConfiguration {
 	 * @return boolean indicating whether thumbnail generation is enabled.
 	 */
 	public boolean isThumbnailGenerationEnabled() {
-		return getBoolean(KEY_THUMBNAIL_GENERATION_ENABLED, true);
+		return snapshot.thumbnailGenerationEnabled;
 	}
 
 	/**
@@ -1355,7 +1429,7 @@ public class PmsConfiguration {
 	 * @return True if image thumbnails should be generated.
 	 */
 	public boolean getImageThumbnailsEnabled() {
-		return getBoolean(KEY_IMAGE_THUMBNAILS_ENABLED, true);
+		return snapshot.imageThumbnailsEnabled;
 	}
 
 	/**
@@ -1398,6 +1472,354 @@ public class PmsConfiguration {
 		configuration.setProperty(KEY_NUMBER_OF_CPU_CORES, value);
 	}
 
+	/**
+	 * Returns the maximum number of MediaInfo instances used to parse files
+	 * in parallel. Default value is the number of available processors.
+	 *
+	 * @return The size of the MediaInfo pool.
+	 */
+	public int getMediaInfoPoolSize() {
+		int nbcores = Runtime.getRuntime().availableProcessors();
+		if (nbcores < 1) {
+			nbcores = 1;
+		}
+		return Math.max(1, getInt(KEY_MEDIAINFO_POOL_SIZE, nbcores));
+	}
+
+	/**
+	 * Sets the maximum number of MediaInfo instances used to parse files in
+	 * parallel.
+	 *
+	 * @param value The size of the MediaInfo pool.
+	 */
+	public void setMediaInfoPoolSize(int value) {
+		configuration.setProperty(KEY_MEDIAINFO_POOL_SIZE, value);
+	}
+
+	/**
+	 * Returns the maximum number of rendered DIDL items kept in memory to
+	 * answer repeated Browse requests. Default value is 5000.
+	 *
+	 * @return The size of the DIDL cache, 0 if it is disabled.
+	 */
+	public int getDidlCacheSize() {
+		return Math.max(0, getInt(KEY_DIDL_CACHE_SIZE, 5000));
+	}
+
+	/**
+	 * Sets the maximum number of rendered DIDL items kept in memory. Use 0
+	 * to disable the cache.
+	 *
+	 * @param value The size of the DIDL cache.
+	 */
+	public void setDidlCacheSize(int value) {
+		configuration.setProperty(KEY_DIDL_CACHE_SIZE, value);
+	}
+
+	/**
+	 * Returns the maximum size in megabytes of the folder keeping the output
+	 * of completed transcodes, so that files played again are not transcoded
+	 * again. Default value is 0, which disables the transcode cache.
+	 *
+	 * @return The size of the transcode cache in megabytes.
+	 */
+	public int getTranscodeCacheSize() {
+		return Math.max(0, getInt(KEY_TRANSCODE_CACHE_SIZE, 0));
+	}
+
+	/**
+	 * Sets the maximum size in megabytes of the transcode cache. Use 0 to
+	 * disable the cache.
+	 *
+	 * @param value The size of the transcode cache in megabytes.
+	 */
+	public void setTranscodeCacheSize(int value) {
+		configuration.setProperty(KEY_TRANSCODE_CACHE_SIZE, value);
+	}
+
+	/**
+	 * Returns the folder keeping the output of completed transcodes. Default
+	 * value is the "transcode_cache" folder in the profile directory.
+	 *
+	 * @return The path of the transcode cache folder.
+	 */
+	public String getTranscodeCacheFolder() {
+		return getString(KEY_TRANSCODE_CACHE_FOLDER, new File(getProfileDirectory(), "transcode_cache").getAbsolutePath());
+	}
+
+	/**
+	 * Sets the folder keeping the output of completed transcodes.
+	 *
+	 * @param value The path of the transcode cache folder.
+	 */
+	public void setTranscodeCacheFolder(String value) {
+		configuration.setProperty(KEY_TRANSCODE_CACHE_FOLDER, value);
+	}
+
+	/**
+	 * Returns the maximum size in megabytes of the folder keeping the
+	 * thumbnails of the media and their scaled variants. Default value is
+	 * 100. Use 0 to keep thumbnails in memory instead.
+	 *
+	 * @return The size of the thumbnail store in megabytes.
+	 */
+	public int getThumbnailStoreSize() {
+		return Math.max(0, getInt(KEY_THUMBNAIL_STORE_SIZE, 100));
+	}
+
+	/**
+	 * Sets the maximum size in megabytes of the thumbnail store. Use 0 to
+	 * keep thumbnails in memory instead.
+	 *
+	 * @param value The size of the thumbnail store in megabytes.
+	 */
+	public void setThumbnailStoreSize(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_STORE_SIZE, value);
+	}
+
+	/**
+	 * Returns the folder keeping the thumbnails of the media. Default value
+	 * is the "thumbnails" folder in the profile directory.
+	 *
+	 * @return The path of the thumbnail store folder.
+	 */
+	public String getThumbnailStoreFolder() {
+		return getString(KEY_THUMBNAIL_STORE_FOLDER, new File(getProfileDirectory(), "thumbnails").getAbsolutePath());
+	}
+
+	/**
+	 * Sets the folder keeping the thumbnails of the media.
+	 *
+	 * @param value The path of the thumbnail store folder.
+	 */
+	public void setThumbnailStoreFolder(String value) {
+		configuration.setProperty(KEY_THUMBNAIL_STORE_FOLDER, value);
+	}
+
+	/**
+	 * Returns true if MPEG transport streams (TS, M2TS) should be indexed in
+	 * the background, so time seeks and durations are looked up in the index
+	 * instead of being searched in the file. Default value is true.
+	 *
+	 * @return True if transport streams should be indexed.
+	 */
+	public boolean isMpegSeekIndex() {
+		return getBoolean(KEY_MPEG_SEEK_INDEX, true);
+	}
+
+	/**
+	 * Set to true if MPEG transport streams (TS, M2TS) should be indexed in
+	 * the background for time seeks.
+	 *
+	 * @param value Set to true if transport streams should be indexed.
+	 */
+	public void setMpegSeekIndex(boolean value) {
+		configuration.setProperty(KEY_MPEG_SEEK_INDEX, value);
+	}
+
+	/**
+	 * Returns the number of threads listing the folders scanned by the media
+	 * library. Default value is 1.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getLibraryScanCrawlThreads() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_CRAWL_THREADS, 1));
+	}
+
+	/**
+	 * Sets the number of threads listing the folders scanned by the media
+	 * library.
+	 *
+	 * @param value The number of threads.
+	 */
+	public void setLibraryScanCrawlThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_CRAWL_THREADS, value);
+	}
+
+	/**
+	 * Returns the number of threads checking whether the files found by the
+	 * media library scanner have to be imported. Default value is 1.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getLibraryScanCheckThreads() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_CHECK_THREADS, 1));
+	}
+
+	/**
+	 * Sets the number of threads checking whether the files found by the
+	 * media library scanner have to be imported.
+	 *
+	 * @param value The number of threads.
+	 */
+	public void setLibraryScanCheckThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_CHECK_THREADS, value);
+	}
+
+	/**
+	 * Returns the number of threads parsing the files imported by the media
+	 * library. Default value is the size of the MediaInfo pool.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getLibraryScanParseThreads() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_PARSE_THREADS, getMediaInfoPoolSize()));
+	}
+
+	/**
+	 * Sets the number of threads parsing the files imported by the media
+	 * library.
+	 *
+	 * @param value The number of threads.
+	 */
+	public void setLibraryScanParseThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_PARSE_THREADS, value);
+	}
+
+	/**
+	 * Returns the number of threads running the import plugins on the files
+	 * imported by the media library. Default value is 1.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getLibraryScanPluginThreads() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_PLUGIN_THREADS, 1));
+	}
+
+	/**
+	 * Sets the number of threads running the import plugins on the files
+	 * imported by the media library.
+	 *
+	 * @param value The number of threads.
+	 */
+	public void setLibraryScanPluginThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_PLUGIN_THREADS, value);
+	}
+
+	/**
+	 * Returns the number of threads writing the files imported by the media
+	 * library to its database. Default value is 1.
+	 *
+	 * @return The number of threads.
+	 */
+	public int getLibraryScanWriteThreads() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_WRITE_THREADS, 1));
+	}
+
+	/**
+	 * Sets the number of threads writing the files imported by the media
+	 * library to its database.
+	 *
+	 * @param value The number of threads.
+	 */
+	public void setLibraryScanWriteThreads(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_WRITE_THREADS, value);
+	}
+
+	/**
+	 * Returns the maximum number of files the media library writes to its
+	 * database within one transaction. Default value is 100.
+	 *
+	 * @return The number of files.
+	 */
+	public int getLibraryScanWriteBatchSize() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_WRITE_BATCH_SIZE, 100));
+	}
+
+	/**
+	 * Sets the maximum number of files the media library writes to its
+	 * database within one transaction.
+	 *
+	 * @param value The number of files.
+	 */
+	public void setLibraryScanWriteBatchSize(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_WRITE_BATCH_SIZE, value);
+	}
+
+	/**
+	 * Returns the maximum number of files waiting between two stages of the
+	 * media library scanner. Default value is 100.
+	 *
+	 * @return The size of the queues.
+	 */
+	public int getLibraryScanQueueSize() {
+		return Math.max(1, getInt(KEY_LIBRARY_SCAN_QUEUE_SIZE, 100));
+	}
+
+	/**
+	 * Sets the maximum number of files waiting between two stages of the
+	 * media library scanner.
+	 *
+	 * @param value The size of the queues.
+	 */
+	public void setLibraryScanQueueSize(int value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_QUEUE_SIZE, value);
+	}
+
+	/**
+	 * Returns true if the media library should load the state of all the
+	 * files of a folder it scans at once, to only import the new and changed
+	 * files and remove the deleted ones. Default value is true.
+	 *
+	 * @return True if scans should compare the folders with a snapshot.
+	 */
+	public boolean isLibraryScanSnapshot() {
+		return getBoolean(KEY_LIBRARY_SCAN_SNAPSHOT, true);
+	}
+
+	/**
+	 * Set to true if the media library should compare the folders it scans
+	 * with a snapshot of the files it contains.
+	 *
+	 * @param value Set to true if scans should use a snapshot.
+	 */
+	public void setLibraryScanSnapshot(boolean value) {
+		configuration.setProperty(KEY_LIBRARY_SCAN_SNAPSHOT, value);
+	}
+
+	/**
+	 * Returns true if the media library folders should only load the page of
+	 * files requested by the renderer instead of all of their files. Default
+	 * value is true.
+	 *
+	 * @return True if the folders load their files by pages.
+	 */
+	public boolean isLibraryFolderPaging() {
+		return getBoolean(KEY_LIBRARY_FOLDER_PAGING, true);
+	}
+
+	/**
+	 * Set to true if the media library folders should only load the page of
+	 * files requested by the renderer.
+	 *
+	 * @param value Set to true if the folders load their files by pages.
+	 */
+	public void setLibraryFolderPaging(boolean value) {
+		configuration.setProperty(KEY_LIBRARY_FOLDER_PAGING, value);
+	}
+
+	/**
+	 * Returns the number of files a media library folder loads in addition
+	 * to the page requested by the renderer, to answer the request for the
+	 * next page without querying the library. Default value is 20.
+	 *
+	 * @return The number of files.
+	 */
+	public int getLibraryFolderReadAhead() {
+		return Math.max(0, getInt(KEY_LIBRARY_FOLDER_READ_AHEAD, 20));
+	}
+
+	/**
+	 * Sets the number of files a media library folder loads in addition to
+	 * the page requested by the renderer.
+	 *
+	 * @param value The number of files.
+	 */
+	public void setLibraryFolderReadAhead(int value) {
+		configuration.setProperty(KEY_LIBRARY_FOLDER_READ_AHEAD, value);
+	}
+
 	/**
 	 * Returns true if PMS should start minimized, i.e. without its window
 	 * opened. Default value false: to start with a window.
@@ -1427,7 +1849,7 @@ public class PmsConfiguration {
 	 * 		they should be ignored.
 	 */
 	public boolean isAutoloadExternalSubtitles() {
-		return getBoolean(KEY_AUTOLOAD_SUBTITLES, true);
+		return snapshot.autoloadExternalSubtitles;
 	}
 
 	/**
@@ -1468,7 +1890,7 @@ public class PmsConfiguration {
 	 * @return True if PMS should cache media.
 	 */
 	public boolean getUseCache() {
-		return getBoolean(KEY_USE_CACHE, false);
+		return snapshot.useCache;
 	}
 
 	/**
@@ -1778,7 +2200,7 @@ public class PmsConfiguration {
 	}
 
 	public boolean isHideEngineNames() {
-		return getBoolean(KEY_HIDE_ENGINENAMES, false);
+		return snapshot.hideEngineNames;
 	}
 
 	public void setHideEngineNames(boolean value) {
@@ -1786,7 +2208,7 @@ public class PmsConfiguration {
 	}
 
 	public boolean isHideExtensions() {
-		return getBoolean(KEY_HIDE_EXTENSIONS, false);
+		return snapshot.hideExtensions;
 	}
 
 	public void setHideExtensions(boolean value) {
@@ -1954,7 +2376,7 @@ public class PmsConfiguration {
 	}
 
 	public boolean isUseMplayerForVideoThumbs() {
-		return getBoolean(KEY_USE_MPLAYER_FOR_THUMBS, false);
+		return snapshot.useMplayerForVideoThumbs;
 	}
 
 	public String getIpFilter() {
@@ -1986,6 +2408,50 @@ public class PmsConfiguration {
 		return getBoolean(KEY_HTTP_ENGINE_V2, true);
 	}
 
+	/**
+	 * Returns true if untranscoded local files should be sent to renderers
+	 * directly from the file system using zero-copy transfers, instead of
+	 * being copied through the Java heap in small chunks. Only used by the
+	 * V2 HTTP engine. Default value is true.
+	 *
+	 * @return True if zero-copy transfers are used.
+	 */
+	public boolean isHttpZeroCopy() {
+		return snapshot.httpZeroCopy;
+	}
+
+	/**
+	 * Set to true if untranscoded local files should be sent to renderers
+	 * using zero-copy transfers.
+	 *
+	 * @param value True if zero-copy transfers should be used.
+	 */
+	public void setHttpZeroCopy(boolean value) {
+		configuration.setProperty(KEY_HTTP_ZERO_COPY, value);
+	}
+
+	/**
+	 * Returns the size in bytes above which Browse and Search responses are
+	 * sent to renderers using chunked transfer encoding instead of with a
+	 * Content-Length. Only used by the V2 HTTP engine. Default value is 0,
+	 * which means responses are never chunked.
+	 *
+	 * @return The response size above which chunked transfers are used.
+	 */
+	public int getHttpChunkedResponseSize() {
+		return snapshot.httpChunkedResponseSize;
+	}
+
+	/**
+	 * Sets the size in bytes above which Browse and Search responses are
+	 * sent using chunked transfer encoding. Use 0 to never chunk responses.
+	 *
+	 * @param value The response size above which chunked transfers are used.
+	 */
+	public void setHttpChunkedResponseSize(int value) {
+		configuration.setProperty(KEY_HTTP_CHUNKED_RESPONSE_SIZE, value);
+	}
+
 	public boolean isShowIphotoLibrary() {
 		return getBoolean(KEY_SHOW_IPHOTO_LIBRARY, false);
 	}
@@ -2029,7 +2495,7 @@ public class PmsConfiguration {
 	// TODO (breaking change): rename to e.g. isTranscodeFolderEnabled
 	// (and return true by default)
 	public boolean getHideTranscodeEnabled() {
-		return getBoolean(KEY_HIDE_TRANSCODE_FOLDER, false);
+		return snapshot.hideTranscodeEnabled;
 	}
 
 	// TODO (breaking change): rename to e.g. setTranscodeFolderEnabled
@@ -2192,6 +2658,108 @@ public class PmsConfiguration {
 		configuration.setProperty(KEY_RENDERER_FORCE_IP, value);
 	}
 
+	/**
+	 * Returns the number of threads shared by all renderers to resolve and
+	 * analyze the items of browsed folders. Default value is 8.
+	 *
+	 * @return The number of resolve threads.
+	 */
+	public int getResolveThreads() {
+		return Math.max(1, getInt(KEY_RESOLVE_THREADS, 8));
+	}
+
+	/**
+	 * Sets the number of threads shared by all renderers to resolve and
+	 * analyze the items of browsed folders.
+	 *
+	 * @param value The number of resolve threads.
+	 */
+	public void setResolveThreads(int value) {
+		configuration.setProperty(KEY_RESOLVE_THREADS, value);
+	}
+
+	/**
+	 * Returns the maximum number of items of the same optical disc that are
+	 * resolved at the same time. Items of DVD images are always resolved one
+	 * at a time, items of other drives are not limited. Default value is 3.
+	 *
+	 * @return The number of concurrent resolves per device.
+	 */
+	public int getResolveDeviceThreads() {
+		return Math.max(1, getInt(KEY_RESOLVE_DEVICE_THREADS, 3));
+	}
+
+	/**
+	 * Sets the maximum number of items of the same optical disc that are
+	 * resolved at the same time.
+	 *
+	 * @param value The number of concurrent resolves per device.
+	 */
+	public void setResolveDeviceThreads(int value) {
+		configuration.setProperty(KEY_RESOLVE_DEVICE_THREADS, value);
+	}
+
+	/**
+	 * Returns the maximum number of items that can be waiting to be
+	 * resolved. When the queue is full, items are resolved by the thread
+	 * handling the browse request. Default value is 500.
+	 *
+	 * @return The size of the resolve queue.
+	 */
+	public int getResolveQueueSize() {
+		return Math.max(1, getInt(KEY_RESOLVE_QUEUE_SIZE, 500));
+	}
+
+	/**
+	 * Sets the maximum number of items that can be waiting to be resolved.
+	 *
+	 * @param value The size of the resolve queue.
+	 */
+	public void setResolveQueueSize(int value) {
+		configuration.setProperty(KEY_RESOLVE_QUEUE_SIZE, value);
+	}
+
+	/**
+	 * Returns the number of threads generating thumbnails in the background,
+	 * which limits the number of encoders started for thumbnails at the same
+	 * time. Default value is 2.
+	 *
+	 * @return The number of thumbnail generation threads.
+	 */
+	public int getThumbnailGenerationThreads() {
+		return Math.max(1, getInt(KEY_THUMBNAIL_GENERATION_THREADS, 2));
+	}
+
+	/**
+	 * Sets the number of threads generating thumbnails in the background.
+	 *
+	 * @param value The number of thumbnail generation threads.
+	 */
+	public void setThumbnailGenerationThreads(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_GENERATION_THREADS, value);
+	}
+
+	/**
+	 * Returns the maximum number of thumbnails of browsed folders that can be
+	 * waiting to be generated. When the queue is full, they are generated
+	 * when a renderer asks for them instead. Default value is 500.
+	 *
+	 * @return The size of the thumbnail generation queue.
+	 */
+	public int getThumbnailGenerationQueueSize() {
+		return Math.max(0, getInt(KEY_THUMBNAIL_GENERATION_QUEUE_SIZE, 500));
+	}
+
+	/**
+	 * Sets the maximum number of thumbnails of browsed folders that can be
+	 * waiting to be generated.
+	 *
+	 * @param value The size of the thumbnail generation queue.
+	 */
+	public void setThumbnailGenerationQueueSize(int value) {
+		configuration.setProperty(KEY_THUMBNAIL_GENERATION_QUEUE_SIZE, value);
+	}
+
 	public String getVirtualFolders() {
 		return getString(KEY_VIRTUAL_FOLDERS, "");
 	}
@@ -2289,12 +2857,120 @@ public class PmsConfiguration {
 		configuration.removeConfigurationListener(l);
 	}
 
+	/**
+	 * Returns a checksum of the current value of the settings that change
+	 * the output of the transcoding engines: the settings of the engines
+	 * themselves, and the audio, subtitle and bitrate settings they read.
+	 * Other settings, like the shared folders or the network settings, do
+	 * not change the checksum.
+	 *
+	 * @return The checksum as a hexadecimal string.
+	 */
+	public String getTranscodeSettingsChecksum() {
+		List<String> keys = new ArrayList<String>();
+
+		for (Iterator<?> it = configuration.getKeys(); it.hasNext();) {
+			String key = it.next().toString();
+
+			if (isTranscodeSetting(key)) {
+				keys.add(key);
+			}
+		}
+
+		Collections.sort(keys);
+		StringBuilder settings = new StringBuilder();
+
+		for (String key : keys) {
+			settings.append(key).append('=').append(configuration.getProperty(key)).append('\n');
+		}
+
+		return DigestUtils.md5Hex(settings.toString());
+	}
+
+	/**
+	 * @param key The key of a setting.
+	 * @return True if the setting changes the output of the transcoding engines.
+	 */
+	private static boolean isTranscodeSetting(String key) {
+		for (String prefix : TRANSCODE_SETTING_PREFIXES) {
+			if (key.startsWith(prefix)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	// FIXME this is undocumented and misnamed
 	@Deprecated
 	public boolean initBufferMax() {
 		return getBoolean(KEY_BUFFER_MAX, false);
 	}
 
+	/**
+	 * Returns true if the transcoding memory buffer should wake up waiting
+	 * readers and writers as soon as data or space becomes available, instead
+	 * of polling the buffer at a fixed interval. Default value is false.
+	 *
+	 * @return True if the buffer is event driven.
+	 */
+	public boolean isBufferEventDriven() {
+		return getBoolean(KEY_BUFFER_EVENT_DRIVEN, false);
+	}
+
+	/**
+	 * Set to true if the transcoding memory buffer should signal waiting
+	 * readers and writers instead of polling the buffer at a fixed interval.
+	 *
+	 * @param value True if the buffer should be event driven.
+	 */
+	public void setBufferEventDriven(boolean value) {
+		configuration.setProperty(KEY_BUFFER_EVENT_DRIVEN, value);
+	}
+
+	/**
+	 * Returns the storage used for transcoding memory buffers: "heap" for a
+	 * single array on the Java heap, "direct" for chunks of direct memory or
+	 * "mapped" for chunks of a memory-mapped file in the temp folder. Default
+	 * value is "heap".
+	 *
+	 * @return The buffer backend.
+	 */
+	public String getBufferBackend() {
+		return getString(KEY_BUFFER_BACKEND, "heap");
+	}
+
+	/**
+	 * Set the storage used for transcoding memory buffers.
+	 *
+	 * @param value The buffer backend: "heap", "direct" or "mapped".
+	 * @see #getBufferBackend()
+	 */
+	public void setBufferBackend(String value) {
+		configuration.setProperty(KEY_BUFFER_BACKEND, value);
+	}
+
+	/**
+	 * Returns the amount of memory in megabytes all "direct" or "mapped"
+	 * transcoding buffers may use together. A value of 0 means half of the
+	 * maximum Java heap size. Default value is 0.
+	 *
+	 * @return The memory budget in megabytes.
+	 */
+	public int getBufferMemoryBudget() {
+		return Math.max(0, getInt(KEY_BUFFER_MEMORY_BUDGET, 0));
+	}
+
+	/**
+	 * Set the amount of memory in megabytes all "direct" or "mapped"
+	 * transcoding buffers may use together, 0 for automatic.
+	 *
+	 * @param value The memory budget in megabytes.
+	 */
+	public void setBufferMemoryBudget(int value) {
+		configuration.setProperty(KEY_BUFFER_MEMORY_BUDGET, value);
+	}
+
 	/**
 	 * Retrieve the name of the folder used to select subtitles, audio channels, chapters, engines &amp;c.
 	 * Defaults to the localized version of <pre>#--TRANSCODE--#</pre>.
@@ -10,8 +10,11 @@ import net.pms.medialibrary.dlna.RootFolder;
 import net.pms.network.HTTPResource;
 import net.pms.network.SpeedStats;
 import net.pms.util.PropertiesUtil;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,21 +23,52 @@ import java.io.File;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class RendererConfiguration {
 	private static final Logger logger = LoggerFactory.getLogger(RendererConfiguration.class);
-	private static ArrayList<RendererConfiguration> rendererConfs;
+	private static volatile ArrayList<RendererConfiguration> rendererConfs;
 	private static PmsConfiguration pmsConfiguration;
 	private static RendererConfiguration defaultConf;
 	private static Map<InetAddress, RendererConfiguration> addressAssociation = new HashMap<InetAddress, RendererConfiguration>();
 
+	/**
+	 * Number of header values whose matching renderer is remembered.
+	 */
+	private static final int DETECTION_CACHE_SIZE = 256;
+
+	/**
+	 * Renderers matched by User-Agent values and by additional header lines,
+	 * including the values that match no renderer, see
+	 * {@link #getRendererConfigurationByUA(String)} and
+	 * {@link #getRendererConfigurationByUAAHH(String)}. Replaced when the
+	 * renderers are loaded. Each map is guarded by itself.
+	 */
+	private static volatile Map<String, RendererConfiguration> userAgentMatches = createDetectionCache();
+	private static volatile Map<String, RendererConfiguration> additionalHeaderMatches = createDetectionCache();
+
+	/**
+	 * Trees by tree signature, shared by the renderers that would build the
+	 * same tree. Guarded by RendererConfiguration.class.
+	 */
+	private static final Map<String, Tree> rootFolders = new HashMap<String, Tree>();
+
 	private RootFolder rootFolder;
+	private String treeSignature;
+	private final Pattern userAgentPattern;
+	private final Pattern userAgentAdditionalPattern;
 	private final PropertiesConfiguration configuration;
 	private final ConfigurationReader configurationReader;
+	private volatile Snapshot snapshot;
+	private volatile String configurationChecksum;
 	private FormatConfiguration formatConfiguration;
 	private int rank;
 
@@ -94,6 +128,7 @@ public class RendererConfiguration {
 	private static final String SUBTITLE_HTTP_HEADER = "SubtitleHttpHeader";
 	private static final String SUPPORTED = "Supported";
 	private static final String THUMBNAIL_AS_RESOURCE = "ThumbnailAsResource";
+	private static final String THUMBNAIL_SIZE = "ThumbnailSize";
 	private static final String TRANSCODE_AUDIO_441KHZ = "TranscodeAudioTo441kHz";
 	private static final String TRANSCODE_AUDIO = "TranscodeAudio";
 	private static final String TRANSCODED_SIZE = "TranscodedVideoFileSize";
@@ -109,6 +144,20 @@ public class RendererConfiguration {
 	private static final String CUSTOM_FFMPEG_OPTIONS = "CustomFFmpegOptions";
 	private static final String OVERRIDE_VF = "OverrideVideoFilter";
 
+	/**
+	 * Settings that are only read for the requesting renderer when the tree
+	 * is browsed or a resource is sent, never while the tree is discovered
+	 * or a resource is transcoded. They are left out of the
+	 * {@link #getTreeSignature() tree signature}.
+	 */
+	private static final List<String> BROWSE_SETTINGS = Arrays.asList(
+		RENDERER_NAME, RENDERER_ICON, USER_AGENT, USER_AGENT_ADDITIONAL_HEADER, USER_AGENT_ADDITIONAL_SEARCH,
+		CHUNKED_TRANSFER, DLNA_LOCALIZATION_REQUIRED, DLNA_ORGPN_USE, DLNA_PN_CHANGES, MIME_TYPES_CHANGES,
+		SEEK_BY_TIME, SHOW_AUDIO_METADATA, SHOW_SUB_METADATA, SHOW_DVD_TITLE_DURATION, LONG_FILENAME_FORMAT,
+		SHORT_FILENAME_FORMAT, SUBTITLE_HTTP_HEADER, THUMBNAIL_AS_RESOURCE, THUMBNAIL_SIZE, FORCE_JPG_THUMBNAILS,
+		TRANSCODED_SIZE
+	);
+
 	public static RendererConfiguration getDefaultConf() {
 		return defaultConf;
 	}
@@ -120,7 +169,7 @@ public class RendererConfiguration {
 	 */
 	public static void loadRendererConfigurations(PmsConfiguration pmsConf) {
 		pmsConfiguration = pmsConf;
-		rendererConfs = new ArrayList<RendererConfiguration>();
+		ArrayList<RendererConfiguration> loaded = new ArrayList<RendererConfiguration>();
 
 		try {
 			defaultConf = new RendererConfiguration();
@@ -143,7 +192,7 @@ public class RendererConfiguration {
 						logger.info("Loading configuration file: {}", f.getName());
 						RendererConfiguration r = new RendererConfiguration(f);
 						r.rank = rank++;
-						rendererConfs.add(r);
+						loaded.add(r);
 					} catch (ConfigurationException ce) {
 						logger.info("Error in loading configuration of: {}", f.getAbsolutePath());
 					}
@@ -151,6 +200,11 @@ public class RendererConfiguration {
 			}
 		}
 
+		// Forget the matches of the previous renderers
+		rendererConfs = loaded;
+		userAgentMatches = createDetectionCache();
+		additionalHeaderMatches = createDetectionCache();
+
 		if (rendererConfs.size() > 0) {
 			// See if a different default configuration was configured
 			String rendererFallback = pmsConfiguration.getRendererDefault();
@@ -220,21 +274,147 @@ public class RendererConfiguration {
 		return null;
 	}
 
-	public static void resetAllRenderers() {
+	public static synchronized void resetAllRenderers() {
 		for (RendererConfiguration rc : rendererConfs) {
 			rc.rootFolder = null;
 		}
+
+		if (defaultConf != null) {
+			defaultConf.rootFolder = null;
+		}
+
+		rootFolders.clear();
 	}
 
+	/**
+	 * Returns the root of the tree of resources browsed by this renderer.
+	 * Renderers with the same {@link #getTreeSignature() tree signature}
+	 * share the same tree, so its resources are only discovered and parsed
+	 * once for all of them.
+	 *
+	 * @return The root folder.
+	 */
 	public RootFolder getRootFolder() {
-		if (rootFolder == null) {
-			rootFolder = new RootFolder();
-			if (pmsConfiguration.getUseCache()) {
-				rootFolder.discoverChildren();
+		String signature;
+		Tree tree;
+
+		synchronized (RendererConfiguration.class) {
+			if (rootFolder != null) {
+				return rootFolder;
+			}
+
+			signature = getTreeSignature();
+			tree = rootFolders.get(signature);
+
+			if (tree == null) {
+				tree = new Tree();
+				rootFolders.put(signature, tree);
+			} else {
+				logger.debug("Renderer \"{}\" shares the tree of an equivalent renderer", getRendererName());
+			}
+		}
+
+		// Discover outside of the class lock, renderers with another tree
+		// signature don't have to wait for it
+		RootFolder root = tree.getRootFolder(pmsConfiguration.getUseCache());
+
+		synchronized (RendererConfiguration.class) {
+			if (rootFolder == null && rootFolders.get(signature) == tree) {
+				rootFolder = root;
+			}
+
+			return root;
+		}
+	}
+
+	/**
+	 * Returns the settings of this renderer that the tree of resources
+	 * depends on. These are the ones read while the tree is discovered, mainly
+	 * by {@link net.pms.dlna.DLNAResource#addChild(net.pms.dlna.DLNAResource)}
+	 * to decide which files are streamed or transcoded, and the ones read by
+	 * the engines. The resources of a shared tree also share their running
+	 * transcode, so renderers sharing a tree must get the same transcoded
+	 * output. Only the settings read for the requesting renderer when the
+	 * tree is browsed are left out.
+	 *
+	 * @return The tree signature.
+	 */
+	public synchronized String getTreeSignature() {
+		if (treeSignature == null) {
+			List<String> keys = new ArrayList<String>();
+
+			for (Iterator<?> it = configuration.getKeys(); it.hasNext();) {
+				String key = it.next().toString();
+
+				if (!BROWSE_SETTINGS.contains(key)) {
+					keys.add(key);
+				}
+			}
+
+			Collections.sort(keys);
+			StringBuilder sb = new StringBuilder();
+
+			// The engines tell some renderers apart by their name
+			sb.append(isPS3()).append(isXBOX()).append(isXBMC()).append(isBRAVIA()).append(isFDSSDP());
+
+			for (String key : keys) {
+				sb.append('\n').append(key).append('=').append(configuration.getProperty(key));
+			}
+
+			treeSignature = sb.toString();
+		}
+
+		return treeSignature;
+	}
+
+	/**
+	 * Returns a checksum of all settings of this renderer. Transcoded output
+	 * produced for a renderer with a different checksum may differ, for
+	 * instance after its configuration file has been edited.
+	 *
+	 * @return The checksum as a hexadecimal string.
+	 */
+	public String getConfigurationChecksum() {
+		String checksum = configurationChecksum;
+
+		if (checksum == null) {
+			List<String> keys = new ArrayList<String>();
+
+			for (Iterator<?> it = configuration.getKeys(); it.hasNext();) {
+				keys.add(it.next().toString());
+			}
+
+			Collections.sort(keys);
+			StringBuilder settings = new StringBuilder();
+
+			for (String key : keys) {
+				settings.append(key).append('=').append(configuration.getProperty(key)).append('\n');
 			}
+
+			checksum = DigestUtils.md5Hex(settings.toString());
+			configurationChecksum = checksum;
 		}
 
-		return rootFolder;
+		return checksum;
+	}
+
+	/**
+	 * A tree shared by the renderers with the same tree signature. It is
+	 * discovered by the first renderer asking for it, while the others
+	 * with the same signature wait.
+	 */
+	private static class Tree {
+		private final RootFolder rootFolder = new RootFolder();
+		private boolean discovered;
+
+		synchronized RootFolder getRootFolder(boolean discover) {
+			if (discover && !discovered) {
+				rootFolder.discoverChildren();
+			}
+
+			discovered = true;
+			return rootFolder;
+		}
 	}
 
 	/**
@@ -307,16 +487,64 @@ public class RendererConfiguration {
 			return manageRendererMatch(defaultConf);
 		} else {
 			// Try to find a match
-			for (RendererConfiguration r : rendererConfs) {
-				if (r.matchUserAgent(userAgentString)) {
-					return manageRendererMatch(r);
-				}
+			RendererConfiguration r = detect(userAgentMatches, userAgentString, false);
+
+			if (r != null) {
+				return manageRendererMatch(r);
 			}
 		}
 
 		return null;
 	}
 
+	private static Map<String, RendererConfiguration> createDetectionCache() {
+		return new LinkedHashMap<String, RendererConfiguration>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, RendererConfiguration> eldest) {
+				return size() > DETECTION_CACHE_SIZE;
+			}
+		};
+	}
+
+	/**
+	 * Returns the first renderer matching a header, remembering the result
+	 * so the patterns of all renderers are only tried once per distinct
+	 * header.
+	 *
+	 * @param cache The remembered matches. Matches found after the
+	 * 			renderers were reloaded go to the discarded map.
+	 * @param header The User-Agent value or additional header line.
+	 * @param additionalHeader True if the header is an additional header
+	 * 			line.
+	 * @return The matching renderer, or <code>null</code>.
+	 */
+	private static RendererConfiguration detect(Map<String, RendererConfiguration> cache, String header, boolean additionalHeader) {
+		synchronized (cache) {
+			RendererConfiguration r = cache.get(header);
+
+			if (r != null || cache.containsKey(header)) {
+				return r;
+			}
+		}
+
+		RendererConfiguration match = null;
+
+		for (RendererConfiguration r : rendererConfs) {
+			if (additionalHeader ? r.matchAdditionalHeaderLine(header) : r.matchUserAgent(header)) {
+				match = r;
+				break;
+			}
+		}
+
+		synchronized (cache) {
+			cache.put(header, match);
+		}
+
+		return match;
+	}
+
 	private static RendererConfiguration manageRendererMatch(RendererConfiguration r) {
 		if (addressAssociation.values().contains(r)) {
 			// FIXME: This cannot ever ever happen because of how renderer matching
@@ -349,13 +577,10 @@ public class RendererConfiguration {
 			return manageRendererMatch(defaultConf);
 		} else {
 			// Try to find a match
-			for (RendererConfiguration r : rendererConfs) {
-				if (StringUtils.isNotBlank(r.getUserAgentAdditionalHttpHeader()) && header.startsWith(r.getUserAgentAdditionalHttpHeader())) {
-					String value = header.substring(header.indexOf(":", r.getUserAgentAdditionalHttpHeader().length()) + 1);
-					if (r.matchAdditionalUserAgent(value)) {
-						return manageRendererMatch(r);
-					}
-				}
+			RendererConfiguration r = detect(additionalHeaderMatches, header, true);
+
+			if (r != null) {
+				return manageRendererMatch(r);
 			}
 		}
 
@@ -492,9 +717,69 @@ public class RendererConfiguration {
 			configuration.addProperty(SUPPORTED, "f:.+");
 		}
 
+		snapshot = new Snapshot();
+		configuration.addConfigurationListener(new ConfigurationListener() {
+			@Override
+			public void configurationChanged(ConfigurationEvent event) {
+				if (!event.isBeforeUpdate()) {
+					snapshot = new Snapshot();
+					configurationChecksum = null;
+				}
+			}
+		});
+
 		if (isMediaParserV2()) {
 			formatConfiguration = new FormatConfiguration(configuration.getList(SUPPORTED));
 		}
+
+		userAgentPattern = compileSearchPattern(getUserAgent());
+		userAgentAdditionalPattern = compileSearchPattern(getUserAgentAdditionalHttpHeaderSearch());
+	}
+
+	/**
+	 * Immutable copy of the renderer settings that are read for every
+	 * request or browsed item, replaced as a whole whenever the renderer
+	 * configuration changes.
+	 */
+	private final class Snapshot {
+		private final boolean audioSupported = getBoolean(AUDIO, true);
+		private final boolean autoRotateBasedOnExif = getBoolean(AUTO_EXIF_ROTATE, false);
+		private final boolean chunkedTransfer = getBoolean(CHUNKED_TRANSFER, false);
+		private final boolean dlnaLocalizationRequired = getBoolean(DLNA_LOCALIZATION_REQUIRED, false);
+		private final boolean dlnaOrgPNUsed = getBoolean(DLNA_ORGPN_USE, true);
+		private final boolean dlnaTreeHack = getBoolean(DLNA_TREE_HACK, false);
+		private final boolean forceJPGThumbnails = getBoolean(FORCE_JPG_THUMBNAILS, false);
+		private final boolean imageSupported = getBoolean(IMAGE, true);
+		private final boolean mediaParserV2 = getBoolean(MEDIAPARSERV2, false);
+		private final boolean mediaParserV2Thumb = getBoolean(MEDIAPARSERV2_THUMB, false);
+		private final boolean seekByTime = getBoolean(SEEK_BY_TIME, false);
+		private final boolean seekByTimeExclusive = getString(SEEK_BY_TIME, "").equalsIgnoreCase("exclusive");
+		private final boolean showAudioMetadata = getBoolean(SHOW_AUDIO_METADATA, true);
+		private final boolean showSubMetadata = getBoolean(SHOW_SUB_METADATA, true);
+		private final boolean thumbnailAsResource = getBoolean(THUMBNAIL_AS_RESOURCE, false);
+		private final int thumbnailSize = getInt(THUMBNAIL_SIZE, 0);
+		private final boolean videoSupported = getBoolean(VIDEO, true);
+	}
+
+	/**
+	 * Compiles a search pattern of the renderer configuration once, instead
+	 * of for every request.
+	 *
+	 * @param regex The pattern.
+	 * @return The compiled pattern, or <code>null</code> if it is blank or
+	 * 			invalid.
+	 */
+	private Pattern compileSearchPattern(String regex) {
+		if (StringUtils.isBlank(regex)) {
+			return null;
+		}
+
+		try {
+			return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+		} catch (PatternSyntaxException e) {
+			logger.warn("Invalid search pattern \"" + regex + "\" in renderer configuration: " + e.getDescription());
+			return null;
+		}
 	}
 
 	public String getDLNAPN(String old) {
@@ -521,15 +806,15 @@ public class RendererConfiguration {
 	}
 
 	public boolean isVideoSupported() {
-		return getBoolean(VIDEO, true);
+		return snapshot.videoSupported;
 	}
 
 	public boolean isAudioSupported() {
-		return getBoolean(AUDIO, true);
+		return snapshot.audioSupported;
 	}
 
 	public boolean isImageSupported() {
-		return getBoolean(IMAGE, true);
+		return snapshot.imageSupported;
 	}
 
 	public boolean isTranscodeToWMV() {
@@ -554,7 +839,7 @@ public class RendererConfiguration {
 	}
 
 	public boolean isAutoRotateBasedOnExif() {
-		return getBoolean(AUTO_EXIF_ROTATE, false);
+		return snapshot.autoRotateBasedOnExif;
 	}
 
 	public boolean isTranscodeToMP3() {
@@ -582,7 +867,7 @@ public class RendererConfiguration {
 	}
 
 	public boolean isDLNALocalizationRequired() {
-		return getBoolean(DLNA_LOCALIZATION_REQUIRED, false);
+		return snapshot.dlnaLocalizationRequired;
 	}
 
 	/**
@@ -689,16 +974,7 @@ public class RendererConfiguration {
 	 * @return True if the pattern matches.
 	 */
 	public boolean matchUserAgent(String header) {
-		String userAgent = getUserAgent();
-		Pattern userAgentPattern;
-
-		if (StringUtils.isNotBlank(userAgent)) {
-			userAgentPattern = Pattern.compile(userAgent, Pattern.CASE_INSENSITIVE);
-
-			return userAgentPattern.matcher(header).find();
-		} else {
-			return false;
-		}
+		return userAgentPattern != null && userAgentPattern.matcher(header).find();
 	}
 
 	/**
@@ -710,16 +986,25 @@ public class RendererConfiguration {
 	 * @return True if the pattern matches.
 	 */
 	public boolean matchAdditionalUserAgent(String header) {
-		String userAgentAdditionalHeader = getUserAgentAdditionalHttpHeaderSearch();
-		Pattern userAgentAddtionalPattern;
+		return userAgentAdditionalPattern != null && userAgentAdditionalPattern.matcher(header).find();
+	}
 
-		if (StringUtils.isNotBlank(userAgentAdditionalHeader)) {
-			userAgentAddtionalPattern = Pattern.compile(userAgentAdditionalHeader, Pattern.CASE_INSENSITIVE);
+	/**
+	 * Matches a complete header line to the "UserAgentAdditionalHeader" name
+	 * and the "UserAgentAdditionalHeaderSearch" expression for this renderer.
+	 *
+	 * @param header The header line, name included.
+	 * @return True if the header is the additional header of this renderer
+	 * 			and its value matches the pattern.
+	 */
+	private boolean matchAdditionalHeaderLine(String header) {
+		String name = getUserAgentAdditionalHttpHeader();
 
-			return userAgentAddtionalPattern.matcher(header).find();
-		} else {
+		if (userAgentAdditionalPattern == null || StringUtils.isBlank(name) || !header.startsWith(name)) {
 			return false;
 		}
+
+		return matchAdditionalUserAgent(header.substring(header.indexOf(":", name.length()) + 1));
 	}
 
 	/**
@@ -818,7 +1103,7 @@ public class RendererConfiguration {
 	 * @return true if the renderer supports seek-by-time, false otherwise.
 	 */
 	public boolean isSeekByTime() {
-		return isSeekByTimeExclusive() || getBoolean(SEEK_BY_TIME, false);
+		return snapshot.seekByTimeExclusive || snapshot.seekByTime;
 	}
 
 	/**
@@ -829,7 +1114,7 @@ public class RendererConfiguration {
 	 * (i.e. not in conjunction with seek-by-byte), false otherwise.
 	 */
 	public boolean isSeekByTimeExclusive() {
-		return getString(SEEK_BY_TIME, "").equalsIgnoreCase("exclusive");
+		return snapshot.seekByTimeExclusive;
 	}
 
 	public boolean isMuxH264MpegTS() {
@@ -1012,7 +1297,7 @@ public class RendererConfiguration {
 	}
 
 	public boolean isDLNAOrgPNUsed() {
-		return getBoolean(DLNA_ORGPN_USE, true);
+		return snapshot.dlnaOrgPNUsed;
 	}
 
 	/**
@@ -1023,7 +1308,7 @@ public class RendererConfiguration {
 	 * @return True if the "res" element should be used, false otherwise.
 	 */
 	public boolean getThumbNailAsResource() {
-		return getBoolean(THUMBNAIL_AS_RESOURCE, false);
+		return snapshot.thumbnailAsResource;
 	}
 
 	/**
@@ -1075,27 +1360,39 @@ public class RendererConfiguration {
 	}
 
 	public boolean isMediaParserV2() {
-		return getBoolean(MEDIAPARSERV2, false) && LibMediaInfoParser.isValid();
+		return snapshot.mediaParserV2 && LibMediaInfoParser.isValid();
 	}
 
 	public boolean isMediaParserV2ThumbnailGeneration() {
-		return getBoolean(MEDIAPARSERV2_THUMB, false) && LibMediaInfoParser.isValid();
+		return snapshot.mediaParserV2Thumb && LibMediaInfoParser.isValid();
 	}
 
 	public boolean isForceJPGThumbnails() {
-		return (getBoolean(FORCE_JPG_THUMBNAILS, false) && LibMediaInfoParser.isValid()) || isBRAVIA();
+		return (snapshot.forceJPGThumbnails && LibMediaInfoParser.isValid()) || isBRAVIA();
+	}
+
+	/**
+	 * Returns the size in pixels of the longest side of the thumbnails sent
+	 * to the renderer. Thumbnails are served from the smallest pre-scaled
+	 * variant of the thumbnail store that is at least this large. The
+	 * default value 0 means the original image.
+	 *
+	 * @return The thumbnail size.
+	 */
+	public int getThumbnailSize() {
+		return snapshot.thumbnailSize;
 	}
 
 	public boolean isShowAudioMetadata() {
-		return getBoolean(SHOW_AUDIO_METADATA, true);
+		return snapshot.showAudioMetadata;
 	}
 
 	public boolean isShowSubMetadata() {
-		return getBoolean(SHOW_SUB_METADATA, true);
+		return snapshot.showSubMetadata;
 	}
 
 	public boolean isDLNATreeHack() {
-		return getBoolean(DLNA_TREE_HACK, false) && LibMediaInfoParser.isValid();
+		return snapshot.dlnaTreeHack && LibMediaInfoParser.isValid();
 	}
 
 	/**
@@ -1111,7 +1408,7 @@ public class RendererConfiguration {
 	 * @return True if sending the content length header should be omitted.
 	 */
 	public boolean isChunkedTransfer() {
-		return getBoolean(CHUNKED_TRANSFER, false);
+		return snapshot.chunkedTransfer;
 	}
 
 	/**
@@ -23,6 +23,7 @@ import net.pms.Messages;
 import net.pms.PMS;
 import net.pms.configuration.FormatConfiguration;
 import net.pms.configuration.PmsConfiguration;
+import net.pms.dlna.search.SearchEntry;
 import net.pms.formats.Format;
 import net.pms.formats.v2.SubtitleType;
 import org.apache.commons.io.FileUtils;
@@ -41,6 +42,8 @@ import java.awt.*;
 import java.io.File;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
@@ -74,6 +77,7 @@ public class DLNAMediaDatabase implements Runnable {
 	private final int SIZE_MODEL = 128;
 	private final int SIZE_MUXINGMODE = 32;
 	private final int SIZE_FRAMERATE_MODE = 16;
+	private final int SIZE_THUMBKEY = 40;
 	private final int SIZE_LANG = 3;
 	private final int SIZE_FLAVOR = 128;
 	private final int SIZE_SAMPLEFREQ = 16;
@@ -186,6 +190,7 @@ public class DLNAMediaDatabase implements Runnable {
 				executeUpdate(conn, "DROP TABLE REGEXP_RULES");
 				executeUpdate(conn, "DROP TABLE AUDIOTRACKS");
 				executeUpdate(conn, "DROP TABLE SUBTRACKS");
+				executeUpdate(conn, "DROP TABLE MPEGINDEX");
 			} catch (SQLException se) {
 				if (se.getErrorCode() != 42102) { // Don't log exception "Table "FILES" not found" which will be corrected in following step
 					logger.error(null, se);
@@ -280,6 +285,17 @@ public class DLNAMediaDatabase implements Runnable {
 			logger.debug("Database file count: " + dbCount);
 			logger.debug("Database version: " + version);
 		}
+
+		// Added after the other tables and columns, so they may be missing from existing databases
+		try {
+			conn = getConnection();
+			executeUpdate(conn, "CREATE TABLE IF NOT EXISTS MPEGINDEX (FILENAME VARCHAR2(1024) NOT NULL, MODIFIED TIMESTAMP NOT NULL, DATA BINARY, constraint PKMPEGINDEX primary key (FILENAME))");
+			executeUpdate(conn, "ALTER TABLE FILES ADD COLUMN IF NOT EXISTS THUMBKEY VARCHAR2(" + SIZE_THUMBKEY + ")");
+		} catch (SQLException se) {
+			logger.info("Error in table creation: " + se.getMessage());
+		} finally {
+			close(conn);
+		}
 	}
 
 	private void executeUpdate(Connection conn, String sql) throws SQLException {
@@ -322,7 +338,8 @@ public class DLNAMediaDatabase implements Runnable {
 		PreparedStatement stmt = null;
 		try {
 			conn = getConnection();
-			stmt = conn.prepareStatement("SELECT * FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
+			// The thumbnail is only read when it isn't in the thumbnail store
+			stmt = conn.prepareStatement("SELECT ID, DURATION, BITRATE, WIDTH, HEIGHT, SIZE, CODECV, FRAMERATE, ASPECT, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL, BITSPERPIXEL, THUMB IS NOT NULL AS HASTHUMB, THUMBKEY, CONTAINER, MODEL, EXPOSURE, ORIENTATION, ISO, MUXINGMODE, FRAMERATEMODE FROM FILES WHERE FILENAME = ? AND MODIFIED = ?");
 			stmt.setString(1, name);
 			stmt.setTimestamp(2, new Timestamp(modified));
 			rs = stmt.executeQuery();
@@ -342,7 +359,9 @@ public class DLNAMediaDatabase implements Runnable {
 				media.setReferenceFrameCount(rs.getByte("REFRAMES"));
 				media.setAvcLevel(rs.getString("AVCLEVEL"));
 				media.setBitsPerPixel(rs.getInt("BITSPERPIXEL"));
-				media.setThumb(rs.getBytes("THUMB"));
+				if (rs.getBoolean("HASTHUMB") && !media.setStoredThumb(rs.getString("THUMBKEY"))) {
+					media.setThumb(getThumb(conn, id));
+				}
 				media.setContainer(rs.getString("CONTAINER"));
 				media.setModel(rs.getString("MODEL"));
 				if (media.getModel() != null && !FormatConfiguration.JPG.equals(media.getContainer())) {
@@ -407,6 +426,28 @@ public class DLNAMediaDatabase implements Runnable {
 		return list;
 	}
 	
+	/**
+	 * Reads the thumbnail of a file, for the files whose thumbnail isn't in
+	 * the thumbnail store.
+	 *
+	 * @param conn The connection to use.
+	 * @param id The ID of the file.
+	 * @return The bytes of the thumbnail, or <code>null</code>.
+	 * @throws SQLException
+	 */
+	private byte[] getThumb(Connection conn, int id) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement("SELECT THUMB FROM FILES WHERE ID = ?");
+		ResultSet rs = null;
+		try {
+			stmt.setInt(1, id);
+			rs = stmt.executeQuery();
+			return rs.next() ? rs.getBytes(1) : null;
+		} finally {
+			close(rs);
+			close(stmt);
+		}
+	}
+
 	private Double toDouble(ResultSet rs, String column) throws SQLException {
 		Object obj = rs.getObject(column);
 		if (obj instanceof Double) {
@@ -420,7 +461,7 @@ public class DLNAMediaDatabase implements Runnable {
 		PreparedStatement ps = null;
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement("INSERT INTO FILES(FILENAME, MODIFIED, TYPE, DURATION, BITRATE, WIDTH, HEIGHT, SIZE, CODECV, FRAMERATE, ASPECT, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL, BITSPERPIXEL, THUMB, CONTAINER, MODEL, EXPOSURE, ORIENTATION, ISO, MUXINGMODE, FRAMERATEMODE) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			ps = conn.prepareStatement("INSERT INTO FILES(FILENAME, MODIFIED, TYPE, DURATION, BITRATE, WIDTH, HEIGHT, SIZE, CODECV, FRAMERATE, ASPECT, ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL, BITSPERPIXEL, THUMB, CONTAINER, MODEL, EXPOSURE, ORIENTATION, ISO, MUXINGMODE, FRAMERATEMODE, THUMBKEY) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
 			ps.setString(1, name);
 			ps.setTimestamp(2, new Timestamp(modified));
 			ps.setInt(3, type);
@@ -463,6 +504,7 @@ public class DLNAMediaDatabase implements Runnable {
 				ps.setInt(22, media.getIso());
 				ps.setString(23, left(media.getMuxingModeAudio(), SIZE_MUXINGMODE));
 				ps.setString(24, left(media.getFrameRateMode(), SIZE_FRAMERATE_MODE));
+				ps.setString(25, media.getThumbKey());
 			} else {
 				ps.setString(4, null);
 				ps.setInt(5, 0);
@@ -485,6 +527,7 @@ public class DLNAMediaDatabase implements Runnable {
 				ps.setInt(22, 0);
 				ps.setString(23, null);
 				ps.setString(24, null);
+				ps.setString(25, null);
 			}
 			ps.executeUpdate();
 			ResultSet rs = ps.getGeneratedKeys();
@@ -573,13 +616,15 @@ public class DLNAMediaDatabase implements Runnable {
 		PreparedStatement ps = null;
 		try {
 			conn = getConnection();
-			ps = conn.prepareStatement("UPDATE FILES SET THUMB = ? WHERE FILENAME = ? AND MODIFIED = ?");
-			ps.setString(2, name);
-			ps.setTimestamp(3, new Timestamp(modified));
+			ps = conn.prepareStatement("UPDATE FILES SET THUMB = ?, THUMBKEY = ? WHERE FILENAME = ? AND MODIFIED = ?");
+			ps.setString(3, name);
+			ps.setTimestamp(4, new Timestamp(modified));
 			if (media != null) {
 				ps.setBytes(1, media.getThumb());
+				ps.setString(2, media.getThumbKey());
 			} else {
 				ps.setNull(1, Types.BINARY);
+				ps.setNull(2, Types.VARCHAR);
 			}
 			ps.executeUpdate();
 		} catch (SQLException se) {
@@ -594,6 +639,66 @@ public class DLNAMediaDatabase implements Runnable {
 		}
 	}
 
+	/**
+	 * Returns the seek index of an MPEG transport stream stored by
+	 * {@link #insertMpegIndex(String, long, byte[])}.
+	 *
+	 * @param name The absolute path of the file.
+	 * @param modified The modification time of the file.
+	 * @return The serialized index, or <code>null</code> if there is none
+	 *         for this version of the file.
+	 * @see net.pms.util.MpegIndex
+	 */
+	public byte[] getMpegIndex(String name, long modified) {
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("SELECT DATA FROM MPEGINDEX WHERE FILENAME = ? AND MODIFIED = ?");
+			ps.setString(1, name);
+			ps.setTimestamp(2, new Timestamp(modified));
+			rs = ps.executeQuery();
+			if (rs.next()) {
+				return rs.getBytes(1);
+			}
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the seek index of an MPEG transport stream, replacing the index
+	 * of earlier versions of the file.
+	 *
+	 * @param name The absolute path of the file.
+	 * @param modified The modification time of the file.
+	 * @param data The serialized index.
+	 * @see net.pms.util.MpegIndex
+	 */
+	public synchronized void insertMpegIndex(String name, long modified, byte[] data) {
+		Connection conn = null;
+		PreparedStatement ps = null;
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("MERGE INTO MPEGINDEX (FILENAME, MODIFIED, DATA) KEY (FILENAME) VALUES (?, ?, ?)");
+			ps.setString(1, name);
+			ps.setTimestamp(2, new Timestamp(modified));
+			ps.setBytes(3, data);
+			ps.executeUpdate();
+		} catch (SQLException se) {
+			logger.error(null, se);
+		} finally {
+			close(ps);
+			close(conn);
+		}
+	}
+
 	public ArrayList<String> getStrings(String sql) {
 		ArrayList<String> list = new ArrayList<String>();
 		Connection conn = null;
@@ -663,6 +768,10 @@ public class DLNAMediaDatabase implements Runnable {
 					}
 				}
 			}
+
+			ps.close();
+			ps = conn.prepareStatement("DELETE FROM MPEGINDEX WHERE FILENAME NOT IN (SELECT FILENAME FROM FILES)");
+			ps.executeUpdate();
 		} catch (SQLException se) {
 			logger.error(null, se);
 		} finally {
@@ -700,6 +809,48 @@ public class DLNAMediaDatabase implements Runnable {
 		return list;
 	}
 
+	/**
+	 * Returns the files of the cache with the properties needed to evaluate
+	 * UPnP search criteria. Files with several audio tracks are returned once,
+	 * with the tags of their first track.
+	 *
+	 * @return The search entries, or <code>null</code> on error.
+	 */
+	public ArrayList<SearchEntry> getSearchEntries() {
+		ArrayList<SearchEntry> list = new ArrayList<SearchEntry>();
+		Set<String> filenames = new HashSet<String>();
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement ps = null;
+		try {
+			conn = getConnection();
+			ps = conn.prepareStatement("SELECT F.FILENAME, F.TYPE, A.SONGNAME, A.ARTIST, A.ALBUM, A.GENRE, A.YEAR FROM FILES F LEFT JOIN AUDIOTRACKS A ON A.FILEID = F.ID ORDER BY F.ID, A.ID");
+			rs = ps.executeQuery();
+			while (rs.next()) {
+				String filename = rs.getString("FILENAME");
+				if (filenames.add(filename)) {
+					list.add(new SearchEntry(
+						filename,
+						rs.getInt("TYPE"),
+						rs.getString("SONGNAME"),
+						rs.getString("ARTIST"),
+						rs.getString("ALBUM"),
+						rs.getString("GENRE"),
+						rs.getInt("YEAR")
+					));
+				}
+			}
+		} catch (SQLException se) {
+			logger.error(null, se);
+			return null;
+		} finally {
+			close(rs);
+			close(ps);
+			close(conn);
+		}
+		return list;
+	}
+
 	private void close(ResultSet rs) {
 		try {
 			if (rs != null) {
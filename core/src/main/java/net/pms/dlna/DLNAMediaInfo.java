@@ -183,6 +183,12 @@ public class DLNAMediaInfo implements Cloneable {
 	@Deprecated
 	public byte thumb[];
 
+	/**
+	 * Key of the thumbnail in the {@link ThumbnailStore}, used instead of
+	 * {@link #thumb} when the store is enabled.
+	 */
+	private volatile String thumbKey;
+
 	/**
 	 * @deprecated Use standard getter and setter to access this variable.
 	 */
@@ -406,7 +412,13 @@ public class DLNAMediaInfo implements Cloneable {
 		DLNAMediaInfo forThumbnail = new DLNAMediaInfo();
 		forThumbnail.durationSec = durationSec;
 		forThumbnail.parse(input, ext, type, true);
-		setThumb(forThumbnail.getThumb());
+
+		if (forThumbnail.thumbKey != null) {
+			thumbKey = forThumbnail.thumbKey;
+			thumb = null;
+		} else {
+			setThumb(forThumbnail.thumb);
+		}
 	}
 
 	private ProcessWrapperImpl getFFmpegThumbnail(InputFile media) {
@@ -749,8 +761,9 @@ public class DLNAMediaInfo implements Cloneable {
 							int sz = is.available();
 
 							if (sz > 0) {
-								setThumb(new byte[sz]);
-								is.read(getThumb());
+								byte[] image = new byte[sz];
+								is.read(image);
+								setThumb(image);
 							}
 
 							is.close();
@@ -1018,8 +1031,9 @@ public class DLNAMediaInfo implements Cloneable {
 							int sz = is.available();
 
 							if (sz > 0) {
-								setThumb(new byte[sz]);
-								is.read(getThumb());
+								byte[] image = new byte[sz];
+								is.read(image);
+								setThumb(image);
 							}
 
 							is.close();
@@ -1038,19 +1052,21 @@ public class DLNAMediaInfo implements Cloneable {
 					}
 				}
 
-				if (type == Format.VIDEO && pw != null && getThumb() == null) {
+				if (type == Format.VIDEO && pw != null && !hasThumb()) {
 					InputStream is;
 					try {
 						is = pw.getInputStream(0);
 						int sz = is.available();
+						byte[] thumbnail = null;
 						if (sz > 0) {
-							setThumb(new byte[sz]);
-							is.read(getThumb());
+							thumbnail = new byte[sz];
+							is.read(thumbnail);
+							setThumb(thumbnail);
 						}
 						is.close();
 
 						if (sz > 0 && !net.pms.PMS.isHeadless()) {
-							BufferedImage image = ImageIO.read(new ByteArrayInputStream(getThumb()));
+							BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
 							if (image != null) {
 								Graphics g = image.getGraphics();
 								g.setColor(Color.WHITE);
@@ -1269,9 +1285,12 @@ public class DLNAMediaInfo implements Cloneable {
 		result.append(", frame rate: ");
 		result.append(getFrameRate());
 
-		if (getThumb() != null) {
+		if (thumb != null) {
 			result.append(", thumb size : ");
-			result.append(getThumb().length);
+			result.append(thumb.length);
+		} else if (thumbKey != null) {
+			result.append(", thumb key : ");
+			result.append(thumbKey);
 		}
 
 		result.append(", muxing mode: ");
@@ -1293,7 +1312,8 @@ public class DLNAMediaInfo implements Cloneable {
 	}
 
 	public InputStream getThumbnailInputStream() {
-		return new ByteArrayInputStream(getThumb());
+		byte[] image = getThumb();
+		return image != null ? new ByteArrayInputStream(image) : null;
 	}
 
 	public String getValidFps(boolean ratios) {
@@ -1683,19 +1703,73 @@ public class DLNAMediaInfo implements Cloneable {
 	}
 
 	/**
+	 * Returns the bytes of the thumbnail. When the thumbnail store is
+	 * enabled, they are read from disk on every call.
+	 *
 	 * @return the thumb
 	 * @since 1.50.0
 	 */
 	public byte[] getThumb() {
+		String key = thumbKey;
+
+		if (key != null) {
+			byte[] image = ThumbnailStore.getInstance().get(key);
+
+			if (image == null) {
+				// Evicted from the store, the media cache will put it back
+				thumbKey = null;
+			}
+
+			return image;
+		}
+
 		return thumb;
 	}
 
 	/**
+	 * Sets the thumbnail. When the thumbnail store is enabled, the bytes are
+	 * written to disk and only their key is kept.
+	 *
 	 * @param thumb the thumb to set
 	 * @since 1.50.0
 	 */
 	public void setThumb(byte[] thumb) {
-		this.thumb = thumb;
+		String key = ThumbnailStore.getInstance().put(thumb);
+		this.thumbKey = key;
+		this.thumb = key != null ? null : thumb;
+	}
+
+	/**
+	 * Uses a thumbnail already kept in the {@link ThumbnailStore}, without
+	 * reading its bytes.
+	 *
+	 * @param key The key of the thumbnail.
+	 * @return True if the thumbnail is stored, false if it has to be set
+	 *         again with {@link #setThumb(byte[])}.
+	 */
+	public boolean setStoredThumb(String key) {
+		if (!ThumbnailStore.getInstance().contains(key)) {
+			return false;
+		}
+
+		this.thumbKey = key;
+		this.thumb = null;
+		return true;
+	}
+
+	/**
+	 * @return True if the media has a thumbnail.
+	 */
+	public boolean hasThumb() {
+		return thumbKey != null || thumb != null;
+	}
+
+	/**
+	 * @return The key of the thumbnail in the {@link ThumbnailStore}, or
+	 *         <code>null</code> if it is not stored there.
+	 */
+	public String getThumbKey() {
+		return thumbKey;
 	}
 
 	/**
@@ -33,6 +33,7 @@ import net.pms.formats.FormatFactory;
 import net.pms.io.OutputParams;
 import net.pms.io.ProcessWrapper;
 import net.pms.io.SizeLimitInputStream;
+import net.pms.io.TranscodeCache;
 import net.pms.network.HTTPResource;
 import net.pms.notifications.NotificationCenter;
 import net.pms.notifications.types.StartStopEvent;
@@ -54,9 +55,12 @@ import java.net.URLEncoder;
 import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 
 import static net.pms.util.StringUtil.*;
@@ -170,6 +174,12 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 
 	private ProcessWrapper externalProcess;
 
+	/**
+	 * True if the transcoded output of this resource was last sent from the
+	 * {@link TranscodeCache}, counted as a cache hit when a playback starts.
+	 */
+	private volatile boolean sentFromTranscodeCache;
+
 	/**
 	 * @deprecated Use standard getter and setter to access this field.
 	 */
@@ -250,6 +260,19 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	@Deprecated
 	protected List<DLNAResource> children;
 
+	/**
+	 * Guards the discovery and refreshing of the children of this node only,
+	 * so that browse requests for independent subtrees do not block each other.
+	 */
+	private ReentrantLock childrenLock = new ReentrantLock();
+
+	/**
+	 * Number of times a thread had to wait for {@link #childrenLock}, and
+	 * the total time spent waiting in nanoseconds.
+	 */
+	private AtomicLong childrenLockContentionCount = new AtomicLong();
+	private AtomicLong childrenLockWaitTime = new AtomicLong();
+
 	/**
 	 * @deprecated Use standard getter and setter to access this field.
 	 *
@@ -755,9 +778,20 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 
 		getChildren().add(child);
 		child.setParent(this);
+		child.setId(createChildId(child));
+	}
 
+	/**
+	 * Returns the ID of a child being added to this node by
+	 * {@link #addChildInternal(DLNAResource)}. By default the children are
+	 * numbered in the order they are added.
+	 *
+	 * @param child The child being added.
+	 * @return The ID, unique among the children of this node.
+	 */
+	protected String createChildId(DLNAResource child) {
 		setLastChildId(getLastChildId() + 1);
-		child.setIndexId(getLastChildId());
+		return Integer.toString(getLastChildId());
 	}
 
 	/**
@@ -772,12 +806,16 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 * @return List of DLNAResource items.
 	 * @throws IOException
 	 */
-	public synchronized List<DLNAResource> getDLNAResources(String objectId, boolean returnChildren, int start, int count, RendererConfiguration renderer) throws IOException {
+	public List<DLNAResource> getDLNAResources(String objectId, boolean returnChildren, int start, int count, RendererConfiguration renderer) throws IOException {
 		ArrayList<DLNAResource> resources = new ArrayList<DLNAResource>();
 		DLNAResource dlna = search(objectId, count, renderer);
 
 		if (dlna != null) {
 			String systemName = dlna.getSystemName();
+
+			// The tree is shared by renderers with the same tree signature, which
+			// discover and transcode alike, so whichever of them is set last is a
+			// valid default renderer. Transcoding uses the requesting renderer.
 			dlna.setDefaultRenderer(renderer);
 
 			if (!returnChildren) {
@@ -786,47 +824,27 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			} else {
 				dlna.discoverWithRenderer(renderer, count, true);
 
-				if (count == 0) {
-					count = dlna.getChildren().size();
-				}
-
-				if (count > 0) {
-					ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(count);
+				// Work on a copy, the children may be refreshed by a
+				// concurrent request while they are being resolved
+				List<DLNAResource> children = dlna.getChildrenRange(start, count);
 
-					int nParallelThreads = 3;
-					if (dlna instanceof DVDISOFile) {
-						nParallelThreads = 1; // Some DVD drives die wih 3 parallel threads
-					}
+				if (!children.isEmpty()) {
+					for (int i = 0; i < children.size(); i++) {
+						final DLNAResource child = children.get(i);
 
-					ThreadPoolExecutor tpe = new ThreadPoolExecutor(
-							Math.min(count, nParallelThreads),
-							count,
-							20,
-							TimeUnit.SECONDS,
-							queue
-							);
-
-					for (int i = start; i < start + count; i++) {
-						if (i < dlna.getChildren().size()) {
-							final DLNAResource child = dlna.getChildren().get(i);
-
-							if (child != null) {
-								tpe.execute(child);
-								resources.add(child);
-							} else {
-								logger.warn("null child at index {} in {}", i, systemName);
-							}
+						if (child != null) {
+							resources.add(child);
+						} else {
+							logger.warn("null child at index {} in {}", start + i, systemName);
 						}
 					}
 
-					try {
-						tpe.shutdown();
-						tpe.awaitTermination(20, TimeUnit.SECONDS);
-					} catch (InterruptedException e) {
-						logger.error("error while shutting down thread pool executor for " + systemName, e);
+					int deviceLimit = configuration.getResolveDeviceThreads();
+					if (dlna instanceof DVDISOFile) {
+						deviceLimit = 1; // Some DVD drives die wih 3 parallel threads
 					}
 
-					logger.trace("End of analysis for {}", systemName);
+					dlna.resolveChildren(resources, deviceLimit);
 				}
 			}
 		}
@@ -834,23 +852,181 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		return resources;
 	}
 
+	/**
+	 * Resolves children of this resource on the shared {@link ResolveExecutor}
+	 * and waits at most 20 seconds for them to be resolved.
+	 *
+	 * @param children The children to resolve.
+	 * @param deviceLimit The maximum number of children of the same device
+	 * 			that may be resolved at the same time.
+	 */
+	protected void resolveChildren(List<DLNAResource> children, int deviceLimit) {
+		ResolveExecutor resolveExecutor = ResolveExecutor.getInstance();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (DLNAResource child : children) {
+			futures.add(resolveExecutor.submit(child, child.getResolveDevice(), deviceLimit));
+		}
+
+		long deadline = System.currentTimeMillis() + 20000;
+
+		try {
+			for (Future<?> future : futures) {
+				try {
+					future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				} catch (ExecutionException e) {
+					logger.error("error while resolving a child of " + getSystemName(), e.getCause());
+				}
+			}
+		} catch (TimeoutException e) {
+			logger.debug("Analysis of {} did not finish in time, {} items waiting to be resolved", getSystemName(), resolveExecutor.getQueueDepth());
+		} catch (InterruptedException e) {
+			logger.error("interrupted while resolving the children of " + getSystemName(), e);
+			Thread.currentThread().interrupt();
+		}
+
+		logger.trace("End of analysis for {}", getSystemName());
+	}
+
 	protected void refreshChildrenIfNeeded() {
-		if (isDiscovered() && isRefreshNeeded()) {
-			refreshChildren();
-			notifyRefresh();
+		lockChildren();
+		try {
+			if (isDiscovered() && isRefreshNeeded()) {
+				refreshChildren();
+				notifyRefresh();
+			}
+		} finally {
+			unlockChildren();
 		}
 	}
 
 	/**
-	 * Update the last refresh time.
+	 * Acquires the lock guarding the children of this node, recording
+	 * whether the calling thread had to wait for it. Subclasses changing
+	 * their children outside of discovery or refresh must hold this lock.
+	 */
+	protected void lockChildren() {
+		if (childrenLock.tryLock()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		childrenLock.lock();
+		long waited = System.nanoTime() - start;
+
+		childrenLockContentionCount.incrementAndGet();
+		childrenLockWaitTime.addAndGet(waited);
+		logger.trace("Waited {} ms for the children lock of {}", waited / 1000000, getResourceId());
+	}
+
+	/**
+	 * Releases the lock acquired by {@link #lockChildren()}.
+	 */
+	protected void unlockChildren() {
+		childrenLock.unlock();
+	}
+
+	/**
+	 * Returns a copy of the list of children that is safe to iterate while
+	 * other threads discover or refresh this node.
+	 *
+	 * @return The snapshot of the children.
+	 */
+	protected List<DLNAResource> getChildrenSnapshot() {
+		lockChildren();
+		try {
+			return new ArrayList<DLNAResource>(getChildren());
+		} finally {
+			unlockChildren();
+		}
+	}
+
+	/**
+	 * Returns a copy of the children requested by a browse request. Containers
+	 * loading their children page by page override this method, along with
+	 * {@link #childrenNumber()}, to load the requested page only.
+	 *
+	 * @param start The index of the first child to return.
+	 * @param count The maximum number of children to return, 0 for all of them.
+	 * @return The children.
+	 */
+	protected List<DLNAResource> getChildrenRange(int start, int count) {
+		lockChildren();
+		try {
+			int end = getChildren().size();
+			if (count > 0) {
+				end = Math.min(start + count, end);
+			}
+
+			if (start >= end) {
+				return new ArrayList<DLNAResource>();
+			}
+
+			return new ArrayList<DLNAResource>(getChildren().subList(start, end));
+		} finally {
+			unlockChildren();
+		}
+	}
+
+	/**
+	 * Returns the number of times a thread had to wait for another thread
+	 * discovering or refreshing the children of this node.
+	 *
+	 * @return The contention count.
+	 */
+	public long getChildrenLockContentionCount() {
+		return childrenLockContentionCount.get();
+	}
+
+	/**
+	 * Returns the total time threads spent waiting for another thread
+	 * discovering or refreshing the children of this node.
+	 *
+	 * @return The wait time in milliseconds.
+	 */
+	public long getChildrenLockWaitTime() {
+		return childrenLockWaitTime.get() / 1000000;
+	}
+
+	/**
+	 * Returns the key of the slow device (optical disc or DVD image) this
+	 * resource is stored on. Resources of the same device share a limit on
+	 * the number of concurrent resolves, see {@link ResolveExecutor}.
+	 *
+	 * @return The device key, or <code>null</code> if the resource is not
+	 * 			stored on a slow device.
+	 */
+	protected String getResolveDevice() {
+		if (getParent() != null) {
+			return getParent().getResolveDevice();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Update the last refresh time and the update ids, and drop the cached
+	 * DIDL representations that became stale.
 	 */
 	protected void notifyRefresh() {
 		setLastRefreshTime(System.currentTimeMillis());
 		setUpdateId(getUpdateId() + 1);
 		setSystemUpdateId(getSystemUpdateId() + 1);
+
+		// The new system update id makes all cached representations stale
+		DidlFragmentCache.getInstance().clear();
 	}
 
 	final protected void discoverWithRenderer(RendererConfiguration renderer, int count, boolean forced) {
+		lockChildren();
+		try {
+			discoverWithRendererLocked(renderer, count, forced);
+		} finally {
+			unlockChildren();
+		}
+	}
+
+	private void discoverWithRendererLocked(RendererConfiguration renderer, int count, boolean forced) {
 		// Discover children if it hasn't been done already
 		if (!isDiscovered()) {
 			discoverChildren();
@@ -912,7 +1088,7 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				} else {
 					discoverWithRenderer(renderer, count, false);
 
-					for (DLNAResource file : getChildren()) {
+					for (DLNAResource file : getChildrenSnapshot()) {
 						DLNAResource found = file.search(indexPath[1], count, renderer);
 						if (found != null) {
 							return found;
@@ -1337,6 +1513,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			// make sure clones (typically #--TRANSCODE--# folder files)
 			// have the option to respond to resolve events
 			o.resolved = false;
+			// clones are browsed independently from the original
+			o.childrenLock = new ReentrantLock();
+			o.childrenLockContentionCount = new AtomicLong();
+			o.childrenLockWaitTime = new AtomicLong();
 		} catch (CloneNotSupportedException e) {
 			logger.error(null, e);
 		}
@@ -1379,7 +1559,57 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 */
 	public final String getDidlString(RendererConfiguration mediaRenderer) {
 		StringBuilder sb = new StringBuilder();
+		appendDidlString(sb, mediaRenderer);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the XML (DIDL) representation of the DLNA node to the given
+	 * buffer. This is the same representation as returned by
+	 * {@link #getDidlString(RendererConfiguration)}, but lets the caller reuse
+	 * one buffer for all items of a response.
+	 *
+	 * @param sb
+	 *            The buffer to append the representation to.
+	 * @param mediaRenderer
+	 *            Media Renderer for which to represent this information.
+	 */
+	public final void appendDidlString(StringBuilder sb, RendererConfiguration mediaRenderer) {
+		DidlFragmentCache cache = DidlFragmentCache.getInstance();
 
+		if (!cache.isEnabled() || !isDidlCacheable()) {
+			appendDidlStringUncached(sb, mediaRenderer);
+			return;
+		}
+
+		String didl = cache.get(this, mediaRenderer);
+
+		if (didl == null) {
+			int start = sb.length();
+			appendDidlStringUncached(sb, mediaRenderer);
+			cache.put(this, mediaRenderer, sb.substring(start));
+		} else {
+			sb.append(didl);
+		}
+	}
+
+	/**
+	 * Returns whether the DIDL representation of this resource can be
+	 * reused until it is refreshed. This is not the case while its media
+	 * information has not been parsed yet, or when it is shown in a virtual
+	 * container of another renderer.
+	 *
+	 * @return True if the representation can be cached.
+	 */
+	protected boolean isDidlCacheable() {
+		if (getResourceId() == null || getFakeParentId() != null) {
+			return false;
+		}
+
+		return isFolder() || (getMedia() != null && getMedia().isMediaparsed());
+	}
+
+	private void appendDidlStringUncached(StringBuilder sb, RendererConfiguration mediaRenderer) {
 		if (isFolder()) {
 			openTag(sb, "container");
 		} else {
@@ -1711,7 +1941,6 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		} else {
 			closeTag(sb, "item");
 		}
-		return sb.toString();
 	}
 
 	/**
@@ -1781,6 +2010,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 			requestIdToRefcount.put(requestId, refCount + 1);
 
 			if (refCount == 0) {
+				if (sentFromTranscodeCache) {
+					TranscodeCache.getInstance().countHit();
+				}
+
 				NotificationCenter.getInstance(StartStopEvent.class).post(new StartStopEvent(this, Event.Start));
 			}
 		}
@@ -1818,6 +2051,54 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		new Thread(defer, "StopPlaying Event Deferrer").start();
 	}
 
+	/**
+	 * Returns the local file holding the exact bytes that
+	 * {@link #getInputStream(Range, RendererConfiguration)} would return for
+	 * the given range, so it can be sent without being copied through the
+	 * Java heap. Resources that are transcoded, piped or otherwise altered
+	 * on the fly have no such file.
+	 *
+	 * @param range The requested range.
+	 * @param mediarenderer The renderer the resource is sent to.
+	 * @return The file, or null if the resource has to be streamed.
+	 */
+	public File getDirectFile(Range range, RendererConfiguration mediarenderer) {
+		return null;
+	}
+
+	/**
+	 * Describes everything the transcoded output of this resource for the
+	 * renderer depends on, apart from the PMS settings and the time range. Two
+	 * transcodes with the same description produce the same output, which
+	 * allows them to be shared and cached, see {@link TranscodeSessions} and
+	 * {@link TranscodeCache}. Resources whose transcoded output cannot be
+	 * reused return <code>null</code>, which is the default.
+	 *
+	 * @param mediarenderer The renderer the resource is transcoded for.
+	 * @return The description, or <code>null</code> if the output cannot be reused.
+	 */
+	protected String getTranscodeDescription(RendererConfiguration mediarenderer) {
+		return null;
+	}
+
+	/**
+	 * Returns the file holding the complete output of an earlier transcode
+	 * of this resource for the renderer, if the transcode cache has one.
+	 *
+	 * @param mediarenderer The renderer the resource is transcoded for.
+	 * @return The file, or <code>null</code> if the resource has to be transcoded.
+	 */
+	protected File getCachedTranscode(RendererConfiguration mediarenderer) {
+		if (!TranscodeCache.getInstance().isEnabled()) {
+			return null;
+		}
+
+		String description = getTranscodeDescription(mediarenderer);
+		File cached = description != null ? TranscodeCache.getInstance().get(TranscodeCache.getInstance().getKey(description)) : null;
+		sentFromTranscodeCache = cached != null;
+		return cached;
+	}
+
 	/**
 	 * Returns an InputStream of this DLNAResource that starts at a given time, if possible. Very useful if video chapters are being used.
 	 * @param range
@@ -1916,12 +2197,57 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 
 			// (re)start transcoding process if necessary
 			if (externalProcess == null || externalProcess.isDestroyed()) {
+				boolean cacheable = params.timeseek == 0 && params.timeend == 0 && !params.shift_scr;
+				File cached = cacheable ? getCachedTranscode(mediarenderer) : null;
+				sentFromTranscodeCache = cached != null;
+
+				if (cached != null) {
+					// played before => send the output of the earlier transcode
+					logger.info("Sending transcode/remux of " + getName() + " from the transcode cache");
+					InputStream fis = new FileInputStream(cached);
+
+					if (low > 0) {
+						fis.skip(low);
+					}
+
+					return wrap(fis, high, low);
+				}
+
+				String description = getTranscodeDescription(mediarenderer);
+				String sessionKey = TranscodeSessions.getKey(description, params.timeseek, params.timeend);
+				TranscodeSessions sessions = TranscodeSessions.getInstance();
+
+				if (!params.shift_scr) {
+					// same transcode running for another renderer => read its output.
+					// The process is not kept in externalProcess, so later requests
+					// (e.g. the second connection of the PS3) join it again instead
+					// of opening a reader that displaces the one of the other renderer.
+					InputStream shared = sessions.join(sessionKey, this, low);
+
+					if (shared != null) {
+						logger.info("Sharing running transcode/remux of " + getName());
+						return shared;
+					}
+				}
+
 				// first playback attempt => start new transcoding process
 				logger.info("Starting transcode/remux of " + getName());
 				logger.debug("Launching transcode with media info: " + getMedia().toString());
 
+				if (cacheable && description != null && TranscodeCache.getInstance().isEnabled()) {
+					params.cacheRecorder = TranscodeCache.getInstance().record(TranscodeCache.getInstance().getKey(description));
+				}
+
 				externalProcess = getPlayer().launchTranscode(this, getMedia(), params);
 
+				if (externalProcess == null && params.cacheRecorder != null) {
+					params.cacheRecorder.finish(false);
+				}
+
+				if (externalProcess != null && !params.shift_scr) {
+					sessions.register(sessionKey, this, externalProcess);
+				}
+
 				if (params.waitbeforestart > 0) {
 					logger.trace("Sleeping for {} milliseconds", params.waitbeforestart);
 					try {
@@ -1936,14 +2262,26 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 				// time seek request => stop running transcode process and start new one
 				logger.debug("Requesting time seek: " + params.timeseek + " seconds");
 				params.minBufferSize = 1;
-				Runnable r = new Runnable() {
-					@Override
-					public void run() {
-						externalProcess.stopProcess();
-					}
-				};
-				new Thread(r, "External Process Stopper").start();
+				final ProcessWrapper previousProcess = externalProcess;
+				TranscodeSessions sessions = TranscodeSessions.getInstance();
+
+				// other renderers still reading the running transcode => leave it running
+				if (!sessions.release(this, previousProcess)) {
+					Runnable r = new Runnable() {
+						@Override
+						public void run() {
+							previousProcess.stopProcess();
+						}
+					};
+					new Thread(r, "External Process Stopper").start();
+				}
+
 				ProcessWrapper newExternalProcess = getPlayer().launchTranscode(this, getMedia(), params);
+
+				if (newExternalProcess != null && !params.shift_scr) {
+					String sessionKey = TranscodeSessions.getKey(getTranscodeDescription(mediarenderer), params.timeseek, params.timeend);
+					sessions.register(sessionKey, this, newExternalProcess);
+				}
 				try {
 					Thread.sleep(1000);
 				} catch (InterruptedException e) {
@@ -2036,6 +2374,16 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		// need to override if some thumbnail work is to be done when mediaparserv2 enabled
 	}
 
+	/**
+	 * Returns true if the thumbnail of this resource has yet to be generated
+	 * by {@link #checkThumbnail()}.
+	 *
+	 * @return True if the thumbnail is missing.
+	 */
+	public boolean isThumbnailNeeded() {
+		return getMedia() != null && !getMedia().isThumbready() && configuration.isThumbnailGenerationEnabled();
+	}
+
 	/**
 	 * Checks if a thumbnail exists, and, if not, generates one (if possible).
 	 * Called from Request/RequestV2 in response to thumbnail requests e.g. HEAD /get/0$1$0$42$3/thumbnail0000%5BExample.mkv
@@ -2044,10 +2392,10 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 	 * @param inputFile File to check or generate the thumbnail for.
 	 */
 	protected void checkThumbnail(InputFile inputFile) {
-		if (getMedia() != null && !getMedia().isThumbready() && configuration.isThumbnailGenerationEnabled()) {
+		if (isThumbnailNeeded()) {
 			getMedia().setThumbready(true);
 			getMedia().generateThumbnail(inputFile, getFormat(), getType());
-			if (getMedia().getThumb() != null && configuration.getUseCache() && inputFile.getFile() != null) {
+			if (getMedia().hasThumb() && configuration.getUseCache() && inputFile.getFile() != null) {
 				PMS.get().getDatabase().updateThumbnail(inputFile.getFile().getAbsolutePath(), inputFile.getFile().lastModified(), getType(), getMedia());
 			}
 		}
@@ -2107,6 +2455,21 @@ public abstract class DLNAResource extends HTTPResource implements Cloneable, Ru
 		return getGenericThumbnailInputStream(null);
 	}
 
+	/**
+	 * Returns the file holding this resource's thumbnail in the size wanted
+	 * by the renderer, if the thumbnail is kept in a file. Thumbnails served
+	 * from a file can be validated by renderers with conditional requests.
+	 * Typically overridden by a subclass.
+	 *
+	 * @param renderer The renderer asking for the thumbnail, or
+	 *            <code>null</code>.
+	 * @return The file, or <code>null</code> to serve
+	 *         {@link #getThumbnailInputStream()} instead.
+	 */
+	public File getThumbnailFile(RendererConfiguration renderer) {
+		return null;
+	}
+
 	public String getThumbnailContentType() {
 		return HTTPResource.JPEG_TYPEMIME;
 	}
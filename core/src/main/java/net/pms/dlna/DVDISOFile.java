@@ -51,6 +51,12 @@ public class DVDISOFile extends VirtualFolder {
 		return getFilename(file);
 	}
 
+	@Override
+	protected String getResolveDevice() {
+		// Titles of the same image are resolved one at a time
+		return "dvd:" + file.getAbsolutePath();
+	}
+
 	public DVDISOFile(File file) {
 		super(getName(file), null);
 		this.file = file;
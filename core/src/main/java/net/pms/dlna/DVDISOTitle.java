@@ -195,8 +195,9 @@ public class DVDISOTitle extends DLNAResource {
 						int sz = is.available();
 
 						if (sz > 0) {
-							getMedia().setThumb(new byte[sz]);
-							is.read(getMedia().getThumb());
+							byte[] image = new byte[sz];
+							is.read(image);
+							getMedia().setThumb(image);
 						}
 					} finally {
 						if (is != null) {
@@ -306,7 +307,8 @@ public class DVDISOTitle extends DLNAResource {
 	@Override
 	public long length(RendererConfiguration mediaRenderer) {
 		// WDTV Live at least, needs a realistic size for stop/resume to works proberly. 2030879 = ((15000 + 256) * 1024 / 8 * 1.04) : 1.04 = overhead
-		int cbr_video_bitrate = getDefaultRenderer().getCBRVideoBitrate();
+		RendererConfiguration renderer = mediaRenderer != null ? mediaRenderer : getDefaultRenderer();
+		int cbr_video_bitrate = renderer != null ? renderer.getCBRVideoBitrate() : 0;
 		return (cbr_video_bitrate > 0) ? (long) (((cbr_video_bitrate + 256) * 1024 / 8 * 1.04) * getMedia().getDurationInSeconds()) : length();
 	}
 
@@ -353,7 +355,7 @@ public class DVDISOTitle extends DLNAResource {
 
 		if (cachedThumbnail != null) {
 			return new FileInputStream(cachedThumbnail);
-		} else if (getMedia() != null && getMedia().getThumb() != null) {
+		} else if (getMedia() != null && getMedia().hasThumb()) {
 			return getMedia().getThumbnailInputStream();
 		} else {
 			return getGenericThumbnailInputStream("images/cdrwblank-256.png");
@@ -0,0 +1,256 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.configuration.RendererConfiguration;
+
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of the DIDL fragments rendered by
+ * {@link DLNAResource#appendDidlString(StringBuilder, RendererConfiguration)}.
+ * <p>
+ * Rendering an item means resolving its display name template, matching its
+ * format against the renderer and building its resource URLs. None of this
+ * changes until the resource is refreshed, so fragments are kept per resource
+ * and renderer, along with the update ids they were rendered for. A fragment
+ * is only reused while the update id of the resource and the system update id
+ * are unchanged. {@link DLNAResource#notifyRefresh()} changes the system update
+ * id, which invalidates every cached fragment, so the cache is cleared then,
+ * as it is when the configuration changes.
+ */
+public class DidlFragmentCache {
+	private static final Logger logger = LoggerFactory.getLogger(DidlFragmentCache.class);
+
+	/**
+	 * Number of lookups between two logged hit rates.
+	 */
+	private static final int STATISTICS_LOG_INTERVAL = 1000;
+
+	private static DidlFragmentCache instance;
+
+	private final int maxSize;
+
+	/**
+	 * Cached fragments, least recently used first. Guarded by this.
+	 */
+	private final Map<Key, Fragment> fragments;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Returns the cache shared by all renderers, sized according to the
+	 * configuration.
+	 *
+	 * @return The cache.
+	 */
+	public static synchronized DidlFragmentCache getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			instance = new DidlFragmentCache(configuration != null ? configuration.getDidlCacheSize() : 0);
+
+			if (configuration != null) {
+				configuration.addConfigurationListener(new ConfigurationListener() {
+					@Override
+					public void configurationChanged(ConfigurationEvent event) {
+						if (!event.isBeforeUpdate()) {
+							// Display names and formats depend on many settings
+							instance.clear();
+						}
+					}
+				});
+			}
+		}
+
+		return instance;
+	}
+
+	DidlFragmentCache(final int maxSize) {
+		this.maxSize = maxSize;
+		fragments = new LinkedHashMap<Key, Fragment>(16, 0.75f, true) {
+			private static final long serialVersionUID = 7145928339711238306L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Fragment> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns whether fragments are cached at all.
+	 *
+	 * @return True if the cache is enabled.
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Returns the fragment cached for the resource and renderer, if it was
+	 * rendered for the current state of the resource.
+	 *
+	 * @param resource The resource.
+	 * @param renderer The renderer.
+	 * @return The fragment, or <code>null</code> if none is cached.
+	 */
+	public String get(DLNAResource resource, RendererConfiguration renderer) {
+		Fragment fragment;
+
+		synchronized (this) {
+			fragment = fragments.get(new Key(resource, renderer));
+		}
+
+		if (fragment != null && fragment.isValidFor(resource)) {
+			count(hitCount);
+			return fragment.didl;
+		}
+
+		count(missCount);
+		return null;
+	}
+
+	/**
+	 * Stores the fragment rendered for the current state of the resource.
+	 *
+	 * @param resource The resource.
+	 * @param renderer The renderer.
+	 * @param didl The rendered fragment.
+	 */
+	public void put(DLNAResource resource, RendererConfiguration renderer, String didl) {
+		Fragment fragment = new Fragment(resource, didl);
+
+		synchronized (this) {
+			fragments.put(new Key(resource, renderer), fragment);
+		}
+	}
+
+	/**
+	 * Removes all cached fragments.
+	 */
+	public synchronized void clear() {
+		fragments.clear();
+	}
+
+	/**
+	 * @return The number of cached fragments.
+	 */
+	public synchronized int size() {
+		return fragments.size();
+	}
+
+	/**
+	 * @return The number of lookups that returned a fragment.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The number of lookups that did not return a fragment.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return The percentage of lookups that returned a fragment.
+	 */
+	public int getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return total > 0 ? (int) (hits * 100 / total) : 0;
+	}
+
+	private void count(AtomicLong counter) {
+		counter.incrementAndGet();
+
+		if ((hitCount.get() + missCount.get()) % STATISTICS_LOG_INTERVAL == 0) {
+			logger.debug("DIDL fragment cache: {} entries, {}% hits", size(), getHitRate());
+		}
+	}
+
+	/**
+	 * Cache key: the resource id, and the renderer configuration by identity.
+	 */
+	private static final class Key {
+		private final String resourceId;
+		private final RendererConfiguration renderer;
+
+		Key(DLNAResource resource, RendererConfiguration renderer) {
+			this.resourceId = resource.getResourceId();
+			this.renderer = renderer;
+		}
+
+		@Override
+		public int hashCode() {
+			return resourceId.hashCode() * 31 + System.identityHashCode(renderer);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) o;
+			return renderer == other.renderer && resourceId.equals(other.resourceId);
+		}
+	}
+
+	/**
+	 * A rendered fragment, with everything it depends on that can change
+	 * without the configuration changing.
+	 */
+	private static final class Fragment {
+		private final DLNAResource resource;
+		private final int updateId;
+		private final int systemUpdateId;
+		private final int childCount;
+		private final boolean discovered;
+		private final String didl;
+
+		Fragment(DLNAResource resource, String didl) {
+			this.resource = resource;
+			this.updateId = resource.getUpdateId();
+			this.systemUpdateId = DLNAResource.getSystemUpdateId();
+			this.childCount = resource.childrenNumber();
+			this.discovered = resource.isDiscovered();
+			this.didl = didl;
+		}
+
+		boolean isValidFor(DLNAResource resource) {
+			return this.resource == resource
+				&& updateId == resource.getUpdateId()
+				&& systemUpdateId == DLNAResource.getSystemUpdateId()
+				&& childCount == resource.childrenNumber()
+				&& discovered == resource.isDiscovered();
+		}
+	}
+}
@@ -7,10 +7,15 @@ import static org.apache.commons.lang3.StringUtils.substringAfterLast;
 
 import java.io.File;
 import java.util.StringTokenizer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import net.pms.PMS;
 import net.pms.configuration.FormatConfiguration;
+import net.pms.configuration.PmsConfiguration;
 import net.pms.formats.v2.SubtitleType;
 
 import org.apache.commons.codec.binary.Base64;
@@ -27,36 +32,155 @@ public class LibMediaInfoParser {
 	/** Pattern to parse the year from a string */
 	private static final Pattern yearPattern = Pattern.compile(YEAR_REGEX);
 	
+	/** Number of parsed files after which the throughput is logged */
+	private static final int THROUGHPUT_LOG_INTERVAL = 100;
+
 	private static MediaInfo MI;
 	private static Base64 base64;
 
+	/**
+	 * Idle MediaInfo instances. Each instance is used by one thread at a time,
+	 * so that several files can be parsed in parallel.
+	 */
+	private static final BlockingQueue<MediaInfo> pool = new LinkedBlockingQueue<MediaInfo>();
+
+	/** Number of MediaInfo instances created so far, guarded by pool */
+	private static int poolCreated;
+
+	private static final AtomicLong parseCount = new AtomicLong();
+	private static final AtomicLong parseTime = new AtomicLong();
+
 	static {
 		MI = new MediaInfo();
 		if (MI.isValid()) {
-			MI.Option("Complete", "1");
-			MI.Option("Language", "raw");
+			configure(MI);
+			pool.add(MI);
+			poolCreated = 1;
 		}
 		base64 = new Base64();
 	}
 
+	private static void configure(MediaInfo mediaInfo) {
+		mediaInfo.Option("Complete", "1");
+		mediaInfo.Option("Language", "raw");
+	}
+
 	public static boolean isValid() {
 		return MI.isValid();
 	}
 
 	public static void close() {
-		try {
-			MI.finalize();
-		} catch (Throwable e) {
-			logger.debug("Caught exception", e);
+		synchronized (pool) {
+			MediaInfo mediaInfo;
+			while ((mediaInfo = pool.poll()) != null) {
+				try {
+					mediaInfo.finalize();
+				} catch (Throwable e) {
+					logger.debug("Caught exception", e);
+				}
+			}
 		}
 	}
 
-	public synchronized static void parse(DLNAMediaInfo media, InputFile inputFile, int type) {
+	/**
+	 * Returns the maximum number of MediaInfo instances.
+	 */
+	private static int getPoolSize() {
+		PmsConfiguration configuration = PMS.getConfiguration();
+		return configuration != null ? configuration.getMediaInfoPoolSize() : 1;
+	}
+
+	/**
+	 * Takes an idle MediaInfo instance from the pool, creating a new one if
+	 * all instances are busy and the pool is not full yet.
+	 *
+	 * @return The MediaInfo instance, or <code>null</code> if interrupted.
+	 */
+	private static MediaInfo acquire() {
+		MediaInfo mediaInfo = pool.poll();
+
+		if (mediaInfo == null) {
+			synchronized (pool) {
+				if (poolCreated < getPoolSize()) {
+					mediaInfo = new MediaInfo();
+
+					if (mediaInfo.isValid()) {
+						configure(mediaInfo);
+						poolCreated++;
+						logger.debug("Created MediaInfo instance {} of {}", poolCreated, getPoolSize());
+					} else {
+						mediaInfo = null;
+					}
+				}
+			}
+
+			if (mediaInfo == null) {
+				try {
+					mediaInfo = pool.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		return mediaInfo;
+	}
+
+	private static void release(MediaInfo mediaInfo) {
+		pool.add(mediaInfo);
+	}
+
+	/**
+	 * @return The number of files parsed by MediaInfo so far.
+	 */
+	public static long getParseCount() {
+		return parseCount.get();
+	}
+
+	/**
+	 * @return The total time spent parsing files in milliseconds, summed
+	 * 			over all MediaInfo instances.
+	 */
+	public static long getParseTime() {
+		return parseTime.get();
+	}
+
+	public static void parse(DLNAMediaInfo media, InputFile inputFile, int type) {
 		File file = inputFile.getFile();
 
-		if (!media.isMediaparsed() && file != null && MI.isValid() && MI.Open(file.getAbsolutePath()) > 0) {
+		if (media.isMediaparsed() || file == null || !MI.isValid()) {
+			return;
+		}
+
+		MediaInfo mediaInfo = acquire();
+
+		if (mediaInfo == null) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+
+		try {
+			// The same media may be resolved by several threads
+			synchronized (media) {
+				parse(mediaInfo, media, inputFile, file, type);
+			}
+		} finally {
+			release(mediaInfo);
+		}
+
+		long count = parseCount.incrementAndGet();
+		long time = parseTime.addAndGet(System.currentTimeMillis() - start);
+
+		if (count % THROUGHPUT_LOG_INTERVAL == 0) {
+			logger.debug("MediaInfo parsed {} files, {} ms per file on average", count, time / count);
+		}
+	}
+
+	private static void parse(MediaInfo mediaInfo, DLNAMediaInfo media, InputFile inputFile, File file, int type) {
+		if (!media.isMediaparsed() && mediaInfo.Open(file.getAbsolutePath()) > 0) {
 			try {
-				String info = MI.Inform();
+				String info = mediaInfo.Inform();
 				MediaInfo.StreamType streamType = MediaInfo.StreamType.General;
 				DLNAMediaAudio currentAudioTrack = new DLNAMediaAudio();
 				boolean audioPrepped = false;
@@ -262,7 +386,7 @@ public class LibMediaInfoParser {
 			} catch (Exception e) {
 				logger.error("Error in MediaInfo parsing:", e);
 			} finally {
-				MI.Close();
+				mediaInfo.Close();
 				if (media.getContainer() == null) {
 					media.setContainer(DLNAMediaLang.UND);
 				}
@@ -158,7 +158,7 @@ public class RarredEntry extends DLNAResource implements IPushOutput {
 
 	@Override
 	public InputStream getThumbnailInputStream() throws IOException {
-		if (getMedia() != null && getMedia().getThumb() != null) {
+		if (getMedia() != null && getMedia().hasThumb()) {
 			return getMedia().getThumbnailInputStream();
 		} else {
 			return super.getThumbnailInputStream();
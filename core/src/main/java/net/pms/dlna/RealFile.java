@@ -21,9 +21,11 @@ package net.pms.dlna;
 import com.sun.jna.Platform;
 import net.pms.PMS;
 import net.pms.configuration.PmsConfiguration;
+import net.pms.configuration.RendererConfiguration;
 import net.pms.formats.Format;
 import net.pms.formats.FormatFactory;
 import net.pms.util.FileUtil;
+import net.pms.util.OpticalDiscs;
 import net.pms.util.ProcessUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -62,7 +64,7 @@ public class RealFile extends MapFile {
 			// we need to resolve the DLNA resource now
 			run();
 
-			if (getMedia() != null && getMedia().getThumb() == null && getType() != Format.AUDIO) { // MediaInfo retrieves cover art now
+			if (getMedia() != null && !getMedia().hasThumb() && getType() != Format.AUDIO) { // MediaInfo retrieves cover art now
 				getMedia().setThumbready(false);
 			}
 
@@ -80,7 +82,7 @@ public class RealFile extends MapFile {
 
 			// XXX isMediaParserV2ThumbnailGeneration is only true for the "default renderer"
 			if (getParent().getDefaultRenderer().isMediaParserV2ThumbnailGeneration()) {
-				checkThumbnail();
+				ThumbnailGenerator.getInstance().prefetch(this);
 			}
 		}
 
@@ -98,6 +100,37 @@ public class RealFile extends MapFile {
 		return null;
 	}
 
+	@Override
+	protected String getResolveDevice() {
+		// Only optical discs suffer from concurrent reads
+		return OpticalDiscs.getMountPoint(getFile());
+	}
+
+	@Override
+	public File getDirectFile(Range range, RendererConfiguration mediarenderer) {
+		if (this instanceof IPushOutput) {
+			return null;
+		}
+
+		if (getPlayer() != null) {
+			// Output of an earlier transcode can be sent as is
+			return range.createTimeRange().getStartOrZero() > 0 ? null : getCachedTranscode(mediarenderer);
+		}
+
+		if (getFormat() != null && getFormat().isImage() && getMedia() != null && getMedia().getOrientation() > 1 && mediarenderer.isAutoRotateBasedOnExif()) {
+			// The image is rotated on the fly
+			return null;
+		}
+
+		if (range.createTimeRange().getStartOrZero() > 0) {
+			// Time seeks are translated into byte offsets by the stream
+			return null;
+		}
+
+		File file = getFile();
+		return file.isFile() ? file : null;
+	}
+
 	@Override
 	public long length() {
 		if (getPlayer() != null && getPlayer().type() != Format.IMAGE) {
@@ -113,6 +146,30 @@ public class RealFile extends MapFile {
 		return getFile().isDirectory();
 	}
 
+	@Override
+	protected String getTranscodeDescription(RendererConfiguration mediarenderer) {
+		File file = getFile();
+
+		if (getPlayer() == null || mediarenderer == null || !file.isFile()) {
+			return null;
+		}
+
+		StringBuilder description = new StringBuilder();
+		description.append(file.getAbsolutePath()).append('\n');
+		description.append(file.lastModified()).append(' ').append(file.length()).append('\n');
+		description.append(getPlayer().id()).append('\n');
+		description.append(mediarenderer.getConfigurationChecksum()).append('\n');
+		description.append(getMediaAudio()).append('\n');
+		description.append(getMediaSubtitle()).append('\n');
+
+		if (getMediaSubtitle() != null && getMediaSubtitle().isExternal() && getMediaSubtitle().getExternalFile() != null) {
+			description.append(getMediaSubtitle().getExternalFile().lastModified()).append('\n');
+		}
+
+		description.append(getSplitTrack()).append(' ').append(getSplitRange().getStart()).append(' ').append(getSplitRange().getEnd());
+		return description.toString();
+	}
+
 	public File getFile() {
 		return getConf().getFiles().get(0);
 	}
@@ -212,6 +269,42 @@ public class RealFile extends MapFile {
 
 	@Override
 	public InputStream getThumbnailInputStream() throws IOException {
+		File cover = getCoverFile();
+
+		if (cover != null) {
+			return new FileInputStream(cover);
+		} else if (getMedia() != null && getMedia().hasThumb()) {
+			InputStream is = getMedia().getThumbnailInputStream();
+
+			if (is != null) {
+				return is;
+			}
+		}
+
+		return super.getThumbnailInputStream();
+	}
+
+	@Override
+	public File getThumbnailFile(RendererConfiguration renderer) {
+		File cover = getCoverFile();
+
+		if (cover != null) {
+			return cover;
+		} else if (getMedia() != null && getMedia().getThumbKey() != null) {
+			return ThumbnailStore.getInstance().getFile(getMedia().getThumbKey(), renderer != null ? renderer.getThumbnailSize() : 0);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Looks for an image next to the file, or in the alternate thumbnail
+	 * folder, to use as its thumbnail.
+	 *
+	 * @return The image, or <code>null</code> if there is none or the
+	 *         embedded cover art of an audio file should be used instead.
+	 */
+	private File getCoverFile() {
 		File file = getFile();
 		File cachedThumbnail = null;
 
@@ -264,15 +357,13 @@ public class RealFile extends MapFile {
 			}
 		}
 
-		boolean hasAlreadyEmbeddedCoverArt = getType() == Format.AUDIO && getMedia() != null && getMedia().getThumb() != null;
+		boolean hasAlreadyEmbeddedCoverArt = getType() == Format.AUDIO && getMedia() != null && getMedia().hasThumb();
 
 		if (cachedThumbnail != null && (!hasAlreadyEmbeddedCoverArt || file.isDirectory())) {
-			return new FileInputStream(cachedThumbnail);
-		} else if (getMedia() != null && getMedia().getThumb() != null) {
-			return getMedia().getThumbnailInputStream();
-		} else {
-			return super.getThumbnailInputStream();
+			return cachedThumbnail;
 		}
+
+		return null;
 	}
 
 	@Override
@@ -290,7 +381,7 @@ public class RealFile extends MapFile {
 		StringBuilder sb = new StringBuilder();
 		sb.append(PMS.get().getServer().getURL());
 		sb.append("/");
-		if (getMedia() != null && getMedia().getThumb() != null) {
+		if (getMedia() != null && getMedia().hasThumb()) {
 			return super.getThumbnailURL();
 		} else if (getType() == Format.AUDIO) {
 			if (getParent() != null && getParent() instanceof RealFile && ((RealFile) getParent()).getPotentialCover() != null) {
@@ -0,0 +1,280 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server wide executor resolving the children of browsed folders.
+ * <p>
+ * All browse requests share one bounded pool of daemon threads. Items of
+ * slow devices such as optical discs are queued per device, and at most a
+ * limited number of items of the same device are resolved at the same time,
+ * so a slow optical drive cannot occupy all threads. Other items go to the
+ * pool directly. An item that is already waiting or being resolved is not
+ * queued a second time; the pending task is returned instead. When too many
+ * items are outstanding, the item is resolved by the calling thread.
+ */
+public class ResolveExecutor {
+	private static final Logger logger = LoggerFactory.getLogger(ResolveExecutor.class);
+
+	private static ResolveExecutor instance;
+
+	private final ThreadPoolExecutor executor;
+	private final int maxOutstanding;
+
+	/**
+	 * Tasks waiting or running, keyed by resource. Guarded by this.
+	 */
+	private final Map<DLNAResource, ResolveTask> outstanding = new IdentityHashMap<DLNAResource, ResolveTask>();
+
+	/**
+	 * Per device queues of tasks not yet handed to the pool. Guarded by this.
+	 */
+	private final Map<String, DeviceQueue> devices = new HashMap<String, DeviceQueue>();
+
+	private int queueDepth;
+	private int maxQueueDepth;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+	private final AtomicLong callerRunsCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+
+	public static synchronized ResolveExecutor getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			instance = new ResolveExecutor(configuration.getResolveThreads(), configuration.getResolveQueueSize());
+		}
+
+		return instance;
+	}
+
+	ResolveExecutor(int threads, int maxOutstanding) {
+		this.maxOutstanding = maxOutstanding;
+		executor = new ThreadPoolExecutor(
+			threads,
+			threads,
+			60,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "resolve-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedules the resolving of a resource.
+	 *
+	 * @param resource The resource to resolve.
+	 * @param device The key of the slow device the resource is stored on,
+	 * 			or <code>null</code> to resolve it without a device limit.
+	 * @param deviceLimit The maximum number of resources of the same device
+	 * 			that may be resolved at the same time. The latest value
+	 * 			applies to all queued resources of the device.
+	 * @return The future completing when the resource has been resolved.
+	 */
+	public Future<?> submit(DLNAResource resource, String device, int deviceLimit) {
+		ResolveTask task;
+		boolean runInCaller = false;
+
+		synchronized (this) {
+			task = outstanding.get(resource);
+
+			if (task != null) {
+				deduplicatedCount.incrementAndGet();
+				logger.trace("{} is already being resolved", resource.getResourceId());
+				return task;
+			}
+
+			submittedCount.incrementAndGet();
+
+			if (outstanding.size() >= maxOutstanding) {
+				task = new ResolveTask(resource, null);
+				runInCaller = true;
+			} else if (device == null) {
+				task = new ResolveTask(resource, null);
+				executor.execute(task);
+			} else {
+				DeviceQueue deviceQueue = devices.get(device);
+
+				if (deviceQueue == null) {
+					deviceQueue = new DeviceQueue(device);
+					devices.put(device, deviceQueue);
+				}
+
+				deviceQueue.limit = Math.max(1, deviceLimit);
+				task = new ResolveTask(resource, deviceQueue);
+				deviceQueue.pending.add(task);
+				queueDepth++;
+				maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+				dispatch(deviceQueue);
+			}
+
+			outstanding.put(resource, task);
+		}
+
+		if (runInCaller) {
+			callerRunsCount.incrementAndGet();
+			logger.trace("Resolve queue is full, resolving {} in the calling thread", resource.getResourceId());
+			task.run();
+		}
+
+		return task;
+	}
+
+	/**
+	 * Hands pending tasks of a device to the pool as long as the device
+	 * limit allows. Must be called while holding the lock on this.
+	 */
+	private void dispatch(DeviceQueue deviceQueue) {
+		while (deviceQueue.running < deviceQueue.limit && !deviceQueue.pending.isEmpty()) {
+			ResolveTask task = deviceQueue.pending.poll();
+			deviceQueue.running++;
+			queueDepth--;
+			executor.execute(task);
+		}
+	}
+
+	private synchronized void finished(ResolveTask task) {
+		if (outstanding.get(task.resource) == task) {
+			outstanding.remove(task.resource);
+		}
+
+		completedCount.incrementAndGet();
+		DeviceQueue deviceQueue = task.deviceQueue;
+
+		if (deviceQueue != null) {
+			deviceQueue.running--;
+			dispatch(deviceQueue);
+
+			if (deviceQueue.running == 0 && deviceQueue.pending.isEmpty()) {
+				devices.remove(deviceQueue.key);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of resources waiting for a device to become
+	 * 			available or for a thread of the pool.
+	 */
+	public synchronized int getQueueDepth() {
+		return queueDepth + executor.getQueue().size();
+	}
+
+	/**
+	 * @return The highest number of resources that were waiting for a
+	 * 			device to become available at the same time.
+	 */
+	public synchronized int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * @return The number of resources being resolved right now.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return The number of resources submitted for resolving, excluding
+	 * 			duplicates.
+	 */
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	/**
+	 * @return The number of submissions that were merged with a resource
+	 * 			that was already waiting or being resolved.
+	 */
+	public long getDeduplicatedCount() {
+		return deduplicatedCount.get();
+	}
+
+	/**
+	 * @return The number of resources that were resolved by the calling
+	 * 			thread because the queue was full.
+	 */
+	public long getCallerRunsCount() {
+		return callerRunsCount.get();
+	}
+
+	/**
+	 * @return The number of resources resolved so far.
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	private class ResolveTask extends FutureTask<Object> {
+		private final DLNAResource resource;
+		private final DeviceQueue deviceQueue;
+
+		ResolveTask(DLNAResource resource, DeviceQueue deviceQueue) {
+			super(resource, null);
+			this.resource = resource;
+			this.deviceQueue = deviceQueue;
+		}
+
+		@Override
+		protected void done() {
+			finished(this);
+		}
+	}
+
+	private static class DeviceQueue {
+		private final String key;
+		private final Queue<ResolveTask> pending = new ArrayDeque<ResolveTask>();
+		private int limit;
+		private int running;
+
+		DeviceQueue(String key) {
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server wide service generating the thumbnails of resources in the
+ * background, see {@link DLNAResource#checkThumbnail()}.
+ * <p>
+ * Thumbnails are generated by a bounded pool of daemon threads, so a
+ * renderer showing a grid of posters cannot start an encoder per poster.
+ * Thumbnails a renderer asks for are generated first, the most recently
+ * asked first, followed by the thumbnails of folders that were browsed, in
+ * folder order. A resource that is already waiting or being processed is
+ * not queued a second time; when a renderer asks for a thumbnail that was
+ * only queued for a browsed folder, it is moved ahead. Thumbnails of
+ * browsed folders are not queued when too many are waiting already.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class ThumbnailGenerator {
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+	private static ThumbnailGenerator instance;
+
+	private final ThreadPoolExecutor executor;
+	private final int maxQueued;
+
+	/**
+	 * Tasks waiting or running, keyed by resource. Guarded by this.
+	 */
+	private final Map<DLNAResource, ThumbnailTask> pending = new IdentityHashMap<DLNAResource, ThumbnailTask>();
+
+	/**
+	 * Order in which tasks were submitted. Guarded by this.
+	 */
+	private long sequence;
+
+	private final AtomicLong generatedCount = new AtomicLong();
+	private final AtomicLong deduplicatedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	public static synchronized ThumbnailGenerator getInstance() {
+		if (instance == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			instance = new ThumbnailGenerator(configuration.getThumbnailGenerationThreads(), configuration.getThumbnailGenerationQueueSize());
+		}
+
+		return instance;
+	}
+
+	ThumbnailGenerator(int threads, int maxQueued) {
+		this.maxQueued = maxQueued;
+		executor = new ThreadPoolExecutor(
+			threads,
+			threads,
+			60,
+			TimeUnit.SECONDS,
+			new PriorityBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				private final AtomicInteger counter = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "thumbnail-" + counter.incrementAndGet());
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			}
+		);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedules the generation of the thumbnail a renderer is asking for,
+	 * ahead of the thumbnails of browsed folders.
+	 *
+	 * @param resource The resource.
+	 * @return True if the thumbnail is being generated, in which case the
+	 * 			caller should serve the generic thumbnail for now.
+	 */
+	public boolean request(DLNAResource resource) {
+		return submit(resource, true);
+	}
+
+	/**
+	 * Schedules the generation of the thumbnails of browsed resources, so
+	 * they are ready by the time a renderer asks for them.
+	 *
+	 * @param resources The resources.
+	 */
+	public void prefetch(List<DLNAResource> resources) {
+		for (DLNAResource resource : resources) {
+			submit(resource, false);
+		}
+	}
+
+	/**
+	 * Schedules the generation of the thumbnail of a browsed resource.
+	 *
+	 * @param resource The resource.
+	 */
+	public void prefetch(DLNAResource resource) {
+		submit(resource, false);
+	}
+
+	/**
+	 * @param resource The resource.
+	 * @return True if the thumbnail of the resource is waiting to be, or
+	 * 			being, generated.
+	 */
+	public synchronized boolean isPending(DLNAResource resource) {
+		return pending.containsKey(resource);
+	}
+
+	private synchronized boolean submit(DLNAResource resource, boolean displayed) {
+		ThumbnailTask task = pending.get(resource);
+
+		if (task != null) {
+			deduplicatedCount.incrementAndGet();
+
+			// A task has to leave the queue before its order can change
+			if (displayed && !task.displayed && executor.remove(task)) {
+				logger.trace("Moving thumbnail of {} ahead", resource.getResourceId());
+				task.displayed = true;
+				task.sequence = ++sequence;
+				executor.execute(task);
+			}
+
+			return true;
+		}
+
+		if (!resource.isThumbnailNeeded()) {
+			return false;
+		}
+
+		if (!displayed && executor.getQueue().size() >= maxQueued) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+
+		task = new ThumbnailTask(resource, displayed, ++sequence);
+		pending.put(resource, task);
+		executor.execute(task);
+		return true;
+	}
+
+	private synchronized void finished(ThumbnailTask task) {
+		if (pending.get(task.resource) == task) {
+			pending.remove(task.resource);
+		}
+
+		generatedCount.incrementAndGet();
+	}
+
+	/**
+	 * @return The number of thumbnails waiting for a thread of the pool.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return The number of thumbnails processed so far.
+	 */
+	public long getGeneratedCount() {
+		return generatedCount.get();
+	}
+
+	/**
+	 * @return The number of submissions that were merged with a thumbnail
+	 * 			that was already waiting or being generated.
+	 */
+	public long getDeduplicatedCount() {
+		return deduplicatedCount.get();
+	}
+
+	/**
+	 * @return The number of thumbnails of browsed folders that were not
+	 * 			queued because the queue was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	private class ThumbnailTask implements Runnable, Comparable<ThumbnailTask> {
+		private final DLNAResource resource;
+
+		// Only changed while the task is not queued
+		private boolean displayed;
+		private long sequence;
+
+		ThumbnailTask(DLNAResource resource, boolean displayed, long sequence) {
+			this.resource = resource;
+			this.displayed = displayed;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(ThumbnailTask other) {
+			if (displayed != other.displayed) {
+				return displayed ? -1 : 1;
+			}
+
+			// Newest first for displayed thumbnails, as the renderer has
+			// probably scrolled past the older ones. Folder order otherwise.
+			long order = displayed ? other.sequence - sequence : sequence - other.sequence;
+			return order < 0 ? -1 : (order == 0 ? 0 : 1);
+		}
+
+		@Override
+		public void run() {
+			try {
+				resource.checkThumbnail();
+			} catch (RuntimeException e) {
+				logger.debug("Error while generating the thumbnail of " + resource.getResourceId() + ": " + e.getMessage());
+			} finally {
+				finished(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,441 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded folder keeping the thumbnails of the media, so that the heap
+ * only has to hold their keys instead of their bytes.
+ * <p>
+ * Thumbnails are stored under the SHA-1 checksum of their content, so the
+ * same image is stored once however many files use it. Next to the original
+ * image, scaled down JPEG variants for the sizes in {@link #VARIANT_SIZES}
+ * are created the first time a renderer asks for them. When the store grows
+ * beyond its size, the least recently used files are deleted; the media
+ * cache still holds the original images and puts them back when the media
+ * are read again.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class ThumbnailStore {
+	private static final Logger logger = LoggerFactory.getLogger(ThumbnailStore.class);
+
+	private static final String ORIGINAL_EXTENSION = ".img";
+	private static final String VARIANT_EXTENSION = ".jpg";
+	private static final String PART_EXTENSION = ".part";
+
+	/**
+	 * Sizes in pixels of the longest side of the scaled variants, smallest
+	 * first.
+	 */
+	public static final int[] VARIANT_SIZES = { 160, 320, 640 };
+
+	private static ThumbnailStore instance;
+
+	private final DecimalFormat formatter = new DecimalFormat("#,###");
+	private final File folder;
+	private final long maxSize;
+
+	/**
+	 * Lengths of the stored files by file name, least recently used first.
+	 * Guarded by this.
+	 */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/**
+	 * Total length of the stored files. Guarded by this.
+	 */
+	private long size;
+
+	/**
+	 * Returns the store, located and sized according to
+	 * {@link PmsConfiguration#getThumbnailStoreFolder()} and
+	 * {@link PmsConfiguration#getThumbnailStoreSize()}.
+	 *
+	 * @return The store.
+	 */
+	public static synchronized ThumbnailStore getInstance() {
+		if (instance == null) {
+			final PmsConfiguration configuration = PMS.getConfiguration();
+
+			if (configuration == null || configuration.getThumbnailStoreSize() <= 0) {
+				instance = new ThumbnailStore(null, 0);
+			} else {
+				instance = new ThumbnailStore(new File(configuration.getThumbnailStoreFolder()), configuration.getThumbnailStoreSize() * 1048576L);
+			}
+		}
+
+		return instance;
+	}
+
+	ThumbnailStore(File folder, long maxSize) {
+		if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+			logger.warn("Cannot create thumbnail store folder \"" + folder.getAbsolutePath() + "\", thumbnail store disabled");
+			folder = null;
+		}
+
+		this.folder = folder;
+		this.maxSize = folder != null ? maxSize : 0;
+
+		if (isEnabled()) {
+			load();
+		}
+	}
+
+	/**
+	 * @return True if thumbnails are kept on disk.
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Stores a thumbnail.
+	 *
+	 * @param image The bytes of the image.
+	 * @return The key of the thumbnail, or <code>null</code> if the store is
+	 *         disabled or the image could not be stored.
+	 */
+	public String put(byte[] image) {
+		if (!isEnabled() || image == null || image.length == 0) {
+			return null;
+		}
+
+		String key = DigestUtils.sha1Hex(image);
+		String name = key + ORIGINAL_EXTENSION;
+
+		synchronized (this) {
+			if (entries.get(name) != null) {
+				return key;
+			}
+		}
+
+		return write(name, image) ? key : null;
+	}
+
+	/**
+	 * @param key The key returned by {@link #put(byte[])}.
+	 * @return True if the thumbnail is stored.
+	 */
+	public synchronized boolean contains(String key) {
+		return isEnabled() && key != null && entries.get(key + ORIGINAL_EXTENSION) != null;
+	}
+
+	/**
+	 * Returns the key identifying the content of a file returned by
+	 * {@link #getFile(String, int)}, which changes whenever the content does.
+	 *
+	 * @param file The file.
+	 * @return The key, or <code>null</code> if the file is not part of the
+	 *         store.
+	 */
+	public String getContentKey(File file) {
+		if (!isEnabled() || file == null || !folder.equals(file.getParentFile())) {
+			return null;
+		}
+
+		String name = file.getName();
+
+		synchronized (this) {
+			if (entries.get(name) == null) {
+				return null;
+			}
+		}
+
+		return name.substring(0, name.lastIndexOf('.'));
+	}
+
+	/**
+	 * Returns the bytes of a stored thumbnail.
+	 *
+	 * @param key The key returned by {@link #put(byte[])}.
+	 * @return The bytes of the original image, or <code>null</code> if the
+	 *         thumbnail is not stored (anymore).
+	 */
+	public byte[] get(String key) {
+		File file = getFile(key, 0);
+
+		if (file == null) {
+			return null;
+		}
+
+		try {
+			return FileUtils.readFileToByteArray(file);
+		} catch (IOException e) {
+			logger.debug("Cannot read thumbnail \"" + file.getAbsolutePath() + "\": " + e.getMessage());
+			remove(file.getName());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the file holding a stored thumbnail in the given size, creating
+	 * the variant if needed. The smallest variant at least as large as the
+	 * requested size is returned; the original image is returned when it is
+	 * not larger than that variant, when the requested size is larger than
+	 * all variants, or when the variant cannot be created.
+	 *
+	 * @param key The key returned by {@link #put(byte[])}.
+	 * @param size The size in pixels of the longest side wanted by the
+	 *            renderer, or 0 for the original image.
+	 * @return The file, or <code>null</code> if the thumbnail is not stored
+	 *         (anymore).
+	 */
+	public File getFile(String key, int size) {
+		if (!isEnabled() || key == null) {
+			return null;
+		}
+
+		String name = key + ORIGINAL_EXTENSION;
+
+		synchronized (this) {
+			if (entries.get(name) == null) {
+				return null;
+			}
+		}
+
+		File original = new File(folder, name);
+		int variantSize = getVariantSize(size);
+
+		if (variantSize == 0) {
+			return original;
+		}
+
+		String variantName = key + "-" + variantSize + VARIANT_EXTENSION;
+
+		synchronized (this) {
+			if (entries.get(variantName) != null) {
+				return new File(folder, variantName);
+			}
+		}
+
+		byte[] variant = scale(original, variantSize);
+
+		if (variant == null || !write(variantName, variant)) {
+			return original;
+		}
+
+		return new File(folder, variantName);
+	}
+
+	/**
+	 * @param size The size in pixels wanted by a renderer, or 0 for the
+	 *            original image.
+	 * @return The size of the variant to serve, or 0 for the original image.
+	 */
+	static int getVariantSize(int size) {
+		if (size > 0) {
+			for (int variantSize : VARIANT_SIZES) {
+				if (variantSize >= size) {
+					return variantSize;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return The total length of the stored files.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Scales an image down to a JPEG whose longest side is the given size.
+	 *
+	 * @return The bytes of the JPEG, or <code>null</code> if the image
+	 *         cannot be read or is not larger than the size.
+	 */
+	private byte[] scale(File original, int variantSize) {
+		try {
+			BufferedImage image = ImageIO.read(original);
+
+			if (image == null || (image.getWidth() <= variantSize && image.getHeight() <= variantSize)) {
+				return null;
+			}
+
+			double ratio = (double) variantSize / Math.max(image.getWidth(), image.getHeight());
+			int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+			int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+			BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = scaled.createGraphics();
+
+			try {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.drawImage(image, 0, 0, width, height, null);
+			} finally {
+				g.dispose();
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			if (!ImageIO.write(scaled, "jpeg", out)) {
+				return null;
+			}
+
+			return out.toByteArray();
+		} catch (IOException e) {
+			logger.debug("Cannot scale thumbnail \"" + original.getAbsolutePath() + "\": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a file to a temporary file first, so that readers never see
+	 * partial content, and evicts older files to make room for it.
+	 */
+	private boolean write(String name, byte[] data) {
+		if (data.length > maxSize) {
+			return false;
+		}
+
+		File part = new File(folder, name + PART_EXTENSION);
+
+		try {
+			FileUtils.writeByteArrayToFile(part, data);
+		} catch (IOException e) {
+			logger.debug("Cannot store thumbnail \"" + part.getAbsolutePath() + "\": " + e.getMessage());
+			part.delete();
+			return false;
+		}
+
+		File file = new File(folder, name);
+
+		synchronized (this) {
+			Long previous = entries.remove(name);
+
+			if (previous != null) {
+				size -= previous;
+			}
+
+			evict(data.length);
+
+			if (file.exists() && !file.delete()) {
+				logger.debug("Cannot replace thumbnail \"" + file.getAbsolutePath() + "\"");
+			}
+
+			if (!part.renameTo(file)) {
+				logger.debug("Cannot store thumbnail \"" + file.getAbsolutePath() + "\"");
+				part.delete();
+				return false;
+			}
+
+			entries.put(name, Long.valueOf(data.length));
+			size += data.length;
+		}
+
+		return true;
+	}
+
+	private synchronized void remove(String name) {
+		Long length = entries.remove(name);
+
+		if (length != null) {
+			size -= length;
+			new File(folder, name).delete();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the given number of bytes
+	 * fits in the store.
+	 *
+	 * @param needed The number of bytes to make room for.
+	 */
+	private synchronized void evict(long needed) {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+
+		while (size + needed > maxSize && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			File file = new File(folder, entry.getKey());
+
+			if (file.delete() || !file.exists()) {
+				size -= entry.getValue();
+				iterator.remove();
+				logger.trace("Evicted thumbnail \"" + entry.getKey() + "\" (" + formatter.format(entry.getValue()) + " bytes)");
+			}
+		}
+	}
+
+	/**
+	 * Reads the files stored before PMS was started, oldest first, and
+	 * deletes the ones that were not completely written.
+	 */
+	private synchronized void load() {
+		File[] files = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile();
+			}
+		});
+
+		if (files == null) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+
+		for (File file : files) {
+			String name = file.getName();
+
+			if (name.endsWith(ORIGINAL_EXTENSION) || name.endsWith(VARIANT_EXTENSION)) {
+				entries.put(name, Long.valueOf(file.length()));
+				size += file.length();
+			} else if (name.endsWith(PART_EXTENSION) && !file.delete()) {
+				logger.debug("Cannot delete incomplete thumbnail \"" + file.getAbsolutePath() + "\"");
+			}
+		}
+
+		evict(0);
+		logger.debug("Thumbnail store holds " + entries.size() + " files (" + formatter.format(size) + " bytes)");
+	}
+}
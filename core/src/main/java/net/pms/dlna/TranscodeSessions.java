@@ -0,0 +1,218 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.io.ProcessWrapper;
+import net.pms.io.ProcessWrapperImpl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the running transcodes, so that a renderer requesting the same
+ * transcode as another renderer is sent the output of the running process
+ * instead of starting a second one.
+ * <p>
+ * Transcodes are identified by a key built from
+ * {@link DLNAResource#getTranscodeDescription(RendererConfiguration)} and the
+ * requested time range. Each session keeps track of the resources using it,
+ * so that a resource seeking elsewhere only stops the process when no other
+ * resource uses it. A resource uses one session at a time. The process itself
+ * is stopped once the last reader of its buffer has been closed.
+ * <p>
+ * A resource that joined a session does not own its process. Every request
+ * it makes for the same transcode, like the second connection of a PS3,
+ * has to join the session again to get its own shared reader.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class TranscodeSessions {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodeSessions.class);
+
+	private static TranscodeSessions instance;
+
+	/**
+	 * Running sessions by key. Guarded by this.
+	 */
+	private final Map<String, Session> sessions = new HashMap<String, Session>();
+
+	private final AtomicLong launchedCount = new AtomicLong();
+	private final AtomicLong sharedCount = new AtomicLong();
+
+	TranscodeSessions() {
+	}
+
+	public static synchronized TranscodeSessions getInstance() {
+		if (instance == null) {
+			instance = new TranscodeSessions();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Builds the key of the transcode of a resource for a renderer.
+	 *
+	 * @param description The description of the transcode, see
+	 *            {@link DLNAResource#getTranscodeDescription(RendererConfiguration)}.
+	 * @param timeseek The start of the transcode in seconds.
+	 * @param timeend The end of the transcode in seconds, 0 for the end of the file.
+	 * @return The key, or <code>null</code> if the description is <code>null</code>.
+	 */
+	public static String getKey(String description, double timeseek, double timeend) {
+		if (description == null) {
+			return null;
+		}
+
+		return description + "\n" + timeseek + "-" + timeend;
+	}
+
+	/**
+	 * Attaches a resource to the running transcode with the given key, if
+	 * there is one and its output at the given position is still buffered.
+	 *
+	 * @param key The key of the transcode.
+	 * @param resource The resource requesting the transcode.
+	 * @param position The position in the output to start reading at.
+	 * @return The stream to read the output from, or <code>null</code> if
+	 *         the transcode has to be started.
+	 */
+	public synchronized InputStream join(String key, DLNAResource resource, long position) {
+		if (key == null) {
+			return null;
+		}
+
+		Session session = sessions.get(key);
+
+		if (session == null) {
+			return null;
+		}
+
+		if (session.process.isFinished()) {
+			sessions.remove(key);
+			return null;
+		}
+
+		InputStream inputStream = session.process.getSharedInputStream(position);
+
+		if (inputStream != null && session.resources.add(resource)) {
+			detach(resource, session);
+			sharedCount.incrementAndGet();
+			logger.debug("Sharing transcode of {} with {} other resources", resource.getName(), session.resources.size() - 1);
+		}
+
+		return inputStream;
+	}
+
+	/**
+	 * Registers a transcode that was just started, so other resources can
+	 * join it.
+	 *
+	 * @param key The key of the transcode.
+	 * @param resource The resource that started the transcode.
+	 * @param process The transcoding process.
+	 */
+	public synchronized void register(String key, DLNAResource resource, ProcessWrapper process) {
+		launchedCount.incrementAndGet();
+		detach(resource, null);
+
+		if (key == null || !(process instanceof ProcessWrapperImpl)) {
+			return;
+		}
+
+		// Forget sessions that ended in the meantime
+		for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+			if (it.next().process.isFinished()) {
+				it.remove();
+			}
+		}
+
+		Session session = new Session((ProcessWrapperImpl) process);
+		session.resources.add(resource);
+		sessions.put(key, session);
+	}
+
+	/**
+	 * Detaches a resource from every session except the one it now uses.
+	 * Guarded by this.
+	 *
+	 * @param resource The resource.
+	 * @param current The session the resource now uses, or <code>null</code>.
+	 */
+	private void detach(DLNAResource resource, Session current) {
+		for (Session session : sessions.values()) {
+			if (session != current) {
+				session.resources.remove(resource);
+			}
+		}
+	}
+
+	/**
+	 * Detaches a resource from the transcode it uses, because it is about to
+	 * start another one.
+	 *
+	 * @param resource The resource.
+	 * @param process The process of the transcode the resource used.
+	 * @return True if other resources still use the process, in which case
+	 *         it must not be stopped.
+	 */
+	public synchronized boolean release(DLNAResource resource, ProcessWrapper process) {
+		for (Session session : sessions.values()) {
+			if (session.process == process) {
+				session.resources.remove(resource);
+				return !session.resources.isEmpty();
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return The number of transcoding processes started.
+	 */
+	public long getLaunchedCount() {
+		return launchedCount.get();
+	}
+
+	/**
+	 * @return The number of times a running transcode was shared instead of
+	 *         starting a new process.
+	 */
+	public long getSharedCount() {
+		return sharedCount.get();
+	}
+
+	private static class Session {
+		private final ProcessWrapperImpl process;
+		private final Set<DLNAResource> resources = Collections.newSetFromMap(new IdentityHashMap<DLNAResource, Boolean>());
+
+		Session(ProcessWrapperImpl process) {
+			this.process = process;
+		}
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed UPnP ContentDirectory search criteria, as defined in section 2.5.5
+ * of the ContentDirectory:1 service template. Supports the relational
+ * operators <code>= != &lt; &lt;= &gt; &gt;=</code>, the string operators
+ * <code>contains</code>, <code>doesNotContain</code> and
+ * <code>derivedfrom</code>, <code>exists</code>, the logical operators
+ * <code>and</code> and <code>or</code>, parentheses and the wildcard
+ * <code>*</code>. All comparisons are case insensitive.
+ */
+public abstract class SearchCriteria {
+	/**
+	 * Criteria matching every entry, used for the <code>*</code> wildcard.
+	 */
+	public static final SearchCriteria ALL = new SearchCriteria() {
+		@Override
+		public boolean matches(SearchEntry entry) {
+			return true;
+		}
+
+		@Override
+		List<SearchEntry> getCandidates(SearchIndex.Snapshot index) {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "*";
+		}
+	};
+
+	/**
+	 * @param entry The entry to test.
+	 * @return True if the entry satisfies these criteria.
+	 */
+	public abstract boolean matches(SearchEntry entry);
+
+	/**
+	 * Uses the index to narrow down the entries that can possibly match.
+	 *
+	 * @param index The index to look up.
+	 * @return The candidate entries in index order, or <code>null</code> if
+	 * 			all entries have to be tested.
+	 */
+	abstract List<SearchEntry> getCandidates(SearchIndex.Snapshot index);
+
+	/**
+	 * Parses UPnP search criteria.
+	 *
+	 * @param criteria The criteria, with XML entities already decoded.
+	 * @return The parsed criteria.
+	 * @throws IllegalArgumentException If the criteria are not valid.
+	 */
+	public static SearchCriteria parse(String criteria) {
+		if (criteria == null || criteria.trim().length() == 0 || criteria.trim().equals("*")) {
+			return ALL;
+		}
+
+		Parser parser = new Parser(tokenize(criteria));
+		SearchCriteria result = parser.parseOr();
+
+		if (parser.hasMore()) {
+			throw new IllegalArgumentException("Unexpected \"" + parser.peek().text + "\" in search criteria: " + criteria);
+		}
+
+		return result;
+	}
+
+	private static List<Token> tokenize(String criteria) {
+		List<Token> tokens = new ArrayList<Token>();
+		int i = 0;
+		int length = criteria.length();
+
+		while (i < length) {
+			char c = criteria.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(' || c == ')') {
+				tokens.add(new Token(String.valueOf(c), false));
+				i++;
+			} else if (c == '"') {
+				StringBuilder value = new StringBuilder();
+				i++;
+
+				while (i < length && criteria.charAt(i) != '"') {
+					if (criteria.charAt(i) == '\\' && i + 1 < length) {
+						i++;
+					}
+
+					value.append(criteria.charAt(i));
+					i++;
+				}
+
+				if (i >= length) {
+					throw new IllegalArgumentException("Unterminated string in search criteria: " + criteria);
+				}
+
+				tokens.add(new Token(value.toString(), true));
+				i++;
+			} else if (c == '=' || c == '!' || c == '<' || c == '>') {
+				if (i + 1 < length && criteria.charAt(i + 1) == '=') {
+					tokens.add(new Token(criteria.substring(i, i + 2), false));
+					i += 2;
+				} else if (c == '!') {
+					throw new IllegalArgumentException("Invalid operator in search criteria: " + criteria);
+				} else {
+					tokens.add(new Token(String.valueOf(c), false));
+					i++;
+				}
+			} else {
+				int start = i;
+
+				while (i < length && !isDelimiter(criteria.charAt(i))) {
+					i++;
+				}
+
+				tokens.add(new Token(criteria.substring(start, i), false));
+			}
+		}
+
+		return tokens;
+	}
+
+	private static boolean isDelimiter(char c) {
+		return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"' || c == '=' || c == '!' || c == '<' || c == '>';
+	}
+
+	private static class Token {
+		private final String text;
+		private final boolean quoted;
+
+		Token(String text, boolean quoted) {
+			this.text = text;
+			this.quoted = quoted;
+		}
+
+		boolean is(String keyword) {
+			return !quoted && text.equalsIgnoreCase(keyword);
+		}
+	}
+
+	private static class Parser {
+		private final List<Token> tokens;
+		private int position;
+
+		Parser(List<Token> tokens) {
+			this.tokens = tokens;
+		}
+
+		boolean hasMore() {
+			return position < tokens.size();
+		}
+
+		Token peek() {
+			return tokens.get(position);
+		}
+
+		Token next() {
+			if (!hasMore()) {
+				throw new IllegalArgumentException("Unexpected end of search criteria");
+			}
+
+			return tokens.get(position++);
+		}
+
+		SearchCriteria parseOr() {
+			SearchCriteria left = parseAnd();
+
+			while (hasMore() && peek().is("or")) {
+				position++;
+				left = new Or(left, parseAnd());
+			}
+
+			return left;
+		}
+
+		SearchCriteria parseAnd() {
+			SearchCriteria left = parsePrimary();
+
+			while (hasMore() && peek().is("and")) {
+				position++;
+				left = new And(left, parsePrimary());
+			}
+
+			return left;
+		}
+
+		SearchCriteria parsePrimary() {
+			Token token = next();
+
+			if (token.is("(")) {
+				SearchCriteria inner = parseOr();
+
+				if (!next().is(")")) {
+					throw new IllegalArgumentException("Missing closing parenthesis in search criteria");
+				}
+
+				return inner;
+			}
+
+			if (token.quoted) {
+				throw new IllegalArgumentException("Expected a property name instead of \"" + token.text + "\"");
+			}
+
+			String property = token.text;
+			Operator operator = Operator.get(next());
+			Token operand = next();
+
+			if (operator == Operator.EXISTS) {
+				if (operand.is("true")) {
+					return new Relation(property, operator, "true");
+				} else if (operand.is("false")) {
+					return new Relation(property, operator, "false");
+				}
+
+				throw new IllegalArgumentException("Expected true or false after exists instead of \"" + operand.text + "\"");
+			}
+
+			if (!operand.quoted) {
+				throw new IllegalArgumentException("Expected a quoted value after " + property + " instead of \"" + operand.text + "\"");
+			}
+
+			return new Relation(property, operator, operand.text.toLowerCase());
+		}
+	}
+
+	private enum Operator {
+		EQUALS("="),
+		NOT_EQUALS("!="),
+		LESS("<"),
+		LESS_OR_EQUALS("<="),
+		GREATER(">"),
+		GREATER_OR_EQUALS(">="),
+		CONTAINS("contains"),
+		DOES_NOT_CONTAIN("doesNotContain"),
+		DERIVED_FROM("derivedfrom"),
+		EXISTS("exists");
+
+		private final String text;
+
+		Operator(String text) {
+			this.text = text;
+		}
+
+		static Operator get(Token token) {
+			for (Operator operator : values()) {
+				if (token.is(operator.text)) {
+					return operator;
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown search operator \"" + token.text + "\"");
+		}
+	}
+
+	private static class Relation extends SearchCriteria {
+		private final String property;
+		private final Operator operator;
+		private final String operand;
+
+		Relation(String property, Operator operator, String operand) {
+			this.property = property;
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		public boolean matches(SearchEntry entry) {
+			String value = entry.getProperty(property);
+
+			if (operator == Operator.EXISTS) {
+				return (value != null) == "true".equals(operand);
+			}
+
+			if (value == null) {
+				return false;
+			}
+
+			switch (operator) {
+				case EQUALS:
+					return value.equals(operand);
+				case NOT_EQUALS:
+					return !value.equals(operand);
+				case LESS:
+					return value.compareTo(operand) < 0;
+				case LESS_OR_EQUALS:
+					return value.compareTo(operand) <= 0;
+				case GREATER:
+					return value.compareTo(operand) > 0;
+				case GREATER_OR_EQUALS:
+					return value.compareTo(operand) >= 0;
+				case CONTAINS:
+					return value.contains(operand);
+				case DOES_NOT_CONTAIN:
+					return !value.contains(operand);
+				case DERIVED_FROM:
+					return value.startsWith(operand);
+				default:
+					return false;
+			}
+		}
+
+		@Override
+		List<SearchEntry> getCandidates(SearchIndex.Snapshot index) {
+			if (operator == Operator.EQUALS) {
+				return index.lookup(property, operand);
+			} else if (operator == Operator.DERIVED_FROM && "upnp:class".equals(property)) {
+				return index.lookupDerived(operand);
+			}
+
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return property + " " + operator.text + " \"" + operand + "\"";
+		}
+	}
+
+	private static class And extends SearchCriteria {
+		private final SearchCriteria left;
+		private final SearchCriteria right;
+
+		And(SearchCriteria left, SearchCriteria right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public boolean matches(SearchEntry entry) {
+			return left.matches(entry) && right.matches(entry);
+		}
+
+		@Override
+		List<SearchEntry> getCandidates(SearchIndex.Snapshot index) {
+			// Both sides have to match, the smaller candidate list suffices
+			List<SearchEntry> leftCandidates = left.getCandidates(index);
+			List<SearchEntry> rightCandidates = right.getCandidates(index);
+
+			if (leftCandidates == null) {
+				return rightCandidates;
+			} else if (rightCandidates == null) {
+				return leftCandidates;
+			}
+
+			return leftCandidates.size() <= rightCandidates.size() ? leftCandidates : rightCandidates;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " and " + right + ")";
+		}
+	}
+
+	private static class Or extends SearchCriteria {
+		private final SearchCriteria left;
+		private final SearchCriteria right;
+
+		Or(SearchCriteria left, SearchCriteria right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public boolean matches(SearchEntry entry) {
+			return left.matches(entry) || right.matches(entry);
+		}
+
+		@Override
+		List<SearchEntry> getCandidates(SearchIndex.Snapshot index) {
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " or " + right + ")";
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import net.pms.formats.Format;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A file known to one of the media databases, with the properties that can
+ * be used in UPnP search criteria. All string properties are kept in lower
+ * case, as UPnP string comparisons are case insensitive.
+ */
+public class SearchEntry {
+	static final String CLASS_ITEM = "object.item";
+	static final String CLASS_AUDIO = "object.item.audioitem.musictrack";
+	static final String CLASS_IMAGE = "object.item.imageitem.photo";
+	static final String CLASS_VIDEO = "object.item.videoitem";
+
+	private final String path;
+	private final int type;
+	private final String title;
+	private final String upnpClass;
+	private final String artist;
+	private final String album;
+	private final String genre;
+	private final String date;
+
+	/**
+	 * @param path The absolute path of the file.
+	 * @param type The {@link Format} type of the file.
+	 * @param title The title, or <code>null</code> to use the file name.
+	 * @param artist The artist, director or author, may be <code>null</code>.
+	 * @param album The album, may be <code>null</code>.
+	 * @param genre The genre, may be <code>null</code>.
+	 * @param year The year, or a value lower than 1 if unknown.
+	 */
+	public SearchEntry(String path, int type, String title, String artist, String album, String genre, int year) {
+		this.path = path;
+		this.type = type;
+		this.title = StringUtils.isBlank(title) ? lowerCase(FilenameUtils.getBaseName(path)) : lowerCase(title);
+		this.artist = lowerCase(artist);
+		this.album = lowerCase(album);
+		this.genre = lowerCase(genre);
+		this.date = year > 0 ? Integer.toString(year) : null;
+
+		switch (type) {
+			case Format.AUDIO:
+				upnpClass = CLASS_AUDIO;
+				break;
+			case Format.IMAGE:
+				upnpClass = CLASS_IMAGE;
+				break;
+			case Format.VIDEO:
+				upnpClass = CLASS_VIDEO;
+				break;
+			default:
+				upnpClass = CLASS_ITEM;
+				break;
+		}
+	}
+
+	private static String lowerCase(String value) {
+		return StringUtils.isBlank(value) ? null : value.trim().toLowerCase();
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getUpnpClass() {
+		return upnpClass;
+	}
+
+	public String getArtist() {
+		return artist;
+	}
+
+	public String getAlbum() {
+		return album;
+	}
+
+	public String getGenre() {
+		return genre;
+	}
+
+	public String getDate() {
+		return date;
+	}
+
+	/**
+	 * Returns the value of a UPnP property of this entry.
+	 *
+	 * @param property The property name, e.g. <code>dc:title</code>.
+	 * @return The lower case value, or <code>null</code> if this entry has
+	 * 			no value for the property.
+	 */
+	public String getProperty(String property) {
+		if ("dc:title".equals(property)) {
+			return title;
+		} else if ("upnp:class".equals(property)) {
+			return upnpClass;
+		} else if ("upnp:artist".equals(property) || "dc:creator".equals(property)) {
+			return artist;
+		} else if ("upnp:album".equals(property)) {
+			return album;
+		} else if ("upnp:genre".equals(property)) {
+			return genre;
+		} else if ("dc:date".equals(property)) {
+			return date;
+		}
+
+		return null;
+	}
+}
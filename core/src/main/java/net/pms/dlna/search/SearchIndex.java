@@ -0,0 +1,286 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.pms.PMS;
+import net.pms.dlna.DLNAMediaDatabase;
+import net.pms.medialibrary.storage.MediaLibraryStorage;
+import net.pms.notifications.NotificationCenter;
+import net.pms.notifications.NotificationSubscriber;
+import net.pms.notifications.types.DBEvent;
+import net.pms.util.TaskRunner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory index over the files of the media cache and the media library,
+ * used to answer UPnP ContentDirectory Search requests.
+ * <p>
+ * The index is built on the first search. It is rebuilt in the background when
+ * the media library posts a {@link DBEvent} or when it is older than
+ * {@link #MAX_AGE}; searches keep using the previous index in the meantime.
+ */
+public class SearchIndex {
+	private static final Logger logger = LoggerFactory.getLogger(SearchIndex.class);
+
+	/**
+	 * Maximum age of the index in milliseconds before it is rebuilt, to pick up
+	 * files added to the media cache.
+	 */
+	private static final long MAX_AGE = 10 * 60 * 1000;
+
+	private static SearchIndex instance;
+
+	private final Object buildLock = new Object();
+	private volatile Snapshot snapshot;
+	private volatile boolean stale;
+
+	public static synchronized SearchIndex getInstance() {
+		if (instance == null) {
+			instance = new SearchIndex();
+		}
+
+		return instance;
+	}
+
+	private SearchIndex() {
+		NotificationCenter.getInstance(DBEvent.class).subscribe(new NotificationSubscriber<DBEvent>() {
+			@Override
+			public void onMessage(DBEvent obj) {
+				invalidate();
+			}
+		});
+	}
+
+	/**
+	 * Marks the index as outdated, it will be rebuilt on the next search.
+	 */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/**
+	 * Searches the index.
+	 *
+	 * @param criteria The criteria the entries have to match.
+	 * @param start The index of the first match to return.
+	 * @param count The maximum number of matches to return, 0 for all.
+	 * @return The requested page of matches, sorted by title.
+	 */
+	public SearchResult search(SearchCriteria criteria, int start, int count) {
+		long startTime = System.currentTimeMillis();
+		Snapshot index = getSnapshot();
+		SearchResult result = index.search(criteria, start, count);
+
+		logger.debug("Search for {} matched {} of {} entries in {} ms", new Object[] {
+			criteria,
+			result.getTotalMatches(),
+			index.entries.size(),
+			System.currentTimeMillis() - startTime
+		});
+
+		return result;
+	}
+
+	private Snapshot getSnapshot() {
+		Snapshot current = snapshot;
+
+		if (current == null) {
+			synchronized (buildLock) {
+				if (snapshot == null) {
+					stale = false;
+					snapshot = build();
+				}
+
+				return snapshot;
+			}
+		}
+
+		if (stale || System.currentTimeMillis() - current.created > MAX_AGE) {
+			TaskRunner.getInstance().submitNamed("search-index", true, new Runnable() {
+				@Override
+				public void run() {
+					stale = false;
+					Snapshot rebuilt = build();
+
+					synchronized (buildLock) {
+						snapshot = rebuilt;
+					}
+				}
+			});
+		}
+
+		return current;
+	}
+
+	private Snapshot build() {
+		long startTime = System.currentTimeMillis();
+
+		// Media library entries replace cache entries of the same file,
+		// they have better titles
+		Map<String, SearchEntry> entries = new LinkedHashMap<String, SearchEntry>();
+
+		DLNAMediaDatabase database = PMS.get().getDatabase();
+		if (database != null) {
+			List<SearchEntry> cacheEntries = database.getSearchEntries();
+
+			if (cacheEntries != null) {
+				for (SearchEntry entry : cacheEntries) {
+					entries.put(entry.getPath(), entry);
+				}
+			}
+		}
+
+		MediaLibraryStorage storage = MediaLibraryStorage.getInstance();
+		if (storage != null && storage.isFunctional()) {
+			List<SearchEntry> libraryEntries = storage.getSearchEntries();
+
+			if (libraryEntries != null) {
+				for (SearchEntry entry : libraryEntries) {
+					entries.put(entry.getPath(), entry);
+				}
+			}
+		}
+
+		Snapshot result = new Snapshot(new ArrayList<SearchEntry>(entries.values()));
+		logger.debug("Built search index of {} entries in {} ms", result.entries.size(), System.currentTimeMillis() - startTime);
+
+		return result;
+	}
+
+	/**
+	 * Immutable state of the index: all entries sorted by title, and per
+	 * property a map from value to the entries having that value.
+	 */
+	static class Snapshot {
+		private static final String[] INDEXED_PROPERTIES = {
+			"upnp:class",
+			"upnp:artist",
+			"dc:creator",
+			"upnp:album",
+			"upnp:genre",
+			"dc:date"
+		};
+
+		private final List<SearchEntry> entries;
+		private final Map<String, Map<String, List<SearchEntry>>> index = new HashMap<String, Map<String, List<SearchEntry>>>();
+		private final long created = System.currentTimeMillis();
+
+		Snapshot(List<SearchEntry> entries) {
+			Collections.sort(entries, new Comparator<SearchEntry>() {
+				@Override
+				public int compare(SearchEntry o1, SearchEntry o2) {
+					int result = o1.getTitle().compareTo(o2.getTitle());
+					return result != 0 ? result : o1.getPath().compareTo(o2.getPath());
+				}
+			});
+			this.entries = entries;
+
+			for (String property : INDEXED_PROPERTIES) {
+				Map<String, List<SearchEntry>> values = new HashMap<String, List<SearchEntry>>();
+
+				for (SearchEntry entry : entries) {
+					String value = entry.getProperty(property);
+
+					if (value != null) {
+						List<SearchEntry> list = values.get(value);
+
+						if (list == null) {
+							list = new ArrayList<SearchEntry>();
+							values.put(value, list);
+						}
+
+						list.add(entry);
+					}
+				}
+
+				index.put(property, values);
+			}
+		}
+
+		SearchResult search(SearchCriteria criteria, int start, int count) {
+			List<SearchEntry> candidates = criteria.getCandidates(this);
+
+			if (candidates == null) {
+				candidates = entries;
+			}
+
+			List<SearchEntry> page = new ArrayList<SearchEntry>();
+			int matches = 0;
+
+			for (SearchEntry entry : candidates) {
+				if (criteria.matches(entry)) {
+					if (matches >= start && (count <= 0 || page.size() < count)) {
+						page.add(entry);
+					}
+
+					matches++;
+				}
+			}
+
+			return new SearchResult(page, matches);
+		}
+
+		/**
+		 * @return The entries with the given value, or <code>null</code> if
+		 * 			the property is not indexed.
+		 */
+		List<SearchEntry> lookup(String property, String value) {
+			Map<String, List<SearchEntry>> values = index.get(property);
+
+			if (values == null) {
+				return null;
+			}
+
+			List<SearchEntry> result = values.get(value);
+			return result != null ? result : Collections.<SearchEntry>emptyList();
+		}
+
+		/**
+		 * @return The entries whose class is derived from the given class,
+		 * 			or <code>null</code> if they have to be looked up in all
+		 * 			entries.
+		 */
+		List<SearchEntry> lookupDerived(String upnpClass) {
+			List<SearchEntry> result = Collections.emptyList();
+
+			for (Map.Entry<String, List<SearchEntry>> entry : index.get("upnp:class").entrySet()) {
+				if (entry.getKey().startsWith(upnpClass)) {
+					if (!result.isEmpty()) {
+						// Merging would not keep the title order
+						return null;
+					}
+
+					result = entry.getValue();
+				}
+			}
+
+			return result;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the entries matching a search, and the total number of
+ * matching entries.
+ */
+public class SearchResult {
+	private final List<SearchEntry> entries;
+	private final int totalMatches;
+
+	public SearchResult(List<SearchEntry> entries, int totalMatches) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.totalMatches = totalMatches;
+	}
+
+	/**
+	 * @return The entries of the requested page.
+	 */
+	public List<SearchEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return The number of entries matching the search criteria.
+	 */
+	public int getTotalMatches() {
+		return totalMatches;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.pms.PMS;
+import net.pms.dlna.DLNAResource;
+import net.pms.dlna.RealFile;
+import net.pms.dlna.virtual.VirtualFolder;
+
+/**
+ * Hidden container holding the items returned by searches. It is not listed
+ * among the children of the root folder, but its items can be browsed and
+ * streamed by their resource IDs like any other item.
+ * <p>
+ * Items are only created for the returned page of a search, and the folder
+ * keeps the most recently returned {@link #MAX_ITEMS} items.
+ */
+public class SearchResultsFolder extends VirtualFolder {
+	/**
+	 * Resource ID of this folder relative to the root folder.
+	 */
+	public static final String ID = "search";
+
+	private static final int MAX_ITEMS = 1000;
+
+	/**
+	 * Items by file path, in access order.
+	 */
+	private final Map<String, DLNAResource> items = new LinkedHashMap<String, DLNAResource>(16, 0.75f, true);
+
+	public SearchResultsFolder(DLNAResource parent) {
+		super("Search results", null);
+		setId(ID);
+		setParent(parent);
+	}
+
+	@Override
+	public boolean isTranscodeFolderAvailable() {
+		return false;
+	}
+
+	/**
+	 * Returns the resources for a page of search results, creating and
+	 * resolving the ones that have not been returned recently.
+	 *
+	 * @param result The search result.
+	 * @return The resources of the entries that are still valid files.
+	 */
+	public List<DLNAResource> getResources(SearchResult result) {
+		List<DLNAResource> resources = new ArrayList<DLNAResource>();
+		List<DLNAResource> added = new ArrayList<DLNAResource>();
+
+		lockChildren();
+		try {
+			for (SearchEntry entry : result.getEntries()) {
+				DLNAResource resource = items.get(entry.getPath());
+
+				if (resource == null) {
+					File file = new File(entry.getPath());
+
+					if (!file.isFile()) {
+						continue;
+					}
+
+					resource = new RealFile(file);
+					addChild(resource);
+
+					// Files of unknown formats are not added
+					if (resource.getInternalId() == null) {
+						continue;
+					}
+
+					items.put(entry.getPath(), resource);
+					added.add(resource);
+				}
+
+				resources.add(resource);
+			}
+
+			Iterator<DLNAResource> iterator = items.values().iterator();
+			while (items.size() > MAX_ITEMS && iterator.hasNext()) {
+				getChildren().remove(iterator.next());
+				iterator.remove();
+			}
+		} finally {
+			unlockChildren();
+		}
+
+		if (!added.isEmpty()) {
+			resolveChildren(added, PMS.getConfiguration().getResolveDeviceThreads());
+		}
+
+		return resources;
+	}
+}
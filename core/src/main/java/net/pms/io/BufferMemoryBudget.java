@@ -0,0 +1,191 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.pms.PMS;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server-wide budget for the memory used by transcoding buffers that are not
+ * allocated on the Java heap. Every active transcoding session registers
+ * itself and reserves memory chunk by chunk while its buffer grows.
+ * <p>
+ * A reservation is granted as long as the total budget is not exceeded and
+ * the session stays within its fair share, which is the budget divided by
+ * the number of active sessions at the time of the reservation. Every
+ * session is guaranteed {@link #MINIMUM_SHARE} bytes regardless, so a new
+ * session can always start.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class BufferMemoryBudget {
+	private static final Logger logger = LoggerFactory.getLogger(BufferMemoryBudget.class);
+	private static BufferMemoryBudget instance;
+
+	/**
+	 * Amount of memory in bytes a session may always reserve, even when the
+	 * budget is exhausted.
+	 */
+	static final long MINIMUM_SHARE = 16 * 1048576L;
+
+	private final DecimalFormat formatter = new DecimalFormat("#,###");
+	private final long budget;
+	private final Map<Object, Long> sessions = new HashMap<Object, Long>();
+	private long used;
+
+	/**
+	 * Returns the server-wide budget, sized according to
+	 * {@link net.pms.configuration.PmsConfiguration#getBufferMemoryBudget()}.
+	 *
+	 * @return The budget.
+	 */
+	public static synchronized BufferMemoryBudget getInstance() {
+		if (instance == null) {
+			long budget = 1048576L * PMS.getConfiguration().getBufferMemoryBudget();
+
+			if (budget <= 0) {
+				// The default limit for direct memory is the maximum heap size,
+				// leave half of it to Netty and friends.
+				budget = Runtime.getRuntime().maxMemory() / 2;
+			}
+
+			instance = new BufferMemoryBudget(budget);
+		}
+
+		return instance;
+	}
+
+	BufferMemoryBudget(long budget) {
+		this.budget = budget;
+		logger.debug("Transcoding buffer memory budget: " + formatter.format(budget) + " bytes");
+	}
+
+	/**
+	 * Registers a transcoding session. Memory can only be reserved by
+	 * registered sessions.
+	 *
+	 * @param session The session.
+	 */
+	public synchronized void register(Object session) {
+		if (!sessions.containsKey(session)) {
+			sessions.put(session, 0L);
+		}
+	}
+
+	/**
+	 * Unregisters a transcoding session and releases all memory it reserved.
+	 *
+	 * @param session The session.
+	 */
+	public synchronized void unregister(Object session) {
+		Long reserved = sessions.remove(session);
+
+		if (reserved != null) {
+			used -= reserved;
+		}
+	}
+
+	/**
+	 * Tries to reserve memory for a session.
+	 *
+	 * @param session The registered session.
+	 * @param bytes The number of bytes to reserve.
+	 * @return True if the memory was reserved, false otherwise.
+	 */
+	public synchronized boolean reserve(Object session, long bytes) {
+		Long reserved = sessions.get(session);
+
+		if (reserved == null) {
+			logger.warn("Memory requested by unregistered session: " + session);
+			return false;
+		}
+
+		long total = reserved + bytes;
+
+		if (total > MINIMUM_SHARE && (used + bytes > budget || total > getFairShare())) {
+			logger.debug("Refused " + formatter.format(bytes) + " bytes to " + session + ": reserved "
+				+ formatter.format(reserved) + " bytes, fair share " + formatter.format(getFairShare())
+				+ " bytes, " + formatter.format(used) + " of " + formatter.format(budget) + " bytes in use");
+			return false;
+		}
+
+		sessions.put(session, total);
+		used += bytes;
+		return true;
+	}
+
+	/**
+	 * Gives back memory that was reserved by a session but is not used.
+	 *
+	 * @param session The registered session.
+	 * @param bytes The number of bytes to give back.
+	 */
+	public synchronized void release(Object session, long bytes) {
+		Long reserved = sessions.get(session);
+
+		if (reserved != null) {
+			bytes = Math.min(bytes, reserved);
+			sessions.put(session, reserved - bytes);
+			used -= bytes;
+		}
+	}
+
+	/**
+	 * Returns the total budget in bytes.
+	 *
+	 * @return The budget.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the number of bytes currently reserved by all sessions.
+	 *
+	 * @return The reserved memory.
+	 */
+	public synchronized long getUsed() {
+		return used;
+	}
+
+	/**
+	 * Returns the number of registered sessions.
+	 *
+	 * @return The number of sessions.
+	 */
+	public synchronized int getActiveSessions() {
+		return sessions.size();
+	}
+
+	/**
+	 * Returns the amount of memory in bytes a single session may currently
+	 * reserve.
+	 *
+	 * @return The fair share.
+	 */
+	public synchronized long getFairShare() {
+		return Math.max(MINIMUM_SHARE, budget / Math.max(1, sessions.size()));
+	}
+}
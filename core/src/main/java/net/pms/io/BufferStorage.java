@@ -0,0 +1,87 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+/**
+ * Random access storage backing the circular memory buffer of
+ * {@link BufferedOutputFileImpl}. Indexes are absolute positions in the
+ * storage, the buffer itself takes care of the wrapping.
+ * <p>
+ * Implementations must allow a single writer and multiple readers to access
+ * the storage concurrently, as long as they do not touch the same indexes.
+ */
+interface BufferStorage {
+	/**
+	 * Returns the number of bytes that can currently be stored.
+	 *
+	 * @return The capacity in bytes.
+	 */
+	int capacity();
+
+	/**
+	 * Returns the byte at the given index.
+	 *
+	 * @param index The index, must be smaller than {@link #capacity()}.
+	 * @return The byte.
+	 */
+	byte get(int index);
+
+	/**
+	 * Stores a byte at the given index.
+	 *
+	 * @param index The index, must be smaller than {@link #capacity()}.
+	 * @param value The byte to store.
+	 */
+	void put(int index, byte value);
+
+	/**
+	 * Copies bytes from the storage into an array.
+	 *
+	 * @param index The index of the first byte to copy.
+	 * @param dst The destination array.
+	 * @param off The offset in the destination array.
+	 * @param len The number of bytes to copy.
+	 */
+	void get(int index, byte[] dst, int off, int len);
+
+	/**
+	 * Copies bytes from an array into the storage.
+	 *
+	 * @param index The index of the first byte to overwrite.
+	 * @param src The source array.
+	 * @param off The offset in the source array.
+	 * @param len The number of bytes to copy.
+	 */
+	void put(int index, byte[] src, int off, int len);
+
+	/**
+	 * Tries to increase the capacity while retaining the contents. The
+	 * requested size may not be honored in full.
+	 *
+	 * @param newCapacity The requested capacity in bytes.
+	 * @return True if the capacity is now at least the requested capacity.
+	 */
+	boolean grow(int newCapacity);
+
+	/**
+	 * Releases the memory held by this storage. The storage must not be
+	 * used afterwards.
+	 */
+	void release();
+}
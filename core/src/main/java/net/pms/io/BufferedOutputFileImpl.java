@@ -24,14 +24,19 @@ import net.pms.configuration.PmsConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Circular memory buffer that can be used as {@link java.io.OutputStream OutputStream}
@@ -40,6 +45,19 @@ import java.util.TimerTask;
  * misleading, as there is typically no file involved in the process at all.
  * Instead, the buffer is typically used to hold data piped by a transcoding
  * process in one thread until a request for data comes in from another thread.
+ * <p>
+ * By default, readers and the writer poll the buffer every
+ * {@link #CHECK_INTERVAL} milliseconds while they wait for data or space. When
+ * {@link PmsConfiguration#isBufferEventDriven()} is enabled, they are woken up
+ * by each other as soon as the buffer changes instead. In both modes the time
+ * spent waiting is recorded and can be retrieved for diagnostics.
+ * <p>
+ * The memory itself is held by a {@link BufferStorage}. The default is a
+ * single byte array on the Java heap. {@link PmsConfiguration#getBufferBackend()}
+ * can select chunked storage outside the heap instead, either direct buffers
+ * or a memory-mapped spill file, which is limited by the server-wide
+ * {@link BufferMemoryBudget}. When that storage cannot grow to the maximum
+ * buffer size, the circular buffer wraps around at the size it reached.
  * 
  * @see net.pms.io.ProcessWrapperImpl
  * @see net.pms.network.Request Request
@@ -64,14 +82,36 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	private static final int MARGIN_SMALL = 600000;
 	private static final int CHECK_INTERVAL = 500;
 	private static final int CHECK_END_OF_PROCESS = 2500; // must be superior to CHECK_INTERVAL
+
+	/**
+	 * Maximum time in milliseconds a read waits for the buffer to fill up
+	 * before returning whatever is available.
+	 */
+	private static final int MAX_READ_WAIT = 15 * CHECK_INTERVAL;
+
+	/**
+	 * Buffer backends, see {@link PmsConfiguration#getBufferBackend()}.
+	 */
+	public static final String BACKEND_HEAP = "heap";
+	public static final String BACKEND_DIRECT = "direct";
+	public static final String BACKEND_MAPPED = "mapped";
+
 	private int minMemorySize;
-	private int maxMemorySize;
+	private volatile int maxMemorySize;
 	private int bufferOverflowWarning;
-	private boolean eof;
-	private long writeCount;
-	private byte buffer[];
+	private volatile boolean eof;
+	private volatile long writeCount;
+	private BufferStorage buffer;
+	private boolean chunked;
 	private boolean forcefirst = (configuration.getTrancodeBlocksMultipleConnections() && configuration.getTrancodeKeepFirstConnections());
 	private ArrayList<WaitBufferedInputStream> inputStreams;
+
+	/**
+	 * Readers attached by {@link #getSharedInputStream(long)}, for other
+	 * renderers receiving the same transcode.
+	 */
+	private final List<WaitBufferedInputStream> sharedInputStreams = new CopyOnWriteArrayList<WaitBufferedInputStream>();
+	private volatile boolean shared;
 	private ProcessWrapper attachedThread;
 	private int secondread_minsize;
 	private Timer timer;
@@ -82,87 +122,15 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	private double timeseek;
 	private double timeend;
 	private long packetpos = 0;
+	private final boolean eventDriven = configuration.isBufferEventDriven();
+	private final Object signalLock = new Object();
+	private final AtomicLong signalCount = new AtomicLong();
+	private final AtomicInteger waiting = new AtomicInteger(); // threads in await()
+	private final AtomicLong writerWaitTime = new AtomicLong();
+	private final AtomicLong writerWaitCount = new AtomicLong();
+	private final AtomicLong readerWaitTime = new AtomicLong();
+	private final AtomicLong readerWaitCount = new AtomicLong();
 
-	/**
-	 * Try to increase the size of a memory buffer, while retaining its
-	 * contents. The provided new size is considered to be a request, it is
-	 * scaled down when an OutOfMemory error occurs. There is no guarantee
-	 * about the exact length of the returned byte array, only that it is
-	 * greater than or equal to the original buffer size. When null is
-	 * passed as an argument, a fresh buffer will be allocated. Copying one
-	 * byte array to another is a costly operation, both in memory usage and
-	 * performance. It is best to avoid using this method.
-	 * 
-	 * @param buffer The byte array to resize, null is allowed.
-	 * @param newSize The requested final size. Should be greater than the
-	 * original size or the original buffer will be returned.
-	 * @return The resized byte array.
-	 */
-	private byte[] growBuffer(byte[] buffer, int newSize) {
-		byte[] copy;
-		
-		if (buffer == null) {
-			// Temporary empty array to avoid null tests in the code below
-			buffer = new byte[0];
-		}
-		
-		if (newSize <= buffer.length) {
-			// Cannot shrink the original
-			return buffer;
-		}
-		
-		try {
-			// Try to allocate the requested new size
-			copy = new byte[newSize];
-		} catch (OutOfMemoryError e) {
-			if (buffer.length == 0) {
-				logger.error("Cannot initialize buffer to " + formatter.format(newSize) + " bytes.", e);
-			} else {
-				logger.warn("Cannot grow buffer size from " + formatter.format(buffer.length) + " bytes to " + formatter.format(newSize) + " bytes.", e);
-			}
-
-			// Could not allocate the requested new size, use 30% of free memory instead.
-			// Rationale behind using 30%: multiple threads are running at the same time,
-			// we do not want one thread's memory usage to suffocate the others.
-			// Using maxMemory() to ignore the initial Java heap space size that freeMemory()
-			// takes into account.
-			// See http://javarevisited.blogspot.com/2011/05/java-heap-space-memory-size-jvm.html
-			long realisticSize = Runtime.getRuntime().maxMemory() * 3 / 10;
-			
-			if (realisticSize < buffer.length) {
-				// A copy would be smaller in size, shrinking instead of growing the buffer.
-				// Better to return the original and retain its size.
-				return buffer;
-			} else {
-				try {
-					// Try to allocate the realistic alternative size
-					copy = new byte[(int) realisticSize];
-				} catch (OutOfMemoryError e2) {
-					logger.error("Cannot grow buffer size from " + formatter.format(buffer.length) + " bytes to " + formatter.format(realisticSize) + " bytes either.", e2);
-					logger.error("freeMemory: " + formatter.format(Runtime.getRuntime().freeMemory()));
-					logger.error("totalMemory: " + formatter.format(Runtime.getRuntime().totalMemory()));
-					logger.error("maxMemory: " + formatter.format(Runtime.getRuntime().maxMemory()));
-
-					// Cannot allocate memory, no other option than to return the original.
-					return buffer;
-				}
-			}
-		}
-
-		if (buffer.length == 0) {
-			logger.info("Successfully initialized buffer to " + formatter.format(copy.length) + " bytes.");
-		} else {
-			try {
-				System.arraycopy(buffer, 0, copy, 0, buffer.length);
-				logger.info("Successfully grown buffer from " + formatter.format(buffer.length) + " bytes to " + formatter.format(copy.length) + " bytes.");
-			} catch (Exception ex) {
-				logger.error("Cannot grow buffer size, error copying buffer contents.", ex);
-			}
-		}
-
-		return copy;
-	}
-	
 	/**
 	 * Constructor to create a memory buffer based on settings that are
 	 * passed on. Will also start up a timer task to display buffer size and
@@ -175,31 +143,37 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 		this.minMemorySize = (int) (1048576 * params.minBufferSize);
 		this.maxMemorySize = (int) (1048576 * params.maxBufferSize);
 
-		// FIXME: Better to relate margin directly to maxMemorySize instead of using arbitrary fixed values
-
-		int margin = MARGIN_LARGE; // Issue 220: extends to 20Mb : readCount is wrongly set cause of the ps3's
-		// 2nd request with a range like 44-xxx, causing the end of buffer margin to be first sent 
-		if (this.maxMemorySize < margin) {// for thumbnails / small buffer usage
-			margin = MARGIN_MEDIUM; // margin must be superior to the buffer size of OutputBufferConsumer or direct buffer size from WindowsNamedPipe class
-			if (this.maxMemorySize < margin) {
-				margin = MARGIN_SMALL;
-			}
-		}
-		this.bufferOverflowWarning = this.maxMemorySize - margin;
+		this.bufferOverflowWarning = getOverflowWarning(this.maxMemorySize);
 		this.secondread_minsize = params.secondread_minsize;
 		this.timeseek = params.timeseek;
 		this.timeend = params.timeend;
 		this.shiftScr = params.shift_scr;
 
-		if ((maxMemorySize > INITIAL_BUFFER_SIZE) && !configuration.initBufferMax()) {
+		String backend = configuration.getBufferBackend();
+
+		if (BACKEND_DIRECT.equals(backend) || BACKEND_MAPPED.equals(backend)) {
+			File spillFolder = null;
+
+			if (BACKEND_MAPPED.equals(backend)) {
+				try {
+					spillFolder = configuration.getTempFolder();
+				} catch (IOException e) {
+					logger.warn("Cannot access temp folder, using direct buffer instead: " + e.getMessage());
+				}
+			}
+
+			chunked = true;
+			buffer = new ChunkedBufferStorage(maxMemorySize, spillFolder, BufferMemoryBudget.getInstance());
+			buffer.grow(Math.min(maxMemorySize, minMemorySize + MARGIN_SMALL));
+		} else if ((maxMemorySize > INITIAL_BUFFER_SIZE) && !configuration.initBufferMax()) {
 			// Try to limit memory usage a bit.
 			// Start with a modest allocation initially, grow to max when needed later.
-			buffer = growBuffer(null, INITIAL_BUFFER_SIZE);
+			buffer = new HeapBufferStorage(INITIAL_BUFFER_SIZE);
 		} else {
-			buffer = growBuffer(null, maxMemorySize);
+			buffer = new HeapBufferStorage(maxMemorySize);
 		}
 
-		if (buffer.length == 0) {
+		if (buffer.capacity() == 0) {
 			// Cannot transcode without a buffer
 			logger.info("FATAL ERROR: OutOfMemory / dumping stats");
 			logger.trace("freeMemory: " + Runtime.getRuntime().freeMemory());
@@ -219,11 +193,12 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 					if (getCurrentInputStream() != null) {
 						rc = getCurrentInputStream().getReadCount();
-						PMS.get().getFrame().setReadValue(rc, "");
+						showReadValue(rc);
 					}
 
 					long space = (writeCount - rc);
-					logger.trace("buffered: " + formatter.format(space) + " bytes / inputs: " + inputStreams.size());
+					logger.trace("buffered: " + formatter.format(space) + " bytes / inputs: " + inputStreams.size()
+						+ " / writer waited: " + getWriterWaitTime() + " ms / readers waited: " + getReaderWaitTime() + " ms");
 					
 					// There are 1048576 bytes in a megabyte
 					long bufferInMBs = space / 1048576;
@@ -234,10 +209,199 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 		}
 	}
 
+	/**
+	 * Returns the amount of bytes the writer may be ahead of the current
+	 * reader for a buffer of the given size.
+	 *
+	 * @param memorySize The buffer size in bytes.
+	 * @return The maximum distance in bytes.
+	 */
+	private static int getOverflowWarning(int memorySize) {
+		// FIXME: Better to relate margin directly to maxMemorySize instead of using arbitrary fixed values
+
+		int margin = MARGIN_LARGE; // Issue 220: extends to 20Mb : readCount is wrongly set cause of the ps3's
+		// 2nd request with a range like 44-xxx, causing the end of buffer margin to be first sent 
+		if (memorySize < margin) {// for thumbnails / small buffer usage
+			margin = MARGIN_MEDIUM; // margin must be superior to the buffer size of OutputBufferConsumer or direct buffer size from WindowsNamedPipe class
+			if (memorySize < margin) {
+				margin = MARGIN_SMALL;
+			}
+		}
+
+		return memorySize - margin;
+	}
+
+	/**
+	 * Makes sure chunked storage can hold the data up to the given position
+	 * while the buffer is filled for the first time. When the storage cannot
+	 * grow any further, the circular buffer is shrunk to the size reached so
+	 * far. This is safe because nothing has wrapped around yet.
+	 *
+	 * @param position The position in the stream that has to fit.
+	 */
+	private void ensureCapacity(long position) {
+		if (!chunked || buffer == null || writeCount >= maxMemorySize || position <= buffer.capacity()) {
+			return;
+		}
+
+		if (!buffer.grow((int) Math.min(position, maxMemorySize))) {
+			int size = buffer.capacity();
+			logger.info("Buffer memory budget reached, limiting buffer to " + formatter.format(size) + " bytes.");
+			bufferOverflowWarning = getOverflowWarning(size);
+			maxMemorySize = size;
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		logger.trace("EOF");
 		eof = true;
+		signal();
+	}
+
+	/**
+	 * Returns the total time in milliseconds the writer has spent waiting for
+	 * readers to free up space in the buffer.
+	 *
+	 * @return The writer wait time.
+	 */
+	public long getWriterWaitTime() {
+		return writerWaitTime.get() / 1000000;
+	}
+
+	/**
+	 * Returns the number of times the writer had to wait for readers to free
+	 * up space in the buffer.
+	 *
+	 * @return The writer wait count.
+	 */
+	public long getWriterWaitCount() {
+		return writerWaitCount.get();
+	}
+
+	/**
+	 * Returns the total time in milliseconds readers have spent waiting for
+	 * the writer to fill the buffer.
+	 *
+	 * @return The reader wait time.
+	 */
+	public long getReaderWaitTime() {
+		return readerWaitTime.get() / 1000000;
+	}
+
+	/**
+	 * Returns the number of times readers had to wait for the writer to fill
+	 * the buffer.
+	 *
+	 * @return The reader wait count.
+	 */
+	public long getReaderWaitCount() {
+		return readerWaitCount.get();
+	}
+
+	/**
+	 * Returns the current signal count. It has to be read before checking
+	 * the condition to wait for and passed on to {@link #await(long, boolean)},
+	 * so a signal sent in between is never lost.
+	 *
+	 * @return The signal count.
+	 */
+	private long getSignalCount() {
+		return signalCount.get();
+	}
+
+	/**
+	 * Wakes up all readers and writers waiting in {@link #await(long, boolean)}.
+	 * Does nothing unless the buffer is event driven. The lock is only taken
+	 * when a thread is actually waiting, as writes signal every byte.
+	 */
+	private void signal() {
+		if (eventDriven) {
+			signalCount.incrementAndGet();
+
+			// A thread starting to wait after this check sees the new count
+			if (waiting.get() > 0) {
+				synchronized (signalLock) {
+					signalLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until the other side of the buffer signals a change or
+	 * {@link #CHECK_INTERVAL} milliseconds have passed, whichever comes
+	 * first. When the buffer is not event driven, this always sleeps for
+	 * the full interval.
+	 *
+	 * @param observedSignalCount The value of {@link #getSignalCount()}
+	 * before the wait condition was checked.
+	 * @param writer True if the caller is the writer, false for readers.
+	 */
+	private void await(long observedSignalCount, boolean writer) {
+		long start = System.nanoTime();
+
+		try {
+			if (eventDriven) {
+				waiting.incrementAndGet();
+
+				try {
+					synchronized (signalLock) {
+						if (signalCount.get() == observedSignalCount) {
+							signalLock.wait(CHECK_INTERVAL);
+						}
+					}
+				} finally {
+					waiting.decrementAndGet();
+				}
+			} else {
+				Thread.sleep(CHECK_INTERVAL);
+			}
+		} catch (InterruptedException e) {
+		}
+
+		long waited = System.nanoTime() - start;
+
+		if (writer) {
+			writerWaitTime.addAndGet(waited);
+			writerWaitCount.incrementAndGet();
+		} else {
+			readerWaitTime.addAndGet(waited);
+			readerWaitCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits until more than the minimum amount of data for the read has been
+	 * buffered, the end of the stream has been reached or
+	 * {@link #MAX_READ_WAIT} milliseconds have passed.
+	 *
+	 * @param firstRead True if this is the first read of the input stream.
+	 * @param readCount The position of the input stream.
+	 */
+	private void waitForData(boolean firstRead, long readCount) {
+		// The calling stream has advanced since its previous read, which may
+		// have freed up space the writer is waiting for.
+		signal();
+
+		int c = 0;
+		int minBufferS = firstRead ? minMemorySize : secondread_minsize;
+		long deadline = System.currentTimeMillis() + MAX_READ_WAIT;
+		long observed = getSignalCount();
+
+		while (writeCount - readCount <= minBufferS && !eof && System.currentTimeMillis() < deadline) {
+			if (c == 0) {
+				logger.trace("Suspend Read: readCount=" + readCount + " / writeCount=" + writeCount);
+			}
+
+			c++;
+			await(observed, false);
+			observed = getSignalCount();
+		}
+
+		if (c > 0) {
+			logger.trace("Resume Read: readCount=" + readCount + " / writeCount=" + writeCount);
+		}
 	}
 
 	@Override
@@ -295,9 +459,79 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			atominputStream.setReadCount(newReadPosition);
 		}
 
+		signal();
 		return atominputStream;
 	}
 
+	/**
+	 * Attaches an additional reader to the buffer, for another renderer that
+	 * requested the same transcode. Unlike the readers returned by
+	 * {@link #getInputStream(long)}, shared readers are not subject to the
+	 * multiple connection settings, and the writer waits for the slowest of
+	 * them, so no shared reader misses any data. The process is only stopped
+	 * once all readers have been closed.
+	 *
+	 * @param newReadPosition The position to start reading at.
+	 * @return The reader, or <code>null</code> if the data at the position is
+	 *         no longer buffered.
+	 */
+	public InputStream getSharedInputStream(long newReadPosition) {
+		if (buffer == null || newReadPosition < writeCount - bufferOverflowWarning) {
+			return null;
+		}
+
+		if (attachedThread != null) {
+			attachedThread.setReadyToStop(false);
+		}
+
+		WaitBufferedInputStream sharedInputStream = new WaitBufferedInputStream(this);
+		sharedInputStream.setReadCount(Math.max(0, newReadPosition));
+		sharedInputStreams.add(sharedInputStream);
+		shared = true;
+		logger.debug("Attached shared InputStream at position " + formatter.format(newReadPosition) + ", " + sharedInputStreams.size() + " shared readers");
+
+		signal();
+		return sharedInputStream;
+	}
+
+	/**
+	 * Shows the position of the current reader in the status tab.
+	 *
+	 * @param readCount The position.
+	 */
+	void showReadValue(long readCount) {
+		PMS.get().getFrame().setReadValue(readCount, "");
+	}
+
+	/**
+	 * @return True if the buffer has been destroyed, after which no reader can
+	 *         be attached any more.
+	 */
+	public boolean isReleased() {
+		return buffer == null;
+	}
+
+	/**
+	 * Returns the position of the reader that is furthest behind, among the
+	 * current reader and the shared readers.
+	 *
+	 * @return The position, or -1 if there are no readers.
+	 */
+	private long getSlowestReadCount() {
+		WaitBufferedInputStream input = getCurrentInputStream();
+		long slowest = input != null ? input.getReadCount() : -1;
+
+		for (WaitBufferedInputStream shared : sharedInputStreams) {
+			long readCount = shared.getReadCount();
+
+			if (slowest < 0 || readCount < slowest) {
+				slowest = readCount;
+			}
+		}
+
+		return slowest;
+	}
+
 	@Override
 	public long getWriteCount() {
 		return writeCount;
@@ -310,34 +544,34 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			debugOutput.flush();
 		}
 		
-		WaitBufferedInputStream input = getCurrentInputStream();
+		ensureCapacity(writeCount + len - off);
+		long observed = getSignalCount();
+		long readCount = getSlowestReadCount();
 
-		//logger.trace("write(" + b.length + ", " + off + ", " + len + "), writeCount = " + writeCount + ", readCount = " + (input != null ? input.getReadCount() : "null"));
+		//logger.trace("write(" + b.length + ", " + off + ", " + len + "), writeCount = " + writeCount + ", readCount = " + readCount);
 
-		while ((input != null && (writeCount - input.getReadCount() > bufferOverflowWarning)) || (input == null && writeCount > bufferOverflowWarning)) {
-			try {
-				Thread.sleep(CHECK_INTERVAL);
-			} catch (InterruptedException e) {
-			}
-			input = getCurrentInputStream();
+		while ((readCount >= 0 && (writeCount - readCount > bufferOverflowWarning)) || (readCount < 0 && writeCount > bufferOverflowWarning)) {
+			await(observed, true);
+			observed = getSignalCount();
+			readCount = getSlowestReadCount();
 		}
 		
 		if (buffer != null) {
 			int mb = (int) (writeCount % maxMemorySize);
 
-			if (mb >= buffer.length - (len - off)) {
-				if (buffer.length == INITIAL_BUFFER_SIZE) {
+			if (mb >= buffer.capacity() - (len - off)) {
+				if (!chunked && buffer.capacity() == INITIAL_BUFFER_SIZE) {
 					// Initial buffer size was not big enough, try to increase it
-					buffer = growBuffer(buffer, maxMemorySize);
+					buffer.grow(maxMemorySize);
 				}
 
 				// FIXME: This smells like 2x System.arraycopy()!
 				int s = (len - off);
 				for (int i = 0; i < s; i++) {
-					buffer[modulo(mb + i, buffer.length)] = b[off + i];
+					buffer.put(modulo(mb + i, buffer.capacity()), b[off + i]);
 				}
 			} else {
-				System.arraycopy(b, off, buffer, mb, (len - off));
+				buffer.put(mb, b, off, (len - off));
 				if ((len - off) > 0) {
 					buffered = true;
 				}
@@ -358,24 +592,24 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 				while (packetpos + packetLength < writeCount && buffer != null) {
 					int packetposMB = (int) (packetpos % maxMemorySize);
 					int streamPos = 0;
-					if (buffer[modulo(packetposMB, buffer.length)] == 71) {// TS
+					if (buffer.get(modulo(packetposMB, buffer.capacity())) == 71) {// TS
 						packetLength = 188;
 						streamPos = 4;
 
 						// adaptation field
-						if ((buffer[modulo(packetposMB + 3, buffer.length)] & 0x20) == 0x20) {
-							streamPos += 1 + ((buffer[modulo(packetposMB + 4, buffer.length)] + 256) % 256);
+						if ((buffer.get(modulo(packetposMB + 3, buffer.capacity())) & 0x20) == 0x20) {
+							streamPos += 1 + ((buffer.get(modulo(packetposMB + 4, buffer.capacity())) + 256) % 256);
 						}
 
 						if (streamPos == 188) {
 							streamPos = -1;
 						}
 
-					} else if (buffer[modulo(packetposMB + 3, buffer.length)] == -70) { // BA
+					} else if (buffer.get(modulo(packetposMB + 3, buffer.capacity())) == -70) { // BA
 						packetLength = 14;
 						streamPos = -1;
 					} else {
-						packetLength = 6 + (((buffer[modulo(packetposMB + 4, buffer.length)] + 256) % 256)) * 256 + ((buffer[modulo(packetposMB + 5, buffer.length)] + 256) % 256);
+						packetLength = 6 + (((buffer.get(modulo(packetposMB + 4, buffer.capacity())) + 256) % 256)) * 256 + ((buffer.get(modulo(packetposMB + 5, buffer.capacity())) + 256) % 256);
 					}
 					if (streamPos != -1) {
 						mb = packetposMB + streamPos + 18;
@@ -388,6 +622,8 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 				}
 			}
 		}
+
+		signal();
 	}
 
 	/**
@@ -409,21 +645,21 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	@Override
 	public void write(int b) throws IOException {
 		boolean bb = b % 100000 == 0;
-		WaitBufferedInputStream input = getCurrentInputStream();
-		while (bb && ((input != null && (writeCount - input.getReadCount() > bufferOverflowWarning)) || (input == null && writeCount == bufferOverflowWarning))) {
-			try {
-				Thread.sleep(CHECK_INTERVAL);
-				//logger.trace("BufferedOutputFile Full");
-			} catch (InterruptedException e) {
-			}
-			input = getCurrentInputStream();
+		ensureCapacity(writeCount + 1);
+		long observed = getSignalCount();
+		long readCount = getSlowestReadCount();
+		while (bb && ((readCount >= 0 && (writeCount - readCount > bufferOverflowWarning)) || (readCount < 0 && writeCount == bufferOverflowWarning))) {
+			//logger.trace("BufferedOutputFile Full");
+			await(observed, true);
+			observed = getSignalCount();
+			readCount = getSlowestReadCount();
 		}
 		int mb = (int) (writeCount++ % maxMemorySize);
 		if (buffer != null) {
-			buffer[mb] = (byte) b;
+			buffer.put(mb, (byte) b);
 			buffered = true;
-			if (writeCount == INITIAL_BUFFER_SIZE) {
-				buffer = growBuffer(buffer, maxMemorySize);
+			if (!chunked && writeCount == INITIAL_BUFFER_SIZE) {
+				buffer.grow(maxMemorySize);
 			}
 
 			if (timeseek > 0 && writeCount > 19) {
@@ -435,36 +671,38 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 				shiftSCRByTimeSeek(mb, (int) timeseek);
 			}
 		}
+
+		signal();
 	}
 
 	// Ditlew - Modify SCR
 	private void shiftSCRByTimeSeek(int buffer_index, int offset_sec) {
-		int m9 = modulo(buffer_index - 9, buffer.length);
-		int m8 = modulo(buffer_index - 8, buffer.length);
-		int m7 = modulo(buffer_index - 7, buffer.length);
-		int m6 = modulo(buffer_index - 6, buffer.length);
-		int m5 = modulo(buffer_index - 5, buffer.length);
-		int m4 = modulo(buffer_index - 4, buffer.length);
-		int m3 = modulo(buffer_index - 3, buffer.length);
-		int m2 = modulo(buffer_index - 2, buffer.length);
-		int m1 = modulo(buffer_index - 1, buffer.length);
-		int m0 = modulo(buffer_index, buffer.length);
+		int m9 = modulo(buffer_index - 9, buffer.capacity());
+		int m8 = modulo(buffer_index - 8, buffer.capacity());
+		int m7 = modulo(buffer_index - 7, buffer.capacity());
+		int m6 = modulo(buffer_index - 6, buffer.capacity());
+		int m5 = modulo(buffer_index - 5, buffer.capacity());
+		int m4 = modulo(buffer_index - 4, buffer.capacity());
+		int m3 = modulo(buffer_index - 3, buffer.capacity());
+		int m2 = modulo(buffer_index - 2, buffer.capacity());
+		int m1 = modulo(buffer_index - 1, buffer.capacity());
+		int m0 = modulo(buffer_index, buffer.capacity());
 
 		// SCR
-		if (buffer[m9] == 0
-			&& buffer[m8] == 0
-			&& buffer[m7] == 1
-			&& buffer[m6] == -70 && // 0xBA - Java/PMS wants -70
+		if (buffer.get(m9) == 0
+			&& buffer.get(m8) == 0
+			&& buffer.get(m7) == 1
+			&& buffer.get(m6) == -70 && // 0xBA - Java/PMS wants -70
 			// control bits
-			!((buffer[m5] & 128) == 128)
-			&& ((buffer[m5] & 64) == 64)
-			&& ((buffer[m5] & 4) == 4)
-			&& ((buffer[m3] & 4) == 4)
-			&& ((buffer[m1] & 4) == 4)
-			&& ((buffer[m0] & 1) == 1)) {
-			long scr_32_30 = ((buffer[m5] & 56) >> 3);
-			long scr_29_15 = ((buffer[m5] & 3) << 13) + (buffer[m4] << 5) + ((buffer[m3] & 248) >> 3);
-			long scr_14_00 = ((buffer[m3] & 3) << 13) + (buffer[m2] << 5) + ((buffer[m1] & 248) >> 3);
+			!((buffer.get(m5) & 128) == 128)
+			&& ((buffer.get(m5) & 64) == 64)
+			&& ((buffer.get(m5) & 4) == 4)
+			&& ((buffer.get(m3) & 4) == 4)
+			&& ((buffer.get(m1) & 4) == 4)
+			&& ((buffer.get(m0) & 1) == 1)) {
+			long scr_32_30 = ((buffer.get(m5) & 56) >> 3);
+			long scr_29_15 = ((buffer.get(m5) & 3) << 13) + (buffer.get(m4) << 5) + ((buffer.get(m3) & 248) >> 3);
+			long scr_14_00 = ((buffer.get(m3) & 3) << 13) + (buffer.get(m2) << 5) + ((buffer.get(m1) & 248) >> 3);
 
 			long scr = (scr_32_30 << 30) + (scr_29_15 << 15) + scr_14_00;
 			long scr_new = scr + (90000L * offset_sec);
@@ -474,17 +712,17 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			long scr_14_00_new = (scr_new & 32767L);             // 000000000000000000111111111111111
 
 			// scr_32_30_new
-			buffer[m5] = (byte) ((buffer[m5] & 199) + ((scr_32_30_new << 3) & 56)); // 11000111
+			buffer.put(m5, (byte) ((buffer.get(m5) & 199) + ((scr_32_30_new << 3) & 56))); // 11000111
 
 			// scr_29_15_new
-			buffer[m5] = (byte) ((buffer[m5] & 252) + ((scr_29_15_new >> 13) & 3)); // 00000011
-			buffer[m4] = (byte) (scr_29_15_new >> 5);                               // 11111111
-			buffer[m3] = (byte) ((buffer[m3] & 7) + ((scr_29_15_new << 3) & 248));  // 11111000
+			buffer.put(m5, (byte) ((buffer.get(m5) & 252) + ((scr_29_15_new >> 13) & 3))); // 00000011
+			buffer.put(m4, (byte) (scr_29_15_new >> 5));                               // 11111111
+			buffer.put(m3, (byte) ((buffer.get(m3) & 7) + ((scr_29_15_new << 3) & 248)));  // 11111000
 
 			// scr_14_00_new
-			buffer[m3] = (byte) ((buffer[m3] & 252) + ((scr_14_00_new >> 13) & 3)); // 00000011
-			buffer[m2] = (byte) (scr_14_00_new >> 5);                               // 11111111
-			buffer[m1] = (byte) ((buffer[m1] & 7) + ((scr_14_00_new << 3) & 248));  // 11111000
+			buffer.put(m3, (byte) ((buffer.get(m3) & 252) + ((scr_14_00_new >> 13) & 3))); // 00000011
+			buffer.put(m2, (byte) (scr_14_00_new >> 5));                               // 11111111
+			buffer.put(m1, (byte) ((buffer.get(m1) & 7) + ((scr_14_00_new << 3) & 248)));  // 11111000
 
 			// Debug
 			//logger.trace("Ditlew - SCR "+scr+" ("+(int)(scr/90000)+") -> "+scr_new+" ("+(int)(scr_new/90000)+")  "+offset_sec+" secs");
@@ -494,31 +732,31 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	// Ditlew - Modify GOP
 	@SuppressWarnings("unused")
 	private void shiftGOPByTimeSeek(int buffer_index, int offset_sec) {
-		int m7 = modulo(buffer_index - 7, buffer.length);
-		int m6 = modulo(buffer_index - 6, buffer.length);
-		int m5 = modulo(buffer_index - 5, buffer.length);
-		int m4 = modulo(buffer_index - 4, buffer.length);
-		int m3 = modulo(buffer_index - 3, buffer.length);
-		int m2 = modulo(buffer_index - 2, buffer.length);
-		int m1 = modulo(buffer_index - 1, buffer.length);
-		int m0 = modulo(buffer_index, buffer.length);
+		int m7 = modulo(buffer_index - 7, buffer.capacity());
+		int m6 = modulo(buffer_index - 6, buffer.capacity());
+		int m5 = modulo(buffer_index - 5, buffer.capacity());
+		int m4 = modulo(buffer_index - 4, buffer.capacity());
+		int m3 = modulo(buffer_index - 3, buffer.capacity());
+		int m2 = modulo(buffer_index - 2, buffer.capacity());
+		int m1 = modulo(buffer_index - 1, buffer.capacity());
+		int m0 = modulo(buffer_index, buffer.capacity());
 
 		// check if valid gop
-		if (buffer[m7] == 0
-			&& buffer[m6] == 0
-			&& buffer[m5] == 1
-			&& buffer[m4] == -72 && // 0xB8 - Java/PMS wants -72
+		if (buffer.get(m7) == 0
+			&& buffer.get(m6) == 0
+			&& buffer.get(m5) == 1
+			&& buffer.get(m4) == -72 && // 0xB8 - Java/PMS wants -72
 			// control bits
-			((buffer[m2] & 0x08) == 0x08)
-			&& ((buffer[m0] & 31) == 0)
+			((buffer.get(m2) & 0x08) == 0x08)
+			&& ((buffer.get(m0) & 31) == 0)
 			&& // of interest
-			!((buffer[m3] & 128) == 128) && // not drop frm
-			!((buffer[m0] & 16) == 16) // not broken
+			!((buffer.get(m3) & 128) == 128) && // not drop frm
+			!((buffer.get(m0) & 16) == 16) // not broken
 			) {
 			// org timecode
-			byte h = (byte) ((buffer[m3] & 124) >> 2);
-			byte m = (byte) (((buffer[m3] & 3) << 4) + ((buffer[m2] & 240) >> 4));
-			byte s = (byte) (((buffer[m2] & 7) << 3) + ((buffer[m1] & 224) >> 5));
+			byte h = (byte) ((buffer.get(m3) & 124) >> 2);
+			byte m = (byte) (((buffer.get(m3) & 3) << 4) + ((buffer.get(m2) & 240) >> 4));
+			byte s = (byte) (((buffer.get(m2) & 7) << 3) + ((buffer.get(m1) & 224) >> 5));
 
 			// updated offset
 			int _offset = s + m * 60 + h * 60 + offset_sec;
@@ -530,13 +768,13 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 			// update gop
 			// h - ok
-			buffer[m3] = (byte) ((buffer[m3] & 131) + (_h << 2)); // 10000011
+			buffer.put(m3, (byte) ((buffer.get(m3) & 131) + (_h << 2))); // 10000011
 			// m - ok
-			buffer[m3] = (byte) ((buffer[m3] & 252) + (_m >> 4)); // 11111100
-			buffer[m2] = (byte) ((buffer[m2] & 15) + (_m << 4)); // 00001111
+			buffer.put(m3, (byte) ((buffer.get(m3) & 252) + (_m >> 4))); // 11111100
+			buffer.put(m2, (byte) ((buffer.get(m2) & 15) + (_m << 4))); // 00001111
 			// s - ok
-			buffer[m2] = (byte) ((buffer[m2] & 248) + (_s >> 3)); // 11111000
-			buffer[m1] = (byte) ((buffer[m1] & 31) + (_s << 5)); // 00011111
+			buffer.put(m2, (byte) ((buffer.get(m2) & 248) + (_s >> 3))); // 11111000
+			buffer.put(m1, (byte) ((buffer.get(m1) & 31) + (_s << 5))); // 00011111
 
 			// Debug
 			//logger.trace("Ditlew - GOP "+h+":"+m+":"+s+" -> "+_h+":"+_m+":"+_s+"  "+offset_sec+" secs");
@@ -549,10 +787,10 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	}
 
 	private boolean shiftAudio(int mb, boolean mod) {
-		boolean bb = (!mod && (buffer[mb - 10] == -67 || buffer[mb - 10] == -64) && buffer[mb - 11] == 1 && buffer[mb - 12] == 0 && buffer[mb - 13] == 0 && /*(buffer[mb-7]&128)==128 &&*/ (buffer[mb - 6] & 128) == 128/*buffer[mb-6] == -128*/)
-			|| (mod && (buffer[modulo(mb - 10, buffer.length)] == -67 || buffer[modulo(mb - 10, buffer.length)] == -64) && buffer[modulo(mb - 11, buffer.length)] == 1 && buffer[modulo(mb - 12, buffer.length)] == 0 && buffer[modulo(mb - 13, buffer.length)] == 0 && /*(buffer[modulo(mb-7)]&128)==128 && */ (buffer[modulo(mb - 6, buffer.length)] & 128) == 128/*buffer[modulo(mb-6, buffer.length)] == -128*/);
+		boolean bb = (!mod && (buffer.get(mb - 10) == -67 || buffer.get(mb - 10) == -64) && buffer.get(mb - 11) == 1 && buffer.get(mb - 12) == 0 && buffer.get(mb - 13) == 0 && /*(buffer.get(mb-7)&128)==128 &&*/ (buffer.get(mb - 6) & 128) == 128/*buffer.get(mb-6) == -128*/)
+			|| (mod && (buffer.get(modulo(mb - 10, buffer.capacity())) == -67 || buffer.get(modulo(mb - 10, buffer.capacity())) == -64) && buffer.get(modulo(mb - 11, buffer.capacity())) == 1 && buffer.get(modulo(mb - 12, buffer.capacity())) == 0 && buffer.get(modulo(mb - 13, buffer.capacity())) == 0 && /*(buffer.get(modulo(mb-7))&128)==128 && */ (buffer.get(modulo(mb - 6, buffer.capacity())) & 128) == 128/*buffer.get(modulo(mb-6, buffer.capacity())) == -128*/);
 		if (bb) {
-			int pts = (((((buffer[modulo(mb - 3, buffer.length)] & 0xff) << 8) + (buffer[modulo(mb - 2, buffer.length)] & 0xff)) >> 1) << 15) + ((((buffer[modulo(mb - 1, buffer.length)] & 0xff) << 8) + (buffer[modulo(mb, buffer.length)] & 0xff)) >> 1);
+			int pts = (((((buffer.get(modulo(mb - 3, buffer.capacity())) & 0xff) << 8) + (buffer.get(modulo(mb - 2, buffer.capacity())) & 0xff)) >> 1) << 15) + ((((buffer.get(modulo(mb - 1, buffer.capacity())) & 0xff) << 8) + (buffer.get(modulo(mb, buffer.capacity())) & 0xff)) >> 1);
 			pts += (int) (timeseek * 90000);
 
 			setTS(pts, mb, mod);
@@ -563,26 +801,26 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 	private boolean shiftVideo(int mb, boolean mod) {
 		boolean bb = (!mod
-			&& (buffer[mb - 15] == -32 || buffer[mb - 15] == -3)
-			&& buffer[mb - 16] == 1
-			&& buffer[mb - 17] == 0
-			&& buffer[mb - 18] == 0
-			&& (buffer[mb - 11] & 128) == 128
-			&& (buffer[mb - 9] & 32) == 32) || (mod
-			&& (buffer[modulo(mb - 15, buffer.length)] == -32 || buffer[modulo(mb - 15, buffer.length)] == -3)
-			&& buffer[modulo(mb - 16, buffer.length)] == 1
-			&& buffer[modulo(mb - 17, buffer.length)] == 0
-			&& buffer[modulo(mb - 18, buffer.length)] == 0
-			&& (buffer[modulo(mb - 11, buffer.length)] & 128) == 128
-			&& (buffer[modulo(mb - 9, buffer.length)] & 32) == 32);
+			&& (buffer.get(mb - 15) == -32 || buffer.get(mb - 15) == -3)
+			&& buffer.get(mb - 16) == 1
+			&& buffer.get(mb - 17) == 0
+			&& buffer.get(mb - 18) == 0
+			&& (buffer.get(mb - 11) & 128) == 128
+			&& (buffer.get(mb - 9) & 32) == 32) || (mod
+			&& (buffer.get(modulo(mb - 15, buffer.capacity())) == -32 || buffer.get(modulo(mb - 15, buffer.capacity())) == -3)
+			&& buffer.get(modulo(mb - 16, buffer.capacity())) == 1
+			&& buffer.get(modulo(mb - 17, buffer.capacity())) == 0
+			&& buffer.get(modulo(mb - 18, buffer.capacity())) == 0
+			&& (buffer.get(modulo(mb - 11, buffer.capacity())) & 128) == 128
+			&& (buffer.get(modulo(mb - 9, buffer.capacity())) & 32) == 32);
 
 		if (bb) { // check EO or FD (tsMuxeR)
 			int pts = getTS(mb - 5, mod);
 			int dts = 0;
-			boolean dts_present = (buffer[modulo(mb - 11, buffer.length)] & 64) == 64;
+			boolean dts_present = (buffer.get(modulo(mb - 11, buffer.capacity())) & 64) == 64;
 			if (dts_present) {
-				if ((buffer[modulo(mb - 4, buffer.length)] & 15) == 15) {
-					dts = (((((255 - (buffer[modulo(mb - 3, buffer.length)] & 0xff)) << 8) + (255 - (buffer[modulo(mb - 2, buffer.length)] & 0xff))) >> 1) << 15) + ((((255 - (buffer[modulo(mb - 1, buffer.length)] & 0xff)) << 8) + (255 - (buffer[modulo(mb, buffer.length)] & 0xff))) >> 1);
+				if ((buffer.get(modulo(mb - 4, buffer.capacity())) & 15) == 15) {
+					dts = (((((255 - (buffer.get(modulo(mb - 3, buffer.capacity())) & 0xff)) << 8) + (255 - (buffer.get(modulo(mb - 2, buffer.capacity())) & 0xff))) >> 1) << 15) + ((((255 - (buffer.get(modulo(mb - 1, buffer.capacity())) & 0xff)) << 8) + (255 - (buffer.get(modulo(mb, buffer.capacity())) & 0xff))) >> 1);
 					dts = -dts;
 				} else {
 					dts = getTS(mb, mod);
@@ -598,7 +836,7 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			setTS(pts, mb - 5, mod);
 			if (dts_present) {
 				if (dts < 0) {
-					buffer[modulo(mb - 4, buffer.length)] = 17;
+					buffer.put(modulo(mb - 4, buffer.capacity()), (byte) 17);
 				}
 				dts += ts;
 				setTS(dts, mb, mod);
@@ -614,14 +852,14 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 		int m1 = mb - 1;
 		int m0 = mb;
 		if (modulo) {
-			m3 = modulo(m3, buffer.length);
-			m2 = modulo(m2, buffer.length);
-			m1 = modulo(m1, buffer.length);
-			m0 = modulo(m0, buffer.length);
+			m3 = modulo(m3, buffer.capacity());
+			m2 = modulo(m2, buffer.capacity());
+			m1 = modulo(m1, buffer.capacity());
+			m0 = modulo(m0, buffer.capacity());
 		}
 
-		return (((((buffer[m3] & 0xff) << 8) + (buffer[m2] & 0xff)) >> 1) << 15)
-			+ ((((buffer[m1] & 0xff) << 8) + (buffer[m0] & 0xff)) >> 1);
+		return (((((buffer.get(m3) & 0xff) << 8) + (buffer.get(m2) & 0xff)) >> 1) << 15)
+			+ ((((buffer.get(m1) & 0xff) << 8) + (buffer.get(m0) & 0xff)) >> 1);
 	}
 
 	private void setTS(int ts, int mb, boolean modulo) {
@@ -630,19 +868,19 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 		int m1 = mb - 1;
 		int m0 = mb;
 		if (modulo) {
-			m3 = modulo(m3, buffer.length);
-			m2 = modulo(m2, buffer.length);
-			m1 = modulo(m1, buffer.length);
-			m0 = modulo(m0, buffer.length);
+			m3 = modulo(m3, buffer.capacity());
+			m2 = modulo(m2, buffer.capacity());
+			m1 = modulo(m1, buffer.capacity());
+			m0 = modulo(m0, buffer.capacity());
 		}
 		int pts_low = ts & 32767;
 		int pts_high = (ts >> 15) & 32767;
 		int pts_left_low = 1 + (pts_low << 1);
 		int pts_left_high = 1 + (pts_high << 1);
-		buffer[m3] = (byte) ((pts_left_high & 65280) >> 8);
-		buffer[m2] = (byte) (pts_left_high & 255);
-		buffer[m1] = (byte) ((pts_left_low & 65280) >> 8);
-		buffer[m0] = (byte) (pts_left_low & 255);
+		buffer.put(m3, (byte) ((pts_left_high & 65280) >> 8));
+		buffer.put(m2, (byte) (pts_left_high & 255));
+		buffer.put(m1, (byte) ((pts_left_low & 65280) >> 8));
+		buffer.put(m0, (byte) (pts_left_low & 255));
 	}
 
 	@Override
@@ -660,35 +898,18 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			return -1;
 		}
 
-		int c = 0;
-		int minBufferS = firstRead ? minMemorySize : secondread_minsize;
-		while (writeCount - readCount <= minBufferS && !eof && c < 15) {
-			if (c == 0) {
-				logger.trace("Suspend Read: readCount=" + readCount + " / writeCount=" + writeCount);
-			}
-
-			c++;
-
-			try {
-				Thread.sleep(CHECK_INTERVAL);
-			} catch (InterruptedException e) {
-			}
-		}
+		waitForData(firstRead, readCount);
 
 		if (attachedThread != null) {
 			attachedThread.setReadyToStop(false);
 		}
 
-		if (c > 0) {
-			logger.trace("Resume Read: readCount=" + readCount + " / writeCount=" + writeCount);
-		}
-
 		if (buffer == null || !buffered) {
 			return -1;
 		}
 
 		int mb = (int) (readCount % maxMemorySize);
-		int endOF = buffer.length;
+		int endOF = buffer.capacity();
 		int cut = 0;
 
 		if (eof && (writeCount - readCount) < len) {
@@ -697,10 +918,10 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 		if (mb >= endOF - len) {
 			try {
-				System.arraycopy(buffer, mb, buf, off, endOF - mb - cut);
+				buffer.get(mb, buf, off, endOF - mb - cut);
 			} catch (ArrayIndexOutOfBoundsException ex) {
 				logger.error("Something went wrong with the buffer.", ex);
-				logger.error("buffer.length: " + formatter.format(buffer.length) + " bytes.");
+				logger.error("buffer.capacity(): " + formatter.format(buffer.capacity()) + " bytes.");
 				logger.error("mb: " + mb);
 				logger.error("buf.length: " + formatter.format(buf.length) + " bytes.");
 				logger.error("off: " + off);
@@ -708,7 +929,7 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			}
 			return endOF - mb;
 		} else {
-			System.arraycopy(buffer, mb, buf, off, len - cut);
+			buffer.get(mb, buf, off, len - cut);
 			return len;
 		}
 	}
@@ -729,39 +950,21 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 			return -1;
 		}
 
-		int c = 0;
-		int minBufferS = firstRead ? minMemorySize : secondread_minsize;
-
-		while (writeCount - readCount <= minBufferS && !eof && c < 15) {
-			if (c == 0) {
-				logger.trace("Suspend Read: readCount=" + readCount + " / writeCount=" + writeCount);
-			}
-
-			c++;
-
-			try {
-				Thread.sleep(CHECK_INTERVAL);
-			} catch (InterruptedException e) {
-			}
-		}
+		waitForData(firstRead, readCount);
 
 		if (attachedThread != null) {
 			attachedThread.setReadyToStop(false);
 		}
 
-		if (c > 0) {
-			logger.trace("Resume Read: readCount=" + readCount + " / writeCount=" + writeCount);
-		}
-
 		if (buffer == null || !buffered) {
 			return -1;
 		}
 
 		try {
-			return 0xff & buffer[(int) (readCount % maxMemorySize)];
+			return 0xff & buffer.get((int) (readCount % maxMemorySize));
 		} catch (ArrayIndexOutOfBoundsException ex) {
 			logger.error("Buffer read ArrayIndexOutOfBoundsException error.", ex);
-			logger.error("buffer.length: " + formatter.format(buffer.length) + " bytes.");
+			logger.error("buffer.capacity(): " + formatter.format(buffer.capacity()) + " bytes.");
 			logger.error("readCount: \"" + readCount + "\"");
 			logger.error("maxMemorySize: \"" + maxMemorySize + "\"");
 			return -1;
@@ -781,11 +984,18 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 	@Override
 	public void removeInputStream(WaitBufferedInputStream inputStream) {
 		inputStreams.remove(inputStream);
+		sharedInputStreams.remove(inputStream);
+		signal();
 	}
 	
 	@Override
 	public void detachInputStream() {
-		PMS.get().getFrame().setReadValue(0, "");
+		if (!sharedInputStreams.isEmpty() || (shared && !inputStreams.isEmpty())) {
+			// Other renderers are still reading the shared transcode
+			return;
+		}
+
+		showReadValue(0);
 
 		if (attachedThread != null) {
 			attachedThread.setReadyToStop(true);
@@ -826,10 +1036,15 @@ public class BufferedOutputFileImpl extends OutputStream implements BufferedOutp
 
 		if (buffer != null) {
 			logger.info("Destroying buffer");
+			logger.debug("Buffer wait statistics: writer waited " + formatter.format(getWriterWaitTime()) + " ms in "
+				+ getWriterWaitCount() + " waits, readers waited " + formatter.format(getReaderWaitTime()) + " ms in "
+				+ getReaderWaitCount() + " waits");
+			buffer.release();
 			buffer = null;
 		}
 
 		buffered = false;
+		signal();
 
 		if (maxMemorySize != 1048576) {
 			PMS.get().getFrame().setValue(0, Messages.getString("StatusTab.5"));
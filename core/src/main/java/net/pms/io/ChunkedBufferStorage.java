@@ -0,0 +1,331 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link BufferStorage} made of fixed size chunks outside the Java heap. The
+ * chunks are either direct {@link ByteBuffer}s or regions of a memory-mapped
+ * spill file in the PMS temp folder. Growing the storage only adds chunks,
+ * the existing contents are never copied.
+ * <p>
+ * Every chunk is reserved from the {@link BufferMemoryBudget} first, so the
+ * storage may stop growing before it reaches its maximum capacity. Reading
+ * beyond the allocated chunks returns zeros, like a fresh heap buffer would.
+ * <p>
+ * The chunks are freed as soon as the storage is released rather than when
+ * they are garbage collected, so the budget matches the memory actually
+ * held. Single bytes are accessed without locking, as the transcode buffer
+ * reads and writes them one by one. The chunk array is replaced as a whole
+ * when it grows or is released, so a single byte access always sees a
+ * consistent array, and the chunks of a released storage are freed
+ * {@link #FREE_DELAY} milliseconds later so that such an access can finish
+ * first. Bulk copies hold a shared lock for the whole copy instead. After the
+ * storage has been released, reads return zeros and writes are ignored.
+ */
+class ChunkedBufferStorage implements BufferStorage {
+	private static final Logger logger = LoggerFactory.getLogger(ChunkedBufferStorage.class);
+
+	/**
+	 * Size of a single chunk in bytes. The current value is 4MB.
+	 */
+	static final int CHUNK_SIZE = 4194304;
+
+	/**
+	 * Time in milliseconds between the release of a storage and freeing its
+	 * chunks. The current value is 1 second.
+	 */
+	static final long FREE_DELAY = 1000;
+
+	private static final Timer freeTimer = new Timer("Buffer chunk cleaner", true);
+
+	private final DecimalFormat formatter = new DecimalFormat("#,###");
+	private final BufferMemoryBudget budget;
+	private final int chunkSize;
+	private final int maxCapacity;
+	private final File spillFolder;
+	private File spillFile;
+	private RandomAccessFile spillAccess;
+	private volatile ByteBuffer chunks[] = new ByteBuffer[0];
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private boolean released;
+
+	/**
+	 * Creates an empty storage and registers it with the budget.
+	 *
+	 * @param maxCapacity The maximum capacity in bytes.
+	 * @param spillFolder The folder for the memory-mapped spill file, or
+	 * null to use direct buffers.
+	 * @param budget The budget to reserve memory from.
+	 */
+	ChunkedBufferStorage(int maxCapacity, File spillFolder, BufferMemoryBudget budget) {
+		this.maxCapacity = maxCapacity;
+		this.chunkSize = Math.min(CHUNK_SIZE, Math.max(1, maxCapacity));
+		this.spillFolder = spillFolder;
+		this.budget = budget;
+		budget.register(this);
+	}
+
+	@Override
+	public int capacity() {
+		return (int) Math.min((long) chunks.length * chunkSize, maxCapacity);
+	}
+
+	@Override
+	public byte get(int index) {
+		ByteBuffer current[] = chunks;
+		int chunk = index / chunkSize;
+		return chunk < current.length ? current[chunk].get(index % chunkSize) : 0;
+	}
+
+	@Override
+	public void put(int index, byte value) {
+		ByteBuffer current[] = chunks;
+		int chunk = index / chunkSize;
+
+		if (chunk < current.length) {
+			current[chunk].put(index % chunkSize, value);
+		}
+	}
+
+	@Override
+	public void get(int index, byte[] dst, int off, int len) {
+		lock.readLock().lock();
+
+		try {
+			ByteBuffer current[] = chunks;
+
+			while (len > 0) {
+				int position = index % chunkSize;
+				int n = Math.min(len, chunkSize - position);
+
+				if (index / chunkSize < current.length) {
+					// Absolute bulk reads are not available, use a private view to
+					// leave the position of the shared chunk alone.
+					ByteBuffer view = current[index / chunkSize].duplicate();
+					view.position(position);
+					view.get(dst, off, n);
+				} else {
+					Arrays.fill(dst, off, off + n, (byte) 0);
+				}
+
+				index += n;
+				off += n;
+				len -= n;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(int index, byte[] src, int off, int len) {
+		lock.readLock().lock();
+
+		try {
+			ByteBuffer current[] = chunks;
+
+			while (len > 0) {
+				int position = index % chunkSize;
+				int n = Math.min(len, chunkSize - position);
+
+				if (index / chunkSize < current.length) {
+					ByteBuffer view = current[index / chunkSize].duplicate();
+					view.position(position);
+					view.put(src, off, n);
+				}
+
+				index += n;
+				off += n;
+				len -= n;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public synchronized boolean grow(int newCapacity) {
+		if (released) {
+			return false;
+		}
+
+		newCapacity = Math.min(newCapacity, maxCapacity);
+		int oldCapacity = capacity();
+
+		while (capacity() < newCapacity) {
+			ByteBuffer chunk = allocateChunk();
+
+			if (chunk == null) {
+				break;
+			}
+
+			ByteBuffer grown[] = new ByteBuffer[chunks.length + 1];
+			System.arraycopy(chunks, 0, grown, 0, chunks.length);
+			grown[chunks.length] = chunk;
+			chunks = grown;
+		}
+
+		if (capacity() != oldCapacity) {
+			logger.trace("Grown " + (spillFolder != null ? "mapped" : "direct") + " buffer from "
+				+ formatter.format(oldCapacity) + " bytes to " + formatter.format(capacity()) + " bytes.");
+		}
+
+		return capacity() >= newCapacity;
+	}
+
+	/**
+	 * Reserves memory for one more chunk and allocates it.
+	 *
+	 * @return The chunk, or null if it could not be allocated.
+	 */
+	private ByteBuffer allocateChunk() {
+		if (!budget.reserve(this, chunkSize)) {
+			return null;
+		}
+
+		try {
+			if (spillFolder == null) {
+				return ByteBuffer.allocateDirect(chunkSize);
+			}
+
+			if (spillAccess == null) {
+				spillFile = File.createTempFile("pms-buffer-", ".tmp", spillFolder);
+				spillFile.deleteOnExit();
+				spillAccess = new RandomAccessFile(spillFile, "rw");
+			}
+
+			return spillAccess.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) chunks.length * chunkSize, chunkSize);
+		} catch (IOException e) {
+			logger.warn("Cannot map buffer chunk in " + spillFolder + ": " + e.getMessage());
+		} catch (OutOfMemoryError e) {
+			logger.warn("Cannot allocate direct buffer chunk of " + formatter.format(chunkSize) + " bytes: " + e.getMessage());
+		}
+
+		budget.release(this, chunkSize);
+		return null;
+	}
+
+	@Override
+	public synchronized void release() {
+		final ByteBuffer freed[];
+		lock.writeLock().lock();
+
+		try {
+			if (released) {
+				return;
+			}
+
+			released = true;
+			freed = chunks;
+			chunks = new ByteBuffer[0];
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		budget.unregister(this);
+		final RandomAccessFile freedAccess = spillAccess;
+		final File freedFile = spillFile;
+		spillAccess = null;
+
+		// Single byte accesses may still use the old chunk array
+		freeTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				for (ByteBuffer chunk : freed) {
+					free(chunk);
+				}
+
+				if (freedAccess != null) {
+					try {
+						freedAccess.close();
+					} catch (IOException e) {
+						logger.debug("Caught exception", e);
+					}
+
+					// Regions that could not be unmapped stay valid until they
+					// are garbage collected, on some platforms the file cannot
+					// be deleted before that happens.
+					if (!freedFile.delete()) {
+						logger.debug("Spill file " + freedFile + " will be deleted on exit");
+					}
+				}
+			}
+		}, FREE_DELAY);
+	}
+
+	/**
+	 * Frees the memory of a direct or mapped chunk right away, using the
+	 * cleaner of the buffer. Where the cleaner is not accessible the memory
+	 * is freed when the chunk is garbage collected.
+	 *
+	 * @param chunk The chunk, which must not be used afterwards.
+	 */
+	private static void free(ByteBuffer chunk) {
+		try {
+			// Java 9 and later only give access to the cleaner through Unsafe
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), chunk);
+			return;
+		} catch (NoSuchMethodException e) {
+			// Java 8 and earlier, use the cleaner of the buffer below
+		} catch (Exception e) {
+			logger.debug("Buffer chunk will be freed by the garbage collector: " + e);
+			return;
+		}
+
+		try {
+			Method cleanerMethod = chunk.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(chunk);
+
+			if (cleaner != null) {
+				Method cleanMethod = cleaner.getClass().getMethod("clean");
+				cleanMethod.setAccessible(true);
+				cleanMethod.invoke(cleaner);
+			}
+		} catch (Exception e) {
+			logger.debug("Buffer chunk will be freed by the garbage collector: " + e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ChunkedBufferStorage@" + Integer.toHexString(hashCode());
+	}
+}
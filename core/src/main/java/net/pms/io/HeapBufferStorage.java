@@ -0,0 +1,162 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.text.DecimalFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link BufferStorage} backed by a single byte array on the Java heap. This
+ * is the original storage of {@link BufferedOutputFileImpl}; growing it
+ * requires copying the whole array.
+ */
+class HeapBufferStorage implements BufferStorage {
+	private static final Logger logger = LoggerFactory.getLogger(HeapBufferStorage.class);
+	private final DecimalFormat formatter = new DecimalFormat("#,###");
+	private byte buffer[];
+
+	/**
+	 * Allocates a heap buffer of the given size. When there is not enough
+	 * memory, a smaller buffer may be allocated or none at all, in which case
+	 * {@link #capacity()} returns 0.
+	 *
+	 * @param initialCapacity The requested size in bytes.
+	 */
+	HeapBufferStorage(int initialCapacity) {
+		buffer = growBuffer(null, initialCapacity);
+	}
+
+	@Override
+	public int capacity() {
+		return buffer.length;
+	}
+
+	@Override
+	public byte get(int index) {
+		return buffer[index];
+	}
+
+	@Override
+	public void put(int index, byte value) {
+		buffer[index] = value;
+	}
+
+	@Override
+	public void get(int index, byte[] dst, int off, int len) {
+		System.arraycopy(buffer, index, dst, off, len);
+	}
+
+	@Override
+	public void put(int index, byte[] src, int off, int len) {
+		System.arraycopy(src, off, buffer, index, len);
+	}
+
+	@Override
+	public boolean grow(int newCapacity) {
+		buffer = growBuffer(buffer, newCapacity);
+		return buffer.length >= newCapacity;
+	}
+
+	@Override
+	public void release() {
+		buffer = new byte[0];
+	}
+
+	/**
+	 * Try to increase the size of a memory buffer, while retaining its
+	 * contents. The provided new size is considered to be a request, it is
+	 * scaled down when an OutOfMemory error occurs. There is no guarantee
+	 * about the exact length of the returned byte array, only that it is
+	 * greater than or equal to the original buffer size. When null is
+	 * passed as an argument, a fresh buffer will be allocated. Copying one
+	 * byte array to another is a costly operation, both in memory usage and
+	 * performance. It is best to avoid using this method.
+	 * 
+	 * @param buffer The byte array to resize, null is allowed.
+	 * @param newSize The requested final size. Should be greater than the
+	 * original size or the original buffer will be returned.
+	 * @return The resized byte array.
+	 */
+	private byte[] growBuffer(byte[] buffer, int newSize) {
+		byte[] copy;
+		
+		if (buffer == null) {
+			// Temporary empty array to avoid null tests in the code below
+			buffer = new byte[0];
+		}
+		
+		if (newSize <= buffer.length) {
+			// Cannot shrink the original
+			return buffer;
+		}
+		
+		try {
+			// Try to allocate the requested new size
+			copy = new byte[newSize];
+		} catch (OutOfMemoryError e) {
+			if (buffer.length == 0) {
+				logger.error("Cannot initialize buffer to " + formatter.format(newSize) + " bytes.", e);
+			} else {
+				logger.warn("Cannot grow buffer size from " + formatter.format(buffer.length) + " bytes to " + formatter.format(newSize) + " bytes.", e);
+			}
+
+			// Could not allocate the requested new size, use 30% of free memory instead.
+			// Rationale behind using 30%: multiple threads are running at the same time,
+			// we do not want one thread's memory usage to suffocate the others.
+			// Using maxMemory() to ignore the initial Java heap space size that freeMemory()
+			// takes into account.
+			// See http://javarevisited.blogspot.com/2011/05/java-heap-space-memory-size-jvm.html
+			long realisticSize = Runtime.getRuntime().maxMemory() * 3 / 10;
+			
+			if (realisticSize < buffer.length) {
+				// A copy would be smaller in size, shrinking instead of growing the buffer.
+				// Better to return the original and retain its size.
+				return buffer;
+			} else {
+				try {
+					// Try to allocate the realistic alternative size
+					copy = new byte[(int) realisticSize];
+				} catch (OutOfMemoryError e2) {
+					logger.error("Cannot grow buffer size from " + formatter.format(buffer.length) + " bytes to " + formatter.format(realisticSize) + " bytes either.", e2);
+					logger.error("freeMemory: " + formatter.format(Runtime.getRuntime().freeMemory()));
+					logger.error("totalMemory: " + formatter.format(Runtime.getRuntime().totalMemory()));
+					logger.error("maxMemory: " + formatter.format(Runtime.getRuntime().maxMemory()));
+
+					// Cannot allocate memory, no other option than to return the original.
+					return buffer;
+				}
+			}
+		}
+
+		if (buffer.length == 0) {
+			logger.info("Successfully initialized buffer to " + formatter.format(copy.length) + " bytes.");
+		} else {
+			try {
+				System.arraycopy(buffer, 0, copy, 0, buffer.length);
+				logger.info("Successfully grown buffer from " + formatter.format(buffer.length) + " bytes to " + formatter.format(copy.length) + " bytes.");
+			} catch (Exception ex) {
+				logger.error("Cannot grow buffer size, error copying buffer contents.", ex);
+			}
+		}
+
+		return copy;
+	}
+}
@@ -28,6 +28,8 @@ import java.util.List;
 public class OutputBufferConsumer extends OutputConsumer {
 	private static final Logger logger = LoggerFactory.getLogger(OutputBufferConsumer.class);
 	private BufferedOutputFile outputBuffer;
+	private TranscodeCache.Recorder cacheRecorder;
+	private volatile boolean complete;
 	
 	/**
 	 * Size of a buffer in bytes. The buffer is used to copy data from an
@@ -45,6 +47,10 @@ public class OutputBufferConsumer extends OutputConsumer {
 	public OutputBufferConsumer(InputStream inputStream, OutputParams params) {
 		super(inputStream);
 		outputBuffer = new BufferedOutputFileImpl(params);
+
+		if (params.cacheRecorder != null && params.cacheRecorder.claim()) {
+			cacheRecorder = params.cacheRecorder;
+		}
 	}
 
 	public void run() {
@@ -55,7 +61,13 @@ public class OutputBufferConsumer extends OutputConsumer {
 			while ((n = inputStream.read(buf)) > 0) {
 				// logger.trace("Fetched " + n + " from pipe");
 				outputBuffer.write(buf, 0, n);
+
+				if (cacheRecorder != null) {
+					cacheRecorder.write(buf, 0, n);
+				}
 			}
+
+			complete = true;
 			// logger.debug("Finished to read");
 		} catch (IOException ioe) {
 			logger.debug("Error consuming stream of spawned process: " + ioe.getMessage());
@@ -75,6 +87,22 @@ public class OutputBufferConsumer extends OutputConsumer {
 		return outputBuffer;
 	}
 
+	/**
+	 * @return The recorder this consumer copies the output to, or
+	 *         <code>null</code> if the output is not cached.
+	 */
+	public TranscodeCache.Recorder getCacheRecorder() {
+		return cacheRecorder;
+	}
+
+	/**
+	 * @return True if all of the output was consumed, false if reading was
+	 *         interrupted by an error or has not finished yet.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
 	public List<String> getResults() {
 		return null;
 	}
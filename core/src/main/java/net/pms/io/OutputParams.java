@@ -62,6 +62,12 @@ public class OutputParams {
 	public boolean avidemux;
 	public boolean shift_scr;
 
+	/**
+	 * Records the output of the transcoding process in the transcode cache,
+	 * or <code>null</code> when the output is not cached.
+	 */
+	public TranscodeCache.Recorder cacheRecorder;
+
 	public OutputParams(PmsConfiguration configuration) {
 		if (configuration != null) {
 			waitbeforestart = configuration.getVideoTranscodeStartDelay() * 1000;
@@ -108,6 +114,7 @@ public class OutputParams {
 			+ ", output_pipes=" + Arrays.toString(output_pipes)
 			+ ", secondread_minsize=" + secondread_minsize + ", shift_scr=" + shift_scr + ", sid=" + sid
 			+ ", stdin=" + stdin + ", timeend=" + timeend + ", timeseek=" + timeseek + ", toFrame=" + toFrame
-			+ ", waitbeforestart=" + waitbeforestart + ", workDir=" + workDir + ", env=" + env + "]";
+			+ ", waitbeforestart=" + waitbeforestart + ", workDir=" + workDir + ", env=" + env
+			+ ", cacheRecorder=" + cacheRecorder + "]";
 	}
 }
@@ -44,11 +44,11 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 	private OutputConsumer stdoutConsumer;
 	private OutputConsumer stderrConsumer;
 	private OutputParams params;
-	private boolean destroyed;
+	private volatile boolean destroyed;
 	private String[] cmdArray;
 	private boolean nullable;
 	private ArrayList<ProcessWrapper> attachedProcesses;
-	private BufferedOutputFile bo = null;
+	private volatile BufferedOutputFile bo = null;
 	private boolean keepStdout;
 	private boolean keepStderr;
 	private static int processCounter = 0;
@@ -269,6 +269,8 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 				}
 			}
 
+			finishCacheRecording();
+
 			if (attachedProcesses != null) {
 				for (ProcessWrapper pw : attachedProcesses) {
 					if (pw != null) {
@@ -281,6 +283,62 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 		}
 	}
 
+	/**
+	 * Stores the output recorded for the transcode cache if the process
+	 * completed successfully, or discards it otherwise. The output consumer
+	 * may still be waiting for the renderer to read the last bytes from the
+	 * buffer, so the recording is finished once the consumer is done.
+	 */
+	private void finishCacheRecording() {
+		final TranscodeCache.Recorder recorder = params.cacheRecorder;
+
+		if (recorder == null) {
+			return;
+		}
+
+		if (!recorder.isClaimed()) {
+			// No process consumed its output with these parameters
+			recorder.finish(false);
+			return;
+		}
+
+		if (!(stdoutConsumer instanceof OutputBufferConsumer) || ((OutputBufferConsumer) stdoutConsumer).getCacheRecorder() != recorder) {
+			// Recorded by another process
+			return;
+		}
+
+		boolean exited = false;
+
+		try {
+			exited = !destroyed && process != null && process.exitValue() == 0;
+		} catch (IllegalThreadStateException e) {
+			logger.debug("Error reading process exit value", e);
+		}
+
+		final boolean succeeded = exited;
+		final OutputBufferConsumer consumer = (OutputBufferConsumer) stdoutConsumer;
+
+		if (!consumer.isAlive()) {
+			recorder.finish(succeeded && consumer.isComplete());
+			return;
+		}
+
+		Thread finisher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					consumer.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+
+				recorder.finish(succeeded && !destroyed && consumer.isComplete());
+			}
+		}, getName() + "-cache");
+		finisher.setDaemon(true);
+		finisher.start();
+	}
+
 	/**
 	 * Same as {@link #start()}, merely making the intention explicit in the
 	 * method name.
@@ -309,6 +367,34 @@ public class ProcessWrapperImpl extends Thread implements ProcessWrapper {
 		return null;
 	}
 
+	/**
+	 * Attaches an additional reader to the output of the process, for
+	 * another renderer requesting the same transcode.
+	 *
+	 * @param seek Position in the output to start reading at.
+	 * @return The input stream, or <code>null</code> if the output cannot be
+	 *         shared, for instance because the position is no longer buffered.
+	 * @see BufferedOutputFileImpl#getSharedInputStream(long)
+	 */
+	public InputStream getSharedInputStream(long seek) {
+		BufferedOutputFile buffer = bo;
+
+		if (destroyed || !(buffer instanceof BufferedOutputFileImpl)) {
+			return null;
+		}
+
+		return ((BufferedOutputFileImpl) buffer).getSharedInputStream(seek);
+	}
+
+	/**
+	 * @return True if the process has been stopped or its output buffer has
+	 *         been destroyed, after which its output cannot be shared.
+	 */
+	public boolean isFinished() {
+		BufferedOutputFile buffer = bo;
+		return destroyed || (buffer instanceof BufferedOutputFileImpl && ((BufferedOutputFileImpl) buffer).isReleased());
+	}
+
 	public List<String> getOtherResults() {
 		if (stdoutConsumer == null) {
 			return null;
@@ -0,0 +1,431 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size-bounded folder keeping the output of completed transcodes, so that
+ * playing the same file again on the same kind of renderer with the same
+ * settings does not start a new transcoding process.
+ * <p>
+ * Entries are identified by a key describing everything the output depends
+ * on, see {@link net.pms.dlna.DLNAResource#getTranscodeDescription(net.pms.configuration.RendererConfiguration)}.
+ * The current transcode settings, see
+ * {@link PmsConfiguration#getTranscodeSettingsChecksum()}, are added to every
+ * key, so changing them makes earlier output unreachable. While a transcode is running its output is
+ * written to a temporary file, which becomes an entry when the transcoding
+ * process completes successfully and is discarded otherwise. When the cache
+ * grows beyond its size, the least recently used entries are deleted.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class TranscodeCache {
+	private static final Logger logger = LoggerFactory.getLogger(TranscodeCache.class);
+
+	private static final String ENTRY_EXTENSION = ".cache";
+	private static final String PART_EXTENSION = ".part";
+
+	private static TranscodeCache instance;
+
+	private final DecimalFormat formatter = new DecimalFormat("#,###");
+	private final File folder;
+	private final long maxSize;
+
+	/**
+	 * Keys of the entries being recorded. Guarded by this.
+	 */
+	private final Set<String> recording = new HashSet<String>();
+
+	private volatile String settingsChecksum;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Returns the cache, located and sized according to
+	 * {@link PmsConfiguration#getTranscodeCacheFolder()} and
+	 * {@link PmsConfiguration#getTranscodeCacheSize()}.
+	 *
+	 * @return The cache.
+	 */
+	public static synchronized TranscodeCache getInstance() {
+		if (instance == null) {
+			final PmsConfiguration configuration = PMS.getConfiguration();
+
+			if (configuration == null || configuration.getTranscodeCacheSize() <= 0) {
+				instance = new TranscodeCache(null, 0);
+			} else {
+				instance = new TranscodeCache(new File(configuration.getTranscodeCacheFolder()), configuration.getTranscodeCacheSize() * 1048576L);
+
+				configuration.addConfigurationListener(new ConfigurationListener() {
+					@Override
+					public void configurationChanged(ConfigurationEvent event) {
+						if (!event.isBeforeUpdate()) {
+							instance.settingsChecksum = null;
+						}
+					}
+				});
+			}
+		}
+
+		return instance;
+	}
+
+	TranscodeCache(File folder, long maxSize) {
+		if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+			logger.warn("Cannot create transcode cache folder \"" + folder.getAbsolutePath() + "\", transcode cache disabled");
+			folder = null;
+		}
+
+		this.folder = folder;
+		this.maxSize = folder != null ? maxSize : 0;
+
+		if (isEnabled()) {
+			// Output of transcodes that were running when PMS stopped is incomplete
+			File[] parts = listFiles(PART_EXTENSION);
+
+			for (File part : parts) {
+				if (!part.delete()) {
+					logger.debug("Cannot delete incomplete transcode cache entry \"" + part.getAbsolutePath() + "\"");
+				}
+			}
+
+			evict(0);
+		}
+	}
+
+	/**
+	 * @return True if transcoded output is cached.
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Turns the description of a transcode into the key of its entry.
+	 *
+	 * @param description Everything the transcoded output depends on, apart
+	 *            from the PMS settings.
+	 * @return The key, or <code>null</code> if the cache is disabled.
+	 */
+	public String getKey(String description) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		String checksum = settingsChecksum;
+
+		if (checksum == null) {
+			PmsConfiguration configuration = PMS.getConfiguration();
+			checksum = configuration != null ? configuration.getTranscodeSettingsChecksum() : "";
+			settingsChecksum = checksum;
+		}
+
+		return DigestUtils.sha1Hex(description + "\n" + PMS.getVersion() + "\n" + checksum);
+	}
+
+	/**
+	 * Returns the complete output cached for the key, and marks it as
+	 * recently used. A renderer may ask for the entry several times while
+	 * playing it, so this does not count as a hit, see {@link #countHit()}.
+	 *
+	 * @param key The key of the entry.
+	 * @return The file holding the output, or <code>null</code> if there is
+	 *         no complete entry for the key.
+	 */
+	public File get(String key) {
+		if (!isEnabled() || key == null) {
+			return null;
+		}
+
+		File entry = new File(folder, key + ENTRY_EXTENSION);
+
+		if (!entry.isFile()) {
+			return null;
+		}
+
+		// The modification time orders entries for eviction
+		if (!entry.setLastModified(System.currentTimeMillis())) {
+			logger.trace("Cannot update the time of transcode cache entry \"" + entry.getAbsolutePath() + "\"");
+		}
+
+		return entry;
+	}
+
+	/**
+	 * Starts recording the output of a transcode. The recorder has to be
+	 * passed to the process producing the output through
+	 * {@link OutputParams#cacheRecorder}.
+	 *
+	 * @param key The key of the entry.
+	 * @return The recorder, or <code>null</code> if the cache is disabled or
+	 *         the output for this key is already being recorded.
+	 */
+	public Recorder record(String key) {
+		if (!isEnabled() || key == null) {
+			return null;
+		}
+
+		missCount.incrementAndGet();
+
+		synchronized (this) {
+			if (!recording.add(key)) {
+				return null;
+			}
+		}
+
+		File part = new File(folder, key + PART_EXTENSION);
+
+		try {
+			return new Recorder(key, part);
+		} catch (IOException e) {
+			logger.debug("Cannot record transcode output to \"" + part.getAbsolutePath() + "\": " + e.getMessage());
+
+			synchronized (this) {
+				recording.remove(key);
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Counts a play that was served from the cache. Has to be called once
+	 * per playback.
+	 */
+	public void countHit() {
+		hitCount.incrementAndGet();
+	}
+
+	/**
+	 * @return The number of plays that were served from the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return The number of plays that had to be transcoded.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	private File[] listFiles(final String extension) {
+		File[] files = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(extension);
+			}
+		});
+
+		return files != null ? files : new File[0];
+	}
+
+	/**
+	 * Deletes the least recently used entries until the given number of bytes
+	 * fits in the cache.
+	 *
+	 * @param needed The number of bytes to make room for.
+	 */
+	private synchronized void evict(long needed) {
+		File[] entries = listFiles(ENTRY_EXTENSION);
+		long size = needed;
+
+		for (File entry : entries) {
+			size += entry.length();
+		}
+
+		if (size <= maxSize) {
+			return;
+		}
+
+		Arrays.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+
+		for (int i = 0; i < entries.length && size > maxSize; i++) {
+			long length = entries[i].length();
+
+			if (entries[i].delete()) {
+				size -= length;
+				logger.debug("Evicted transcode cache entry \"" + entries[i].getName() + "\" (" + formatter.format(length) + " bytes)");
+			}
+		}
+	}
+
+	private synchronized void finished(Recorder recorder, boolean complete) {
+		recording.remove(recorder.key);
+
+		if (!complete) {
+			if (recorder.part.exists() && !recorder.part.delete()) {
+				logger.debug("Cannot delete incomplete transcode cache entry \"" + recorder.part.getAbsolutePath() + "\"");
+			}
+
+			return;
+		}
+
+		evict(recorder.part.length());
+		File entry = new File(folder, recorder.key + ENTRY_EXTENSION);
+
+		if (recorder.part.renameTo(entry)) {
+			logger.debug("Stored transcode output in cache entry \"" + entry.getName() + "\" (" + formatter.format(entry.length()) + " bytes)");
+		} else {
+			logger.debug("Cannot store transcode cache entry \"" + entry.getAbsolutePath() + "\"");
+			recorder.part.delete();
+		}
+	}
+
+	/**
+	 * Writes the output of a transcoding process to a temporary file. Once
+	 * the process has finished, {@link #finish(boolean)} turns the file into
+	 * a cache entry or discards it. Write errors, or output larger than the
+	 * cache, silently abandon the recording without affecting the transcode.
+	 */
+	public class Recorder extends OutputStream {
+		private final String key;
+		private final File part;
+		private OutputStream output;
+		private long length;
+		private boolean claimed;
+		private boolean finished;
+
+		private Recorder(String key, File part) throws IOException {
+			this.key = key;
+			this.part = part;
+			output = new BufferedOutputStream(new FileOutputStream(part), 65536);
+		}
+
+		/**
+		 * Assigns the recorder to the first process producing output with
+		 * the parameters holding it.
+		 *
+		 * @return True if the caller should write its output to the recorder.
+		 */
+		synchronized boolean claim() {
+			if (claimed) {
+				return false;
+			}
+
+			claimed = true;
+			return true;
+		}
+
+		/**
+		 * @return True if a process writes its output to the recorder.
+		 */
+		synchronized boolean isClaimed() {
+			return claimed;
+		}
+
+		@Override
+		public void write(int b) {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			if (output == null) {
+				return;
+			}
+
+			length += len;
+
+			if (length > maxSize) {
+				logger.debug("Transcode output is larger than the transcode cache, not caching it");
+				abandon();
+				return;
+			}
+
+			try {
+				output.write(b, off, len);
+			} catch (IOException e) {
+				logger.debug("Cannot record transcode output: " + e.getMessage());
+				abandon();
+			}
+		}
+
+		private void abandon() {
+			try {
+				output.close();
+			} catch (IOException e) {
+				logger.trace("Cannot close transcode cache entry: " + e.getMessage());
+			}
+
+			output = null;
+		}
+
+		/**
+		 * Ends the recording.
+		 *
+		 * @param complete True if the process finished successfully and all
+		 *            of its output was written to the recorder.
+		 */
+		public void finish(boolean complete) {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+
+				finished = true;
+
+				if (output != null) {
+					try {
+						output.close();
+					} catch (IOException e) {
+						logger.debug("Cannot record transcode output: " + e.getMessage());
+						complete = false;
+					}
+
+					output = null;
+				} else {
+					complete = false;
+				}
+			}
+
+			finished(this, complete);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.commons.dataobjects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of writing several file infos to the media library at once. The
+ * files are identified by their path. Written files also have their id set
+ * on the file info which has been passed to the storage.
+ */
+public class DOBatchWriteResult {
+	private Map<String, Integer> insertedIds = new LinkedHashMap<String, Integer>();
+	private Map<String, Integer> updatedIds = new LinkedHashMap<String, Integer>();
+	private Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+
+	public void addInserted(String filePath, int id) {
+		insertedIds.put(filePath, id);
+	}
+
+	public void addUpdated(String filePath, int id) {
+		updatedIds.put(filePath, id);
+	}
+
+	public void addFailure(String filePath, Exception cause) {
+		failures.put(filePath, cause);
+	}
+
+	/**
+	 * Merges the results of another batch into this one.
+	 *
+	 * @param result the result to add
+	 */
+	public void addAll(DOBatchWriteResult result) {
+		insertedIds.putAll(result.insertedIds);
+		updatedIds.putAll(result.updatedIds);
+		failures.putAll(result.failures);
+	}
+
+	public boolean isInserted(String filePath) {
+		return insertedIds.containsKey(filePath);
+	}
+
+	public boolean isUpdated(String filePath) {
+		return updatedIds.containsKey(filePath);
+	}
+
+	public boolean isFailed(String filePath) {
+		return failures.containsKey(filePath);
+	}
+
+	/**
+	 * @param filePath the path of the file
+	 * @return the id of the inserted or updated file, -1 if it hasn't been written
+	 */
+	public int getId(String filePath) {
+		Integer id = insertedIds.get(filePath);
+		if (id == null) {
+			id = updatedIds.get(filePath);
+		}
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param filePath the path of the file
+	 * @return the reason why the file couldn't be written, null if it has been written
+	 */
+	public Exception getFailure(String filePath) {
+		return failures.get(filePath);
+	}
+
+	public List<String> getFailedFilePaths() {
+		return Collections.unmodifiableList(new ArrayList<String>(failures.keySet()));
+	}
+
+	public int getNbInserted() {
+		return insertedIds.size();
+	}
+
+	public int getNbUpdated() {
+		return updatedIds.size();
+	}
+
+	public int getNbFailed() {
+		return failures.size();
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.commons.dataobjects;
+
+/**
+ * The properties of a file stored in the media library which are required to
+ * decide if it has to be imported again when its folder is scanned.
+ */
+public class DOFileState {
+	private final long size;
+	private final long dateModifiedOs;
+	private final long dateLastUpdatedDb;
+	
+	public DOFileState(long size, long dateModifiedOs, long dateLastUpdatedDb){
+		this.size = size;
+		this.dateModifiedOs = dateModifiedOs;
+		this.dateLastUpdatedDb = dateLastUpdatedDb;
+	}
+
+	public long getSize() {
+	    return size;
+    }
+
+	/**
+	 * @return the modification date of the file when it has been imported, in milliseconds
+	 */
+	public long getDateModifiedOs() {
+	    return dateModifiedOs;
+    }
+
+	/**
+	 * @return the date the file has been written to the library, in milliseconds
+	 */
+	public long getDateLastUpdatedDb() {
+	    return dateLastUpdatedDb;
+    }
+}
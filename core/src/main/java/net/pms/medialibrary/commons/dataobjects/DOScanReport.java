@@ -18,6 +18,9 @@
  */
 package net.pms.medialibrary.commons.dataobjects;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.pms.medialibrary.commons.enumarations.ScanState;
 
 
@@ -25,15 +28,21 @@ public class DOScanReport {
 	private ScanState scanState;
 	private int nbScannedItems;
 	private int nbItemsToScan;
+	private List<DOScanStageReport> stageReports;
 	
 	public DOScanReport(){
 		this(ScanState.IDLE, 0, 0);
 	}
 	
 	public DOScanReport(ScanState scanState, int nbScannedItems, int nbItemsToScan){
+		this(scanState, nbScannedItems, nbItemsToScan, new ArrayList<DOScanStageReport>());
+	}
+	
+	public DOScanReport(ScanState scanState, int nbScannedItems, int nbItemsToScan, List<DOScanStageReport> stageReports){
 		setScanState(scanState);
 		setNbScannedItems(nbScannedItems);
 		setNbItemsToScan(nbItemsToScan);
+		setStageReports(stageReports);
 	}
 
 	public void setScanState(ScanState scanState) {
@@ -59,4 +68,15 @@ public class DOScanReport {
 	public int getNbItemsToScan() {
 	    return nbItemsToScan;
     }
+
+	public void setStageReports(List<DOScanStageReport> stageReports) {
+	    this.stageReports = stageReports;
+    }
+
+	/**
+	 * @return the progress of each stage of the scanner, in pipeline order
+	 */
+	public List<DOScanStageReport> getStageReports() {
+	    return stageReports;
+    }
 }
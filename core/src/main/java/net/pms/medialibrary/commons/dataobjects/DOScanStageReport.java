@@ -0,0 +1,89 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.commons.dataobjects;
+
+/**
+ * Progress of one stage of the file scanner pipeline.
+ */
+public class DOScanStageReport {
+	private String name;
+	private int nbThreads;
+	private long nbProcessedItems;
+	private int queueDepth;
+	private double itemsPerSecond;
+	
+	public DOScanStageReport(String name, int nbThreads, long nbProcessedItems, int queueDepth, double itemsPerSecond){
+		setName(name);
+		setNbThreads(nbThreads);
+		setNbProcessedItems(nbProcessedItems);
+		setQueueDepth(queueDepth);
+		setItemsPerSecond(itemsPerSecond);
+	}
+
+	public void setName(String name) {
+	    this.name = name;
+    }
+
+	public String getName() {
+	    return name;
+    }
+
+	public void setNbThreads(int nbThreads) {
+	    this.nbThreads = nbThreads;
+    }
+
+	public int getNbThreads() {
+	    return nbThreads;
+    }
+
+	public void setNbProcessedItems(long nbProcessedItems) {
+	    this.nbProcessedItems = nbProcessedItems;
+    }
+
+	public long getNbProcessedItems() {
+	    return nbProcessedItems;
+    }
+
+	public void setQueueDepth(int queueDepth) {
+	    this.queueDepth = queueDepth;
+    }
+
+	/**
+	 * @return the number of items waiting to be processed by the stage
+	 */
+	public int getQueueDepth() {
+	    return queueDepth;
+    }
+
+	public void setItemsPerSecond(double itemsPerSecond) {
+	    this.itemsPerSecond = itemsPerSecond;
+    }
+
+	/**
+	 * @return the number of items processed per second since the scan started
+	 */
+	public double getItemsPerSecond() {
+	    return itemsPerSecond;
+    }
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d processed (%.1f/s), %d queued, %d threads", name, nbProcessedItems, itemsPerSecond, queueDepth, nbThreads);
+	}
+}
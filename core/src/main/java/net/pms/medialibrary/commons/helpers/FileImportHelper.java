@@ -69,6 +69,7 @@ import net.pms.formats.RAW;
 import net.pms.formats.TIF;
 import net.pms.medialibrary.commons.MediaLibraryConfiguration;
 import net.pms.medialibrary.commons.dataobjects.DOAudioFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOBatchWriteResult;
 import net.pms.medialibrary.commons.dataobjects.DOFileImportTemplate;
 import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
 import net.pms.medialibrary.commons.dataobjects.DOFileScannerEngineConfiguration;
@@ -246,12 +247,17 @@ public class FileImportHelper {
 	 * @param fileInfo the video that will be updated witch additional information
 	 */
 	private static void updateFileInfosInternal(DOFileImportTemplate importConfig, List<DOFileInfo> fileInfos, IProgress callback){
+		int batchSize = PMS.getConfiguration().getLibraryScanWriteBatchSize();
+		List<DOFileInfo> batch = new ArrayList<DOFileInfo>();
 		int nbFilesProcessed = 0;
 		for(DOFileInfo fileInfo : fileInfos) {
 			updateFileInfo(importConfig, (DOVideoFileInfo) fileInfo);
+			batch.add(fileInfo);
 			
-			//update the DB
-			MediaLibraryStorage.getInstance().updateFileInfo(fileInfo);
+			//update the DB once the batch is full
+			if(batch.size() >= batchSize) {
+				writeFileInfos(batch);
+			}
 			
 			if(callback != null) {
 				callback.reportProgress(100 * nbFilesProcessed / fileInfos.size());
@@ -259,12 +265,29 @@ public class FileImportHelper {
 			
 			nbFilesProcessed++;
 		}
+		writeFileInfos(batch);
 		
 		if(callback != null) {
 			callback.workComplete();
 		}		
 	}
 	
+	/**
+	 * Writes the file infos to the DB within one transaction and clears the list
+	 * @param fileInfos the file infos to write
+	 */
+	private static void writeFileInfos(List<DOFileInfo> fileInfos) {
+		if(fileInfos.isEmpty()) {
+			return;
+		}
+		
+		DOBatchWriteResult result = MediaLibraryStorage.getInstance().insertOrUpdateFileInfos(fileInfos);
+		for(String filePath : result.getFailedFilePaths()) {
+			log.error(String.format("Failed to update file info for file='%s'", filePath), result.getFailure(filePath));
+		}
+		fileInfos.clear();
+	}
+	
 	/**
 	 * The file info object will be updated according to the plugin
 	 *
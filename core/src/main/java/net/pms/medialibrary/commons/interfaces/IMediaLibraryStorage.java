@@ -18,12 +18,17 @@
  */
 package net.pms.medialibrary.commons.interfaces;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import net.pms.dlna.search.SearchEntry;
+import net.pms.medialibrary.commons.dataobjects.DOBatchWriteResult;
 import net.pms.medialibrary.commons.dataobjects.DOFileImportTemplate;
 import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOFileState;
 import net.pms.medialibrary.commons.dataobjects.DOFilter;
 import net.pms.medialibrary.commons.dataobjects.DOFileEntryFolder;
 import net.pms.medialibrary.commons.dataobjects.DOFolder;
@@ -66,6 +71,7 @@ public interface IMediaLibraryStorage {
 	void insertFileInfo(DOFileInfo fileInfo);
 	void updateFileInfo(DOFileInfo fileInfo);
 	void insertOrUpdateFileInfo(DOFileInfo fileInfo);
+	DOBatchWriteResult insertOrUpdateFileInfos(Collection<? extends DOFileInfo> fileInfos);
 	void deleteFileInfoByFilePath(String filePath);
 	Date getFileInfoLastUpdated(String fileName);
 	long getRootFolderId();
@@ -77,6 +83,7 @@ public interface IMediaLibraryStorage {
 	List<String> getTagValues(String tagName, boolean isAscending, int minOccurences);
 	void updateFilePath(String folderPath, String oldFileName, String newFileName);
 	boolean isFileImported(String filePath);
+	Map<String, Map<String, DOFileState>> getFileStates(String folderPath, boolean includeSubFolders);
 	
 	HashMap<FileType, Integer> getFileCountRequiringUpdate();
 	int getFileCountRequiringUpdate(FileType fileType, int currentFileVersion);
@@ -85,6 +92,8 @@ public interface IMediaLibraryStorage {
 	//VideoFileInfo
 	void deleteAllVideos();
 	List<DOVideoFileInfo> getVideoFileInfo(DOFilter filter, boolean sortAscending, ConditionType sortField, int maxResults, SortOption sortOption, boolean onlyActive);
+	List<DOVideoFileInfo> getVideoFileInfo(DOFilter filter, boolean sortAscending, ConditionType sortField, int startIndex, int maxResults, SortOption sortOption, boolean onlyActive);
+	int getVideoFileInfoCount(DOFilter filter, boolean onlyActive);
 	List<String> getVideoProperties(ConditionType conditionType, boolean isAscending, int minOccurences);
 	int getFilteredVideoCount(DOFilter filter);
 	int getVideoCount();	
@@ -131,4 +140,7 @@ public interface IMediaLibraryStorage {
 	//Quick Tags
 	void setQuickTagEntries(List<DOQuickTagEntry> quickTagEntries);
 	List<DOQuickTagEntry> getQuickTagEntries();
+	
+	//Search
+	List<SearchEntry> getSearchEntries();
 }
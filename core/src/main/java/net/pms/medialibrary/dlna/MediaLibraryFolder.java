@@ -21,11 +21,15 @@ package net.pms.medialibrary.dlna;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.pms.PMS;
+import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.CueFolder;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.DVDISOFile;
@@ -42,6 +46,7 @@ import net.pms.medialibrary.commons.dataobjects.DOVideoFileInfo;
 import net.pms.medialibrary.commons.dataobjects.FileDisplayProperties;
 import net.pms.medialibrary.commons.enumarations.FileDisplayType;
 import net.pms.medialibrary.commons.enumarations.FileType;
+import net.pms.medialibrary.commons.enumarations.SortOption;
 import net.pms.medialibrary.storage.MediaLibraryStorage;
 
 /**
@@ -49,8 +54,43 @@ import net.pms.medialibrary.storage.MediaLibraryStorage;
  */
 public class MediaLibraryFolder extends VirtualFolder {
 	private static final Logger log = LoggerFactory.getLogger(MediaLibraryFolder.class);
+	private static final int MAX_FILE_WINDOW_SIZE = 500;
+	private static final int MAX_LOADED_FILES = 16;
+	private static final String FILE_ID_PREFIX = "f";
 	private DOMediaLibraryFolder folder;
 	private boolean isUpdating = false;
+	
+	/**
+	 * When the files are loaded by pages, the children are the child folders followed by
+	 * the files of the window starting at the file index fileWindowStart. The window holds
+	 * null for the files which haven't been added as children.
+	 */
+	private boolean isPaged = false;
+	private int nbFiles = 0;
+	private int nbFileNodes = 0;
+	private int fileWindowStart = 0;
+	private final List<DLNAResource> fileWindow = new ArrayList<DLNAResource>();
+
+	/**
+	 * The file nodes loaded by pages get the ID FILE_ID_PREFIX followed by the index of the
+	 * file, which doesn't change when the window moves. A file requested by its ID once it has
+	 * left the window, e.g. to be played, is loaded on its own and kept in loadedFiles.
+	 */
+	private int loadingFileIndex = -1;
+	private final Map<Integer, DLNAResource> loadedFiles = new LinkedHashMap<Integer, DLNAResource>(16, 0.75f, true) {
+		private static final long serialVersionUID = -6374318270158127392L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, DLNAResource> eldest) {
+			return size() > MAX_LOADED_FILES;
+		}
+	};
+	
+	/**
+	 * The generations of the {@link MediaLibraryFolderCache} the children have been refreshed with
+	 */
+	private long folderGeneration = -1;
+	private long fileGeneration = -1;
 
 	/**
 	 * Instantiates a new media library folder.
@@ -68,7 +108,17 @@ public class MediaLibraryFolder extends VirtualFolder {
 	 */
 	@Override
 	public boolean isRefreshNeeded() {
-		return true;
+		return isChildrenRefreshNeeded();
+	}
+	
+	/**
+	 * Checks if the folders or files of the library changed since the children have been refreshed.
+	 *
+	 * @return true if the children have to be refreshed
+	 */
+	private boolean isChildrenRefreshNeeded() {
+		MediaLibraryFolderCache cache = MediaLibraryFolderCache.getInstance();
+		return cache.getFolderGeneration() != folderGeneration || cache.getFileGeneration() != fileGeneration;
 	}
 	
 	/* (non-Javadoc)
@@ -113,12 +163,19 @@ public class MediaLibraryFolder extends VirtualFolder {
 	 */
 	@Override
 	public boolean refreshChildren() {
-		if (isUpdating) return false;
+		if (isUpdating || !isChildrenRefreshNeeded()) return false;
 		isUpdating = true;
 		
 		if(log.isDebugEnabled()) log.debug(String.format("Start refreshing children for folder '%s' (%s)", getName(), getId()));
 
-		updateFolder();
+		// read the generations first, a change happening during the refresh will trigger another one
+		MediaLibraryFolderCache cache = MediaLibraryFolderCache.getInstance();
+		long currentFolderGeneration = cache.getFolderGeneration();
+		long currentFileGeneration = cache.getFileGeneration();
+		if (currentFolderGeneration != folderGeneration) {
+			updateFolder();
+		}
+		boolean paged = isPagingEnabled();
 
 		FileDisplayProperties fdp = getFolder().getDisplayProperties();
 		short fileIndex = 0;
@@ -172,8 +229,8 @@ public class MediaLibraryFolder extends VirtualFolder {
 		}
 
 		List<DOFileInfo> files = new ArrayList<DOFileInfo>();
-		if(getFolder().isDisplayItems() && getFolder().getFileType() == FileType.VIDEO){
-			List<DOVideoFileInfo> videoFiles = MediaLibraryStorage.getInstance().getVideoFileInfo(getFolder().getInheritedFilter(), fdp.isSortAscending(), fdp.getSortType(), folder.getMaxFiles(), fdp.getSortOption(), true);
+		if(!paged && getFolder().isDisplayItems() && getFolder().getFileType() == FileType.VIDEO){
+			List<DOVideoFileInfo> videoFiles = cache.getVideoFileInfo(getFolder().getId(), getFolder().getInheritedFilter(), fdp.isSortAscending(), fdp.getSortType(), folder.getMaxFiles(), fdp.getSortOption());
 			files = Arrays.asList(videoFiles.toArray(new DOFileInfo[videoFiles.size()]));
 		}
 		
@@ -227,6 +284,21 @@ public class MediaLibraryFolder extends VirtualFolder {
 			}
 		}
 
+		// the files of the window have been removed with the other nodes, the pages
+		// requested by the renderers will be loaded again
+		fileWindow.clear();
+		fileWindowStart = 0;
+		nbFileNodes = 0;
+		loadedFiles.clear();
+		isPaged = paged;
+		int newNbFiles = paged ? countFiles() : 0;
+		if (newNbFiles != nbFiles) {
+			nbFiles = newNbFiles;
+			nodeRefreshed = true;
+		}
+
+		folderGeneration = currentFolderGeneration;
+		fileGeneration = currentFileGeneration;
 		isUpdating = false;
 		
 		if(log.isDebugEnabled()) log.debug(String.format("Finished refreshing children for folder '%s' (%s). Refreshed=%s", getName(), getId(), nodeRefreshed));
@@ -234,12 +306,266 @@ public class MediaLibraryFolder extends VirtualFolder {
 		return nodeRefreshed;
 	}
 	
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.DLNAResource#childrenNumber()
+	 */
+	@Override
+	public int childrenNumber() {
+		if (isPaged) {
+			return getChildren().size() - nbFileNodes + nbFiles;
+		}
+		return super.childrenNumber();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.DLNAResource#getChildrenRange(int, int)
+	 */
+	@Override
+	protected List<DLNAResource> getChildrenRange(int start, int count) {
+		lockChildren();
+		try {
+			if (!isPaged) {
+				return super.getChildrenRange(start, count);
+			}
+
+			int nbFolderNodes = getChildren().size() - nbFileNodes;
+			int end = nbFolderNodes + nbFiles;
+			if (count > 0) {
+				end = Math.min(start + count, end);
+			}
+
+			List<DLNAResource> res = new ArrayList<DLNAResource>();
+			if (start >= end) {
+				return res;
+			}
+			if (end > nbFolderNodes) {
+				loadFileWindow(Math.max(start - nbFolderNodes, 0), end - nbFolderNodes);
+			}
+
+			for (int i = start; i < end; i++) {
+				if (i < nbFolderNodes) {
+					res.add(getChildren().get(i));
+				} else {
+					int windowIndex = i - nbFolderNodes - fileWindowStart;
+					if (windowIndex >= 0 && windowIndex < fileWindow.size() && fileWindow.get(windowIndex) != null) {
+						res.add(fileWindow.get(windowIndex));
+					}
+				}
+			}
+			return res;
+		} finally {
+			unlockChildren();
+		}
+	}
+
+	/**
+	 * Checks if the files of the folder can be loaded by pages. Folders sorted
+	 * randomly have to load all their files to keep the same order between pages.
+	 *
+	 * @return true if the files can be loaded by pages
+	 */
+	boolean isPagingEnabled() {
+		return PMS.getConfiguration().isLibraryFolderPaging()
+				&& MediaLibraryConfiguration.getInstance().isMediaLibraryEnabled()
+				&& getFolder().isDisplayItems()
+				&& getFolder().getFileType() == FileType.VIDEO
+				&& getFolder().getDisplayProperties().getSortOption() != SortOption.Random;
+	}
+
+	/**
+	 * Counts the files displayed in the folder.
+	 *
+	 * @return the number of files
+	 */
+	int countFiles() {
+		int count = MediaLibraryFolderCache.getInstance().getVideoFileInfoCount(getFolder().getId(), getFolder().getInheritedFilter());
+		if (count < 0) {
+			return 0;
+		}
+		if (getFolder().getMaxFiles() > 0) {
+			count = Math.min(count, getFolder().getMaxFiles());
+		}
+		return count;
+	}
+
+	/**
+	 * Makes sure the files between the given indexes are part of the window,
+	 * reading a few more files ahead for the next page. A window following the
+	 * requested files grows, up to {@link #MAX_FILE_WINDOW_SIZE} files, in
+	 * order to keep the files of the previous pages available; otherwise it is
+	 * replaced.
+	 *
+	 * @param first the index of the first file
+	 * @param last the index after the last file
+	 */
+	private void loadFileWindow(int first, int last) {
+		int windowEnd = fileWindowStart + fileWindow.size();
+		if (first >= fileWindowStart && last <= windowEnd) {
+			return;
+		}
+
+		int readEnd = Math.min(last + PMS.getConfiguration().getLibraryFolderReadAhead(), nbFiles);
+		if (first >= fileWindowStart && first <= windowEnd) {
+			addFiles(windowEnd, readEnd);
+			while (fileWindow.size() > MAX_FILE_WINDOW_SIZE && fileWindowStart < first) {
+				removeFirstFile();
+			}
+		} else {
+			while (!fileWindow.isEmpty()) {
+				removeFirstFile();
+			}
+			fileWindowStart = first;
+			addFiles(first, readEnd);
+		}
+	}
+
+	/**
+	 * Adds the files between the given indexes at the end of the window.
+	 *
+	 * @param from the index of the first file
+	 * @param to the index after the last file
+	 */
+	private void addFiles(int from, int to) {
+		if (to <= from) {
+			return;
+		}
+
+		if(log.isDebugEnabled()) log.debug(String.format("Loading files %s to %s of folder '%s' (%s)", from, to, getName(), getId()));
+		List<DOVideoFileInfo> videoFiles = getVideoFiles(from, to - from);
+		for (int i = 0; i < videoFiles.size(); i++) {
+			int nbChildren = getChildren().size();
+			addFile(videoFiles.get(i), from + i);
+			if (getChildren().size() > nbChildren) {
+				fileWindow.add(getChildren().get(nbChildren));
+				nbFileNodes++;
+			} else {
+				fileWindow.add(null);
+			}
+		}
+	}
+
+	/**
+	 * Gets a page of the files displayed in the folder.
+	 *
+	 * @param startIndex the index of the first file
+	 * @param maxResults the maximum number of files
+	 * @return the files
+	 */
+	List<DOVideoFileInfo> getVideoFiles(int startIndex, int maxResults) {
+		FileDisplayProperties fdp = getFolder().getDisplayProperties();
+		return MediaLibraryFolderCache.getInstance().getVideoFileInfo(getFolder().getId(), getFolder().getInheritedFilter(), fdp.isSortAscending(), fdp.getSortType(), startIndex, maxResults, fdp.getSortOption());
+	}
+
+	/**
+	 * Adds the node of a file loaded by pages, with an ID based on the index of the file.
+	 *
+	 * @param fileInfo the file
+	 * @param fileIndex the index of the file
+	 */
+	private void addFile(DOFileInfo fileInfo, int fileIndex) {
+		loadingFileIndex = fileIndex;
+		try {
+			manageFile(fileInfo);
+		} finally {
+			loadingFileIndex = -1;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.DLNAResource#createChildId(net.pms.dlna.DLNAResource)
+	 */
+	@Override
+	protected String createChildId(DLNAResource child) {
+		if (loadingFileIndex >= 0) {
+			return FILE_ID_PREFIX + loadingFileIndex;
+		}
+		return super.createChildId(child);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.DLNAResource#search(java.lang.String, int, net.pms.configuration.RendererConfiguration)
+	 */
+	@Override
+	public DLNAResource search(String searchId, int count, RendererConfiguration renderer) {
+		DLNAResource res = super.search(searchId, count, renderer);
+		if (res != null || getId() == null || searchId == null) {
+			return res;
+		}
+
+		// the file may have left the window since the renderer browsed it
+		String[] indexPath = searchId.split("\\$", 2);
+		if (indexPath.length < 2 || !getId().equals(indexPath[0]) || !indexPath[1].startsWith(FILE_ID_PREFIX)) {
+			return null;
+		}
+
+		int fileIndex;
+		try {
+			fileIndex = Integer.parseInt(indexPath[1].split("\\$", 2)[0].substring(FILE_ID_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+		DLNAResource fileNode = getFileNode(fileIndex);
+		return fileNode == null ? null : fileNode.search(indexPath[1], count, renderer);
+	}
+
+	/**
+	 * Gets the node of a file loaded by pages, loading the file on its own if it isn't part of
+	 * the window. Such a node isn't added to the children.
+	 *
+	 * @param fileIndex the index of the file
+	 * @return the node, or null if the file doesn't exist or can't be displayed
+	 */
+	private DLNAResource getFileNode(int fileIndex) {
+		lockChildren();
+		try {
+			if (!isPaged || fileIndex < 0 || fileIndex >= nbFiles) {
+				return null;
+			}
+
+			int windowIndex = fileIndex - fileWindowStart;
+			if (windowIndex >= 0 && windowIndex < fileWindow.size()) {
+				return fileWindow.get(windowIndex);
+			}
+			if (loadedFiles.containsKey(fileIndex)) {
+				return loadedFiles.get(fileIndex);
+			}
+
+			if(log.isDebugEnabled()) log.debug(String.format("Loading file %s of folder '%s' (%s)", fileIndex, getName(), getId()));
+			DLNAResource fileNode = null;
+			List<DOVideoFileInfo> videoFiles = getVideoFiles(fileIndex, 1);
+			if (!videoFiles.isEmpty()) {
+				int nbChildren = getChildren().size();
+				addFile(videoFiles.get(0), fileIndex);
+				if (getChildren().size() > nbChildren) {
+					fileNode = getChildren().remove(nbChildren);
+				}
+			}
+			loadedFiles.put(fileIndex, fileNode);
+			return fileNode;
+		} finally {
+			unlockChildren();
+		}
+	}
+
+	/**
+	 * Removes the first file of the window.
+	 */
+	private void removeFirstFile() {
+		DLNAResource fileNode = fileWindow.remove(0);
+		fileWindowStart++;
+		if (fileNode != null) {
+			getChildren().remove(getChildren().size() - nbFileNodes);
+			nbFileNodes--;
+		}
+	}
+
 	/**
 	 * This method decides if a zip, rar, iso, m3u or cue folder should be added
 	 *
 	 * @param fileInfo the file info to check
 	 */
-	private void manageFile(DOFileInfo fileInfo) {
+	void manageFile(DOFileInfo fileInfo) {
 		File f = new File(fileInfo.getFilePath());
 		if ((f.isFile() || f.isDirectory()) && !f.isHidden()) {
 			DLNAResource fileToAdd = new MediaLibraryRealFile(fileInfo, getFolder().getDisplayProperties(), getFolder().getFileType());
@@ -272,7 +598,7 @@ public class MediaLibraryFolder extends VirtualFolder {
 	 *
 	 * @return true if the folder has been updated
 	 */
-	private void updateFolder() {
+	void updateFolder() {
 		DOMediaLibraryFolder newFolder = MediaLibraryStorage.getInstance().getMediaLibraryFolder(getFolder().getId(), MediaLibraryStorage.ALL_CHILDREN);
 		if(getFolder().getParentFolder() != null
 				&& getFolder().getParentFolder().getChildFolders() != null
@@ -0,0 +1,290 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.dlna;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.pms.medialibrary.commons.dataobjects.DOFilter;
+import net.pms.medialibrary.commons.dataobjects.DOVideoFileInfo;
+import net.pms.medialibrary.commons.enumarations.ConditionType;
+import net.pms.medialibrary.commons.enumarations.SortOption;
+import net.pms.medialibrary.storage.MediaLibraryStorage;
+import net.pms.notifications.NotificationCenter;
+import net.pms.notifications.NotificationSubscriber;
+import net.pms.notifications.types.DBEvent;
+
+/**
+ * Caches the files displayed by the {@link MediaLibraryFolder}s, so that
+ * browsing a folder doesn't query the library again as long as it hasn't
+ * changed.<br>
+ * The cache listens to the {@link DBEvent}s posted by the storage. Every
+ * event changing the files increments the file generation and drops the
+ * cached results; events changing the folders increment the folder
+ * generation. The folders compare the generations with the ones they have
+ * been refreshed with to know if they have to be refreshed.
+ */
+public class MediaLibraryFolderCache implements NotificationSubscriber<DBEvent> {
+	private static final Logger log = LoggerFactory.getLogger(MediaLibraryFolderCache.class);
+	private static final int MAX_ENTRIES = 256;
+	private static MediaLibraryFolderCache instance;
+
+	private final Map<QueryKey, List<DOVideoFileInfo>> videoFileInfos;
+	private final Map<QueryKey, Integer> videoFileInfoCounts;
+	private volatile long fileGeneration;
+	private volatile long folderGeneration;
+	private int nbHits;
+	private int nbMisses;
+
+	MediaLibraryFolderCache() {
+		videoFileInfos = new LinkedHashMap<QueryKey, List<DOVideoFileInfo>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 4125432618349521834L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<QueryKey, List<DOVideoFileInfo>> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+		videoFileInfoCounts = new LinkedHashMap<QueryKey, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = -3052839624150617492L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<QueryKey, Integer> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+
+	public static synchronized MediaLibraryFolderCache getInstance() {
+		if (instance == null) {
+			instance = new MediaLibraryFolderCache();
+			NotificationCenter.getInstance(DBEvent.class).subscribe(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the videos of a folder from the cache, or from the storage if they
+	 * aren't cached.
+	 *
+	 * @param folderId the id of the folder
+	 * @param filter the inherited filter of the folder
+	 * @param sortAscending the sort direction
+	 * @param sortField the field to sort by
+	 * @param maxResults the maximum number of files
+	 * @param sortOption the sort option
+	 * @return the videos, which must not be modified
+	 */
+	public List<DOVideoFileInfo> getVideoFileInfo(long folderId, DOFilter filter, boolean sortAscending, ConditionType sortField, int maxResults, SortOption sortOption) {
+		return getVideoFileInfo(folderId, filter, sortAscending, sortField, 0, maxResults, sortOption);
+	}
+
+	/**
+	 * Gets a page of the videos of a folder from the cache, or from the
+	 * storage if it isn't cached.
+	 *
+	 * @param folderId the id of the folder
+	 * @param filter the inherited filter of the folder
+	 * @param sortAscending the sort direction
+	 * @param sortField the field to sort by
+	 * @param startIndex the index of the first file to return
+	 * @param maxResults the maximum number of files
+	 * @param sortOption the sort option
+	 * @return the videos, which must not be modified
+	 */
+	public List<DOVideoFileInfo> getVideoFileInfo(long folderId, DOFilter filter, boolean sortAscending, ConditionType sortField, int startIndex, int maxResults, SortOption sortOption) {
+		QueryKey key = new QueryKey(folderId, filter, sortAscending, sortField, startIndex, maxResults, sortOption);
+		long generation;
+		synchronized (videoFileInfos) {
+			List<DOVideoFileInfo> res = videoFileInfos.get(key);
+			if (res != null) {
+				nbHits++;
+				return res;
+			}
+			nbMisses++;
+			generation = fileGeneration;
+		}
+
+		List<DOVideoFileInfo> res = MediaLibraryStorage.getInstance().getVideoFileInfo(filter, sortAscending, sortField, startIndex, maxResults, sortOption, true);
+		if (res == null) {
+			// the query failed, try again next time
+			return Collections.emptyList();
+		}
+		res = Collections.unmodifiableList(res);
+
+		synchronized (videoFileInfos) {
+			// don't cache results which might have been read before a change
+			if (generation == fileGeneration) {
+				videoFileInfos.put(key, res);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the number of videos of a folder from the cache, or from the
+	 * storage if it isn't cached.
+	 *
+	 * @param folderId the id of the folder
+	 * @param filter the inherited filter of the folder
+	 * @return the number of videos, or -1 if they couldn't be counted
+	 */
+	public int getVideoFileInfoCount(long folderId, DOFilter filter) {
+		QueryKey key = new QueryKey(folderId, filter, true, null, 0, 0, null);
+		long generation;
+		synchronized (videoFileInfos) {
+			Integer res = videoFileInfoCounts.get(key);
+			if (res != null) {
+				nbHits++;
+				return res;
+			}
+			nbMisses++;
+			generation = fileGeneration;
+		}
+
+		int res = MediaLibraryStorage.getInstance().getVideoFileInfoCount(filter, true);
+		if (res >= 0) {
+			synchronized (videoFileInfos) {
+				if (generation == fileGeneration) {
+					videoFileInfoCounts.put(key, res);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return a number which changes every time files of the library change
+	 */
+	public long getFileGeneration() {
+		return fileGeneration;
+	}
+
+	/**
+	 * @return a number which changes every time media library folders change
+	 */
+	public long getFolderGeneration() {
+		return folderGeneration;
+	}
+
+	int getNbHits() {
+		synchronized (videoFileInfos) {
+			return nbHits;
+		}
+	}
+
+	int getNbMisses() {
+		synchronized (videoFileInfos) {
+			return nbMisses;
+		}
+	}
+
+	/**
+	 * Drops the cached files.
+	 */
+	public void invalidateFiles() {
+		synchronized (videoFileInfos) {
+			fileGeneration++;
+			videoFileInfos.clear();
+			videoFileInfoCounts.clear();
+		}
+	}
+
+	/**
+	 * Marks the folders as changed.
+	 */
+	public void invalidateFolders() {
+		synchronized (videoFileInfos) {
+			folderGeneration++;
+		}
+	}
+
+	@Override
+	public void onMessage(DBEvent obj) {
+		if (log.isDebugEnabled()) log.debug(String.format("Invalidating media library folder cache after %s event", obj.getType()));
+		switch (obj.getType()) {
+		case FolderChanged:
+			invalidateFolders();
+			break;
+		case Reset:
+			invalidateFolders();
+			invalidateFiles();
+			break;
+		default:
+			invalidateFiles();
+			break;
+		}
+	}
+
+	/**
+	 * Identifies a query of the files of a folder.
+	 */
+	private static class QueryKey {
+		private final long folderId;
+		private final DOFilter filter;
+		private final boolean sortAscending;
+		private final ConditionType sortField;
+		private final int startIndex;
+		private final int maxResults;
+		private final SortOption sortOption;
+
+		private QueryKey(long folderId, DOFilter filter, boolean sortAscending, ConditionType sortField, int startIndex, int maxResults, SortOption sortOption) {
+			this.folderId = folderId;
+			this.filter = filter;
+			this.sortAscending = sortAscending;
+			this.sortField = sortField;
+			this.startIndex = startIndex;
+			this.maxResults = maxResults;
+			this.sortOption = sortOption;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof QueryKey)) {
+				return false;
+			}
+
+			QueryKey compObj = (QueryKey) obj;
+			return folderId == compObj.folderId
+					&& filter.equals(compObj.filter)
+					&& sortAscending == compObj.sortAscending
+					&& sortField == compObj.sortField
+					&& startIndex == compObj.startIndex
+					&& maxResults == compObj.maxResults
+					&& sortOption == compObj.sortOption;
+		}
+
+		@Override
+		public int hashCode() {
+			int hashCode = 24 + (int) (folderId ^ (folderId >>> 32));
+			hashCode *= 24 + filter.getEquation().hashCode();
+			hashCode *= 24 + (sortAscending ? 1 : 0);
+			hashCode *= 24 + (sortField == null ? 0 : sortField.hashCode());
+			hashCode *= 24 + startIndex;
+			hashCode *= 24 + maxResults;
+			hashCode *= 24 + (sortOption == null ? 0 : sortOption.hashCode());
+			return hashCode;
+		}
+	}
+}
@@ -28,6 +28,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.InputFile;
 import net.pms.dlna.RealFile;
 import net.pms.medialibrary.commons.MediaLibraryConfiguration;
@@ -218,6 +219,15 @@ public class MediaLibraryRealFile extends RealFile {
 		}
 	}
 
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.RealFile#getThumbnailFile(net.pms.configuration.RendererConfiguration)
+	 */
+	@Override
+	public File getThumbnailFile(RendererConfiguration renderer) {
+		// The thumbnail priorities are applied by getThumbnailInputStream
+		return null;
+	}
+
 	/* (non-Javadoc)
 	 * @see net.pms.dlna.RealFile#getThumbnailInputStream()
 	 */
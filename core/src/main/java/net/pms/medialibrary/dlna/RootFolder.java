@@ -18,7 +18,9 @@
  */
 package net.pms.medialibrary.dlna;
 
+import net.pms.configuration.RendererConfiguration;
 import net.pms.dlna.DLNAResource;
+import net.pms.dlna.search.SearchResultsFolder;
 import net.pms.external.AdditionalFolderAtRoot;
 import net.pms.external.AdditionalFoldersAtRoot;
 import net.pms.medialibrary.commons.dataobjects.DOMediaLibraryFolder;
@@ -31,6 +33,7 @@ import net.pms.plugins.PluginsFactory;
 @SuppressWarnings("deprecation")
 public class RootFolder extends MediaLibraryFolder{
 	private MediaLibraryFolder rootFolder;
+	private SearchResultsFolder searchResultsFolder;
 	
 	/**
 	 * Instantiates a new root folder.
@@ -49,6 +52,30 @@ public class RootFolder extends MediaLibraryFolder{
 		return rootFolder.getFolder();
 	}
 	
+	/**
+	 * Gets the hidden folder holding the items returned by searches.
+	 *
+	 * @return the search results folder
+	 */
+	public synchronized SearchResultsFolder getSearchResultsFolder() {
+		if (searchResultsFolder == null) {
+			searchResultsFolder = new SearchResultsFolder(this);
+		}
+		return searchResultsFolder;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.pms.dlna.DLNAResource#search(java.lang.String, int, net.pms.configuration.RendererConfiguration)
+	 */
+	@Override
+	public DLNAResource search(String searchId, int count, RendererConfiguration renderer) {
+		// the search results folder is not a child, look it up directly
+		if (searchId != null && searchId.startsWith(getId() + '$' + SearchResultsFolder.ID)) {
+			return getSearchResultsFolder().search(searchId.substring(getId().length() + 1), count, renderer);
+		}
+		return super.search(searchId, count, renderer);
+	}
+
 	/* (non-Javadoc)
 	 * @see net.pms.medialibrary.dlna.MediaLibraryFolder#isRefreshNeeded()
 	 */
@@ -71,10 +98,13 @@ public class RootFolder extends MediaLibraryFolder{
 	 */
 	@Override
 	public boolean refreshChildren() {
-		super.refreshChildren();
-		addAdditionalFoldersAtRoot();
+		// the additional folders are removed by the refresh, if one happened
+		if (super.refreshChildren()) {
+			addAdditionalFoldersAtRoot();
+			return true;
+		}
 		
-		return true;
+		return false;
 	}
 	
 	/**
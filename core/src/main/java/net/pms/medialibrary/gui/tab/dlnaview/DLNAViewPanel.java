@@ -63,8 +63,9 @@ public class DLNAViewPanel extends JPanel {
 			
 			@Override
 			public void onMessage(DBEvent obj) {
-				if(obj.getType() == Type.Reset || cbDisplayItems.isSelected()) {
+				if(obj.getType() == Type.Reset || (cbDisplayItems.isSelected() && obj.getType() != Type.FolderChanged)) {
 					// refresh the tree if a DB reset has been performed or if files are being displayed
+					// folder changes are made by this panel and are already displayed
 					initializeTree();
 					applyLayout();
 				}
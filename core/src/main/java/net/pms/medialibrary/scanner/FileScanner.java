@@ -21,18 +21,32 @@ package net.pms.medialibrary.scanner;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.pms.Messages;
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.medialibrary.commons.dataobjects.DOBatchWriteResult;
 import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOFileState;
 import net.pms.medialibrary.commons.dataobjects.DOManagedFile;
 import net.pms.medialibrary.commons.dataobjects.DOScanReport;
+import net.pms.medialibrary.commons.dataobjects.DOScanStageReport;
 import net.pms.medialibrary.commons.enumarations.FileImportResult;
 import net.pms.medialibrary.commons.enumarations.FileType;
 import net.pms.medialibrary.commons.enumarations.ScanState;
@@ -41,17 +55,55 @@ import net.pms.medialibrary.commons.interfaces.IFileScannerEventListener;
 import net.pms.medialibrary.commons.interfaces.IMediaLibraryStorage;
 import net.pms.medialibrary.storage.MediaLibraryStorage;
 
+/**
+ * Imports files into the media library. Files go through a pipeline of
+ * stages, each having its own threads, connected by queues:
+ * <ol>
+ * <li>crawl: lists the folders to scan</li>
+ * <li>check: skips the files which have been updated recently</li>
+ * <li>parse: collects the technical properties of the files</li>
+ * <li>plugin: imports properties with the configured plugins</li>
+ * <li>write: inserts or updates the files in the database, in batches</li>
+ * </ol>
+ * The queues in front of the parse, plugin and write stages are bounded, so
+ * a fast stage waits for a slower one instead of piling up files in memory.
+ * The number of threads of each stage and the size of the queues are read
+ * from the configuration when a scan starts.
+ */
 public class FileScanner implements Runnable{
 	private static FileScanner instance;
 
 	private static final Logger log = LoggerFactory.getLogger(FileScanner.class);
+	private static final PmsConfiguration configuration = PMS.getConfiguration();
 	private static int nbScans = 0;
 	
-	private Queue<FileImportConfiguration> directoryPaths;
+	private final BlockingQueue<FolderItem> folderQueue;
+	private final BlockingQueue<ScanItem> checkQueue;
+	private BlockingQueue<ScanItem> parseQueue;
+	private BlockingQueue<ScanItem> pluginQueue;
+	private BlockingQueue<ScanItem> writeQueue;
+	private volatile List<Stage<?>> stages;
+	private volatile long scanStartTime;
+	private volatile boolean stagesFinished;
+	
+	/**
+	 * Number of folders and files that entered the pipeline and haven't left it yet.
+	 */
+	private final AtomicInteger nbItemsInPipeline;
+	private final AtomicInteger nbFilesAdded;
+	private final AtomicInteger nbFilesUpdated;
+	private final AtomicInteger nbFilesDeleted;
+	
+	/**
+	 * Files of the library which haven't been found yet while crawling the
+	 * folders of the current scan, by folder path and file name.
+	 */
+	private final List<Map<String, Map<String, DOFileState>>> snapshots;
+	private final Object pipelineIdle;
+	
 	private Thread scanThread;
-	private ScanState scanState = ScanState.IDLE;
-	private int nbScannedItems;
-	private int nbItemsToScan;
+	private volatile ScanState scanState = ScanState.IDLE;
+	private final Object scanStateLock;
 	private FullDataCollector dataCollector;
 	private IMediaLibraryStorage mediaLibraryStorage;
 	private Object scanThreadPause;
@@ -60,22 +112,35 @@ public class FileScanner implements Runnable{
 	public int updateIntervalDays = 5000;
 	
 	private FileScanner() {
-		directoryPaths = new ConcurrentLinkedQueue<FileImportConfiguration>();
+		folderQueue = new LinkedBlockingQueue<FolderItem>();
+		checkQueue = new LinkedBlockingQueue<ScanItem>();
+		stages = new ArrayList<Stage<?>>();
+		nbItemsInPipeline = new AtomicInteger();
+		nbFilesAdded = new AtomicInteger();
+		nbFilesUpdated = new AtomicInteger();
+		nbFilesDeleted = new AtomicInteger();
+		snapshots = new CopyOnWriteArrayList<Map<String, Map<String, DOFileState>>>();
+		pipelineIdle = new Object();
 		scanThread = new Thread(this);
-		nbScannedItems = 0;
-		nbItemsToScan = 0;
+		scanStateLock = new Object();
 		dataCollector = FullDataCollector.getInstance();
 		mediaLibraryStorage = MediaLibraryStorage.getInstance();
-		fileScannerEventListeners = new ArrayList<IFileScannerEventListener>();
+		fileScannerEventListeners = new CopyOnWriteArrayList<IFileScannerEventListener>();
 		scanThreadPause = new Object();
 	}
 	
-	private synchronized void enqueueManagedFile(FileImportConfiguration mf){
-		directoryPaths.add(mf);
+	private void enqueueManagedFolder(FolderItem folder){
+		nbItemsInPipeline.incrementAndGet();
+		folderQueue.add(folder);
+	}
+	
+	private void enqueueManagedFile(FileImportConfiguration mf){
+		enqueueManagedFile(new ScanItem(mf));
 	}
 	
-	private synchronized FileImportConfiguration dequeueImportFile(){
-		return directoryPaths.poll();
+	private void enqueueManagedFile(ScanItem item){
+		nbItemsInPipeline.incrementAndGet();
+		checkQueue.add(item);
 	}
 
 	public static synchronized FileScanner getInstance() {
@@ -86,14 +151,63 @@ public class FileScanner implements Runnable{
     }
 	
 	public DOScanReport getScanState(){
-		return new DOScanReport(scanState, nbScannedItems, nbItemsToScan);
+		List<DOScanStageReport> stageReports = new ArrayList<DOScanStageReport>();
+		double elapsedSeconds = Math.max(1, System.currentTimeMillis() - scanStartTime) / 1000.0;
+		int nbScannedItems = 0;
+		for (Stage<?> stage : stages) {
+			stageReports.add(stage.getReport(elapsedSeconds));
+			nbScannedItems = (int) stage.nbProcessed.get();
+		}
+		return new DOScanReport(scanState, nbScannedItems, nbScannedItems + nbItemsInPipeline.get(), stageReports);
 	}
 
+	/**
+	 * Scans a folder in the background. Its files, and the ones of its
+	 * sub-folders if enabled, are imported.<br>
+	 * If library_scan_snapshot is enabled, the state of all files of the
+	 * folder stored in the library is loaded at once when the scan of the
+	 * folder starts. Only the new files, the ones having a different size or
+	 * modification date and the ones which haven't been updated within
+	 * {@link #updateIntervalDays} are then imported; the files which have
+	 * been deleted are removed from the library.
+	 *
+	 * @param mFolder the folder to scan
+	 */
 	public void scanFolder(DOManagedFile mFolder) {
+		if (new File(mFolder.getPath()).isDirectory()) {
+			enqueueManagedFolder(new FolderItem(mFolder, null, true));
+			startScan();
+		}
+	}
+
+	/**
+	 * Lists a folder, queuing its files for import and its sub-folders to
+	 * be listed. If a snapshot of the folder is available, only the new and
+	 * changed files are queued and the deleted ones are removed.
+	 *
+	 * @param folder the folder to list
+	 */
+	private void crawlFolder(FolderItem folder) {
+		DOManagedFile mFolder = folder.managedFolder;
 		File folderToScan = new File(mFolder.getPath());
 		if (folderToScan.isDirectory()) {
 			net.pms.PMS.get().getFrame().setStatusLine(String.format(Messages.getString("ML.FileScanner.ScanFolder"), folderToScan.getAbsoluteFile()));
 
+			Map<String, Map<String, DOFileState>> snapshot = folder.snapshot;
+			if (folder.isRoot && configuration.isLibraryScanSnapshot()) {
+				snapshot = loadSnapshot(mFolder);
+			}
+			
+			String folderPath = getFolderPath(folderToScan);
+			Map<String, DOFileState> knownFiles = null;
+			if (snapshot != null) {
+				knownFiles = snapshot.remove(folderPath);
+				if (knownFiles == null) {
+					// none of the files of the folder is in the library
+					knownFiles = new HashMap<String, DOFileState>();
+				}
+			}
+
 			File[] childPaths = folderToScan.listFiles();
 			if(childPaths != null) {
 				for (int i = 0; i < childPaths.length; i++) {
@@ -105,69 +219,200 @@ public class FileScanner implements Runnable{
 					}
 					
 					if (currentFile.isFile()) {
+						DOFileState fileState = null;
+						if (knownFiles != null) {
+							fileState = knownFiles.remove(currentFile.getName());
+							if (fileState != null && !isChanged(currentFile, fileState)) {
+								continue;
+							}
+						}
+						
 						// Enqueue the file
 						FileImportConfiguration fileImportConfiguration = new FileImportConfiguration(currentFile.getAbsolutePath(), mFolder.getFileImportTemplate(), false, true,
 								mFolder.isPluginImportEnabled(), mFolder.isVideoEnabled(), mFolder.isAudioEnabled(), mFolder.isPicturesEnabled());
-						enqueueManagedFile(fileImportConfiguration);
-						startScan();
+						ScanItem item = new ScanItem(fileImportConfiguration);
+						if (knownFiles != null) {
+							// the snapshot tells whether the file has to be imported
+							item.isChecked = true;
+							item.isNew = fileState == null;
+						}
+						enqueueManagedFile(item);
 					} else if (currentFile.isDirectory() && mFolder.isSubFoldersEnabled()) {
 						// Scan sub-folders
 						DOManagedFile tmpFile = new DOManagedFile(mFolder.isWatchEnabled(), currentFile.toString(), 
 								mFolder.isVideoEnabled(), mFolder.isAudioEnabled(), mFolder.isPicturesEnabled(),
 								mFolder.isSubFoldersEnabled(), mFolder.isPluginImportEnabled(), mFolder.getFileImportTemplate());
-						scanFolder(tmpFile);
+						enqueueManagedFolder(new FolderItem(tmpFile, snapshot, false));
 					}
 				}
+				
+				if (knownFiles != null) {
+					deleteMissingFiles(folderPath, knownFiles.keySet());
+				}
 			} else {
 				log.debug("No children found for folder " + folderToScan.getAbsolutePath());
 			}
 		}
 	}
+
+	/**
+	 * Loads the state of the files of a managed folder stored in the library.
+	 *
+	 * @param mFolder the managed folder
+	 * @return the snapshot, or null if it couldn't be loaded
+	 */
+	private Map<String, Map<String, DOFileState>> loadSnapshot(DOManagedFile mFolder) {
+		long startTime = System.currentTimeMillis();
+		Map<String, Map<String, DOFileState>> fileStates = mediaLibraryStorage.getFileStates(getFolderPath(new File(mFolder.getPath())), mFolder.isSubFoldersEnabled());
+		if (fileStates == null) {
+			return null;
+		}
+		
+		Map<String, Map<String, DOFileState>> snapshot = new ConcurrentHashMap<String, Map<String, DOFileState>>(fileStates);
+		snapshots.add(snapshot);
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Loaded the state of the files in %s folders for %s in %s ms", snapshot.size(), mFolder.getPath(), System.currentTimeMillis() - startTime));
+		}
+		return snapshot;
+	}
+
+	private String getFolderPath(File folder) {
+		String folderPath = folder.getAbsolutePath();
+		if (!folderPath.endsWith(File.separator)) {
+			folderPath += File.separator;
+		}
+		return folderPath;
+	}
+
+	/**
+	 * Checks whether a file has to be imported again, because it has been
+	 * modified or it hasn't been updated within the configured interval.
+	 *
+	 * @param file the file
+	 * @param fileState the state of the file stored in the library
+	 * @return true if the file has to be imported
+	 */
+	private boolean isChanged(File file, DOFileState fileState) {
+		Calendar comp = Calendar.getInstance();
+		comp.add(Calendar.DATE, -updateIntervalDays);
+		return file.length() != fileState.getSize() || file.lastModified() != fileState.getDateModifiedOs()
+				|| fileState.getDateLastUpdatedDb() < comp.getTimeInMillis();
+	}
+
+	/**
+	 * Removes the files which are in the library but couldn't be found any
+	 * more in the folder.
+	 *
+	 * @param folderPath the path of the folder, ending with a file separator
+	 * @param fileNames the names of the files
+	 */
+	private void deleteMissingFiles(String folderPath, Collection<String> fileNames) {
+		for (String fileName : fileNames) {
+			String filePath = folderPath + fileName;
+			// the file might have been skipped, e.g. because it is hidden
+			if (!new File(filePath).exists()) {
+				mediaLibraryStorage.deleteFileInfoByFilePath(filePath);
+				nbFilesDeleted.incrementAndGet();
+			}
+		}
+	}
+
 	
+	/**
+	 * Imports a file on the calling thread, going through all stages of
+	 * the pipeline one after the other.
+	 *
+	 * @param importFile the file to import
+	 * @return the result of the import
+	 */
 	public FileImportResult scanFile(FileImportConfiguration importFile) {
-		FileImportResult fileImportResult = FileImportResult.Unknown;
+		if (!isUpdateRequired(importFile)) {
+			return FileImportResult.Unknown;
+		}
 
+		DOFileInfo fileInfo = null;
+		try {
+			fileInfo = dataCollector.get(importFile);
+		} catch (Throwable t) {
+			log.error("Failed to collect info for " + importFile.getPath(), t);
+		}
+
+		ScanItem item = new ScanItem(importFile);
+		item.fileInfo = fileInfo;
+		return write(Collections.singletonList(item)).get(0);
+	}
+
+	/**
+	 * Checks whether a file has to be imported. Only files which have been
+	 * updated longer ago than the configured interval are imported again.
+	 *
+	 * @param importFile the file to check
+	 * @return true if the file has to be imported
+	 */
+	private boolean isUpdateRequired(FileImportConfiguration importFile) {
 		File f = new File(importFile.getPath());
-		if (f.isFile()) {
-			// Only update files if they're older then the configured value
-			Date dateLastUpdate = mediaLibraryStorage.getFileInfoLastUpdated(f.getAbsolutePath());
-			Calendar comp = Calendar.getInstance();
-			comp.add(Calendar.DATE, -updateIntervalDays);
-			if (importFile.isForceUpdate() || dateLastUpdate.before(comp.getTime())) {
-				// retrieve file info
-				DOFileInfo fileInfo = null;
-				try {
-					fileInfo = dataCollector.get(importFile);
-				} catch (Throwable t) {
-					log.error("Failed to collect info for " + importFile.getPath(), t);
-				}
+		if (!f.isFile()) {
+			return false;
+		}
 
-				// insert file info if we were able to retrieve it
-				if (fileInfo != null) {
-					if(mediaLibraryStorage.isFileImported(fileInfo.getFilePath())) {
-						// The file has been previously imported.
-						// Get the existing file and set the new properties
-						DOFileInfo currentFileInfo = mediaLibraryStorage.getFileInfo(fileInfo.getFilePath());
-						currentFileInfo.copySetSystemPropertiesFrom(fileInfo);
-						
-						mediaLibraryStorage.updateFileInfo(currentFileInfo);
-						fileImportResult = FileImportResult.Updated;
-					} else {
-						mediaLibraryStorage.insertFileInfo(fileInfo);
-						fileImportResult = FileImportResult.Imported;
-					}
+		Date dateLastUpdate = mediaLibraryStorage.getFileInfoLastUpdated(f.getAbsolutePath());
+		Calendar comp = Calendar.getInstance();
+		comp.add(Calendar.DATE, -updateIntervalDays);
+		return importFile.isForceUpdate() || dateLastUpdate.before(comp.getTime());
+	}
 
-					for (IFileScannerEventListener l : fileScannerEventListeners) {
-						l.itemInserted(FileType.VIDEO);
-					}
-				} else {
-					log.debug("Couldn't read " + f);
-					fileImportResult = FileImportResult.Failed;
+	/**
+	 * Inserts or updates files in the database within one transaction.
+	 *
+	 * @param items the files to write, having a null file info if it couldn't be collected
+	 * @return the result of the import of each file, in the order of the items
+	 */
+	private List<FileImportResult> write(List<ScanItem> items) {
+		DOFileInfo[] writtenFileInfos = new DOFileInfo[items.size()];
+		List<DOFileInfo> fileInfos = new ArrayList<DOFileInfo>();
+		for (int i = 0; i < items.size(); i++) {
+			DOFileInfo fileInfo = items.get(i).fileInfo;
+			if (fileInfo == null) {
+				continue;
+			}
+
+			if(!items.get(i).isNew && mediaLibraryStorage.isFileImported(fileInfo.getFilePath())) {
+				// The file has been previously imported.
+				// Get the existing file and set the new properties
+				DOFileInfo currentFileInfo = mediaLibraryStorage.getFileInfo(fileInfo.getFilePath());
+				currentFileInfo.copySetSystemPropertiesFrom(fileInfo);
+				fileInfo = currentFileInfo;
+			}
+			writtenFileInfos[i] = fileInfo;
+			fileInfos.add(fileInfo);
+		}
+
+		// insert the file infos we were able to retrieve
+		DOBatchWriteResult writeResult = fileInfos.isEmpty() ? new DOBatchWriteResult() : mediaLibraryStorage.insertOrUpdateFileInfos(fileInfos);
+
+		List<FileImportResult> res = new ArrayList<FileImportResult>();
+		for (int i = 0; i < items.size(); i++) {
+			FileImportResult fileImportResult;
+			if (writtenFileInfos[i] == null) {
+				log.debug("Couldn't read " + items.get(i).importFile.getPath());
+				fileImportResult = FileImportResult.Failed;
+			} else if (writeResult.isInserted(writtenFileInfos[i].getFilePath())) {
+				fileImportResult = FileImportResult.Imported;
+			} else if (writeResult.isUpdated(writtenFileInfos[i].getFilePath())) {
+				fileImportResult = FileImportResult.Updated;
+			} else {
+				fileImportResult = FileImportResult.Failed;
+			}
+
+			if (fileImportResult != FileImportResult.Failed) {
+				for (IFileScannerEventListener l : fileScannerEventListeners) {
+					l.itemInserted(FileType.VIDEO);
 				}
 			}
+			res.add(fileImportResult);
 		}
 
-		return fileImportResult;
+		return res;
 	}
 	
 	public void updateFilesRequiringFileUpdate(List<FileType> fileTypesToUpdate) {
@@ -193,89 +438,190 @@ public class FileScanner implements Runnable{
 					+ scanState); 
 		}
 		changeScanState(ScanState.PAUSING);
-		if(log.isDebugEnabled()) log.debug("Pausing set. Waiting for scan thread to pause.");
+		if(log.isDebugEnabled()) log.debug("Pausing set. Waiting for scan threads to pause.");
 	}
 	
 	public void unPause() throws ScanStateException{	
-		if(log.isDebugEnabled()) log.debug("pause() called.");
+		if(log.isDebugEnabled()) log.debug("unPause() called.");
 		if(scanState != ScanState.PAUSED){
-			throw new ScanStateException(ScanState.PAUSED, scanState, "The pause() method can only be called when the ScanState==PAUSED. current state="
+			throw new ScanStateException(ScanState.PAUSED, scanState, "The unPause() method can only be called when the ScanState==PAUSED. current state="
 					+ scanState); 
 		}
 		synchronized (scanThreadPause) {
-			scanThreadPause.notify();
+			changeScanState(ScanState.RUNNING);
+			scanThreadPause.notifyAll();
         }
-		if(log.isDebugEnabled()) log.debug("Pausing set. Waiting for scan thread to pause.");
+		net.pms.PMS.get().getFrame().setStatusLine("Restarted scan");
+		if(log.isInfoEnabled()) log.info("Scan started after pause");
 	}
 	
 	
 	public void stop(){	
 		if(log.isDebugEnabled()) log.debug("stop() called.");
 		changeScanState(ScanState.STOPPING);
-		if(log.isDebugEnabled()) log.debug("Stopping set. Waiting for scan thread to terminate.");
+		if(log.isDebugEnabled()) log.debug("Stopping set. Waiting for scan threads to terminate.");
 		synchronized (scanThreadPause) {
 			scanThreadPause.notifyAll();
         }
+		synchronized (pipelineIdle) {
+			pipelineIdle.notifyAll();
+		}
 		try{
 			scanThread.join();
-			if(log.isDebugEnabled()) log.debug("Stopped! Scan thread terminated properly.");		
+			if(log.isDebugEnabled()) log.debug("Stopped! Scan threads terminated properly.");		
 		}catch(InterruptedException ex){
 			if(log.isDebugEnabled()) log.debug("Stopped! Terminated by a InterruptedException.");								
 		}
+		synchronized (scanStateLock) {
+			if (scanState == ScanState.STOPPING) {
+				// No scan was running
+				changeScanState(ScanState.IDLE);
+			}
+		}
 	}
 	
 	@Override
 	public void run() {
 		changeScanState(ScanState.RUNNING);
-		// Handle each directory in the list
-		FileImportConfiguration importFile;
-		int nbFilesAdded = 0;
-		int nbFilesUpdated = 0;
-		//Calendar lastGetDate = Calendar.getInstance();
-		while ((importFile = dequeueImportFile()) != null) {
-			// check if we have to pause or stop the thread
-			if (scanState == ScanState.PAUSING) {
+		nbFilesAdded.set(0);
+		nbFilesUpdated.set(0);
+		nbFilesDeleted.set(0);
+		scanStartTime = System.currentTimeMillis();
+		stagesFinished = false;
+
+		int queueSize = configuration.getLibraryScanQueueSize();
+		parseQueue = new LinkedBlockingQueue<ScanItem>(queueSize);
+		pluginQueue = new LinkedBlockingQueue<ScanItem>(queueSize);
+		writeQueue = new LinkedBlockingQueue<ScanItem>(queueSize);
+
+		List<Stage<?>> newStages = new ArrayList<Stage<?>>();
+		newStages.add(new Stage<FolderItem>("crawl", folderQueue, configuration.getLibraryScanCrawlThreads()) {
+			@Override
+			protected void process(FolderItem folder) {
+				crawlFolder(folder);
+				done();
+			}
+		});
+		newStages.add(new Stage<ScanItem>("check", checkQueue, configuration.getLibraryScanCheckThreads()) {
+			@Override
+			protected void process(ScanItem item) {
+				if (item.isChecked || isUpdateRequired(item.importFile)) {
+					forward(parseQueue, item);
+				} else {
+					done();
+				}
+			}
+		});
+		newStages.add(new Stage<ScanItem>("parse", parseQueue, configuration.getLibraryScanParseThreads()) {
+			@Override
+			protected void process(ScanItem item) {
 				try {
-					if(log.isInfoEnabled()) log.info("Scan paused");
-					net.pms.PMS.get().getFrame().setStatusLine("Scan paused");
-					changeScanState(ScanState.PAUSED);
-					synchronized (scanThreadPause) {
-						scanThreadPause.wait();
+					item.fileInfo = dataCollector.collect(item.importFile);
+				} catch (Throwable t) {
+					log.error("Failed to collect info for " + item.importFile.getPath(), t);
+				}
+				forward(pluginQueue, item);
+			}
+		});
+		newStages.add(new Stage<ScanItem>("plugin", pluginQueue, configuration.getLibraryScanPluginThreads()) {
+			@Override
+			protected void process(ScanItem item) {
+				if (item.fileInfo != null) {
+					try {
+						dataCollector.enrich(item.importFile, item.fileInfo);
+					} catch (Throwable t) {
+						log.error("Failed to import info with plugins for " + item.importFile.getPath(), t);
 					}
-					net.pms.PMS.get().getFrame().setStatusLine("Restarted scan");
-					
-					if (scanState == ScanState.STOPPING) {
+				}
+				forward(writeQueue, item);
+			}
+		});
+		final int writeBatchSize = configuration.getLibraryScanWriteBatchSize();
+		newStages.add(new Stage<ScanItem>("write", writeQueue, configuration.getLibraryScanWriteThreads()) {
+			@Override
+			protected void process(ScanItem item) {
+				// write the files waiting in the queue together
+				List<ScanItem> items = new ArrayList<ScanItem>();
+				items.add(item);
+				drainTo(items, writeBatchSize - 1);
+
+				List<FileImportResult> results;
+				try {
+					results = write(items);
+				} catch (Throwable t) {
+					log.error(String.format("Failed to write a batch of %s files", items.size()), t);
+					results = Collections.nCopies(items.size(), FileImportResult.Failed);
+				}
+
+				for (int i = 0; i < items.size(); i++) {
+					switch(results.get(i)) {
+					case Imported:
+						nbFilesAdded.incrementAndGet();
+						break;
+					case Updated:
+						nbFilesUpdated.incrementAndGet();
+						break;
+					default:
+						log.warn(String.format("Failed to scan file '%s'", items.get(i).importFile.getPath()));
 						break;
-					} else {
-						changeScanState(ScanState.RUNNING);
-						if(log.isInfoEnabled()) log.info("Scan started after pause");
 					}
+					done();
+				}
+			}
+		});
+		stages = newStages;
+
+		for (Stage<?> stage : newStages) {
+			stage.start();
+		}
+
+		// Wait for all files to go through the pipeline
+		synchronized (pipelineIdle) {
+			while (nbItemsInPipeline.get() > 0 && scanState != ScanState.STOPPING) {
+				try {
+					pipelineIdle.wait(500);
 				} catch (InterruptedException ex) {
-					log.error("Scan stopped because pause has been interrupted by a Interrupt.", ex);
-					break;
+					log.error("Scan stopped because it has been interrupted by a Interrupt.", ex);
+					changeScanState(ScanState.STOPPING);
 				}
-			} else if (scanState == ScanState.STOPPING) {
-				break;
 			}
-			
-			// Scan the file
-			switch(scanFile(importFile)) {
-			case Imported:
-				nbFilesAdded++;
-				break;
-			case Updated:
-				nbFilesUpdated++;
-				break;
-			default:
-				log.warn(String.format("Failed to scan file '%s'", importFile.getPath()));
-				break;
+		}
+
+		stagesFinished = true;
+		for (Stage<?> stage : newStages) {
+			stage.join();
+		}
+
+		if (scanState == ScanState.STOPPING) {
+			// Drop the files which haven't been imported
+			folderQueue.clear();
+			checkQueue.clear();
+			nbItemsInPipeline.set(0);
+		} else {
+			// The folders which haven't been crawled have been deleted
+			for (Map<String, Map<String, DOFileState>> snapshot : snapshots) {
+				for (Map.Entry<String, Map<String, DOFileState>> entry : snapshot.entrySet()) {
+					deleteMissingFiles(entry.getKey(), entry.getValue().keySet());
+				}
 			}
 		}
+		snapshots.clear();
 
-		net.pms.PMS.get().getFrame().setStatusLine(String.format(Messages.getString("ML.Messages.ScanFinished"), String.valueOf(nbFilesAdded), String.valueOf(nbFilesUpdated)));
+		if (log.isInfoEnabled()) {
+			for (Stage<?> stage : newStages) {
+				log.info("Scan " + stage.getReport(Math.max(1, System.currentTimeMillis() - scanStartTime) / 1000.0));
+			}
+		}
+
+		net.pms.PMS.get().getFrame().setStatusLine(String.format(Messages.getString("ML.Messages.ScanFinished"), String.valueOf(nbFilesAdded.get()), String.valueOf(nbFilesUpdated.get())));
 
-		log.info(String.format("Scanning finished. Result: %s added, %s updated", nbFilesAdded, nbFilesUpdated));
+		log.info(String.format("Scanning finished. Result: %s added, %s updated, %s deleted", nbFilesAdded.get(), nbFilesUpdated.get(), nbFilesDeleted.get()));
 		changeScanState(ScanState.IDLE);
+
+		// Files queued while the scan was finishing
+		if (nbItemsInPipeline.get() > 0) {
+			startScan();
+		}
 	}
 
 	public void addFileScannerEventListener(IFileScannerEventListener listener) {
@@ -283,7 +629,7 @@ public class FileScanner implements Runnable{
     }
 	
 	private void changeScanState(ScanState state){
-		synchronized (scanState) {
+		synchronized (scanStateLock) {
 			scanState = state;
 			for(IFileScannerEventListener l : fileScannerEventListeners) {
 				l.scanStateChanged(scanState);
@@ -292,8 +638,8 @@ public class FileScanner implements Runnable{
 	}
 	
 	private void startScan() {
-		synchronized (scanState) {
-			if (scanState != ScanState.STARTING && scanState != ScanState.RUNNING) {
+		synchronized (scanStateLock) {
+			if (scanState == ScanState.IDLE) {
 				changeScanState(ScanState.STARTING);
 				scanThread = new Thread(this);
 				scanThread.setName("scan" + nbScans++);
@@ -301,4 +647,185 @@ public class FileScanner implements Runnable{
 			}
 		}		
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Blocks the calling stage thread while the scan is paused.
+	 *
+	 * @return false if the scan is being stopped
+	 */
+	private boolean waitIfPaused() {
+		synchronized (scanThreadPause) {
+			while (scanState == ScanState.PAUSING || scanState == ScanState.PAUSED) {
+				if (scanState == ScanState.PAUSING) {
+					if(log.isInfoEnabled()) log.info("Scan paused");
+					net.pms.PMS.get().getFrame().setStatusLine("Scan paused");
+					changeScanState(ScanState.PAUSED);
+				}
+				try {
+					scanThreadPause.wait();
+				} catch (InterruptedException ex) {
+					log.error("Scan stopped because pause has been interrupted by a Interrupt.", ex);
+					return false;
+				}
+			}
+		}
+		return scanState != ScanState.STOPPING;
+	}
+
+	/**
+	 * Called when an item leaves the pipeline.
+	 */
+	private void itemDone() {
+		if (nbItemsInPipeline.decrementAndGet() <= 0) {
+			synchronized (pipelineIdle) {
+				pipelineIdle.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * A file going through the pipeline.
+	 */
+	private static class ScanItem {
+		private final FileImportConfiguration importFile;
+		private DOFileInfo fileInfo;
+		
+		/**
+		 * True if the file is known to require an import.
+		 */
+		private boolean isChecked;
+		
+		/**
+		 * True if the file is known not to be in the library.
+		 */
+		private boolean isNew;
+
+		private ScanItem(FileImportConfiguration importFile) {
+			this.importFile = importFile;
+		}
+	}
+
+	/**
+	 * A folder going through the crawl stage.
+	 */
+	private static class FolderItem {
+		private final DOManagedFile managedFolder;
+		private final Map<String, Map<String, DOFileState>> snapshot;
+		private final boolean isRoot;
+
+		private FolderItem(DOManagedFile managedFolder, Map<String, Map<String, DOFileState>> snapshot, boolean isRoot) {
+			this.managedFolder = managedFolder;
+			this.snapshot = snapshot;
+			this.isRoot = isRoot;
+		}
+	}
+
+	/**
+	 * A stage of the pipeline, processing the items of its queue with its
+	 * own threads. Every processed item has to be either forwarded to the
+	 * next stage or reported as done.
+	 */
+	private abstract class Stage<T> {
+		private final String name;
+		private final BlockingQueue<T> queue;
+		private final int nbThreads;
+		private final AtomicLong nbProcessed = new AtomicLong();
+		private final List<Thread> threads = new ArrayList<Thread>();
+
+		private Stage(String name, BlockingQueue<T> queue, int nbThreads) {
+			this.name = name;
+			this.queue = queue;
+			this.nbThreads = nbThreads;
+		}
+
+		protected abstract void process(T item);
+
+		protected void forward(BlockingQueue<ScanItem> next, ScanItem item) {
+			try {
+				while (!next.offer(item, 500, TimeUnit.MILLISECONDS)) {
+					if (scanState == ScanState.STOPPING) {
+						done();
+						return;
+					}
+				}
+			} catch (InterruptedException ex) {
+				done();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		protected void done() {
+			itemDone();
+		}
+
+		/**
+		 * Moves the items waiting in the queue of the stage to the given
+		 * collection, to process them together with the current one.
+		 *
+		 * @param items the collection to add the items to
+		 * @param maxItems the maximum number of items to move
+		 * @return the number of moved items
+		 */
+		protected int drainTo(Collection<T> items, int maxItems) {
+			int nbItems = queue.drainTo(items, maxItems);
+			nbProcessed.addAndGet(nbItems);
+			return nbItems;
+		}
+
+		private void start() {
+			for (int i = 0; i < nbThreads; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				}, scanThread.getName() + "-" + name + "-" + i);
+				t.setDaemon(true);
+				threads.add(t);
+				t.start();
+			}
+		}
+
+		private void work() {
+			while (waitIfPaused()) {
+				T item;
+				try {
+					item = queue.poll(500, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ex) {
+					break;
+				}
+
+				if (item == null) {
+					if (stagesFinished) {
+						break;
+					}
+					continue;
+				}
+
+				try {
+					process(item);
+				} catch (Throwable t) {
+					log.error("Failed to process an item in the " + name + " stage of the scanner", t);
+					done();
+				} finally {
+					nbProcessed.incrementAndGet();
+				}
+			}
+		}
+
+		private void join() {
+			for (Thread t : threads) {
+				try {
+					t.join();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		private DOScanStageReport getReport(double elapsedSeconds) {
+			return new DOScanStageReport(name, nbThreads, nbProcessed.get(), queue.size(), nbProcessed.get() / elapsedSeconds);
+		}
+	}
+}
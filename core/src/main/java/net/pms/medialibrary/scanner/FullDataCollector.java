@@ -68,7 +68,29 @@ public class FullDataCollector {
 	    instance = new FullDataCollector(videoCoverSaveFolderPath);
     }
 	
+	/**
+	 * Collects all the information about a file: its technical properties
+	 * and the ones imported by plugins.
+	 *
+	 * @param importFile the file to import
+	 * @return the file info or null if the file type isn't imported
+	 */
 	public DOFileInfo get(FileImportConfiguration importFile) {
+		DOFileInfo fileInfo = collect(importFile);
+		if (fileInfo != null) {
+			enrich(importFile, fileInfo);
+		}
+		return fileInfo;
+	}
+
+	/**
+	 * Collects the technical properties of a file (MediaInfo or ffmpeg),
+	 * without running the import plugins.
+	 *
+	 * @param importFile the file to import
+	 * @return the file info or null if the file type isn't imported
+	 */
+	public DOFileInfo collect(FileImportConfiguration importFile) {
 		DOFileInfo retVal = null;
 		int sep = importFile.getPath().lastIndexOf(java.io.File.separator) + 1;
 		String folderPath = importFile.getPath().substring(0, sep);
@@ -87,18 +109,6 @@ public class FullDataCollector {
 	    				tmpVideoFileInfo.setFileImportVersion(VersionConstants.VIDEO_FILE_VERSION);
     				}
     				
-    				//import the info with configured plugins
-    				if(importFile.isPluginImportEnabled()) {
-    					FileImportHelper.updateFileInfo(importFile.getFileImportTemplate(), tmpVideoFileInfo);
-    				}
-    				
-    				if(tmpVideoFileInfo.getName().equals("")) {
-    					tmpVideoFileInfo.setName(tmpVideoFileInfo.getFileName(false));
-    				}
-    				if(tmpVideoFileInfo.getSortName().equals("")) {
-    					tmpVideoFileInfo.setSortName(tmpVideoFileInfo.getName());
-    				}
-    				
     				retVal = tmpVideoFileInfo;
 				}
 				break;
@@ -140,6 +150,31 @@ public class FullDataCollector {
 		}
 		return retVal;
 	}
+
+	/**
+	 * Imports the properties of a file with the configured plugins, on a
+	 * file info returned by {@link #collect(FileImportConfiguration)}.
+	 *
+	 * @param importFile the file to import
+	 * @param fileInfo the file info to complete
+	 */
+	public void enrich(FileImportConfiguration importFile, DOFileInfo fileInfo) {
+		if(fileInfo instanceof DOVideoFileInfo) {
+			DOVideoFileInfo tmpVideoFileInfo = (DOVideoFileInfo) fileInfo;
+
+			//import the info with configured plugins
+			if(importFile.isPluginImportEnabled()) {
+				FileImportHelper.updateFileInfo(importFile.getFileImportTemplate(), tmpVideoFileInfo);
+			}
+			
+			if(tmpVideoFileInfo.getName().equals("")) {
+				tmpVideoFileInfo.setName(tmpVideoFileInfo.getFileName(false));
+			}
+			if(tmpVideoFileInfo.getSortName().equals("")) {
+				tmpVideoFileInfo.setSortName(tmpVideoFileInfo.getName());
+			}
+		}
+	}
 	
 	private void populateMovieInfo(DOVideoFileInfo fi) {
 		if(fi.getType() == FileType.VIDEO){
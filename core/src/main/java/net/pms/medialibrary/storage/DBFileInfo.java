@@ -43,6 +43,7 @@ import net.pms.medialibrary.commons.MediaLibraryConfiguration;
 import net.pms.medialibrary.commons.VersionConstants;
 import net.pms.medialibrary.commons.dataobjects.DOCondition;
 import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOFileState;
 import net.pms.medialibrary.commons.dataobjects.DOFilter;
 import net.pms.medialibrary.commons.dataobjects.OmitPrefixesConfiguration;
 import net.pms.medialibrary.commons.enumarations.ConditionType;
@@ -57,6 +58,11 @@ import net.pms.notifications.types.DBEvent;
 class DBFileInfo extends DBBase {
 	private static final Logger log = LoggerFactory.getLogger(DBFileInfo.class);
 	protected static final String GENRE_KEY = "_X-?__GENRE__%*Y_";
+	protected static final String INSERT_FILE = "INSERT INTO FILE (FOLDERPATH, FILENAME, TYPE, DATELASTUPDATEDDB, DATEINSERTEDDB, DATEMODIFIEDOS, THUMBNAILPATH, SIZEBYTE, PLAYCOUNT, ENABLED, FILEIMPORTVERSION)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	protected static final String UPDATE_FILE = "UPDATE FILE SET FOLDERPATH = ?, FILENAME = ?, TYPE = ?, DATELASTUPDATEDDB = ?, DATEINSERTEDDB = ?, DATEMODIFIEDOS = ?,"
+			+ " THUMBNAILPATH = ?, SIZEBYTE = ?, PLAYCOUNT = ?, ENABLED = ?, FILEIMPORTVERSION = ?"
+			+ " WHERE ID = ?";
 	
 	DBFileInfo(JdbcConnectionPool cp){
 		super(cp);
@@ -179,9 +185,10 @@ class DBFileInfo extends DBBase {
 		NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(DBEvent.Type.FileTagChanged));
 	}
 
-	protected void insertFileInfo(DOFileInfo fileInfo, Connection conn, PreparedStatement stmt, ResultSet rs) throws SQLException {		
-		stmt = conn.prepareStatement("INSERT INTO FILE (FOLDERPATH, FILENAME, TYPE, DATELASTUPDATEDDB, DATEINSERTEDDB, DATEMODIFIEDOS, THUMBNAILPATH, SIZEBYTE, PLAYCOUNT, ENABLED, FILEIMPORTVERSION)"
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+	/**
+	 * Sets the parameters 1 to 11 of {@link #INSERT_FILE} and {@link #UPDATE_FILE}.
+	 */
+	protected void setFileParameters(PreparedStatement stmt, DOFileInfo fileInfo) throws SQLException {
 		stmt.setString(1, fileInfo.getFolderPath());
 		stmt.setString(2, fileInfo.getFileName());
 		stmt.setString(3, fileInfo.getType().toString());
@@ -193,6 +200,11 @@ class DBFileInfo extends DBBase {
 		stmt.setInt(9, fileInfo.getPlayCount());
 		stmt.setBoolean(10, fileInfo.isActive());
 		stmt.setInt(11, fileInfo.getFileImportVersion());
+	}
+
+	protected void insertFileInfo(DOFileInfo fileInfo, Connection conn, PreparedStatement stmt, ResultSet rs) throws SQLException {		
+		stmt = conn.prepareStatement(INSERT_FILE);
+		setFileParameters(stmt, fileInfo);
 		stmt.executeUpdate();
 		
 		rs = stmt.getGeneratedKeys();
@@ -233,20 +245,8 @@ class DBFileInfo extends DBBase {
 
 	void updateFileInfo(DOFileInfo fileInfo, Connection conn,
 			PreparedStatement stmt, ResultSet rs) throws SQLException {
-			stmt = conn.prepareStatement("UPDATE FILE SET FOLDERPATH = ?, FILENAME = ?, TYPE = ?, DATELASTUPDATEDDB = ?, DATEINSERTEDDB = ?, DATEMODIFIEDOS = ?,"
-					+ " THUMBNAILPATH = ?, SIZEBYTE = ?, PLAYCOUNT = ?, ENABLED = ?, FILEIMPORTVERSION = ?"
-			        + " WHERE ID = ?");
-			stmt.setString(1, fileInfo.getFolderPath());
-			stmt.setString(2, fileInfo.getFileName());
-			stmt.setString(3, fileInfo.getType().toString());
-			stmt.setTimestamp(4, new Timestamp(fileInfo.getDateLastUpdatedDb().getTime()));
-			stmt.setTimestamp(5, new Timestamp(fileInfo.getDateInsertedDb().getTime()));
-			stmt.setTimestamp(6, new Timestamp(fileInfo.getDateModifiedOs().getTime()));
-			stmt.setString(7, fileInfo.getThumbnailPath());
-			stmt.setLong(8, fileInfo.getSize());
-			stmt.setInt(9, fileInfo.getPlayCount());
-			stmt.setBoolean(10, fileInfo.isActive());
-			stmt.setInt(11, fileInfo.getFileImportVersion());
+			stmt = conn.prepareStatement(UPDATE_FILE);
+			setFileParameters(stmt, fileInfo);
 			stmt.setLong(12, fileInfo.getId());
 			stmt.executeUpdate();
 			
@@ -486,6 +486,60 @@ class DBFileInfo extends DBBase {
 		
 		return retVal;
 	}
+	/**
+	 * Gets the state of all the files of a folder stored in the library with a
+	 * single query.
+	 * 
+	 * @param folderPath the path of the folder
+	 * @param includeSubFolders if true, the files of all sub-folders are returned as well
+	 * @return the states of the files by file name, grouped by folder path. The
+	 * folder paths end with a file separator.
+	 * @throws StorageException
+	 */
+	Map<String, Map<String, DOFileState>> getFileStates(String folderPath, boolean includeSubFolders) throws StorageException {
+		Map<String, Map<String, DOFileState>> res = new HashMap<String, Map<String, DOFileState>>();
+		if(!folderPath.endsWith(File.separator)) {
+			folderPath += File.separator;
+		}
+
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement stmt = null;
+
+		try {
+			conn = cp.getConnection();
+			
+			String statement = "SELECT FOLDERPATH, FILENAME, SIZEBYTE, DATEMODIFIEDOS, DATELASTUPDATEDDB FROM FILE";
+			if(includeSubFolders) {
+				stmt = conn.prepareStatement(statement + " WHERE FOLDERPATH LIKE ? ESCAPE '\\'");
+				stmt.setString(1, folderPath.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+			} else {
+				stmt = conn.prepareStatement(statement + " WHERE FOLDERPATH = ?");
+				stmt.setString(1, folderPath);
+			}
+			rs = stmt.executeQuery();
+			while(rs.next()) {
+				String currentFolderPath = rs.getString(1);
+				Map<String, DOFileState> files = res.get(currentFolderPath);
+				if(files == null) {
+					files = new HashMap<String, DOFileState>();
+					res.put(currentFolderPath, files);
+				}
+
+				Timestamp dateModifiedOs = rs.getTimestamp(4);
+				Timestamp dateLastUpdatedDb = rs.getTimestamp(5);
+				files.put(rs.getString(2), new DOFileState(rs.getLong(3), dateModifiedOs == null ? 0 : dateModifiedOs.getTime(), 
+						dateLastUpdatedDb == null ? 0 : dateLastUpdatedDb.getTime()));
+			}
+		} catch (SQLException ex) {
+			throw new StorageException("Failed to get file states for folder " + folderPath, ex);
+		} finally {
+			close(conn, stmt, rs);
+		}
+		
+		return res;
+	}
+
 	
 	void updateFilePlay(long filedId, int playTimeSec, java.util.Date datePlayEnd) throws StorageException{
 		Connection conn = null;
@@ -155,6 +155,185 @@ class DBInitializer extends DBBase {
     	return res;		
 	}
 	
+	/**
+	 * Creates the tables containing the files and their properties (FILE, VIDEO, PICTURES, AUDIO, VIDEOAUDIO,
+	 * SUBTITLES, FILEPLAYS and FILETAGS) with their indexes.
+	 * 
+	 * @param stmt the statement used to execute the updates
+	 * @throws SQLException
+	 */
+	static void createFileTables(Statement stmt) throws SQLException {
+		//Create table FILE
+		StringBuffer sb = new StringBuffer();
+		sb.append("CREATE TABLE FILE (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FOLDERPATH   	   VARCHAR_IGNORECASE(1024)       NOT NULL");
+		sb.append(", FILENAME   	   VARCHAR_IGNORECASE(1024)       NOT NULL");
+		sb.append(", TYPE   		   VARCHAR(256)       NOT NULL");
+		sb.append(", SIZEBYTE   		   BIGINT");
+		sb.append(", DATELASTUPDATEDDB DATETIME             NOT NULL");
+		sb.append(", DATEINSERTEDDB    DATETIME             NOT NULL");
+		sb.append(", DATEMODIFIEDOS    DATETIME             NOT NULL");
+		sb.append(", THUMBNAILPATH     VARCHAR_IGNORECASE(1024)");
+		sb.append(", PLAYCOUNT   	   INT DEFAULT 0");
+		sb.append(", ENABLED           BIT");
+		sb.append(", FILEIMPORTVERSION TINYINT NOT NULL DEFAULT 0");
+		sb.append(", CONSTRAINT PK_FILE PRIMARY KEY (ID)");
+		sb.append(", CONSTRAINT UC_FILEPATH UNIQUE (FOLDERPATH, FILENAME))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_FILE_DATELASTUPDATED ON FILE (DATELASTUPDATEDDB desc);");
+		stmt.executeUpdate("CREATE INDEX IDX_FILE_SIZE ON FILE (SIZEBYTE desc);");
+		stmt.executeUpdate("CREATE INDEX IDX_FILE_TYPE ON FILE (TYPE asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_FILE_PLAYCOUNT ON FILE (PLAYCOUNT asc);");
+		if(log.isDebugEnabled()) log.debug("Table FILE created");
+
+		//Create table VIDEO
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE VIDEO (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
+		sb.append(", AGERATINGLEVEL    VARCHAR_IGNORECASE(256)");
+		sb.append(", AGERATINGREASON   VARCHAR_IGNORECASE(512)");
+		sb.append(", RATINGPERCENT     INT");
+		sb.append(", RATINGVOTERS      INT");
+		sb.append(", DIRECTOR          VARCHAR_IGNORECASE(512)");
+		sb.append(", OVERVIEW          VARCHAR_IGNORECASE(" + DBConstants.VIDEO_OVERVIEW_FIELDLENGTH + ")");
+		sb.append(", TAGLINE           VARCHAR_IGNORECASE(512)");
+		sb.append(", NAME              VARCHAR_IGNORECASE(512)");
+		sb.append(", ORIGINALNAME      VARCHAR_IGNORECASE(512)");
+		sb.append(", SORTNAME          VARCHAR_IGNORECASE(512)");
+		sb.append(", TMDBID            INT");
+		sb.append(", IMDBID            VARCHAR_IGNORECASE(32)");
+		sb.append(", TRAILERURL        VARCHAR_IGNORECASE(1024)");
+		sb.append(", HOMEPAGEURL       VARCHAR_IGNORECASE(1024)");
+		sb.append(", BUDGET            INT");
+		sb.append(", REVENUE           INT");
+		sb.append(", ASPECTRATIO       VARCHAR_IGNORECASE(16)");
+		sb.append(", BITRATE           VARCHAR_IGNORECASE(128)");
+		sb.append(", BITSPERPIXEL      INT");
+		sb.append(", CODECV       	   VARCHAR_IGNORECASE(32)");
+		sb.append(", DURATIONSEC       NUMERIC");
+		sb.append(", CONTAINER         VARCHAR_IGNORECASE(32)");
+		sb.append(", DVDTRACK      	   INT");
+		sb.append(", FRAMERATE         VARCHAR_IGNORECASE(16)");
+		sb.append(", HEIGHT            INT");
+		sb.append(", MIMETYPE          VARCHAR_IGNORECASE(32)");
+		sb.append(", MODEL             VARCHAR_IGNORECASE(128)");
+		sb.append(", MUXABLE           BIT");
+		sb.append(", WIDTH             INT");
+		sb.append(", YEAR              INT");
+		sb.append(", MUXINGMODE        VARCHAR2(32)");
+		sb.append(", FRAMERATEMODE     VARCHAR2(16)");
+		sb.append(", ASPECTRATIOCONTAINER VARCHAR2(6)");
+		sb.append(", ASPECTRATIOVIDEOTRACK VARCHAR2(6)");
+		sb.append(", REFRAMES          TINYINT");
+		sb.append(", AVCLEVEL          VARCHAR2(3)");
+		sb.append(", CONSTRAINT PK_VIDEO PRIMARY KEY (ID))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEO_RATINGPERCENT ON VIDEO (RATINGPERCENT asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEO_NAME ON VIDEO (NAME asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEO_ORIGINALNAME ON VIDEO (ORIGINALNAME asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEO_YEAR ON VIDEO (YEAR asc);");
+		if(log.isDebugEnabled()) log.debug("Table VIDEO created");
+		
+		//Create table PICTURES
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE PICTURES (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
+		sb.append(", WIDTH             INT");
+		sb.append(", HEIGHT            INT");
+		sb.append(", EXPOSURE          INT");
+		sb.append(", ISO               INT");
+		sb.append(", ORIENTATION       INT");
+		sb.append(", CONSTRAINT PK_PICTURES PRIMARY KEY (ID))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_PICTURES_WIDTH ON PICTURES (WIDTH asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_PICTURES_HEIGHT ON PICTURES (HEIGHT asc);");
+		if(log.isDebugEnabled()) log.debug("Table PICTURES created");
+		
+		//Create table AUDIO
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE AUDIO (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
+		sb.append(", NRAUDIOCHANNELS   NUMERIC");
+		sb.append(", SAMPLEFREQ        VARCHAR_IGNORECASE(16)");
+		sb.append(", CODECA            VARCHAR_IGNORECASE(32)");
+		sb.append(", BITSPERSAMPLE     INT");
+		sb.append(", ALBUM             VARCHAR_IGNORECASE(255)");
+		sb.append(", ARTIST            VARCHAR_IGNORECASE(255)");
+		sb.append(", SONGNAME          VARCHAR_IGNORECASE(255)");
+		sb.append(", GENRE             VARCHAR_IGNORECASE(64)");
+		sb.append(", YEAR              INT");
+		sb.append(", TRACK             INT");
+		sb.append(", DURATIONSEC       INT");
+		sb.append(", MUXINGMODE        VARCHAR2(32)");
+		sb.append(", COVERPATH         VARCHAR_IGNORECASE(1024)");
+		sb.append(", CONSTRAINT PK_AUDIO PRIMARY KEY (ID))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_AUDIO_ARTIST ON AUDIO (ARTIST asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_AUDIO_ALBUM ON AUDIO (ALBUM asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_AUDIO_GENRE ON AUDIO (GENRE asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_AUDIO_YEAR ON AUDIO (YEAR asc);");
+		if(log.isDebugEnabled()) log.debug("Table AUDIO created");
+		
+		//Create table VIDEOAUDIO
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE VIDEOAUDIO (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FILEID            BIGINT REFERENCES FILE(ID)");
+		sb.append(", LANG              VARCHAR_IGNORECASE(3)");
+		sb.append(", NRAUDIOCHANNELS   NUMERIC");
+		sb.append(", SAMPLEFREQ        VARCHAR_IGNORECASE(16)");
+		sb.append(", CODECA            VARCHAR_IGNORECASE(32)");
+		sb.append(", BITSPERSAMPLE     INT");
+		sb.append(", DELAYMS           INT");
+		sb.append(", MUXINGMODE        VARCHAR2(32)");
+		sb.append(", BITRATE           INT");
+		sb.append(", CONSTRAINT PK_VIDEOAUDIO PRIMARY KEY (ID))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEOAUDIO_FILEID ON VIDEOAUDIO (FILEID asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_VIDEOAUDIO_LANG ON VIDEOAUDIO (LANG asc);");
+		if(log.isDebugEnabled()) log.debug("Table VIDEOAUDIO created");
+		
+		//Create table SUBTITLES (that will reference a file that is a video)
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE SUBTITLES (");
+		sb.append("  ID                BIGINT AUTO_INCREMENT");
+		sb.append(", FILEID            BIGINT REFERENCES FILE(ID)");
+		sb.append(", FILEPATH          VARCHAR_IGNORECASE(1024) DEFAULT ''");
+		sb.append(", LANG              VARCHAR_IGNORECASE(3)");
+		sb.append(", TYPE              INT");
+		sb.append(", CONSTRAINT PK_SUBTITLES PRIMARY KEY (ID))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_SUBTITLES_LANG ON SUBTITLES (LANG asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_SUBTITLES_FILEID ON SUBTITLES (FILEID asc);");
+		if(log.isDebugEnabled()) log.debug("Table SUBTITLES created");
+		
+		//Create table FILEPLAYS
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE FILEPLAYS (");
+		sb.append("  FILEID            BIGINT REFERENCES FILE(ID)");
+		sb.append(", PLAYTIMESEC       INT");
+		sb.append(", DATEPLAYEND       TIMESTAMP");
+		sb.append(", CONSTRAINT PK_FILEPLAYS PRIMARY KEY (FILEID, DATEPLAYEND))");
+		stmt.executeUpdate(sb.toString());
+		if(log.isDebugEnabled()) log.debug("Table FILEPLAYS created");
+		
+		//Create table FILETAGS
+		sb = new StringBuffer();
+		sb.append("CREATE TABLE FILETAGS (");
+		sb.append("  FILEID            BIGINT REFERENCES FILE(ID)");
+		sb.append(", KEY               VARCHAR_IGNORECASE(256)");
+		sb.append(", VALUE  	       VARCHAR_IGNORECASE(256)");
+		sb.append(", CONSTRAINT PK_FILETAGS PRIMARY KEY (FILEID, KEY, VALUE))");
+		stmt.executeUpdate(sb.toString());
+		stmt.executeUpdate("CREATE INDEX IDX_FILETAGS_FILEID ON FILETAGS (FILEID asc);");
+		stmt.executeUpdate("CREATE INDEX IDX_FILETAGS_KEY ON FILETAGS (KEY asc);");
+		if(log.isDebugEnabled()) log.debug("Table FILETAGS created");
+	}
+	
 	/*********************************************
 	 * 
 	 * Private Methods
@@ -204,166 +383,10 @@ class DBInitializer extends DBBase {
 		if(log.isInfoEnabled()) log.info("All database tables dropped");
 				
 		try {
-			//Create table FILE
-			StringBuffer sb = new StringBuffer();
-			sb.append("CREATE TABLE FILE (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FOLDERPATH   	   VARCHAR_IGNORECASE(1024)       NOT NULL");
-			sb.append(", FILENAME   	   VARCHAR_IGNORECASE(1024)       NOT NULL");
-			sb.append(", TYPE   		   VARCHAR(256)       NOT NULL");
-			sb.append(", SIZEBYTE   		   BIGINT");
-			sb.append(", DATELASTUPDATEDDB DATETIME             NOT NULL");
-			sb.append(", DATEINSERTEDDB    DATETIME             NOT NULL");
-			sb.append(", DATEMODIFIEDOS    DATETIME             NOT NULL");
-			sb.append(", THUMBNAILPATH     VARCHAR_IGNORECASE(1024)");
-			sb.append(", PLAYCOUNT   	   INT DEFAULT 0");
-			sb.append(", ENABLED           BIT");
-			sb.append(", FILEIMPORTVERSION TINYINT NOT NULL DEFAULT 0");
-			sb.append(", CONSTRAINT PK_FILE PRIMARY KEY (ID)");
-			sb.append(", CONSTRAINT UC_FILEPATH UNIQUE (FOLDERPATH, FILENAME))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_FILE_DATELASTUPDATED ON FILE (DATELASTUPDATEDDB desc);");
-			stmt.executeUpdate("CREATE INDEX IDX_FILE_SIZE ON FILE (SIZEBYTE desc);");
-			stmt.executeUpdate("CREATE INDEX IDX_FILE_TYPE ON FILE (TYPE asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_FILE_PLAYCOUNT ON FILE (PLAYCOUNT asc);");
-			if(log.isDebugEnabled()) log.debug("Table FILE created");
+			createFileTables(stmt);
 
-			//Create table VIDEO
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE VIDEO (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
-			sb.append(", AGERATINGLEVEL    VARCHAR_IGNORECASE(256)");
-			sb.append(", AGERATINGREASON   VARCHAR_IGNORECASE(512)");
-			sb.append(", RATINGPERCENT     INT");
-			sb.append(", RATINGVOTERS      INT");
-			sb.append(", DIRECTOR          VARCHAR_IGNORECASE(512)");
-			sb.append(", OVERVIEW          VARCHAR_IGNORECASE(" + DBConstants.VIDEO_OVERVIEW_FIELDLENGTH + ")");
-			sb.append(", TAGLINE           VARCHAR_IGNORECASE(512)");
-			sb.append(", NAME              VARCHAR_IGNORECASE(512)");
-			sb.append(", ORIGINALNAME      VARCHAR_IGNORECASE(512)");
-			sb.append(", SORTNAME          VARCHAR_IGNORECASE(512)");
-			sb.append(", TMDBID            INT");
-			sb.append(", IMDBID            VARCHAR_IGNORECASE(32)");
-			sb.append(", TRAILERURL        VARCHAR_IGNORECASE(1024)");
-			sb.append(", HOMEPAGEURL       VARCHAR_IGNORECASE(1024)");
-			sb.append(", BUDGET            INT");
-			sb.append(", REVENUE           INT");
-			sb.append(", ASPECTRATIO       VARCHAR_IGNORECASE(16)");
-			sb.append(", BITRATE           VARCHAR_IGNORECASE(128)");
-			sb.append(", BITSPERPIXEL      INT");
-			sb.append(", CODECV       	   VARCHAR_IGNORECASE(32)");
-			sb.append(", DURATIONSEC       NUMERIC");
-			sb.append(", CONTAINER         VARCHAR_IGNORECASE(32)");
-			sb.append(", DVDTRACK      	   INT");
-			sb.append(", FRAMERATE         VARCHAR_IGNORECASE(16)");
-			sb.append(", HEIGHT            INT");
-			sb.append(", MIMETYPE          VARCHAR_IGNORECASE(32)");
-			sb.append(", MODEL             VARCHAR_IGNORECASE(128)");
-			sb.append(", MUXABLE           BIT");
-			sb.append(", WIDTH             INT");
-			sb.append(", YEAR              INT");
-			sb.append(", MUXINGMODE        VARCHAR2(32)");
-			sb.append(", FRAMERATEMODE     VARCHAR2(16)");
-			sb.append(", ASPECTRATIOCONTAINER VARCHAR2(6)");
-			sb.append(", ASPECTRATIOVIDEOTRACK VARCHAR2(6)");
-			sb.append(", REFRAMES          TINYINT");
-			sb.append(", AVCLEVEL          VARCHAR2(3)");
-			sb.append(", CONSTRAINT PK_VIDEO PRIMARY KEY (ID))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEO_RATINGPERCENT ON VIDEO (RATINGPERCENT asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEO_NAME ON VIDEO (NAME asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEO_ORIGINALNAME ON VIDEO (ORIGINALNAME asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEO_YEAR ON VIDEO (YEAR asc);");
-			if(log.isDebugEnabled()) log.debug("Table VIDEO created");
-			
-			//Create table PICTURES
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE PICTURES (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
-			sb.append(", WIDTH             INT");
-			sb.append(", HEIGHT            INT");
-			sb.append(", EXPOSURE          INT");
-			sb.append(", ISO               INT");
-			sb.append(", ORIENTATION       INT");
-			sb.append(", CONSTRAINT PK_PICTURES PRIMARY KEY (ID))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_PICTURES_WIDTH ON PICTURES (WIDTH asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_PICTURES_HEIGHT ON PICTURES (HEIGHT asc);");
-			if(log.isDebugEnabled()) log.debug("Table PICTURES created");
-			
-			//Create table AUDIO
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE AUDIO (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FILEID            BIGINT UNIQUE REFERENCES FILE(ID)");
-			sb.append(", NRAUDIOCHANNELS   NUMERIC");
-			sb.append(", SAMPLEFREQ        VARCHAR_IGNORECASE(16)");
-			sb.append(", CODECA            VARCHAR_IGNORECASE(32)");
-			sb.append(", BITSPERSAMPLE     INT");
-			sb.append(", ALBUM             VARCHAR_IGNORECASE(255)");
-			sb.append(", ARTIST            VARCHAR_IGNORECASE(255)");
-			sb.append(", SONGNAME          VARCHAR_IGNORECASE(255)");
-			sb.append(", GENRE             VARCHAR_IGNORECASE(64)");
-			sb.append(", YEAR              INT");
-			sb.append(", TRACK             INT");
-			sb.append(", DURATIONSEC       INT");
-			sb.append(", MUXINGMODE        VARCHAR2(32)");
-			sb.append(", COVERPATH         VARCHAR_IGNORECASE(1024)");
-			sb.append(", CONSTRAINT PK_AUDIO PRIMARY KEY (ID))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_AUDIO_ARTIST ON AUDIO (ARTIST asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_AUDIO_ALBUM ON AUDIO (ALBUM asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_AUDIO_GENRE ON AUDIO (GENRE asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_AUDIO_YEAR ON AUDIO (YEAR asc);");
-			if(log.isDebugEnabled()) log.debug("Table AUDIO created");
-			
-			//Create table VIDEOAUDIO
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE VIDEOAUDIO (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FILEID            BIGINT REFERENCES FILE(ID)");
-			sb.append(", LANG              VARCHAR_IGNORECASE(3)");
-			sb.append(", NRAUDIOCHANNELS   NUMERIC");
-			sb.append(", SAMPLEFREQ        VARCHAR_IGNORECASE(16)");
-			sb.append(", CODECA            VARCHAR_IGNORECASE(32)");
-			sb.append(", BITSPERSAMPLE     INT");
-			sb.append(", DELAYMS           INT");
-			sb.append(", MUXINGMODE        VARCHAR2(32)");
-			sb.append(", BITRATE           INT");
-			sb.append(", CONSTRAINT PK_VIDEOAUDIO PRIMARY KEY (ID))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEOAUDIO_FILEID ON VIDEOAUDIO (FILEID asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_VIDEOAUDIO_LANG ON VIDEOAUDIO (LANG asc);");
-			if(log.isDebugEnabled()) log.debug("Table VIDEOAUDIO created");
-			
-			//Create table SUBTITLES (that will reference a file that is a video)
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE SUBTITLES (");
-			sb.append("  ID                BIGINT AUTO_INCREMENT");
-			sb.append(", FILEID            BIGINT REFERENCES FILE(ID)");
-			sb.append(", FILEPATH          VARCHAR_IGNORECASE(1024) DEFAULT ''");
-			sb.append(", LANG              VARCHAR_IGNORECASE(3)");
-			sb.append(", TYPE              INT");
-			sb.append(", CONSTRAINT PK_SUBTITLES PRIMARY KEY (ID))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_SUBTITLES_LANG ON SUBTITLES (LANG asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_SUBTITLES_FILEID ON SUBTITLES (FILEID asc);");
-			if(log.isDebugEnabled()) log.debug("Table SUBTITLES created");
-			
-			//Create table FILEPLAYS
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE FILEPLAYS (");
-			sb.append("  FILEID            BIGINT REFERENCES FILE(ID)");
-			sb.append(", PLAYTIMESEC       INT");
-			sb.append(", DATEPLAYEND       TIMESTAMP");
-			sb.append(", CONSTRAINT PK_FILEPLAYS PRIMARY KEY (FILEID, DATEPLAYEND))");
-			stmt.executeUpdate(sb.toString());
-			if(log.isDebugEnabled()) log.debug("Table FILEPLAYS created");
-			
 			//Create table TEMPLATE
-			sb = new StringBuffer();
+			StringBuffer sb = new StringBuffer();
 			sb.append("CREATE TABLE TEMPLATE (");
 			sb.append("  ID                BIGINT AUTO_INCREMENT");
 			sb.append(", NAME              VARCHAR_IGNORECASE(256) UNIQUE");
@@ -449,18 +472,6 @@ class DBInitializer extends DBBase {
 			stmt.executeUpdate("CREATE INDEX IDX_CONDITIONS_FOLDERID ON CONDITIONS (FOLDERID asc);");
 			if(log.isDebugEnabled()) log.debug("Table CONDITIONS created");
 			
-			//Create table FILETAGS
-			sb = new StringBuffer();
-			sb.append("CREATE TABLE FILETAGS (");
-			sb.append("  FILEID            BIGINT REFERENCES FILE(ID)");
-			sb.append(", KEY               VARCHAR_IGNORECASE(256)");
-			sb.append(", VALUE  	       VARCHAR_IGNORECASE(256)");
-			sb.append(", CONSTRAINT PK_FILETAGS PRIMARY KEY (FILEID, KEY, VALUE))");
-			stmt.executeUpdate(sb.toString());
-			stmt.executeUpdate("CREATE INDEX IDX_FILETAGS_FILEID ON FILETAGS (FILEID asc);");
-			stmt.executeUpdate("CREATE INDEX IDX_FILETAGS_KEY ON FILETAGS (KEY asc);");
-			if(log.isDebugEnabled()) log.debug("Table FILETAGS created");
-			
 			//Create table THUMBNAILPRIORITIES
 			sb = new StringBuffer();
 			sb.append("CREATE TABLE THUMBNAILPRIORITIES (");
@@ -0,0 +1,104 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.storage;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.pms.dlna.search.SearchEntry;
+import net.pms.formats.Format;
+import net.pms.medialibrary.commons.enumarations.FileType;
+import net.pms.medialibrary.commons.exceptions.StorageException;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * Package class used to structure code for MediaLibraryStorage
+ */
+class DBSearch extends DBBase {
+
+	DBSearch(JdbcConnectionPool cp) {
+		super(cp);
+	}
+	
+	/*********************************************
+	 * 
+	 * Package Methods
+	 * 
+	 *********************************************/
+
+	List<SearchEntry> getSearchEntries() throws StorageException {
+		List<SearchEntry> entries = new ArrayList<SearchEntry>();
+
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement stmt = null;
+		try {
+			conn = cp.getConnection();
+			stmt = conn.prepareStatement("SELECT FILE.FOLDERPATH, FILE.FILENAME, FILE.TYPE"
+					+ ", VIDEO.NAME, VIDEO.DIRECTOR, VIDEO.YEAR"
+					+ ", AUDIO.SONGNAME, AUDIO.ARTIST, AUDIO.ALBUM, AUDIO.GENRE, AUDIO.YEAR"
+					+ " FROM FILE"
+					+ " LEFT JOIN VIDEO ON VIDEO.FILEID = FILE.ID"
+					+ " LEFT JOIN AUDIO ON AUDIO.FILEID = FILE.ID"
+					+ " WHERE FILE.ENABLED = 1");
+			rs = stmt.executeQuery();
+			while (rs.next()) {
+				String folderPath = rs.getString(1);
+				if (!folderPath.endsWith(File.separator)) {
+					folderPath += File.separator;
+				}
+				String path = folderPath + rs.getString(2);
+
+				FileType fileType;
+				try {
+					fileType = FileType.valueOf(rs.getString(3));
+				} catch (IllegalArgumentException e) {
+					fileType = FileType.UNKNOWN;
+				}
+
+				switch (fileType) {
+					case VIDEO:
+						entries.add(new SearchEntry(path, Format.VIDEO, rs.getString(4), rs.getString(5), null, null, rs.getInt(6)));
+						break;
+					case AUDIO:
+						entries.add(new SearchEntry(path, Format.AUDIO, rs.getString(7), rs.getString(8), rs.getString(9), rs.getString(10), rs.getInt(11)));
+						break;
+					case PICTURES:
+						entries.add(new SearchEntry(path, Format.IMAGE, null, null, null, null, 0));
+						break;
+					default:
+						entries.add(new SearchEntry(path, Format.UNKNOWN, null, null, null, null, 0));
+						break;
+				}
+			}
+		} catch (SQLException se) {
+			throw new StorageException("Failed to get search entries", se);
+		} finally {
+			close(conn, stmt, rs);
+		}
+
+		return entries;
+	}
+}
@@ -24,6 +24,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -32,11 +33,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.pms.dlna.DLNAMediaAudio;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.formats.v2.SubtitleType;
 import net.pms.medialibrary.commons.MediaLibraryConfiguration;
+import net.pms.medialibrary.commons.dataobjects.DOBatchWriteResult;
 import net.pms.medialibrary.commons.dataobjects.DOCertification;
 import net.pms.medialibrary.commons.dataobjects.DOFilter;
 import net.pms.medialibrary.commons.dataobjects.DORating;
@@ -56,6 +59,21 @@ import org.slf4j.LoggerFactory;
 
 class DBVideoFileInfo extends DBFileInfo {	
 	private static final Logger log = LoggerFactory.getLogger(DBVideoFileInfo.class);
+	private static final int CHILD_QUERY_BATCH_SIZE = 500;
+	private static final String INSERT_VIDEO = "INSERT INTO VIDEO (FILEID, AGERATINGLEVEL, AGERATINGREASON, RATINGPERCENT, RATINGVOTERS"
+			+ ", DIRECTOR, TAGLINE, ASPECTRATIO, BITRATE, BITSPERPIXEL, CODECV, DURATIONSEC, CONTAINER, DVDTRACK, FRAMERATE, MIMETYPE, MODEL, MUXABLE"
+			+ ", WIDTH, YEAR, HEIGHT, ORIGINALNAME, NAME, TMDBID, IMDBID, OVERVIEW, BUDGET, REVENUE, HOMEPAGEURL, TRAILERURL, SORTNAME, MUXINGMODE"
+			+ ", ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String UPDATE_VIDEO = "UPDATE VIDEO SET AGERATINGLEVEL = ?, AGERATINGREASON = ?, RATINGPERCENT = ?, RATINGVOTERS = ?"
+			+ ", DIRECTOR = ?, TAGLINE = ?, ASPECTRATIO = ?, BITRATE = ?, BITSPERPIXEL = ?, CODECV = ?, DURATIONSEC = ?, CONTAINER = ?, DVDTRACK = ?, FRAMERATE = ?, MIMETYPE = ?, MODEL = ?, MUXABLE = ?"
+			+ ", WIDTH = ?, YEAR = ?, HEIGHT = ?, ORIGINALNAME = ?, NAME = ?, TMDBID = ?, IMDBID = ?, OVERVIEW = ?, BUDGET = ?, REVENUE = ?, HOMEPAGEURL = ?, TRAILERURL = ?, SORTNAME = ?, MUXINGMODE = ?"
+			+ ", ASPECTRATIOCONTAINER = ?, ASPECTRATIOVIDEOTRACK = ?, REFRAMES = ?, AVCLEVEL = ?"
+			+ " WHERE FILEID = ?";
+	private static final String INSERT_AUDIO = "INSERT INTO VIDEOAUDIO(FILEID, LANG, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, BITSPERSAMPLE, DELAYMS, MUXINGMODE, BITRATE)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String INSERT_SUBTITLE = "INSERT INTO SUBTITLES (FILEID, FILEPATH, LANG, TYPE)"
+			+ " VALUES (?, ?, ?, ?)";
 	
 	DBVideoFileInfo(JdbcConnectionPool cp){
 		super(cp);
@@ -205,7 +223,21 @@ class DBVideoFileInfo extends DBFileInfo {
 	}
 	
 	List<DOVideoFileInfo> getVideoFileInfo(DOFilter filter, boolean sortAscending, final ConditionType sortField, SortOption sortOption, int maxResults, boolean onlyActive) throws StorageException {
+		return getVideoFileInfo(filter, sortAscending, sortField, sortOption, 0, maxResults, onlyActive);
+	}
+	
+	List<DOVideoFileInfo> getVideoFileInfo(DOFilter filter, boolean sortAscending, final ConditionType sortField, SortOption sortOption, int startIndex, int maxResults, boolean onlyActive) throws StorageException {
 		HashMap<Integer, DOVideoFileInfo> videos = new LinkedHashMap<Integer, DOVideoFileInfo>();
+		
+		// the videos have to be re-sorted when the sort order isn't the one of the query
+		final OmitPrefixesConfiguration omitConfig;
+		boolean isSortedByPrefix = false;
+		if (sortOption == SortOption.FileProperty && (sortField == ConditionType.VIDEO_NAME || sortField == ConditionType.VIDEO_ORIGINALNAME || sortField == ConditionType.VIDEO_SORTNAME)) {
+			omitConfig = MediaLibraryConfiguration.getInstance().getOmitPrefixesConfiguration();
+			isSortedByPrefix = omitConfig.isSorting();
+		} else {
+			omitConfig = null;
+		}
 
 		Connection conn = null;
 		ResultSet rs = null;
@@ -216,13 +248,7 @@ class DBVideoFileInfo extends DBFileInfo {
 			conn = cp.getConnection();
 			
 			// create the where clause
-			String whereClause = "VIDEO.FILEID = FILE.ID";
-			if(onlyActive) {
-				whereClause += " AND FILE.ENABLED = 1";
-			}
-			if (filter.getConditions().size() > 0) {
-				whereClause += " AND (" + formatEquation(filter) + ")";
-			}
+			String whereClause = getVideoWhereClause(filter, onlyActive);
 			
 			// create order condition
 			String orderByClause = sortField.toString();
@@ -244,6 +270,19 @@ class DBVideoFileInfo extends DBFileInfo {
 			
 			if(log.isDebugEnabled()) log.debug(String.format("Video query clause: WHERE %s ORDER BY %s", whereClause, orderByClause));
 
+			// only join the child tables which are referenced by the filter or the sort order; audio tracks,
+			// subtitles, tags and plays are loaded afterwards for the returned videos only, instead of
+			// selecting the cartesian product of all of them
+			String joinClause = getVideoJoinClause(whereClause, orderByClause);
+			
+			// let the database skip the rows before the requested page when the query returns
+			// every video once and in the final order
+			String limitClause = "";
+			if ((startIndex > 0 || maxResults > 0) && joinClause.length() == 0 && sortOption != SortOption.Random && !isSortedByPrefix) {
+				limitClause = String.format(" LIMIT %s OFFSET %s", maxResults > 0 ? maxResults : -1, startIndex);
+				startIndex = 0;
+			}
+
 			String statement = "SELECT FILE.ID, FILE.FOLDERPATH, FILE.FILENAME, FILE.TYPE, FILE.SIZEBYTE, FILE.DATELASTUPDATEDDB, FILE.DATEINSERTEDDB" 
 			        + ", FILE.DATEMODIFIEDOS, FILE.THUMBNAILPATH, FILE.PLAYCOUNT, FILE.ENABLED, FILE.FILEIMPORTVERSION" // FILE
 			        + ", VIDEO.ORIGINALNAME, VIDEO.NAME, VIDEO.SORTNAME, VIDEO.TMDBID, VIDEO.IMDBID, VIDEO.OVERVIEW, VIDEO.BUDGET, VIDEO.REVENUE, VIDEO.HOMEPAGEURL, VIDEO.TRAILERURL" 
@@ -251,17 +290,11 @@ class DBVideoFileInfo extends DBFileInfo {
 			        + ", VIDEO.ASPECTRATIO, VIDEO.BITRATE, VIDEO.BITSPERPIXEL, VIDEO.CODECV, VIDEO.DURATIONSEC, VIDEO.CONTAINER, VIDEO.DVDTRACK, VIDEO.FRAMERATE"
 			        + ", VIDEO.HEIGHT, VIDEO.MIMETYPE, VIDEO.MODEL, VIDEO.MUXABLE, VIDEO.WIDTH, VIDEO.YEAR, VIDEO.MUXINGMODE, VIDEO.FRAMERATEMODE"
 			        + ", VIDEO.ASPECTRATIOCONTAINER, VIDEO.ASPECTRATIOVIDEOTRACK, VIDEO.REFRAMES, VIDEO.AVCLEVEL"// VIDEO
-			        + ", FILEPLAYS.DATEPLAYEND" //last play
-			        + ", VIDEOAUDIO.LANG, VIDEOAUDIO.NRAUDIOCHANNELS, VIDEOAUDIO.SAMPLEFREQ, VIDEOAUDIO.CODECA, VIDEOAUDIO.BITSPERSAMPLE, VIDEOAUDIO.DELAYMS, VIDEOAUDIO.MUXINGMODE, VIDEOAUDIO.BITRATE" //VIDEOAUDIO
-			        + ", SUBTITLES.FILEPATH, SUBTITLES.LANG, SUBTITLES.TYPE" //SUBTITLES
-			        + ", FILETAGS.KEY, FILETAGS.VALUE" //TAGS
 			        + " FROM FILE, VIDEO" 
-			        + " LEFT JOIN VIDEOAUDIO ON VIDEO.FILEID = VIDEOAUDIO.FILEID"
-			        + " LEFT JOIN SUBTITLES ON VIDEO.FILEID = SUBTITLES.FILEID" 
-			        + " LEFT JOIN FILETAGS ON VIDEO.FILEID = FILETAGS.FILEID" 
-			        + " LEFT JOIN FILEPLAYS ON VIDEO.FILEID = FILEPLAYS.FILEID" 
+			        + joinClause
 			        + " WHERE " + whereClause
-			        + " ORDER BY " + orderByClause;
+			        + " ORDER BY " + orderByClause
+			        + limitClause;
 			stmt = conn.prepareStatement(statement);
 
 			rs = stmt.executeQuery();
@@ -322,103 +355,8 @@ class DBVideoFileInfo extends DBFileInfo {
 						videoFile.setAvcLevel(rs.getString(pos++));
 
 						videos.put(videoFile.getId(), videoFile);
-					}else{
-						//skip the already imported fields if the video with this id is already contained in the list
-						pos = 49;
-						
-						videoFile = videos.get(videoFile.getId());
-					}
-					
-					//play count history
-					Timestamp playTimestamp = rs.getTimestamp(pos++);
-					if(playTimestamp != null) {
-						Date playDate = new Date(playTimestamp.getTime());
-						if(!videoFile.getPlayHistory().contains(playDate)) {
-							videoFile.addPlayToHistory(playDate);
-						}
-					}
-
-					// Audio track
-					DLNAMediaAudio audioTrack = new DLNAMediaAudio();
-					audioTrack.setLang(rs.getString(pos++));
-					audioTrack.getAudioProperties().setNumberOfChannels(rs.getInt(pos++));
-					audioTrack.setSampleFrequency(rs.getString(pos++));
-					audioTrack.setCodecA(rs.getString(pos++));
-					audioTrack.setBitsperSample(rs.getInt(pos++));
-					audioTrack.getAudioProperties().setAudioDelay(rs.getInt(pos++));
-					audioTrack.setMuxingModeAudio(rs.getString(pos++));
-					audioTrack.setBitRate(rs.getInt(pos++));
-
-					boolean doInsertAudioTrack = true;
-					for (DLNAMediaAudio currTrack : videoFile.getAudioCodes()) {
-						if(currTrack.equals(audioTrack)) {
-							doInsertAudioTrack = false;
-							break;
-						}
-					}
-					if (doInsertAudioTrack) {
-						videoFile.getAudioCodes().add(audioTrack);
-					}
-
-					// Subtitle track
-					String subtitleFilePath = rs.getString(pos++);
-					boolean doInsertSubtitleTrack = true;
-					for (DLNAMediaSubtitle currTrack : videoFile.getSubtitlesCodes()) {
-						if(currTrack.isExternal() && currTrack.getExternalFile() != null && currTrack.getExternalFile().getAbsolutePath().equals(subtitleFilePath)) { 
-							// Avoid checking an external subtitle file multiple times
-							doInsertSubtitleTrack = false;
-							break;
-						}
 					}
 					
-					if(doInsertSubtitleTrack){
-						DLNAMediaSubtitle subtitleTrack = new DLNAMediaSubtitle();
-						File subTitleFile;
-						if (subtitleFilePath != null && !subtitleFilePath.equals("") && (subTitleFile = new File(subtitleFilePath)).exists()) {
-							subtitleTrack.setExternalFile(subTitleFile);
-						}
-						subtitleTrack.setLang(rs.getString(pos++));
-						subtitleTrack.setType(SubtitleType.values()[rs.getInt(pos++)]);
-
-						for (DLNAMediaSubtitle currTrack : videoFile.getSubtitlesCodes()) {
-							if(currTrack.equals(subtitleTrack)) { 
-								doInsertSubtitleTrack = false;
-								break;
-							}
-						}
-						if (doInsertSubtitleTrack) {
-							videoFile.getSubtitlesCodes().add(subtitleTrack);
-						}
-					} else {
-						// Skip two columns as the external subtitle file has been previously added
-						pos += 2;
-					}
-
-					// Genres and Tags
-					String tagKey = rs.getString(pos++);
-					String tagValue = rs.getString(pos++);
-					if (tagKey == null) {
-						// do nothing
-					} else if (tagKey.equals(GENRE_KEY)) {
-						//it's a genre
-						if (!videoFile.getGenres().contains(tagValue)) {
-							videoFile.getGenres().add(tagValue);
-						}
-					} else {
-						//it's a tag
-						if(videoFile.getTags().containsKey(tagKey)) {
-							//add the tag to the existing list
-							List<String> tagValues = videoFile.getTags().get(tagKey);
-							if(!tagValues.contains(tagValue)) {
-								tagValues.add(tagValue);
-							}
-						} else {
-							//create a new list as it doesn't exist yet
-							List<String> l = new ArrayList<String>();
-							l.add(tagValue);
-							videoFile.getTags().put(tagKey, l);
-						}
-					}
 				} catch (Exception ex) {
 					log.error("Failed to read file from library. This should never happen!!!", ex);
 				}
@@ -434,61 +372,61 @@ class DBVideoFileInfo extends DBFileInfo {
 		//re-sort if needed (according to sort prefixes and sortOption)
 		if(sortOption == SortOption.Random){
 			Collections.shuffle(res);
-		} else if(sortOption == SortOption.FileProperty){
-			final OmitPrefixesConfiguration omitConfig = MediaLibraryConfiguration.getInstance().getOmitPrefixesConfiguration();
-			if (omitConfig.isSorting() && (sortField == ConditionType.VIDEO_NAME || sortField == ConditionType.VIDEO_ORIGINALNAME || sortField == ConditionType.VIDEO_SORTNAME)) {
-				Collections.sort(res, new Comparator<DOVideoFileInfo>() {
-	
-					@Override
-					public int compare(DOVideoFileInfo o1, DOVideoFileInfo o2) {
-						String s1 = "";
-						String s2 = "";
-						
-						switch (sortField) {
-						case VIDEO_NAME:
-							s1 = o1.getName();
-							s2 = o2.getName();
-							break;
-						case VIDEO_ORIGINALNAME:
-							s1 = o1.getOriginalName();
-							s2 = o2.getOriginalName();
-							break;
-						case VIDEO_SORTNAME:
-							s1 = o1.getSortName();
-							s2 = o2.getSortName();
-							break;
-						default:
-							log.warn(String.format("Unhandled sort field reveived (%s). This should never happen", sortField));
-							break;
-						}
-						
-						s1 = s1.toLowerCase();
-						s2 = s2.toLowerCase();
-	
-						for(String prefix : omitConfig.getPrefixes()){
-							String compStr = prefix.toLowerCase();
-							if(Character.isJavaIdentifierStart(compStr.charAt(compStr.length() -1))){
-								compStr += " ";
-							}
-							if (s1.startsWith(compStr)) s1 = s1.substring(compStr.length());
-							if (s2.startsWith(compStr)) s2 = s2.substring(compStr.length());						
+		} else if(isSortedByPrefix){
+			Collections.sort(res, new Comparator<DOVideoFileInfo>() {
+
+				@Override
+				public int compare(DOVideoFileInfo o1, DOVideoFileInfo o2) {
+					String s1 = "";
+					String s2 = "";
+					
+					switch (sortField) {
+					case VIDEO_NAME:
+						s1 = o1.getName();
+						s2 = o2.getName();
+						break;
+					case VIDEO_ORIGINALNAME:
+						s1 = o1.getOriginalName();
+						s2 = o2.getOriginalName();
+						break;
+					case VIDEO_SORTNAME:
+						s1 = o1.getSortName();
+						s2 = o2.getSortName();
+						break;
+					default:
+						log.warn(String.format("Unhandled sort field reveived (%s). This should never happen", sortField));
+						break;
+					}
+					
+					s1 = s1.toLowerCase();
+					s2 = s2.toLowerCase();
+
+					for(String prefix : omitConfig.getPrefixes()){
+						String compStr = prefix.toLowerCase();
+						if(Character.isJavaIdentifierStart(compStr.charAt(compStr.length() -1))){
+							compStr += " ";
 						}
-	
-						return s1.compareTo(s2);
+						if (s1.startsWith(compStr)) s1 = s1.substring(compStr.length());
+						if (s2.startsWith(compStr)) s2 = s2.substring(compStr.length());						
 					}
-				});
-				
-				if(!sortAscending){
-					Collections.reverse(res);
+
+					return s1.compareTo(s2);
 				}
-			}			
+			});
+			
+			if(!sortAscending){
+				Collections.reverse(res);
+			}
 		}
 		
-		//limit the number of videos if configured
-		if(maxResults > 0 && maxResults < res.size()){
-			res = res.subList(0, maxResults);
+		//limit the number of videos to the requested page
+		int endIndex = maxResults > 0 ? Math.min(startIndex + maxResults, res.size()) : res.size();
+		if(startIndex > 0 || endIndex < res.size()){
+			res = new ArrayList<DOVideoFileInfo>(res.subList(Math.min(startIndex, endIndex), endIndex));
 		}
 		
+		loadVideoChildren(res);
+		
 		return res;
 	}
 	
@@ -594,6 +532,35 @@ class DBVideoFileInfo extends DBFileInfo {
 		return nbItems;
     }
 
+	int getVideoFileInfoCount(DOFilter filter, boolean onlyActive) throws StorageException {
+		int nbItems = 0;
+		
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement stmt = null;
+		
+		try {
+			conn = cp.getConnection();
+			
+			String whereClause = getVideoWhereClause(filter, onlyActive);
+			stmt = conn.prepareStatement("SELECT COUNT(DISTINCT FILE.ID)"
+					+ " FROM FILE, VIDEO"
+					+ getVideoJoinClause(whereClause, "")
+					+ " WHERE " + whereClause);
+			rs = stmt.executeQuery();
+			
+			if(rs.next()){
+				nbItems = rs.getInt(1);
+			}
+		} catch (SQLException se) {
+			throw new StorageException(String.format("Failed to get video count for filter with equation='%s' and %s conditions", filter.getEquation(), filter.getConditions().size()), se);
+		} finally {
+			close(conn, stmt, rs);
+		}
+		
+		return nbItems;
+	}
+
     int getVideoCount() throws StorageException {
 		int count = 0;
 
@@ -633,49 +600,10 @@ class DBVideoFileInfo extends DBFileInfo {
 			
 			super.insertFileInfo(fileInfo, conn, stmt, rs);
 
-			stmt = conn.prepareStatement("INSERT INTO VIDEO (FILEID, AGERATINGLEVEL, AGERATINGREASON, RATINGPERCENT, RATINGVOTERS"
-			        + ", DIRECTOR, TAGLINE, ASPECTRATIO, BITRATE, BITSPERPIXEL, CODECV, DURATIONSEC, CONTAINER, DVDTRACK, FRAMERATE, MIMETYPE, MODEL, MUXABLE"
-			        + ", WIDTH, YEAR, HEIGHT, ORIGINALNAME, NAME, TMDBID, IMDBID, OVERVIEW, BUDGET, REVENUE, HOMEPAGEURL, TRAILERURL, SORTNAME, MUXINGMODE"
-			        + ", ASPECTRATIOCONTAINER, ASPECTRATIOVIDEOTRACK, REFRAMES, AVCLEVEL)"
-			        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			stmt = conn.prepareStatement(INSERT_VIDEO);
 			stmt.clearParameters();
 			stmt.setInt(1, fileInfo.getId());
-			stmt.setString(2, fileInfo.getAgeRating().getLevel());
-			stmt.setString(3, fileInfo.getAgeRating().getReason());
-			stmt.setInt(4, fileInfo.getRating().getRatingPercent());
-			stmt.setInt(5, fileInfo.getRating().getVotes());
-			stmt.setString(6, fileInfo.getDirector());
-			stmt.setString(7, fileInfo.getTagLine());
-			stmt.setString(8, fileInfo.getAspectRatio());
-			stmt.setInt(9, fileInfo.getBitrate());
-			stmt.setInt(10, fileInfo.getBitsPerPixel());
-			stmt.setString(11, fileInfo.getCodecV());
-			stmt.setDouble(12, fileInfo.getDurationSec());
-			stmt.setString(13, fileInfo.getContainer());
-			stmt.setInt(14, fileInfo.getDvdtrack());
-			stmt.setString(15, fileInfo.getFrameRate());
-			stmt.setString(16, fileInfo.getMimeType());
-			stmt.setString(17, fileInfo.getModel());
-			stmt.setBoolean(18, fileInfo.isMuxable());
-			stmt.setInt(19, fileInfo.getWidth());
-			stmt.setInt(20, fileInfo.getYear());
-			stmt.setInt(21, fileInfo.getHeight());
-
-			stmt.setString(22, fileInfo.getOriginalName());
-			stmt.setString(23, fileInfo.getName());
-			stmt.setInt(24, fileInfo.getTmdbId());
-			stmt.setString(25, fileInfo.getImdbId());
-			stmt.setString(26, fileInfo.getOverview() == null ? null : (fileInfo.getOverview().length() > DBConstants.VIDEO_OVERVIEW_FIELDLENGTH ? fileInfo.getOverview().substring(0, DBConstants.VIDEO_OVERVIEW_FIELDLENGTH) : fileInfo.getOverview()));
-			stmt.setInt(27, fileInfo.getBudget());
-			stmt.setInt(28, fileInfo.getRevenue());
-			stmt.setString(29, fileInfo.getHomepageUrl());
-			stmt.setString(30, fileInfo.getTrailerUrl());
-			stmt.setString(31, fileInfo.getSortName());
-			stmt.setString(32, fileInfo.getMuxingMode());
-			stmt.setString(33,  fileInfo.getAspectRatioContainer());
-			stmt.setString(34,  fileInfo.getAspectRatioVideoTrack());
-			stmt.setByte(35, fileInfo.getReferenceFrameCount());
-			stmt.setString(36, fileInfo.getAvcLevel());
+			setVideoParameters(stmt, fileInfo, 2);
 			stmt.executeUpdate();
 
 			insertOrUpdateVideoPropertyLists(fileInfo, stmt, conn);
@@ -713,48 +641,9 @@ class DBVideoFileInfo extends DBFileInfo {
 			super.updateFileInfo(fileInfo, conn, stmt, rs);
 			
 			//update video properties
-    		stmt = conn.prepareStatement("UPDATE VIDEO SET AGERATINGLEVEL = ?, AGERATINGREASON = ?, RATINGPERCENT = ?, RATINGVOTERS = ?"
-    		        + ", DIRECTOR = ?, TAGLINE = ?, ASPECTRATIO = ?, BITRATE = ?, BITSPERPIXEL = ?, CODECV = ?, DURATIONSEC = ?, CONTAINER = ?, DVDTRACK = ?, FRAMERATE = ?, MIMETYPE = ?, MODEL = ?, MUXABLE = ?"
-    		        + ", WIDTH = ?, YEAR = ?, HEIGHT = ?, ORIGINALNAME = ?, NAME = ?, TMDBID = ?, IMDBID = ?, OVERVIEW = ?, BUDGET = ?, REVENUE = ?, HOMEPAGEURL = ?, TRAILERURL = ?, SORTNAME = ?, MUXINGMODE = ?"
-    		        + ", ASPECTRATIOCONTAINER = ?, ASPECTRATIOVIDEOTRACK = ?, REFRAMES = ?, AVCLEVEL = ?"
-    		        + " WHERE FILEID = ?");
+    		stmt = conn.prepareStatement(UPDATE_VIDEO);
     		stmt.clearParameters();
-    		stmt.setString(1, fileInfo.getAgeRating().getLevel());
-    		stmt.setString(2, fileInfo.getAgeRating().getReason());
-    		stmt.setInt(3, fileInfo.getRating().getRatingPercent());
-    		stmt.setInt(4, fileInfo.getRating().getVotes());
-    		stmt.setString(5, fileInfo.getDirector());
-    		stmt.setString(6, fileInfo.getTagLine());
-    		stmt.setString(7, fileInfo.getAspectRatio());
-    		stmt.setInt(8, fileInfo.getBitrate());
-    		stmt.setInt(9, fileInfo.getBitsPerPixel());
-    		stmt.setString(10, fileInfo.getCodecV());
-    		stmt.setDouble(11, fileInfo.getDurationSec());
-    		stmt.setString(12, fileInfo.getContainer());
-    		stmt.setInt(13, fileInfo.getDvdtrack());
-    		stmt.setString(14, fileInfo.getFrameRate());
-    		stmt.setString(15, fileInfo.getMimeType());
-    		stmt.setString(16, fileInfo.getModel());
-    		stmt.setBoolean(17, fileInfo.isMuxable());
-    		stmt.setInt(18, fileInfo.getWidth());
-    		stmt.setInt(19, fileInfo.getYear());
-    		stmt.setInt(20, fileInfo.getHeight());
-    
-    		stmt.setString(21, fileInfo.getOriginalName());
-    		stmt.setString(22, fileInfo.getName());
-    		stmt.setInt(23, fileInfo.getTmdbId());
-    		stmt.setString(24, fileInfo.getImdbId());
-    		stmt.setString(25, fileInfo.getOverview() == null ? null : (fileInfo.getOverview().length() > DBConstants.VIDEO_OVERVIEW_FIELDLENGTH ? fileInfo.getOverview().substring(0, DBConstants.VIDEO_OVERVIEW_FIELDLENGTH) : fileInfo.getOverview()));
-    		stmt.setInt(26, fileInfo.getBudget());
-    		stmt.setInt(27, fileInfo.getRevenue());
-    		stmt.setString(28, fileInfo.getHomepageUrl());
-    		stmt.setString(29, fileInfo.getTrailerUrl());
-    		stmt.setString(30, fileInfo.getSortName());
-    		stmt.setString(31, fileInfo.getMuxingMode());
-    		stmt.setString(32,  fileInfo.getAspectRatioContainer());
-    		stmt.setString(33,  fileInfo.getAspectRatioVideoTrack());
-    		stmt.setByte(34, fileInfo.getReferenceFrameCount());
-    		stmt.setString(35, fileInfo.getAvcLevel());
+    		setVideoParameters(stmt, fileInfo, 1);
     		stmt.setInt(36, fileInfo.getId());
     		stmt.executeUpdate();
 
@@ -775,6 +664,432 @@ class DBVideoFileInfo extends DBFileInfo {
 		}
     }
 
+	/**
+	 * Inserts or updates the video file infos within a single transaction.
+	 * The statements of all files are sent to the database as JDBC batches.
+	 * A file info without id is updated if a file with the same path is
+	 * already in the library and inserted otherwise.<br>
+	 * If writing the batch fails, it is rolled back and the files are written
+	 * one by one, so that only the files which can't be written are reported
+	 * as failed in the result.
+	 * 
+	 * @param fileInfos the video file infos to write
+	 * @return the ids of the written files and the failures
+	 * @throws StorageException if the transaction couldn't be committed
+	 */
+	DOBatchWriteResult insertOrUpdateVideoFileInfos(List<DOVideoFileInfo> fileInfos) throws StorageException {
+		DOBatchWriteResult result = new DOBatchWriteResult();
+		if (fileInfos.isEmpty()) {
+			return result;
+		}
+
+		Connection conn = null;
+		BatchStatements stmts = null;
+		Savepoint savePoint = null;
+
+		try {
+			conn = cp.getConnection();
+			
+			//prepare transaction
+			conn.setAutoCommit(false);
+			savePoint = conn.setSavepoint();
+			stmts = new BatchStatements(conn);
+
+			int[] initialIds = new int[fileInfos.size()];
+			for (int i = 0; i < initialIds.length; i++) {
+				initialIds[i] = fileInfos.get(i).getId();
+			}
+
+			try {
+				writeVideoBatch(fileInfos, stmts, result);
+			} catch (SQLException e) {
+				log.warn(String.format("Failed to write a batch of %s videos. Writing them one by one", fileInfos.size()), e);
+				conn.rollback(savePoint);
+				stmts.clearBatch();
+				result = new DOBatchWriteResult();
+
+				for (int i = 0; i < initialIds.length; i++) {
+					DOVideoFileInfo fileInfo = fileInfos.get(i);
+					fileInfo.setId(initialIds[i]);
+
+					Savepoint fileSavePoint = conn.setSavepoint();
+					DOBatchWriteResult fileResult = new DOBatchWriteResult();
+					try {
+						writeVideoBatch(Collections.singletonList(fileInfo), stmts, fileResult);
+						result.addAll(fileResult);
+					} catch (SQLException ex) {
+						conn.rollback(fileSavePoint);
+						stmts.clearBatch();
+						fileInfo.setId(initialIds[i]);
+						result.addFailure(fileInfo.getFilePath(), new StorageException("Failed to write video file info " + fileInfo.getFilePath(), ex));
+					}
+				}
+			}
+
+			conn.commit();
+		} catch (SQLException e) {
+			try {
+				conn.rollback(savePoint);
+			} catch (SQLException e1) {
+				log.error("Failed to roll back transaction to save point after a problem occured during batch write", e);
+			}
+			throw new StorageException(String.format("Failed to write a batch of %s video file infos", fileInfos.size()), e);
+		} finally {
+			if (stmts != null) {
+				stmts.close();
+			}
+			close(conn, null, null, savePoint);
+		}
+
+		if (result.getNbInserted() > 0) {
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.VideoInserted));
+		}
+		if (result.getNbUpdated() > 0) {
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.VideoUpdated));
+		}
+		if (result.getNbInserted() > 0 || result.getNbUpdated() > 0) {
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FileTagChanged));
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Writes the files with the prepared statements of the batch. Only the
+	 * files inserted into the FILE table are executed one at a time, as
+	 * their generated id is required by all the other statements.
+	 */
+	private void writeVideoBatch(List<DOVideoFileInfo> fileInfos, BatchStatements stmts, DOBatchWriteResult result) throws SQLException {
+		List<DOVideoFileInfo> insertedFileInfos = new ArrayList<DOVideoFileInfo>();
+		List<DOVideoFileInfo> updatedFileInfos = new ArrayList<DOVideoFileInfo>();
+
+		for (DOVideoFileInfo fileInfo : fileInfos) {
+			if (fileInfo.getId() < 0) {
+				fileInfo.setId(getFileId(fileInfo, stmts));
+			}
+
+			if (fileInfo.getId() < 0) {
+				setFileParameters(stmts.insertFile, fileInfo);
+				stmts.insertFile.executeUpdate();
+				ResultSet rs = stmts.insertFile.getGeneratedKeys();
+				try {
+					if (rs.next()) {
+						fileInfo.setId(rs.getInt(1));
+					}
+				} finally {
+					rs.close();
+				}
+
+				stmts.insertVideo.setInt(1, fileInfo.getId());
+				setVideoParameters(stmts.insertVideo, fileInfo, 2);
+				stmts.insertVideo.addBatch();
+				insertedFileInfos.add(fileInfo);
+			} else {
+				setFileParameters(stmts.updateFile, fileInfo);
+				stmts.updateFile.setLong(12, fileInfo.getId());
+				stmts.updateFile.addBatch();
+
+				setVideoParameters(stmts.updateVideo, fileInfo, 1);
+				stmts.updateVideo.setInt(36, fileInfo.getId());
+				stmts.updateVideo.addBatch();
+				updatedFileInfos.add(fileInfo);
+			}
+
+			// the property lists are always replaced
+			stmts.deleteAudio.setInt(1, fileInfo.getId());
+			stmts.deleteAudio.addBatch();
+			stmts.deleteSubtitles.setInt(1, fileInfo.getId());
+			stmts.deleteSubtitles.addBatch();
+			stmts.deleteTags.setInt(1, fileInfo.getId());
+			stmts.deleteTags.addBatch();
+
+			for (DLNAMediaAudio media : fileInfo.getAudioCodes()) {
+				setAudioParameters(stmts.insertAudio, fileInfo.getId(), media);
+				stmts.insertAudio.addBatch();
+			}
+			for (DLNAMediaSubtitle subtitle : fileInfo.getSubtitlesCodes()) {
+				setSubtitleParameters(stmts.insertSubtitle, fileInfo.getId(), subtitle);
+				stmts.insertSubtitle.addBatch();
+			}
+			for (String key : fileInfo.getTags().keySet()) {
+				for (String value : fileInfo.getTags().get(key)) {
+					addTagBatch(stmts.insertTag, fileInfo.getId(), key, value);
+				}
+			}
+			for (String genre : fileInfo.getGenres()) {
+				addTagBatch(stmts.insertTag, fileInfo.getId(), GENRE_KEY, genre);
+			}
+		}
+
+		stmts.executeBatch();
+
+		for (DOVideoFileInfo fileInfo : insertedFileInfos) {
+			result.addInserted(fileInfo.getFilePath(), fileInfo.getId());
+		}
+		for (DOVideoFileInfo fileInfo : updatedFileInfos) {
+			result.addUpdated(fileInfo.getFilePath(), fileInfo.getId());
+		}
+	}
+
+	private String getVideoWhereClause(DOFilter filter, boolean onlyActive) {
+		String whereClause = "VIDEO.FILEID = FILE.ID";
+		if(onlyActive) {
+			whereClause += " AND FILE.ENABLED = 1";
+		}
+		if (filter.getConditions().size() > 0) {
+			whereClause += " AND (" + formatEquation(filter) + ")";
+		}
+		return whereClause;
+	}
+	
+	private String getVideoJoinClause(String whereClause, String orderByClause) {
+		String joinClause = "";
+		if (whereClause.contains("FILETAGS.")) {
+			joinClause += " LEFT JOIN FILETAGS ON VIDEO.FILEID = FILETAGS.FILEID";
+		}
+		if (whereClause.contains("FILEPLAYS.") || orderByClause.contains("FILEPLAYS.")) {
+			joinClause += " LEFT JOIN FILEPLAYS ON VIDEO.FILEID = FILEPLAYS.FILEID";
+		}
+		return joinClause;
+	}
+	
+	private void loadVideoChildren(List<DOVideoFileInfo> videos) throws StorageException {
+		if (videos.isEmpty()) {
+			return;
+		}
+		
+		Map<Integer, DOVideoFileInfo> videosById = new HashMap<Integer, DOVideoFileInfo>();
+		for (DOVideoFileInfo video : videos) {
+			videosById.put(video.getId(), video);
+		}
+		List<Integer> fileIds = new ArrayList<Integer>(videosById.keySet());
+
+		Connection conn = null;
+		ResultSet rs = null;
+		PreparedStatement stmt = null;
+
+		try {
+			conn = cp.getConnection();
+			
+			for (int start = 0; start < fileIds.size(); start += CHILD_QUERY_BATCH_SIZE) {
+				List<Integer> batchIds = fileIds.subList(start, Math.min(start + CHILD_QUERY_BATCH_SIZE, fileIds.size()));
+				String inClause = getInClause(batchIds.size());
+
+				// play count history
+				stmt = conn.prepareStatement("SELECT FILEID, DATEPLAYEND FROM FILEPLAYS WHERE FILEID IN " + inClause + " ORDER BY DATEPLAYEND ASC");
+				setFileIdParameters(stmt, batchIds);
+				rs = stmt.executeQuery();
+				while (rs.next()) {
+					Timestamp playTimestamp = rs.getTimestamp(2);
+					if (playTimestamp != null) {
+						videosById.get(rs.getInt(1)).addPlayToHistory(new Date(playTimestamp.getTime()));
+					}
+				}
+				close(stmt, rs);
+
+				// audio tracks
+				stmt = conn.prepareStatement("SELECT FILEID, LANG, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, BITSPERSAMPLE, DELAYMS, MUXINGMODE, BITRATE"
+						+ " FROM VIDEOAUDIO WHERE FILEID IN " + inClause + " ORDER BY ID ASC");
+				setFileIdParameters(stmt, batchIds);
+				rs = stmt.executeQuery();
+				while (rs.next()) {
+					addAudioTrack(videosById.get(rs.getInt(1)), rs);
+				}
+				close(stmt, rs);
+
+				// subtitle tracks
+				stmt = conn.prepareStatement("SELECT FILEID, FILEPATH, LANG, TYPE FROM SUBTITLES WHERE FILEID IN " + inClause + " ORDER BY ID ASC");
+				setFileIdParameters(stmt, batchIds);
+				rs = stmt.executeQuery();
+				while (rs.next()) {
+					addSubtitleTrack(videosById.get(rs.getInt(1)), rs);
+				}
+				close(stmt, rs);
+
+				// genres and tags
+				stmt = conn.prepareStatement("SELECT FILEID, KEY, VALUE FROM FILETAGS WHERE FILEID IN " + inClause);
+				setFileIdParameters(stmt, batchIds);
+				rs = stmt.executeQuery();
+				while (rs.next()) {
+					addTag(videosById.get(rs.getInt(1)), rs.getString(2), rs.getString(3));
+				}
+				close(stmt, rs);
+				stmt = null;
+				rs = null;
+			}
+		} catch (SQLException ex) {
+			throw new StorageException("Failed to get audio tracks, subtitles, tags and plays of video files", ex);
+		} finally {
+			close(conn, stmt, rs);
+		}
+	}
+	
+	private String getInClause(int nbParameters) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < nbParameters; i++) {
+			sb.append(i == 0 ? "?" : ", ?");
+		}
+		sb.append(")");
+		return sb.toString();
+	}
+	
+	private void setFileIdParameters(PreparedStatement stmt, List<Integer> fileIds) throws SQLException {
+		int pos = 1;
+		for (Integer fileId : fileIds) {
+			stmt.setInt(pos++, fileId);
+		}
+	}
+	
+	private void addAudioTrack(DOVideoFileInfo videoFile, ResultSet rs) throws SQLException {
+		DLNAMediaAudio audioTrack = new DLNAMediaAudio();
+		audioTrack.setLang(rs.getString(2));
+		audioTrack.getAudioProperties().setNumberOfChannels(rs.getInt(3));
+		audioTrack.setSampleFrequency(rs.getString(4));
+		audioTrack.setCodecA(rs.getString(5));
+		audioTrack.setBitsperSample(rs.getInt(6));
+		audioTrack.getAudioProperties().setAudioDelay(rs.getInt(7));
+		audioTrack.setMuxingModeAudio(rs.getString(8));
+		audioTrack.setBitRate(rs.getInt(9));
+
+		for (DLNAMediaAudio currTrack : videoFile.getAudioCodes()) {
+			if(currTrack.equals(audioTrack)) {
+				return;
+			}
+		}
+		videoFile.getAudioCodes().add(audioTrack);
+	}
+	
+	private void addSubtitleTrack(DOVideoFileInfo videoFile, ResultSet rs) throws SQLException {
+		String subtitleFilePath = rs.getString(2);
+		for (DLNAMediaSubtitle currTrack : videoFile.getSubtitlesCodes()) {
+			if(currTrack.isExternal() && currTrack.getExternalFile() != null && currTrack.getExternalFile().getAbsolutePath().equals(subtitleFilePath)) { 
+				// Avoid checking an external subtitle file multiple times
+				return;
+			}
+		}
+		
+		DLNAMediaSubtitle subtitleTrack = new DLNAMediaSubtitle();
+		File subTitleFile;
+		if (subtitleFilePath != null && !subtitleFilePath.equals("") && (subTitleFile = new File(subtitleFilePath)).exists()) {
+			subtitleTrack.setExternalFile(subTitleFile);
+		}
+		subtitleTrack.setLang(rs.getString(3));
+		subtitleTrack.setType(SubtitleType.values()[rs.getInt(4)]);
+
+		for (DLNAMediaSubtitle currTrack : videoFile.getSubtitlesCodes()) {
+			if(currTrack.equals(subtitleTrack)) { 
+				return;
+			}
+		}
+		videoFile.getSubtitlesCodes().add(subtitleTrack);
+	}
+	
+	private void addTag(DOVideoFileInfo videoFile, String tagKey, String tagValue) {
+		if (tagKey == null) {
+			// do nothing
+		} else if (tagKey.equals(GENRE_KEY)) {
+			//it's a genre
+			if (!videoFile.getGenres().contains(tagValue)) {
+				videoFile.getGenres().add(tagValue);
+			}
+		} else {
+			//it's a tag
+			if(videoFile.getTags().containsKey(tagKey)) {
+				//add the tag to the existing list
+				List<String> tagValues = videoFile.getTags().get(tagKey);
+				if(!tagValues.contains(tagValue)) {
+					tagValues.add(tagValue);
+				}
+			} else {
+				//create a new list as it doesn't exist yet
+				List<String> l = new ArrayList<String>();
+				l.add(tagValue);
+				videoFile.getTags().put(tagKey, l);
+			}
+		}
+	}
+	
+	private int getFileId(DOVideoFileInfo fileInfo, BatchStatements stmts) throws SQLException {
+		stmts.selectFileId.setString(1, fileInfo.getFolderPath());
+		stmts.selectFileId.setString(2, fileInfo.getFileName());
+		ResultSet rs = stmts.selectFileId.executeQuery();
+		try {
+			return rs.next() ? rs.getInt(1) : -1;
+		} finally {
+			rs.close();
+		}
+	}
+
+	private void addTagBatch(PreparedStatement stmt, int fileId, String key, String value) throws SQLException {
+		stmt.setInt(1, fileId);
+		stmt.setString(2, key);
+		stmt.setString(3, value);
+		stmt.addBatch();
+	}
+
+	private void setVideoParameters(PreparedStatement stmt, DOVideoFileInfo fileInfo, int firstIndex) throws SQLException {
+		int i = firstIndex;
+		stmt.setString(i++, fileInfo.getAgeRating().getLevel());
+		stmt.setString(i++, fileInfo.getAgeRating().getReason());
+		stmt.setInt(i++, fileInfo.getRating().getRatingPercent());
+		stmt.setInt(i++, fileInfo.getRating().getVotes());
+		stmt.setString(i++, fileInfo.getDirector());
+		stmt.setString(i++, fileInfo.getTagLine());
+		stmt.setString(i++, fileInfo.getAspectRatio());
+		stmt.setInt(i++, fileInfo.getBitrate());
+		stmt.setInt(i++, fileInfo.getBitsPerPixel());
+		stmt.setString(i++, fileInfo.getCodecV());
+		stmt.setDouble(i++, fileInfo.getDurationSec());
+		stmt.setString(i++, fileInfo.getContainer());
+		stmt.setInt(i++, fileInfo.getDvdtrack());
+		stmt.setString(i++, fileInfo.getFrameRate());
+		stmt.setString(i++, fileInfo.getMimeType());
+		stmt.setString(i++, fileInfo.getModel());
+		stmt.setBoolean(i++, fileInfo.isMuxable());
+		stmt.setInt(i++, fileInfo.getWidth());
+		stmt.setInt(i++, fileInfo.getYear());
+		stmt.setInt(i++, fileInfo.getHeight());
+
+		stmt.setString(i++, fileInfo.getOriginalName());
+		stmt.setString(i++, fileInfo.getName());
+		stmt.setInt(i++, fileInfo.getTmdbId());
+		stmt.setString(i++, fileInfo.getImdbId());
+		stmt.setString(i++, fileInfo.getOverview() == null ? null : (fileInfo.getOverview().length() > DBConstants.VIDEO_OVERVIEW_FIELDLENGTH ? fileInfo.getOverview().substring(0, DBConstants.VIDEO_OVERVIEW_FIELDLENGTH) : fileInfo.getOverview()));
+		stmt.setInt(i++, fileInfo.getBudget());
+		stmt.setInt(i++, fileInfo.getRevenue());
+		stmt.setString(i++, fileInfo.getHomepageUrl());
+		stmt.setString(i++, fileInfo.getTrailerUrl());
+		stmt.setString(i++, fileInfo.getSortName());
+		stmt.setString(i++, fileInfo.getMuxingMode());
+		stmt.setString(i++, fileInfo.getAspectRatioContainer());
+		stmt.setString(i++, fileInfo.getAspectRatioVideoTrack());
+		stmt.setByte(i++, fileInfo.getReferenceFrameCount());
+		stmt.setString(i++, fileInfo.getAvcLevel());
+	}
+
+	private void setAudioParameters(PreparedStatement stmt, int fileId, DLNAMediaAudio media) throws SQLException {
+		stmt.setInt(1, fileId);
+		stmt.setString(2, media.getLang());
+		stmt.setInt(3, media.getAudioProperties().getNumberOfChannels());
+		stmt.setString(4, media.getSampleFrequency());
+		stmt.setString(5, media.getCodecA());
+		stmt.setInt(6, media.getBitsperSample());
+		stmt.setInt(7, media.getAudioProperties().getAudioDelay());
+		stmt.setString(8, media.getMuxingModeAudio());
+		stmt.setInt(9, media.getBitRate());
+	}
+
+	private void setSubtitleParameters(PreparedStatement stmt, int fileId, DLNAMediaSubtitle subtitle) throws SQLException {
+		stmt.setInt(1, fileId);
+		String filePath = "";
+		if (subtitle.getExternalFile() != null) {
+			filePath = subtitle.getExternalFile().getAbsolutePath();
+		}
+		stmt.setString(2, filePath);
+		stmt.setString(3, subtitle.getLang());
+		stmt.setInt(4, subtitle.getType().ordinal());
+	}
+
 	private void insertOrUpdateVideoPropertyLists(DOVideoFileInfo videoFileInfo, PreparedStatement stmt, Connection conn) throws StorageException{
 		insertOrUpdateAudioTracks(videoFileInfo, stmt, conn);
 		insertOrUpdateSubtitles(videoFileInfo, stmt, conn);
@@ -795,18 +1110,9 @@ class DBVideoFileInfo extends DBFileInfo {
 		// Insert audio tracks for video
 		for (DLNAMediaAudio media : videoFileInfo.getAudioCodes()) {
 			try {
-				stmt = conn.prepareStatement("INSERT INTO VIDEOAUDIO(FILEID, LANG, NRAUDIOCHANNELS, SAMPLEFREQ, CODECA, BITSPERSAMPLE, DELAYMS, MUXINGMODE, BITRATE)"
-				        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+				stmt = conn.prepareStatement(INSERT_AUDIO);
 				stmt.clearParameters();
-				stmt.setInt(1, videoFileInfo.getId());
-				stmt.setString(2, media.getLang());
-				stmt.setInt(3, media.getAudioProperties().getNumberOfChannels());
-				stmt.setString(4, media.getSampleFrequency());
-				stmt.setString(5, media.getCodecA());
-				stmt.setInt(6, media.getBitsperSample());
-				stmt.setInt(7, media.getAudioProperties().getAudioDelay());
-				stmt.setString(8, media.getMuxingModeAudio());
-				stmt.setInt(9, media.getBitRate());
+				setAudioParameters(stmt, videoFileInfo.getId(), media);
 				stmt.executeUpdate();
 			} catch (Exception e) {
 				throw new StorageException("Failed to insert audio file with lang=" + media.getLang() + " for file " + videoFileInfo.getFileName(false), e);
@@ -828,17 +1134,9 @@ class DBVideoFileInfo extends DBFileInfo {
 		// Insert subtitles for video
 		for (DLNAMediaSubtitle subtitle : videoFileInfo.getSubtitlesCodes()) {
 			try {
-				stmt = conn.prepareStatement("INSERT INTO SUBTITLES (FILEID, FILEPATH, LANG, TYPE)" 
-						+ " VALUES (?, ?, ?, ?)");
+				stmt = conn.prepareStatement(INSERT_SUBTITLE);
 				stmt.clearParameters();
-				stmt.setInt(1, videoFileInfo.getId());
-				String filePath = "";
-				if (subtitle.getExternalFile() != null) {
-					filePath = subtitle.getExternalFile().getAbsolutePath();
-				}
-				stmt.setString(2, filePath);
-				stmt.setString(3, subtitle.getLang());
-				stmt.setInt(4, subtitle.getType().ordinal());
+				setSubtitleParameters(stmt, videoFileInfo.getId(), subtitle);
 				stmt.executeUpdate();
 			} catch (Exception e) {
 				throw new StorageException("Failed to insert subtitles lang=" + subtitle.getLang() + " for file " + videoFileInfo.getFileName(false), e);
@@ -896,4 +1194,62 @@ class DBVideoFileInfo extends DBFileInfo {
 			throw new StorageException("Failed to clear video id=" + fileIdStr + " properly", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * The prepared statements used to write a batch of video file infos. They
+	 * are executed in the order required by the dependencies between the tables.
+	 */
+	private class BatchStatements {
+		private final PreparedStatement selectFileId;
+		private final PreparedStatement insertFile;
+		private final PreparedStatement updateFile;
+		private final PreparedStatement insertVideo;
+		private final PreparedStatement updateVideo;
+		private final PreparedStatement deleteAudio;
+		private final PreparedStatement deleteSubtitles;
+		private final PreparedStatement deleteTags;
+		private final PreparedStatement insertAudio;
+		private final PreparedStatement insertSubtitle;
+		private final PreparedStatement insertTag;
+		private final List<PreparedStatement> statements = new ArrayList<PreparedStatement>();
+
+		private BatchStatements(Connection conn) throws SQLException {
+			selectFileId = prepare(conn.prepareStatement("SELECT ID FROM FILE WHERE FOLDERPATH = ? AND FILENAME = ?"));
+			insertFile = prepare(conn.prepareStatement(INSERT_FILE, Statement.RETURN_GENERATED_KEYS));
+			updateFile = prepare(conn.prepareStatement(UPDATE_FILE));
+			insertVideo = prepare(conn.prepareStatement(INSERT_VIDEO));
+			updateVideo = prepare(conn.prepareStatement(UPDATE_VIDEO));
+			deleteAudio = prepare(conn.prepareStatement("DELETE FROM VIDEOAUDIO WHERE FILEID = ?"));
+			deleteSubtitles = prepare(conn.prepareStatement("DELETE FROM SUBTITLES WHERE FILEID = ?"));
+			deleteTags = prepare(conn.prepareStatement("DELETE FROM FILETAGS WHERE FILEID = ?"));
+			insertAudio = prepare(conn.prepareStatement(INSERT_AUDIO));
+			insertSubtitle = prepare(conn.prepareStatement(INSERT_SUBTITLE));
+			insertTag = prepare(conn.prepareStatement("INSERT INTO FILETAGS(FILEID, KEY, VALUE) VALUES (?, ?, ?)"));
+		}
+
+		private PreparedStatement prepare(PreparedStatement stmt) {
+			statements.add(stmt);
+			return stmt;
+		}
+
+		private void executeBatch() throws SQLException {
+			for (PreparedStatement stmt : statements) {
+				if (stmt != selectFileId && stmt != insertFile) {
+					stmt.executeBatch();
+				}
+			}
+		}
+
+		private void clearBatch() throws SQLException {
+			for (PreparedStatement stmt : statements) {
+				stmt.clearBatch();
+			}
+		}
+
+		private void close() {
+			for (PreparedStatement stmt : statements) {
+				DBVideoFileInfo.this.close(null, stmt);
+			}
+		}
+	}
+}
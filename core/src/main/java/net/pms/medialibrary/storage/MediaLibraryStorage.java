@@ -22,9 +22,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.slf4j.Logger;
@@ -32,11 +34,14 @@ import org.slf4j.LoggerFactory;
 
 import net.pms.Messages;
 import net.pms.PMS;
+import net.pms.dlna.search.SearchEntry;
 import net.pms.medialibrary.commons.VersionConstants;
 import net.pms.medialibrary.commons.dataobjects.DOAudioFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOBatchWriteResult;
 import net.pms.medialibrary.commons.dataobjects.DOCondition;
 import net.pms.medialibrary.commons.dataobjects.DOFileImportTemplate;
 import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOFileState;
 import net.pms.medialibrary.commons.dataobjects.DOFilter;
 import net.pms.medialibrary.commons.dataobjects.DOFileEntryFolder;
 import net.pms.medialibrary.commons.dataobjects.DOFolder;
@@ -84,6 +89,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 	private DBTableColumn dbTableColumn;
 	private DBFileImport dbFileImport;
 	private DBQuickTag dbQuickTag;
+	private DBSearch dbSearch;
 	
 	/**
 	 * Constructor
@@ -106,6 +112,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 		dbTableColumn = new DBTableColumn(cp);
 		dbFileImport = new DBFileImport(cp);
 		dbQuickTag = new DBQuickTag(cp);
+		dbSearch = new DBSearch(cp);
 		
 		if(dbInitializer.isConnected()){
 			dbInitializer.configureDb();
@@ -509,6 +516,71 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 		}
 	}
 
+	@Override
+	public DOBatchWriteResult insertOrUpdateFileInfos(Collection<? extends DOFileInfo> fileInfos) {
+		DOBatchWriteResult result = new DOBatchWriteResult();
+		List<DOVideoFileInfo> videoFileInfos = new ArrayList<DOVideoFileInfo>();
+		Date now = new Date();
+		
+		for (DOFileInfo fileInfo : fileInfos) {
+			switch(fileInfo.getType()){
+				case VIDEO:
+					updateCover(fileInfo);
+					if(fileInfo.getId() < 0) {
+						fileInfo.setDateInsertedDb(now);
+					}
+					fileInfo.setDateLastUpdatedDb(now);
+					videoFileInfos.add((DOVideoFileInfo) fileInfo);
+					break;
+				default:
+					// only videos are written in batches
+					if(fileInfo.getId() >= 0 || isFileImported(fileInfo.getFilePath())) {
+						updateFileInfo(fileInfo);
+						result.addUpdated(fileInfo.getFilePath(), fileInfo.getId());
+					} else {
+						insertFileInfo(fileInfo);
+						result.addInserted(fileInfo.getFilePath(), fileInfo.getId());
+					}
+					break;
+			}
+		}
+		
+		if(!videoFileInfos.isEmpty()) {
+			DOBatchWriteResult videoResult;
+			try {
+				videoResult = dbVideoFileInfo.insertOrUpdateVideoFileInfos(videoFileInfos);
+			} catch (StorageException e) {
+				log.error("Storage error (batch write)", e);
+				videoResult = new DOBatchWriteResult();
+				for (DOVideoFileInfo fileInfo : videoFileInfos) {
+					videoResult.addFailure(fileInfo.getFilePath(), e);
+				}
+			}
+			result.addAll(videoResult);
+			
+			String statusMsg = null;
+			for (DOVideoFileInfo fileInfo : videoFileInfos) {
+				String filePath = fileInfo.getFilePath();
+				if(videoResult.isInserted(filePath)) {
+					if(log.isInfoEnabled()) log.info(String.format("Imported video file %s", filePath));
+					statusMsg = Messages.getString("ML.Messages.VideoInserted") + " " + fileInfo.toString();
+				} else if(videoResult.isUpdated(filePath)) {
+					if(log.isDebugEnabled()) log.debug(String.format("Updated video file %s", filePath));
+					statusMsg = Messages.getString("ML.Messages.VideoUpdated") + " " + fileInfo.toString();
+				} else {
+					log.error(String.format("Failed to write video file %s", filePath), videoResult.getFailure(filePath));
+				}
+			}
+			
+			// notify of the last written file in the GUI
+			if(statusMsg != null) {
+				PMS.get().getFrame().setStatusLine(statusMsg);
+			}
+		}
+		
+		return result;
+	}
+
 	private void updateCover(DOFileInfo fileInfo) {
 		//copy the thumbnail if required
 		File thumbnailFile = new File(fileInfo.getThumbnailPath());
@@ -616,10 +688,22 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 		return !getFileInfoLastUpdated(filePath).equals(new Date(0));
 	}
 
+	@Override
+	public Map<String, Map<String, DOFileState>> getFileStates(String folderPath, boolean includeSubFolders) {
+		Map<String, Map<String, DOFileState>> res = null;
+		try {
+			res = dbFileInfo.getFileStates(folderPath, includeSubFolders);
+		} catch (StorageException e) {
+			log.error("Storage error (get)", e);
+		}
+		return res;
+	}
+
 	@Override
 	public void updatePlayCount(long fileId, int playTimeSec, Date datePlayEnd) {
 		try {
 			dbFileInfo.updateFilePlay(fileId, playTimeSec, datePlayEnd);
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.PlayCountUpdated));
 			if(log.isDebugEnabled()) log.debug(String.format("Plays updated for file with id=%s play time=%ssec", fileId, playTimeSec));
 		} catch (StorageException e) {
 			log.error("Storage error (update)", e);
@@ -658,6 +742,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 	public void updateFilePath(String folderPath, String oldFileName, String newFileName) {
 		try {
 			dbFileInfo.updateFileName(folderPath, oldFileName, newFileName);
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.VideoUpdated));
 			log.debug(String.format("Updated file name from %s to %s in folder '%s'", oldFileName, newFileName, folderPath));
 		} catch (StorageException e) {
 			log.error("Storage error (update)", e);
@@ -744,6 +829,28 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 		}
 		return res;
 	}
+
+	@Override
+	public List<DOVideoFileInfo> getVideoFileInfo(DOFilter filter, boolean sortAscending, ConditionType sortField, int startIndex, int maxResults, SortOption sortOption, boolean onlyActive) {
+		List<DOVideoFileInfo> res = null;
+		try {
+			res = dbVideoFileInfo.getVideoFileInfo(filter, sortAscending, sortField, sortOption, startIndex, maxResults, onlyActive);
+		} catch (StorageException e) {
+			log.error("Storage error (get)", e);
+		}
+		return res;
+	}
+
+	@Override
+	public int getVideoFileInfoCount(DOFilter filter, boolean onlyActive) {
+		int res = -1;
+		try {
+			res = dbVideoFileInfo.getVideoFileInfoCount(filter, onlyActive);
+		} catch (StorageException e) {
+			log.error("Storage error (get)", e);
+		}
+		return res;
+	}
 	
 	@Override
 	public List<String> getVideoProperties(ConditionType conditionType, boolean isAscending, int minOccurences){
@@ -840,6 +947,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 					insertFolder(child);
 				}
 			}
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FolderChanged));
 			if(log.isDebugEnabled()) log.debug(String.format("Inserted folder '%s' (id=%s)", f.getName(), f.getId()));
 		} catch (StorageException e) {
 			log.error("Storage error (insert)", e);
@@ -850,6 +958,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 	public void updateFolder(DOFolder f) {
 		try {
 			dbMediaLibraryFolders.updateFolder(f);	
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FolderChanged));
 			if(log.isDebugEnabled()) log.debug(String.format("Updated folder '%s' (id=%s)", f.getName(), f.getId()));
 		} catch (StorageException e) {
 			log.error("Storage error (update)", e);
@@ -860,6 +969,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 	public void updateMediaLibraryFolderLocation(long id, long parentId, int locationInParent){
 		try {
 			dbMediaLibraryFolders.updateFolderLocation(id, parentId, locationInParent);
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FolderChanged));
 			if(log.isDebugEnabled()) log.debug(String.format("Updated folder location (id=%s)", id));
 		} catch (StorageException e) {
 			log.error("Storage error (update)", e);
@@ -870,6 +980,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 	public void deleteFolder(long id) {
 		try {
 			dbMediaLibraryFolders.deleteFolder(id);
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FolderChanged));
 			if(log.isDebugEnabled()) log.debug(String.format("Deleted folder with id=%s", id));
 		} catch (StorageException e) {
 			log.error("Storage error (delete)", e);
@@ -891,6 +1002,7 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
     public void updateFolderDisplayName(long folderId, String displayName) {
 		try {
 			dbMediaLibraryFolders.updateFolderDisplayName(folderId, displayName);
+			NotificationCenter.getInstance(DBEvent.class).post(new DBEvent(Type.FolderChanged));
 			if(log.isDebugEnabled()) log.debug(String.format("Updated name of folder with id=%s to '%s'", folderId, displayName));
 		} catch (StorageException e) {
 			log.error("Storage error (update)", e);
@@ -1117,4 +1229,21 @@ public class MediaLibraryStorage implements IMediaLibraryStorage {
 		}
 		return res;
 	}
-}
\ No newline at end of file
+	
+	/*********************************************
+	 * 
+	 * Search
+	 * 
+	 *********************************************/
+
+	@Override
+	public List<SearchEntry> getSearchEntries() {
+		List<SearchEntry> res = null;
+		try {
+			res = dbSearch.getSearchEntries();
+		} catch (StorageException e) {
+			log.error("Storage error (get)", e);
+		}
+		return res;
+	}
+}
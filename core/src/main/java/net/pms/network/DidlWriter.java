@@ -0,0 +1,152 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.network;
+
+import java.nio.charset.Charset;
+
+import net.pms.configuration.RendererConfiguration;
+import net.pms.dlna.DLNAResource;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Writes a SOAP response containing DIDL-Lite items directly into a Netty
+ * {@link ChannelBuffer}, encoding characters to UTF-8 as they are appended.
+ * Item representations are built in a single reusable fragment buffer, so a
+ * response with thousands of items does not create a temporary string per
+ * item, nor a full copy of the response as a string and as a byte array.
+ * <p>
+ * Instances are not thread safe and are meant to be used for one response.
+ */
+public class DidlWriter {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Initial buffer size reserved for the SOAP envelope. */
+	private static final int ENVELOPE_SIZE = 1024;
+
+	/** Estimated size of a single item, used to size the buffer up front. */
+	private static final int ITEM_SIZE = 1536;
+
+	private final ChannelBuffer buffer;
+	private final StringBuilder fragment = new StringBuilder(ITEM_SIZE);
+	private int itemCount;
+
+	/**
+	 * Creates a writer with a buffer large enough for the given number of
+	 * items, to avoid growing the buffer repeatedly while writing.
+	 *
+	 * @param expectedItems The expected number of items in the response.
+	 */
+	public DidlWriter(int expectedItems) {
+		buffer = ChannelBuffers.dynamicBuffer(ENVELOPE_SIZE + Math.max(0, expectedItems) * ITEM_SIZE);
+	}
+
+	/**
+	 * Appends the UTF-8 encoded characters to the response.
+	 *
+	 * @param s The characters to append.
+	 * @return This writer.
+	 */
+	public DidlWriter append(CharSequence s) {
+		int length = s.length();
+		buffer.ensureWritableBytes(length);
+
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+
+			if (c < 0x80) {
+				buffer.writeByte(c);
+			} else if (c < 0x800) {
+				buffer.writeByte(0xc0 | (c >> 6));
+				buffer.writeByte(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, s.charAt(++i));
+				buffer.writeByte(0xf0 | (codePoint >> 18));
+				buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+				buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+				buffer.writeByte(0x80 | (codePoint & 0x3f));
+			} else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+				// Unpaired surrogate, encoded as '?' like String.getBytes() does
+				buffer.writeByte('?');
+			} else {
+				buffer.writeByte(0xe0 | (c >> 12));
+				buffer.writeByte(0x80 | ((c >> 6) & 0x3f));
+				buffer.writeByte(0x80 | (c & 0x3f));
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Appends a number to the response.
+	 *
+	 * @param value The number to append.
+	 * @return This writer.
+	 */
+	public DidlWriter append(long value) {
+		return append(Long.toString(value));
+	}
+
+	/**
+	 * Appends the DIDL representation of a resource to the response.
+	 *
+	 * @param resource The resource to append.
+	 * @param mediaRenderer The renderer the response is meant for.
+	 * @return This writer.
+	 */
+	public DidlWriter appendItem(DLNAResource resource, RendererConfiguration mediaRenderer) {
+		fragment.setLength(0);
+		resource.appendDidlString(fragment, mediaRenderer);
+		itemCount++;
+		return append(fragment);
+	}
+
+	/**
+	 * @return The number of items appended with
+	 *         {@link #appendItem(DLNAResource, RendererConfiguration)}.
+	 */
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * @return The number of bytes written so far.
+	 */
+	public int length() {
+		return buffer.readableBytes();
+	}
+
+	/**
+	 * @return The buffer holding the encoded response. The buffer is not
+	 *         copied, so the writer should not be used any more afterwards.
+	 */
+	public ChannelBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return The response decoded as a string, for logging purposes.
+	 */
+	@Override
+	public String toString() {
+		return buffer.toString(UTF8);
+	}
+}
@@ -25,7 +25,13 @@ import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.Range;
+import net.pms.dlna.ThumbnailGenerator;
+import net.pms.dlna.search.SearchCriteria;
+import net.pms.dlna.search.SearchIndex;
+import net.pms.dlna.search.SearchResult;
+import net.pms.medialibrary.dlna.RootFolder;
 import net.pms.plugins.StartStopListenerDelegate;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -215,12 +221,15 @@ public class Request extends HTTPResource {
 					// This is a request for a thumbnail file.
 					output(output, "Content-Type: " + dlna.getThumbnailContentType());
 					output(output, "Accept-Ranges: bytes");
-					output(output, "Expires: " + getFUTUREDATE() + " GMT");
 					output(output, "Connection: keep-alive");
-					if (mediaRenderer.isMediaParserV2()) {
-						dlna.checkThumbnail();
+					if (mediaRenderer.isMediaParserV2() && ThumbnailGenerator.getInstance().request(dlna)) {
+						// Being generated in the background, send the generic thumbnail for now
+						output(output, "Cache-Control: no-cache");
+						inputStream = dlna.getGenericThumbnailInputStream(null);
+					} else {
+						output(output, "Expires: " + getFUTUREDATE() + " GMT");
+						inputStream = dlna.getThumbnailInputStream();
 					}
-					inputStream = dlna.getThumbnailInputStream();
 				} else if (fileName.indexOf("subtitle0000") > -1) {
 					// This is a request for a subtitle file
 					output(output, "Content-Type: text/plain");
@@ -572,13 +581,28 @@ public class Request extends HTTPResource {
 					}
 				}
 
-				List<DLNAResource> files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
-					objectID,
-					browseFlag != null && browseFlag.equals("BrowseDirectChildren"),
-					startingIndex,
-					requestCount,
-					mediaRenderer
-				);
+				List<DLNAResource> files;
+				int searchTotalMatches = -1;
+				SearchCriteria criteria = null;
+
+				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search") && isEmpty(objectID)) {
+					criteria = getSearchCriteria(content);
+				}
+
+				if (criteria != null) {
+					RootFolder rootFolder = PMS.get().getRootFolder(mediaRenderer);
+					SearchResult result = SearchIndex.getInstance().search(criteria, startingIndex, requestCount);
+					files = rootFolder.getSearchResultsFolder().getResources(result);
+					searchTotalMatches = result.getTotalMatches();
+				} else {
+					files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
+						objectID,
+						browseFlag != null && browseFlag.equals("BrowseDirectChildren"),
+						startingIndex,
+						requestCount,
+						mediaRenderer
+					);
+				}
 
 				if (searchCriteria != null && files != null) {
 					for (int i = files.size() - 1; i >= 0; i--) {
@@ -607,6 +631,11 @@ public class Request extends HTTPResource {
 					}
 				}
 
+				if (files != null && mediaRenderer.isMediaParserV2()) {
+					// Have the thumbnails ready by the time the renderer asks for them
+					ThumbnailGenerator.getInstance().prefetch(files);
+				}
+
 				response.append(HTTPXMLHelper.DIDL_FOOTER);
 				response.append(HTTPXMLHelper.RESULT_FOOTER);
 				response.append(CRLF);
@@ -624,7 +653,9 @@ public class Request extends HTTPResource {
 					parentFolder = files.get(0).getParent();
 				}
 
-				if (browseFlag != null && browseFlag.equals("BrowseDirectChildren") && mediaRenderer.isMediaParserV2() && mediaRenderer.isDLNATreeHack()) {
+				if (searchTotalMatches >= 0) {
+					response.append("<TotalMatches>").append(searchTotalMatches).append("</TotalMatches>");
+				} else if (browseFlag != null && browseFlag.equals("BrowseDirectChildren") && mediaRenderer.isMediaParserV2() && mediaRenderer.isDLNATreeHack()) {
 					// with the new parser, files are parsed and analyzed *before*
 					// creating the DLNA tree, every 10 items (the ps3 asks 10 by 10),
 					// so we do not know exactly the total number of items in the DLNA folder to send
@@ -762,4 +793,24 @@ public class Request extends HTTPResource {
 
 		return result;
 	}
+
+	/**
+	 * Returns the parsed search criteria of a ContentDirectory Search request.
+	 * @param content The SOAP request.
+	 * @return The criteria, or <code>null</code> if they are missing or invalid.
+	 */
+	private SearchCriteria getSearchCriteria(String content) {
+		String criteria = getEnclosingValue(content, "<SearchCriteria>", "</SearchCriteria>");
+
+		if (criteria == null) {
+			return null;
+		}
+
+		try {
+			return SearchCriteria.parse(StringEscapeUtils.unescapeXml(criteria));
+		} catch (IllegalArgumentException e) {
+			logger.debug("Invalid search criteria \"{}\": {}", criteria, e.getMessage());
+			return null;
+		}
+	}
 }
@@ -182,6 +182,10 @@ public class RequestHandlerV2 extends SimpleChannelUpstreamHandler {
 					request.setTransferMode(headerLine.substring(headerLine.toLowerCase().indexOf("transfermode.dlna.org:") + 22).trim());
 				} else if (headerLine.toLowerCase().indexOf("getcontentfeatures.dlna.org:") > -1) {
 					request.setContentFeatures(headerLine.substring(headerLine.toLowerCase().indexOf("getcontentfeatures.dlna.org:") + 28).trim());
+				} else if (headerLine.toLowerCase().startsWith("if-none-match:")) {
+					request.setIfNoneMatch(headerLine.substring(14).trim());
+				} else if (headerLine.toLowerCase().startsWith("if-modified-since:")) {
+					request.setIfModifiedSince(headerLine.substring(18).trim());
 				} else {
 					Matcher matcher = TIMERANGE_PATTERN.matcher(headerLine);
 					if (matcher.find()) {
@@ -25,25 +25,42 @@ import net.pms.dlna.DLNAMediaInfo;
 import net.pms.dlna.DLNAMediaSubtitle;
 import net.pms.dlna.DLNAResource;
 import net.pms.dlna.Range;
+import net.pms.dlna.ThumbnailGenerator;
+import net.pms.dlna.ThumbnailStore;
+import net.pms.dlna.search.SearchCriteria;
+import net.pms.dlna.search.SearchIndex;
+import net.pms.dlna.search.SearchResult;
+import net.pms.medialibrary.dlna.RootFolder;
 import net.pms.plugins.StartStopListenerDelegate;
+import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.stream.ChunkedStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -59,6 +76,10 @@ public class RequestV2 extends HTTPResource {
 	private static SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.US);
 	private static int BUFFER_SIZE = 8 * 1024;
 	private static final int[] MULTIPLIER = new int[] { 1, 60, 3600, 24*3600};
+
+	/** Size of the chunks used to send large Browse and Search responses. */
+	private static final int RESPONSE_CHUNK_SIZE = 32768;
+
 	private final String method;
 	private static final PmsConfiguration configuration = PMS.getConfiguration();
 
@@ -84,6 +105,8 @@ public class RequestV2 extends HTTPResource {
 	private RendererConfiguration mediaRenderer;
 	private String transferMode;
 	private String contentFeatures;
+	private String ifNoneMatch;
+	private String ifModifiedSince;
 	private final Range.Time range = new Range.Time();
 
 	/**
@@ -137,6 +160,25 @@ public class RequestV2 extends HTTPResource {
 		this.contentFeatures = contentFeatures;
 	}
 
+	/**
+	 * Sets the entity tags of the If-None-Match header, which make the
+	 * response "304 Not Modified" when one of them matches the resource.
+	 * @param ifNoneMatch The value of the header.
+	 */
+	public void setIfNoneMatch(String ifNoneMatch) {
+		this.ifNoneMatch = ifNoneMatch;
+	}
+
+	/**
+	 * Sets the date of the If-Modified-Since header, which makes the
+	 * response "304 Not Modified" when the resource has not changed since.
+	 * Ignored when an If-None-Match header was sent.
+	 * @param ifModifiedSince The value of the header.
+	 */
+	public void setIfModifiedSince(String ifModifiedSince) {
+		this.ifModifiedSince = ifModifiedSince;
+	}
+
 	public void setTimeRangeStart(Double timeseek) {
 		this.range.setStart(timeseek);
 	}
@@ -247,7 +289,9 @@ public class RequestV2 extends HTTPResource {
 	) throws IOException {
 		ChannelFuture future = null;
 		long CLoverride = -2; // 0 and above are valid Content-Length values, -1 means omit
+		FileChannel fileChannel = null; // set when the response body can be sent with a zero-copy transfer
 		StringBuilder response = new StringBuilder();
+		DidlWriter didl = null; // set when a Browse or Search response was written directly to a buffer
 		DLNAResource dlna = null;
 		boolean xbox = mediaRenderer.isXBOX();
 
@@ -292,14 +336,42 @@ public class RequestV2 extends HTTPResource {
 					// This is a request for a thumbnail file.
 					output.setHeader(HttpHeaders.Names.CONTENT_TYPE, dlna.getThumbnailContentType());
 					output.setHeader(HttpHeaders.Names.ACCEPT_RANGES, "bytes");
-					output.setHeader(HttpHeaders.Names.EXPIRES, getFUTUREDATE() + " GMT");
 					output.setHeader(HttpHeaders.Names.CONNECTION, "keep-alive");
 
-					if (mediaRenderer.isMediaParserV2()) {
-						dlna.checkThumbnail();
+					if (mediaRenderer.isMediaParserV2() && ThumbnailGenerator.getInstance().request(dlna)) {
+						// The thumbnail is being generated in the background. Send the generic
+						// one for now, without letting the renderer keep it.
+						output.setHeader(HttpHeaders.Names.CACHE_CONTROL, "no-cache");
+						inputStream = dlna.getGenericThumbnailInputStream(null);
+					} else {
+						output.setHeader(HttpHeaders.Names.EXPIRES, getFUTUREDATE() + " GMT");
+						File thumbnailFile = dlna.getThumbnailFile(mediaRenderer);
+
+						if (thumbnailFile != null && thumbnailFile.isFile()) {
+							// Thumbnails kept in a file can be validated with conditional requests.
+							// The files of the thumbnail store are tagged by their content, other
+							// images get a weak tag based on their modification time and length.
+							long lastModified = thumbnailFile.lastModified();
+							String contentKey = ThumbnailStore.getInstance().getContentKey(thumbnailFile);
+							String etag = contentKey != null ? "\"" + contentKey + "\""
+									: "W/\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(thumbnailFile.length()) + "\"";
+							output.setHeader(HttpHeaders.Names.ETAG, etag);
+							output.setHeader(HttpHeaders.Names.LAST_MODIFIED, getHttpDateFormat().format(new Date(lastModified)));
+
+							if (isNotModified(etag, lastModified)) {
+								output.setStatus(HttpResponseStatus.NOT_MODIFIED);
+							} else {
+								try {
+									inputStream = new FileInputStream(thumbnailFile);
+								} catch (FileNotFoundException ex) {
+									// Evicted from the thumbnail store in the meantime
+									inputStream = dlna.getThumbnailInputStream();
+								}
+							}
+						} else {
+							inputStream = dlna.getThumbnailInputStream();
+						}
 					}
-
-					inputStream = dlna.getThumbnailInputStream();
 				} else if (fileName.indexOf("subtitle0000") > -1) {
 					// This is a request for a subtitle file
 					output.setHeader(HttpHeaders.Names.CONTENT_TYPE, "text/plain");
@@ -329,7 +401,18 @@ public class RequestV2 extends HTTPResource {
 						range.setEnd(splitRange.getEnd());
 					}
 
-					inputStream = dlna.getInputStream(Range.create(lowRange, highRange, range.getStart(), range.getEnd()), mediaRenderer);
+					Range requestedRange = Range.create(lowRange, highRange, range.getStart(), range.getEnd());
+					File directFile = configuration.isHttpZeroCopy() ? dlna.getDirectFile(requestedRange, mediaRenderer) : null;
+
+					if (directFile != null) {
+						// Untranscoded local file or cached transcode: its bytes are sent straight
+						// from the file channel, the stream is only used for the headers and cleaning up.
+						FileInputStream fileInputStream = new FileInputStream(directFile);
+						fileChannel = fileInputStream.getChannel();
+						inputStream = fileInputStream;
+					} else {
+						inputStream = dlna.getInputStream(requestedRange, mediaRenderer);
+					}
 
 					if (!configuration.isDisableSubtitles()) {
 					// Some renderers (like Samsung devices) allow a custom header for a subtitle URL
@@ -393,9 +476,10 @@ public class RequestV2 extends HTTPResource {
 						boolean chunked = mediaRenderer.isChunkedTransfer();
 
 						// Determine the total size. Note: when transcoding the length is
-						// not known in advance, so DLNAMediaInfo.TRANS_SIZE will be returned instead.
+						// not known in advance, so DLNAMediaInfo.TRANS_SIZE will be returned instead,
+						// unless the output of an earlier transcode is sent from the transcode cache.
 
-						long totalsize = dlna.length(mediaRenderer);
+						long totalsize = directFile != null ? directFile.length() : dlna.length(mediaRenderer);
 
 						if (chunked && totalsize == DLNAMediaInfo.TRANS_SIZE) {
 							// In chunked mode we try to avoid arbitrary values.
@@ -599,21 +683,6 @@ public class RequestV2 extends HTTPResource {
 					requestCount = Integer.parseInt(rC.toString());
 				}
 
-				response.append(HTTPXMLHelper.XML_HEADER);
-				response.append(CRLF);
-				response.append(HTTPXMLHelper.SOAP_ENCODING_HEADER);
-				response.append(CRLF);
-
-				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search")) {
-					response.append(HTTPXMLHelper.SEARCHRESPONSE_HEADER);
-				} else {
-					response.append(HTTPXMLHelper.BROWSERESPONSE_HEADER);
-				}
-
-				response.append(CRLF);
-				response.append(HTTPXMLHelper.RESULT_HEADER);
-				response.append(HTTPXMLHelper.DIDL_HEADER);
-
 				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search")) {
 					browseFlag = "BrowseDirectChildren";
 				}
@@ -640,13 +709,28 @@ public class RequestV2 extends HTTPResource {
 					}
 				}
 
-				List<DLNAResource> files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
-					objectID,
-					browseFlag != null && browseFlag.equals("BrowseDirectChildren"),
-					startingIndex,
-					requestCount,
-					mediaRenderer
-				);
+				List<DLNAResource> files;
+				int searchTotalMatches = -1;
+				SearchCriteria criteria = null;
+
+				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search") && isEmpty(objectID)) {
+					criteria = getSearchCriteria(content);
+				}
+
+				if (criteria != null) {
+					RootFolder rootFolder = PMS.get().getRootFolder(mediaRenderer);
+					SearchResult result = SearchIndex.getInstance().search(criteria, startingIndex, requestCount);
+					files = rootFolder.getSearchResultsFolder().getResources(result);
+					searchTotalMatches = result.getTotalMatches();
+				} else {
+					files = PMS.get().getRootFolder(mediaRenderer).getDLNAResources(
+						objectID,
+						browseFlag != null && browseFlag.equals("BrowseDirectChildren"),
+						startingIndex,
+						requestCount,
+						mediaRenderer
+					);
+				}
 
 				if (searchCriteria != null && files != null) {
 					for (int i = files.size() - 1; i >= 0; i--) {
@@ -660,6 +744,24 @@ public class RequestV2 extends HTTPResource {
 					}
 				}
 
+				// Write the response straight into the buffer that will be sent,
+				// large folders would otherwise be copied several times over.
+				didl = new DidlWriter(files != null ? files.size() : 0);
+				didl.append(HTTPXMLHelper.XML_HEADER);
+				didl.append(CRLF);
+				didl.append(HTTPXMLHelper.SOAP_ENCODING_HEADER);
+				didl.append(CRLF);
+
+				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search")) {
+					didl.append(HTTPXMLHelper.SEARCHRESPONSE_HEADER);
+				} else {
+					didl.append(HTTPXMLHelper.BROWSERESPONSE_HEADER);
+				}
+
+				didl.append(CRLF);
+				didl.append(HTTPXMLHelper.RESULT_HEADER);
+				didl.append(HTTPXMLHelper.DIDL_HEADER);
+
 				int minus = 0;
 				if (files != null) {
 					for (DLNAResource uf : files) {
@@ -667,27 +769,34 @@ public class RequestV2 extends HTTPResource {
 							uf.setFakeParentId(containerID);
 						}
 						if (uf.isCompatible(mediaRenderer) && (uf.getPlayer() == null || uf.getPlayer().isPlayerCompatible(mediaRenderer))) {
-							response.append(uf.getDidlString(mediaRenderer));
+							didl.appendItem(uf, mediaRenderer);
 						} else {
 							minus++;
 						}
 					}
 				}
 
-				response.append(HTTPXMLHelper.DIDL_FOOTER);
-				response.append(HTTPXMLHelper.RESULT_FOOTER);
-				response.append(CRLF);
+				if (files != null && mediaRenderer.isMediaParserV2()) {
+					// Have the thumbnails ready by the time the renderer asks for them
+					ThumbnailGenerator.getInstance().prefetch(files);
+				}
+
+				didl.append(HTTPXMLHelper.DIDL_FOOTER);
+				didl.append(HTTPXMLHelper.RESULT_FOOTER);
+				didl.append(CRLF);
 				int filessize = 0;
 				if (files != null) {
 					filessize = files.size();
 				}
-				response.append("<NumberReturned>").append(filessize - minus).append("</NumberReturned>");
-				response.append(CRLF);
+				didl.append("<NumberReturned>").append(filessize - minus).append("</NumberReturned>");
+				didl.append(CRLF);
 				DLNAResource parentFolder = null;
 				if (files != null && filessize > 0) {
 					parentFolder = files.get(0).getParent();
 				}
-				if (browseFlag != null && browseFlag.equals("BrowseDirectChildren") && mediaRenderer.isMediaParserV2() && mediaRenderer.isDLNATreeHack()) {
+				if (searchTotalMatches >= 0) {
+					didl.append("<TotalMatches>").append(searchTotalMatches).append("</TotalMatches>");
+				} else if (browseFlag != null && browseFlag.equals("BrowseDirectChildren") && mediaRenderer.isMediaParserV2() && mediaRenderer.isDLNATreeHack()) {
 					// with the new parser, files are parsed and analyzed *before* creating the DLNA tree,
 					// every 10 items (the ps3 asks 10 by 10),
 					// so we do not know exactly the total number of items in the DLNA folder to send
@@ -698,30 +807,32 @@ public class RequestV2 extends HTTPResource {
 					if (filessize - minus <= 0) { // if no more elements, send the startingIndex
 						totalCount = startingIndex;
 					}
-					response.append("<TotalMatches>").append(totalCount).append("</TotalMatches>");
+					didl.append("<TotalMatches>").append(totalCount).append("</TotalMatches>");
 				} else if (browseFlag != null && browseFlag.equals("BrowseDirectChildren")) {
-					response.append("<TotalMatches>").append(((parentFolder != null) ? parentFolder.childrenNumber() : filessize) - minus).append("</TotalMatches>");
+					didl.append("<TotalMatches>").append(((parentFolder != null) ? parentFolder.childrenNumber() : filessize) - minus).append("</TotalMatches>");
 				} else { //from upnp spec: If BrowseMetadata is specified in the BrowseFlags then TotalMatches = 1
-					response.append("<TotalMatches>1</TotalMatches>");
+					didl.append("<TotalMatches>1</TotalMatches>");
 				}
-				response.append(CRLF);
-				response.append("<UpdateID>");
+				didl.append(CRLF);
+				didl.append("<UpdateID>");
 				if (parentFolder != null) {
-					response.append(parentFolder.getUpdateId());
+					didl.append(parentFolder.getUpdateId());
 				} else {
-					response.append("1");
+					didl.append("1");
 				}
-				response.append("</UpdateID>");
-				response.append(CRLF);
+				didl.append("</UpdateID>");
+				didl.append(CRLF);
 				if (soapaction != null && soapaction.contains("ContentDirectory:1#Search")) {
-					response.append(HTTPXMLHelper.SEARCHRESPONSE_FOOTER);
+					didl.append(HTTPXMLHelper.SEARCHRESPONSE_FOOTER);
 				} else {
-					response.append(HTTPXMLHelper.BROWSERESPONSE_FOOTER);
+					didl.append(HTTPXMLHelper.BROWSERESPONSE_FOOTER);
+				}
+				didl.append(CRLF);
+				didl.append(HTTPXMLHelper.SOAP_ENCODING_FOOTER);
+				didl.append(CRLF);
+				if (logger.isTraceEnabled()) {
+					logger.trace(didl.toString());
 				}
-				response.append(CRLF);
-				response.append(HTTPXMLHelper.SOAP_ENCODING_FOOTER);
-				response.append(CRLF);
-				logger.trace(response.toString());
 			}
 		} else if (method.equals("SUBSCRIBE")) {
 			output.setHeader("SID", PMS.get().usn());
@@ -793,7 +904,39 @@ public class RequestV2 extends HTTPResource {
 
 		output.setHeader("Server", PMS.get().getServerName());
 
-		if (response.length() > 0) {
+		if (didl != null) {
+			// A Browse or Search response was written to a buffer that can be sent as is.
+			ChannelBuffer buf = didl.getBuffer();
+			int chunkedSize = configuration.getHttpChunkedResponseSize();
+
+			if (chunkedSize > 0 && buf.readableBytes() > chunkedSize && !method.equals("HEAD")) {
+				// Large response: send it in chunks so the renderer can start
+				// parsing before everything has been transferred.
+				output.setChunked(true);
+				output.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+				e.getChannel().write(output);
+
+				while (buf.readable()) {
+					e.getChannel().write(new DefaultHttpChunk(buf.readSlice(Math.min(RESPONSE_CHUNK_SIZE, buf.readableBytes()))));
+				}
+
+				future = e.getChannel().write(HttpChunk.LAST_CHUNK);
+			} else {
+				output.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "" + buf.readableBytes());
+
+				// HEAD requests only require headers to be set, no need to set contents.
+				if (!method.equals("HEAD")) {
+					output.setContent(buf);
+				}
+
+				future = e.getChannel().write(output);
+			}
+
+			if (close) {
+				// Close the channel after the response is sent.
+				future.addListener(ChannelFutureListener.CLOSE);
+			}
+		} else if (response.length() > 0) {
 			// A response message was constructed; convert it to data ready to be sent.
 			byte responseData[] = response.toString().getBytes("UTF-8");
 			output.setHeader(HttpHeaders.Names.CONTENT_LENGTH, "" + responseData.length);
@@ -842,13 +985,36 @@ public class RequestV2 extends HTTPResource {
 			future = e.getChannel().write(output);
 
 			if (lowRange != DLNAMediaInfo.ENDFILE_POS && !method.equals("HEAD")) {
-				// Send the response body to the client in chunks.
-				ChannelFuture chunkWriteFuture = e.getChannel().write(new ChunkedStream(inputStream, BUFFER_SIZE));
+				ChannelFuture chunkWriteFuture;
+				final FileRegion region;
+
+				if (fileChannel != null) {
+					// Send the requested byte range of the file without copying it
+					// through the Java heap, using FileChannel.transferTo().
+					long start = Math.max(0, lowRange);
+					long count = Math.max(0, fileChannel.size() - start);
+
+					if (CLoverride > -1 && CLoverride < count) {
+						count = CLoverride;
+					}
+
+					logger.trace("Sending " + count + " bytes from position " + start + " using zero-copy transfer.");
+					region = new DefaultFileRegion(fileChannel, start, count);
+					chunkWriteFuture = e.getChannel().write(region);
+				} else {
+					// Send the response body to the client in chunks.
+					region = null;
+					chunkWriteFuture = e.getChannel().write(new ChunkedStream(inputStream, BUFFER_SIZE));
+				}
 
 				// Add a listener to clean up after sending the entire response body.
 				chunkWriteFuture.addListener(new ChannelFutureListener() {
 					@Override
 					public void operationComplete(ChannelFuture future) {
+						if (region != null) {
+							region.releaseExternalResources();
+						}
+
 						try {
 							PMS.get().getRegistry().reenableGoToSleep();
 							inputStream.close();
@@ -907,6 +1073,48 @@ public class RequestV2 extends HTTPResource {
 		return future;
 	}
 
+	/**
+	 * Returns a new format for the dates of HTTP headers, since
+	 * {@link SimpleDateFormat} cannot be shared between threads.
+	 * @return The format
+	 */
+	private static SimpleDateFormat getHttpDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format;
+	}
+
+	/**
+	 * Evaluates the conditional headers of the request against a resource.
+	 * @param etag The entity tag of the resource.
+	 * @param lastModified The time the resource was last modified.
+	 * @return True if the client already has the current resource.
+	 */
+	private boolean isNotModified(String etag, long lastModified) {
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+
+				if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		if (ifModifiedSince != null) {
+			try {
+				// HTTP dates have a precision of one second
+				return lastModified / 1000 <= getHttpDateFormat().parse(ifModifiedSince).getTime() / 1000;
+			} catch (ParseException e) {
+				logger.trace("Cannot parse If-Modified-Since header \"" + ifModifiedSince + "\"");
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Returns a date somewhere in the far future.
 	 * @return The {@link String} containing the date
@@ -936,6 +1144,26 @@ public class RequestV2 extends HTTPResource {
 		return result;
 	}
 
+	/**
+	 * Returns the parsed search criteria of a ContentDirectory Search request.
+	 * @param content The SOAP request.
+	 * @return The criteria, or <code>null</code> if they are missing or invalid.
+	 */
+	private SearchCriteria getSearchCriteria(String content) {
+		String criteria = getEnclosingValue(content, "<SearchCriteria>", "</SearchCriteria>");
+
+		if (criteria == null) {
+			return null;
+		}
+
+		try {
+			return SearchCriteria.parse(StringEscapeUtils.unescapeXml(criteria));
+		} catch (IllegalArgumentException e) {
+			logger.debug("Invalid search criteria \"{}\": {}", criteria, e.getMessage());
+			return null;
+		}
+	}
+
 	/**
 	 * Parse as double, or if it's not just one number, handles {hour}:{minute}:{seconds}
 	 * @param time
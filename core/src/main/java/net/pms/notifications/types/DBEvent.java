@@ -46,6 +46,8 @@ public class DBEvent {
 		FileTagChanged,
 		VideoInserted,
 		VideoUpdated,
-		VideoDeleted
+		VideoDeleted,
+		PlayCountUpdated,
+		FolderChanged
 	}
 }
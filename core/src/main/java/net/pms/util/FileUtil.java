@@ -12,10 +12,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
 
-import static org.apache.commons.lang3.StringUtils.endsWithIgnoreCase;
 import static org.apache.commons.lang3.StringUtils.equalsIgnoreCase;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
@@ -23,7 +20,9 @@ import static org.mozilla.universalchardet.Constants.*;
 
 public class FileUtil {
 	private static final Logger logger = LoggerFactory.getLogger(FileUtil.class);
-	private static Map<File, File[]> cache;
+	// folders whose subtitle files are kept indexed
+	private static final int SUBTITLE_INDEX_SIZE = 256;
+	private static final SubtitleIndex subtitleIndex = new SubtitleIndex(SUBTITLE_INDEX_SIZE);
 	// signal an invalid parameter in getFileLocation() without raising an exception or returning null
 	private static final String DEFAULT_BASENAME = "NO_DEFAULT_BASENAME_SUPPLIED.conf";
 
@@ -408,100 +407,66 @@ public class FileUtil {
 		return found;
 	}
 
-	private synchronized static boolean browseFolderForSubtitles(File subFolder, File file, DLNAMediaInfo media, boolean usecache) {
+	private static boolean browseFolderForSubtitles(File subFolder, File file, DLNAMediaInfo media, boolean usecache) {
 		boolean found = false;
-
-		if (!usecache) {
-			cache = null;
-		}
-
-		if (cache == null) {
-			cache = new HashMap<File, File[]>();
-		}
-
-		File[] allSubs = cache.get(subFolder);
-		if (allSubs == null) {
-			allSubs = subFolder.listFiles();
-
-			if (allSubs != null) {
-				cache.put(subFolder, allSubs);
-			}
-		}
-
 		String fileName = FilenameUtils.getBaseName(file.getName()).toLowerCase();
-		if (allSubs != null) {
-			for (File f : allSubs) {
-				if (f.isFile() && !f.isHidden()) {
-					String fName = f.getName().toLowerCase();
-					for (String ext : SubtitleType.getSupportedFileExtensions()) {
-						if (fName.length() > ext.length() && fName.startsWith(fileName) && endsWithIgnoreCase(fName, "." + ext)) {
-							int a = fileName.length();
-							int b = fName.length() - ext.length() - 1;
-							String code = "";
-
-							if (a <= b) { // handling case with several dots: <video>..<extension>
-								code = fName.substring(a, b);
-							}
 
-							if (code.startsWith(".")) {
-								code = code.substring(1);
-							}
+		for (SubtitleIndex.Subtitle subtitle : subtitleIndex.getSubtitles(subFolder, fileName, !usecache)) {
+			File f = subtitle.getFile();
+			String ext = subtitle.getExtension();
+			String code = subtitle.getCode(fileName);
+
+			boolean exists = false;
+			if (media != null) {
+				for (DLNAMediaSubtitle sub : media.getSubtitleTracksList()) {
+					if (f.equals(sub.getExternalFile())) {
+						exists = true;
+					} else if (equalsIgnoreCase(ext, "idx") && sub.getType() == SubtitleType.MICRODVD) { // sub+idx => VOBSUB
+						sub.setType(SubtitleType.VOBSUB);
+						exists = true;
+					} else if (equalsIgnoreCase(ext, "sub") && sub.getType() == SubtitleType.VOBSUB) { // VOBSUB
+						try {
+							sub.setExternalFile(f);
+						} catch (FileNotFoundException ex) {
+							logger.warn("Exception during external subtitles scan.", ex);
+						}
 
-							boolean exists = false;
-							if (media != null) {
-								for (DLNAMediaSubtitle sub : media.getSubtitleTracksList()) {
-									if (f.equals(sub.getExternalFile())) {
-										exists = true;
-									} else if (equalsIgnoreCase(ext, "idx") && sub.getType() == SubtitleType.MICRODVD) { // sub+idx => VOBSUB
-										sub.setType(SubtitleType.VOBSUB);
-										exists = true;
-									} else if (equalsIgnoreCase(ext, "sub") && sub.getType() == SubtitleType.VOBSUB) { // VOBSUB
-										try {
-											sub.setExternalFile(f);
-										} catch (FileNotFoundException ex) {
-											logger.warn("Exception during external subtitles scan.", ex);
-										}
-
-										exists = true;
-									}
-								}
-							}
+						exists = true;
+					}
+				}
+			}
 
-							if (!exists) {
-								DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
-								sub.setId(100 + (media == null ? 0 : media.getSubtitleTracksList().size())); // fake id, not used
-								if (code.length() == 0 || !Iso639.getCodeList().contains(code)) {
-									sub.setLang(DLNAMediaSubtitle.UND);
-									sub.setType(SubtitleType.valueOfFileExtension(ext));
-									if (code.length() > 0) {
-										sub.setFlavor(code);
-										if (sub.getFlavor().contains("-")) {
-											String flavorLang = sub.getFlavor().substring(0, sub.getFlavor().indexOf("-"));
-											String flavorTitle = sub.getFlavor().substring(sub.getFlavor().indexOf("-") + 1);
-											if (Iso639.getCodeList().contains(flavorLang)) {
-												sub.setLang(flavorLang);
-												sub.setFlavor(flavorTitle);
-											}
-										}
-									}
-								} else {
-									sub.setLang(code);
-									sub.setType(SubtitleType.valueOfFileExtension(ext));
-								}
-
-								try {
-									sub.setExternalFile(f);
-								} catch (FileNotFoundException ex) {
-									logger.warn("Exception during external subtitles scan.", ex);
-								}
-
-								found = true;
-								if (media != null) {
-									media.getSubtitleTracksList().add(sub);
-								}
+			if (!exists) {
+				DLNAMediaSubtitle sub = new DLNAMediaSubtitle();
+				sub.setId(100 + (media == null ? 0 : media.getSubtitleTracksList().size())); // fake id, not used
+				if (code.length() == 0 || !Iso639.getCodeList().contains(code)) {
+					sub.setLang(DLNAMediaSubtitle.UND);
+					sub.setType(SubtitleType.valueOfFileExtension(ext));
+					if (code.length() > 0) {
+						sub.setFlavor(code);
+						if (sub.getFlavor().contains("-")) {
+							String flavorLang = sub.getFlavor().substring(0, sub.getFlavor().indexOf("-"));
+							String flavorTitle = sub.getFlavor().substring(sub.getFlavor().indexOf("-") + 1);
+							if (Iso639.getCodeList().contains(flavorLang)) {
+								sub.setLang(flavorLang);
+								sub.setFlavor(flavorTitle);
 							}
 						}
 					}
+				} else {
+					sub.setLang(code);
+					sub.setType(SubtitleType.valueOfFileExtension(ext));
+				}
+
+				try {
+					sub.setExternalFile(f);
+				} catch (FileNotFoundException ex) {
+					logger.warn("Exception during external subtitles scan.", ex);
+				}
+
+				found = true;
+				if (media != null) {
+					media.getSubtitleTracksList().add(sub);
 				}
 			}
 		}
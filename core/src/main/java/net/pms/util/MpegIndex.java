@@ -0,0 +1,272 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Index of the byte positions of an MPEG transport stream (TS, M2TS) by
+ * presentation time, so time seeks can be answered without searching the
+ * file. The index has one entry for every second of the stream, taken from
+ * the PTS of the first elementary stream having one.
+ * <p>
+ * Instances are immutable. Use {@link #build(File)} to scan a file, and
+ * {@link #toBytes()} and {@link #fromBytes(byte[])} to store an index.
+ */
+public class MpegIndex {
+	/**
+	 * Version of the stored format, to be increased when it changes.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int READ_SIZE = 1024 * 1024;
+
+	/**
+	 * The PTS read by getTS() has 30 bits, so it wraps around after this
+	 * many clock ticks.
+	 */
+	private static final long PTS_WRAP = 1L << 30;
+
+	private final int[] seconds;
+	private final long[] positions;
+
+	MpegIndex(int[] seconds, long[] positions) {
+		this.seconds = seconds;
+		this.positions = positions;
+	}
+
+	/**
+	 * Scans a transport stream and indexes its byte positions by time.
+	 *
+	 * @param f The file to scan.
+	 * @return The index, or <code>null</code> if the file is not a transport
+	 *         stream or carries no PTS.
+	 * @throws IOException
+	 */
+	public static MpegIndex build(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+
+		try {
+			byte buffer[] = new byte[READ_SIZE];
+			int read = raf.read(buffer, 0, buffer.length);
+			int ps = 0;
+			int start = 0;
+
+			for (int i = 0; i < 400 && i + 192 < read; i++) {
+				if (buffer[i] == 71 && buffer[i + 188] == 71) { // TS
+					ps = 188;
+					start = i;
+					break;
+				} else if (buffer[i] == 71 && buffer[i + 192] == 71) { // M2TS
+					ps = 192;
+					start = i;
+					break;
+				}
+			}
+
+			if (ps == 0) {
+				return null;
+			}
+
+			int[] seconds = new int[1024];
+			long[] positions = new long[1024];
+			int count = 0;
+			Integer pid = null;
+			long firstPts = -1;
+			long previousPts = -1;
+			long wrapOffset = 0;
+			long bufferPosition = 0;
+
+			while (read > 0) {
+				int i = start;
+
+				for (; i + ps <= read; i += ps) {
+					if (buffer[i] != 71 || buffer[i + 7] != -32 || buffer[i + 6] != 1) {
+						continue;
+					}
+
+					int id = (((buffer[i + 1] + 256) % 256) - 64) * 256 + ((buffer[i + 2] + 256) % 256);
+					int diff = i + 7 + 4;
+
+					if ((buffer[diff] & 128) != 128 || (buffer[diff + 2] & 32) != 32 || (pid != null && pid.intValue() != id)) {
+						continue;
+					}
+
+					pid = id;
+					long pts = getTS(buffer, diff + 3);
+
+					if (previousPts >= 0 && pts + PTS_WRAP / 2 < previousPts) {
+						wrapOffset += PTS_WRAP;
+					}
+
+					previousPts = pts;
+					pts += wrapOffset;
+
+					if (firstPts < 0) {
+						firstPts = pts;
+					}
+
+					int second = (int) ((pts - firstPts) / 90000);
+
+					if (count == 0 || second > seconds[count - 1]) {
+						if (count == seconds.length) {
+							seconds = Arrays.copyOf(seconds, count * 2);
+							positions = Arrays.copyOf(positions, count * 2);
+						}
+
+						seconds[count] = second;
+						positions[count] = bufferPosition + i;
+						count++;
+					}
+				}
+
+				// Keep the incomplete packet at the end of the buffer
+				int remaining = read - i;
+				System.arraycopy(buffer, i, buffer, 0, remaining);
+				bufferPosition += i;
+				start = 0;
+				int n = raf.read(buffer, remaining, buffer.length - remaining);
+				read = n > 0 ? remaining + n : 0;
+			}
+
+			if (count == 0) {
+				return null;
+			}
+
+			return new MpegIndex(Arrays.copyOf(seconds, count), Arrays.copyOf(positions, count));
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static long getTS(byte buffer[], int diff) {
+		return (((((buffer[diff + 0] & 0xff) << 8) + (buffer[diff + 1] & 0xff)) >> 1) << 15)
+			+ ((((buffer[diff + 2] & 0xff) << 8) + (buffer[diff + 3] & 0xff)) >> 1);
+	}
+
+	/**
+	 * @return The duration of the stream in seconds.
+	 */
+	public int getDurationInSeconds() {
+		return seconds[seconds.length - 1];
+	}
+
+	/**
+	 * Returns the byte position of the packet starting the given second of
+	 * the stream, or of the last second before it that has an entry.
+	 *
+	 * @param timeS The time in seconds.
+	 * @return The position in bytes.
+	 */
+	public long getPosition(int timeS) {
+		int i = Arrays.binarySearch(seconds, timeS);
+
+		if (i < 0) {
+			// Not found => the entry before the insertion point
+			i = Math.max(0, -i - 2);
+		}
+
+		return positions[i];
+	}
+
+	/**
+	 * @return The number of entries of the index.
+	 */
+	public int size() {
+		return seconds.length;
+	}
+
+	/**
+	 * Serializes the index, the positions being stored as differences to
+	 * keep the result small.
+	 *
+	 * @return The serialized index.
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + seconds.length * 12);
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(seconds.length);
+			long previous = 0;
+
+			for (int i = 0; i < seconds.length; i++) {
+				out.writeInt(seconds[i]);
+				out.writeInt((int) (positions[i] - previous));
+				previous = positions[i];
+			}
+
+			out.flush();
+		} catch (IOException e) {
+			// Cannot happen with a ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads an index serialized by {@link #toBytes()}.
+	 *
+	 * @param data The serialized index.
+	 * @return The index, or <code>null</code> if the data is invalid or was
+	 *         stored in an older format.
+	 */
+	public static MpegIndex fromBytes(byte[] data) {
+		if (data == null) {
+			return null;
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+		try {
+			if (in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+
+			int count = in.readInt();
+
+			if (count <= 0 || count > data.length / 8) {
+				return null;
+			}
+
+			int[] seconds = new int[count];
+			long[] positions = new long[count];
+			long previous = 0;
+
+			for (int i = 0; i < count; i++) {
+				seconds[i] = in.readInt();
+				positions[i] = previous + (in.readInt() & 0xffffffffL);
+				previous = positions[i];
+			}
+
+			return new MpegIndex(seconds, positions);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
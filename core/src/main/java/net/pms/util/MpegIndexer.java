@@ -0,0 +1,201 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.dlna.DLNAMediaDatabase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the {@link MpegIndex} of the transport streams that were played or
+ * parsed. Indexes are built in the background, one file at a time, stored
+ * in the media cache and kept in memory for the most recently used files.
+ * An index is only used for the version of the file it was built from.
+ * <p>
+ * Get a singleton using the static getInstance method.
+ */
+public class MpegIndexer {
+	private static final Logger logger = LoggerFactory.getLogger(MpegIndexer.class);
+	private static final PmsConfiguration configuration = PMS.getConfiguration();
+
+	/**
+	 * Number of indexes kept in memory.
+	 */
+	private static final int MEMORY_SIZE = 64;
+
+	private static MpegIndexer instance;
+
+	/**
+	 * Indexes by file path and modification time, guarded by this.
+	 */
+	private final Map<String, MpegIndex> indexes = new LinkedHashMap<String, MpegIndex>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, MpegIndex> eldest) {
+			return size() > MEMORY_SIZE;
+		}
+	};
+
+	/**
+	 * Keys of the files being indexed, guarded by this.
+	 */
+	private final Set<String> pending = new HashSet<String>();
+
+	/**
+	 * Keys of the files that could not be indexed, guarded by this.
+	 */
+	private final Set<String> failed = new HashSet<String>();
+
+	private final ExecutorService executor;
+
+	public static synchronized MpegIndexer getInstance() {
+		if (instance == null) {
+			instance = new MpegIndexer();
+		}
+
+		return instance;
+	}
+
+	MpegIndexer() {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(
+			1,
+			1,
+			60,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "mpeg-indexer");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			}
+		);
+		pool.allowCoreThreadTimeOut(true);
+		executor = pool;
+	}
+
+	/**
+	 * Returns the index of a transport stream. If the file has not been
+	 * indexed yet, it is indexed in the background and <code>null</code> is
+	 * returned, so the caller has to fall back to searching the file.
+	 *
+	 * @param f The file.
+	 * @return The index, or <code>null</code> if it is not available yet.
+	 */
+	public MpegIndex get(final File f) {
+		if (!configuration.isMpegSeekIndex()) {
+			return null;
+		}
+
+		final String path = f.getAbsolutePath();
+		final long modified = f.lastModified();
+		final String key = path + "|" + modified;
+
+		synchronized (this) {
+			MpegIndex index = indexes.get(key);
+
+			if (index != null || pending.contains(key) || failed.contains(key)) {
+				return index;
+			}
+		}
+
+		DLNAMediaDatabase database = getDatabase();
+
+		if (database != null) {
+			MpegIndex index = MpegIndex.fromBytes(database.getMpegIndex(path, modified));
+
+			if (index != null) {
+				synchronized (this) {
+					indexes.put(key, index);
+				}
+
+				return index;
+			}
+		}
+
+		synchronized (this) {
+			if (!pending.add(key)) {
+				return null;
+			}
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				MpegIndex index = null;
+
+				try {
+					long start = System.currentTimeMillis();
+					index = MpegIndex.build(f);
+
+					if (index == null || f.lastModified() != modified) {
+						return;
+					}
+
+					logger.debug("Indexed " + index.size() + " seconds of " + path + " in " + (System.currentTimeMillis() - start) + " ms");
+
+					synchronized (MpegIndexer.this) {
+						indexes.put(key, index);
+					}
+
+					DLNAMediaDatabase database = getDatabase();
+
+					if (database != null) {
+						database.insertMpegIndex(path, modified, index.toBytes());
+					}
+				} catch (IOException e) {
+					logger.debug("Error indexing " + path + ": " + e.getMessage());
+				} finally {
+					synchronized (MpegIndexer.this) {
+						pending.remove(key);
+
+						if (index == null) {
+							failed.add(key);
+						}
+					}
+				}
+			}
+		});
+
+		return null;
+	}
+
+	private DLNAMediaDatabase getDatabase() {
+		return configuration.getUseCache() ? PMS.get().getDatabase() : null;
+	}
+}
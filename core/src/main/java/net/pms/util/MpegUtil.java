@@ -9,6 +9,12 @@ import java.util.Map;
 
 public class MpegUtil {
 	public static int getDurationFromMpeg(File f) throws IOException {
+		MpegIndex index = MpegIndexer.getInstance().get(f);
+
+		if (index != null) {
+			return index.getDurationInSeconds();
+		}
+
 		RandomAccessFile raf = new RandomAccessFile(f, "r");
 		if (raf.length() >= 500000) {
 			Map<Integer, Integer> ptsStart = checkRange(raf, 0, 250000, false);
@@ -94,13 +100,20 @@ public class MpegUtil {
 	}
 
 	/**
-	 * gets position for specified time in MPEG stream (M2TS, TS)
+	 * gets position for specified time in MPEG stream (M2TS, TS), from the
+	 * seek index of the file once it has been built by {@link MpegIndexer}
 	 * @param f - file to check
 	 * @param timeS - time (in seconds) to find
 	 * @return position in stream (in bytes).
 	 * @throws IOException
 	 */
 	public static long getPositionForTimeInMpeg(File f, int timeS) throws IOException {
+		MpegIndex index = MpegIndexer.getInstance().get(f);
+
+		if (index != null) {
+			return index.getPosition(timeS);
+		}
+
 		RandomAccessFile raf = new RandomAccessFile(f, "r");
 		Map<Integer, Integer> ptsStart = checkRange(raf, 0, 250000, false);
 		long currentPos = 0;
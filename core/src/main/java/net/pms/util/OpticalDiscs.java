@@ -0,0 +1,198 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import com.sun.jna.Platform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells which files are stored on optical discs, which are slow to read
+ * from concurrently.
+ * <p>
+ * On Linux, optical discs are the iso9660 and udf file systems listed in
+ * /proc/mounts. On Windows, they are the drives without any free space,
+ * which is how mounted discs report themselves. Elsewhere no file is
+ * considered to be on an optical disc. Results are remembered for
+ * {@link #CACHE_TIME} milliseconds, so discs can be inserted and ejected.
+ */
+public final class OpticalDiscs {
+	private static final Logger logger = LoggerFactory.getLogger(OpticalDiscs.class);
+
+	/**
+	 * Time in milliseconds the mounted discs are remembered.
+	 */
+	static final long CACHE_TIME = 10000;
+
+	private static final File MOUNTS = new File("/proc/mounts");
+
+	private static volatile List<String> mountPoints = Collections.emptyList();
+	private static volatile long mountPointsTime;
+
+	/**
+	 * Optical state of Windows drive roots, with the time it was checked.
+	 */
+	private static final Map<String, long[]> drives = new ConcurrentHashMap<String, long[]>();
+
+	// this class is not instantiable
+	private OpticalDiscs() { }
+
+	/**
+	 * Returns the mount point of the optical disc a file is stored on.
+	 *
+	 * @param file The file.
+	 * @return The mount point, or <code>null</code> if the file is not
+	 * 			stored on an optical disc or it cannot be told.
+	 */
+	public static String getMountPoint(File file) {
+		File absolute = file.getAbsoluteFile();
+
+		if (Platform.isWindows()) {
+			File root = absolute;
+
+			while (root.getParentFile() != null) {
+				root = root.getParentFile();
+			}
+
+			return isOpticalDrive(root) ? root.getPath() : null;
+		}
+
+		if (Platform.isLinux()) {
+			return getMountPoint(absolute.getPath(), getLinuxMountPoints());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the longest of the mount points that contains a path.
+	 *
+	 * @param path The absolute path.
+	 * @param mountPoints The mount points.
+	 * @return The mount point, or <code>null</code> if none contains the path.
+	 */
+	static String getMountPoint(String path, List<String> mountPoints) {
+		String found = null;
+
+		for (String mountPoint : mountPoints) {
+			boolean contains = path.equals(mountPoint)
+				|| path.startsWith(mountPoint.endsWith("/") ? mountPoint : mountPoint + "/");
+
+			if (contains && (found == null || mountPoint.length() > found.length())) {
+				found = mountPoint;
+			}
+		}
+
+		return found;
+	}
+
+	private static boolean isOpticalDrive(File root) {
+		long now = System.currentTimeMillis();
+		long[] state = drives.get(root.getPath());
+
+		if (state == null || now - state[1] > CACHE_TIME) {
+			boolean optical = root.getTotalSpace() > 0 && root.getFreeSpace() == 0;
+			state = new long[] { optical ? 1 : 0, now };
+			drives.put(root.getPath(), state);
+		}
+
+		return state[0] == 1;
+	}
+
+	private static List<String> getLinuxMountPoints() {
+		long now = System.currentTimeMillis();
+
+		if (now - mountPointsTime > CACHE_TIME) {
+			List<String> found = new ArrayList<String>();
+
+			try {
+				BufferedReader reader = new BufferedReader(new FileReader(MOUNTS));
+
+				try {
+					String line;
+
+					while ((line = reader.readLine()) != null) {
+						String mountPoint = parseOpticalMount(line);
+
+						if (mountPoint != null) {
+							found.add(mountPoint);
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				logger.debug("Cannot read mounted file systems from " + MOUNTS + ": " + e.getMessage());
+			}
+
+			mountPoints = found;
+			mountPointsTime = now;
+		}
+
+		return mountPoints;
+	}
+
+	/**
+	 * Parses a line of /proc/mounts.
+	 *
+	 * @param line The line, e.g. "/dev/sr0 /media/cdrom iso9660 ro 0 0".
+	 * @return The mount point if it is an optical disc, <code>null</code>
+	 * 			otherwise.
+	 */
+	static String parseOpticalMount(String line) {
+		String[] fields = line.split(" ");
+
+		if (fields.length < 3 || !("iso9660".equals(fields[2]) || "udf".equals(fields[2]))) {
+			return null;
+		}
+
+		// Spaces and other special characters are escaped as octal numbers
+		StringBuilder mountPoint = new StringBuilder();
+		String escaped = fields[1];
+
+		for (int i = 0; i < escaped.length(); i++) {
+			char c = escaped.charAt(i);
+
+			if (c == '\\' && i + 3 < escaped.length()) {
+				try {
+					mountPoint.append((char) Integer.parseInt(escaped.substring(i + 1, i + 4), 8));
+					i += 3;
+					continue;
+				} catch (NumberFormatException e) {
+					// not an escape sequence
+				}
+			}
+
+			mountPoint.append(c);
+		}
+
+		return mountPoint.toString();
+	}
+}
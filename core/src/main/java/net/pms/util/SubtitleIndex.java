@@ -0,0 +1,258 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import net.pms.formats.v2.SubtitleType;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.StringUtils.endsWithIgnoreCase;
+
+/**
+ * Index of the external subtitle files of folders, so the subtitles of a
+ * video can be found without scanning the whole folder listing for every
+ * video it contains. The subtitle files of a folder are kept sorted by
+ * name, and the subtitles of a video are those whose name starts with the
+ * base name of the video.
+ * <p>
+ * A folder is indexed once and indexed again when its modification time
+ * changes, i.e. when files are added, removed or renamed. The number of
+ * indexed folders is bounded, the least recently used folders are
+ * discarded first. Folders are indexed without holding a lock, so lookups
+ * for different folders do not wait for each other.
+ */
+class SubtitleIndex {
+	/**
+	 * Folders modified less than this many milliseconds before they were
+	 * indexed are indexed again on the next lookup, since changes within
+	 * the resolution of the file system timestamps would go unnoticed.
+	 */
+	private static final long TIMESTAMP_RESOLUTION = 2000;
+
+	private final Map<File, Folder> folders;
+
+	/**
+	 * Creates an index for at most the given number of folders.
+	 *
+	 * @param maxFolders The maximum number of folders to index.
+	 */
+	SubtitleIndex(final int maxFolders) {
+		folders = new LinkedHashMap<File, Folder>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<File, Folder> eldest) {
+				return size() > maxFolders;
+			}
+		};
+	}
+
+	/**
+	 * Returns the external subtitle files of a video in a folder.
+	 *
+	 * @param folder The folder to look in.
+	 * @param baseName The base name of the video, in lower case.
+	 * @param refresh Set to true to index the folder again even if it has
+	 * 			not changed.
+	 * @return The subtitle files, sorted by name.
+	 */
+	List<Subtitle> getSubtitles(File folder, String baseName, boolean refresh) {
+		Folder entry;
+
+		synchronized (folders) {
+			entry = folders.get(folder);
+		}
+
+		long lastModified = folder.lastModified();
+
+		if (refresh || entry == null || entry.lastModified != lastModified) {
+			entry = index(folder, lastModified);
+
+			synchronized (folders) {
+				if (entry != null && System.currentTimeMillis() - lastModified >= TIMESTAMP_RESOLUTION) {
+					folders.put(folder, entry);
+				} else {
+					folders.remove(folder);
+				}
+			}
+		}
+
+		if (entry == null) {
+			return Collections.emptyList();
+		}
+
+		List<Subtitle> subtitles = new ArrayList<Subtitle>();
+
+		for (int i = lowerBound(entry.subtitles, baseName); i < entry.subtitles.length && entry.subtitles[i].name.startsWith(baseName); i++) {
+			subtitles.add(entry.subtitles[i]);
+		}
+
+		return subtitles;
+	}
+
+	/**
+	 * Returns the number of folders currently indexed.
+	 *
+	 * @return The number of folders.
+	 */
+	int getSize() {
+		synchronized (folders) {
+			return folders.size();
+		}
+	}
+
+	/**
+	 * Lists the subtitle files of a folder.
+	 *
+	 * @param folder The folder.
+	 * @param lastModified The modification time of the folder before it
+	 * 			was listed.
+	 * @return The folder index, or <code>null</code> if the folder cannot
+	 * 			be listed.
+	 */
+	private static Folder index(File folder, long lastModified) {
+		File[] files = folder.listFiles();
+
+		if (files == null) {
+			return null;
+		}
+
+		List<Subtitle> subtitles = new ArrayList<Subtitle>();
+
+		for (File file : files) {
+			String name = file.getName().toLowerCase();
+
+			for (String extension : SubtitleType.getSupportedFileExtensions()) {
+				if (name.length() > extension.length() && endsWithIgnoreCase(name, "." + extension)) {
+					if (file.isFile() && !file.isHidden()) {
+						subtitles.add(new Subtitle(file, name, extension));
+					}
+
+					break;
+				}
+			}
+		}
+
+		Subtitle[] sorted = subtitles.toArray(new Subtitle[subtitles.size()]);
+		Arrays.sort(sorted);
+		return new Folder(lastModified, sorted);
+	}
+
+	/**
+	 * Returns the position of the first subtitle whose name is not less
+	 * than the given name.
+	 */
+	private static int lowerBound(Subtitle[] subtitles, String name) {
+		int low = 0;
+		int high = subtitles.length;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (subtitles[middle].name.compareTo(name) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * An external subtitle file.
+	 */
+	static final class Subtitle implements Comparable<Subtitle> {
+		private final File file;
+		private final String name;
+		private final String extension;
+
+		Subtitle(File file, String name, String extension) {
+			this.file = file;
+			this.name = name;
+			this.extension = extension;
+		}
+
+		/**
+		 * @return The subtitle file.
+		 */
+		File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return The file name, in lower case.
+		 */
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return The subtitle file extension, as supported by
+		 * 			{@link SubtitleType}.
+		 */
+		String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * Returns the language code or flavor between the base name of the
+		 * video and the extension, e.g. "en" for "movie.en.srt".
+		 *
+		 * @param baseName The base name of the video, in lower case.
+		 * @return The code, or an empty string if there is none.
+		 */
+		String getCode(String baseName) {
+			int a = baseName.length();
+			int b = name.length() - extension.length() - 1;
+			String code = "";
+
+			if (a <= b) { // handling case with several dots: <video>..<extension>
+				code = name.substring(a, b);
+			}
+
+			if (code.startsWith(".")) {
+				code = code.substring(1);
+			}
+
+			return code;
+		}
+
+		@Override
+		public int compareTo(Subtitle other) {
+			return name.compareTo(other.name);
+		}
+	}
+
+	private static final class Folder {
+		private final long lastModified;
+		private final Subtitle[] subtitles;
+
+		Folder(long lastModified, Subtitle[] subtitles) {
+			this.lastModified = lastModified;
+			this.subtitles = subtitles;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.pms.dlna.DLNAMediaAudio;
+import net.pms.dlna.DLNAMediaInfo;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FormatConfigurationTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FormatConfigurationTest.class);
+	private static final List<String> SUPPORTED = Arrays.asList(
+		"f:mpegps|mpegts   v:mpeg1|mpeg2|mp4|h264   a:ac3|lpcm|mpa       m:video/mpeg",
+		"f:avi|divx        v:mp4|divx|mjpeg         a:mp3|lpcm|mpa|ac3   m:video/x-divx     gmc:0",
+		"f:mp4             v:mp4|h264               a:ac3                m:video/mp4        w:1920   h:1080",
+		"f:mp4             v:mp4|h264               a:aac                m:video/mp4        n:2      b:20000000",
+		"f:wav   a:dts         n:6   s:48000   m:audio/wav",
+		"f:wav                 n:2   s:48000   m:audio/wav",
+		"f:mp3                 n:2             m:audio/mpeg",
+		"f:jpg    m:image/jpeg"
+	);
+
+	private static final String[] CONTAINERS = { "mpegps", "mpegts", "avi", "mp4", "mkv", "wav", "mp3", "jpg" };
+	private static final String[] VIDEO_CODECS = { "mpeg2", "h264", "mp4", "divx", "vc1", null };
+	private static final String[] AUDIO_CODECS = { "ac3", "aac", "mpa", "mp3", "dts", "lpcm" };
+	private static final int[] CHANNELS = { 1, 2, 6, 8 };
+	private static final int[] FREQUENCIES = { 44100, 48000, 96000 };
+	private static final int[] WIDTHS = { 720, 1280, 1920, 3840 };
+	private static final int[] HEIGHTS = { 480, 720, 1080, 2160 };
+
+	/**
+	 * Creates the media information of a folder of mixed files, with
+	 * bitrates that are all different.
+	 */
+	private static List<DLNAMediaInfo> createMedia(int count) {
+		Random random = new Random(42);
+		List<DLNAMediaInfo> media = new ArrayList<DLNAMediaInfo>();
+
+		for (int i = 0; i < count; i++) {
+			DLNAMediaInfo info = new DLNAMediaInfo();
+			info.setContainer(CONTAINERS[random.nextInt(CONTAINERS.length)]);
+			info.setCodecV(VIDEO_CODECS[random.nextInt(VIDEO_CODECS.length)]);
+			info.setBitrate(1000000 + random.nextInt(30000000));
+			int resolution = random.nextInt(WIDTHS.length);
+			info.setWidth(WIDTHS[resolution]);
+			info.setHeight(HEIGHTS[resolution]);
+
+			if (random.nextBoolean()) {
+				info.putExtra(FormatConfiguration.MI_GMC, String.valueOf(random.nextInt(2)));
+			}
+
+			int tracks = random.nextInt(3);
+
+			for (int t = 0; t < tracks; t++) {
+				DLNAMediaAudio audio = new DLNAMediaAudio();
+				audio.setCodecA(AUDIO_CODECS[random.nextInt(AUDIO_CODECS.length)]);
+				audio.getAudioProperties().setNumberOfChannels(CHANNELS[random.nextInt(CHANNELS.length)]);
+				audio.setSampleFrequency(String.valueOf(FREQUENCIES[random.nextInt(FREQUENCIES.length)]));
+				info.getAudioTracksList().add(audio);
+			}
+
+			media.add(info);
+		}
+
+		return media;
+	}
+
+	/**
+	 * The uncached equivalent of {@link FormatConfiguration#match(DLNAMediaInfo)}.
+	 */
+	private static String matchSupportSpecs(FormatConfiguration conf, DLNAMediaInfo media) {
+		if (media.getFirstAudioTrack() == null) {
+			return conf.matchSupportSpecs(media.getContainer(), media.getCodecV(), null, 0, 0, media.getBitrate(), media.getWidth(), media.getHeight(), media.getExtras());
+		}
+
+		String mimeType = null;
+
+		for (DLNAMediaAudio audio : media.getAudioTracksList()) {
+			mimeType = conf.matchSupportSpecs(
+				media.getContainer(),
+				media.getCodecV(),
+				audio.getCodecA(),
+				audio.getAudioProperties().getNumberOfChannels(),
+				audio.getSampleRate(),
+				media.getBitrate(),
+				media.getWidth(),
+				media.getHeight(),
+				media.getExtras()
+			);
+
+			if (mimeType == null) {
+				return null;
+			}
+		}
+
+		return mimeType;
+	}
+
+	@Test
+	public void testMatch() {
+		FormatConfiguration conf = new FormatConfiguration(SUPPORTED);
+
+		assertThat(conf.match("mpegps", "mpeg2", "ac3")).isEqualTo("video/mpeg");
+		assertThat(conf.match("mkv", "h264", "ac3")).isNull();
+		assertThat(conf.match("mp4", "h264", "ac3", 6, 48000, 8000000, 1920, 1080, null)).isEqualTo("video/mp4");
+		assertThat(conf.match("mp4", "h264", "ac3", 6, 48000, 8000000, 3840, 2160, null)).isNull();
+		assertThat(conf.match("mp4", "h264", "aac", 2, 48000, 19999999, 1920, 1080, null)).isEqualTo("video/mp4");
+		assertThat(conf.match("mp4", "h264", "aac", 2, 48000, 20000001, 1920, 1080, null)).isNull();
+		assertThat(conf.match("wav", null, "lpcm", 6, 48000, 0, 0, 0, null)).isNull();
+		assertThat(conf.match("wav", null, "dts", 6, 48000, 0, 0, 0, null)).isEqualTo("audio/wav");
+		assertThat(conf.match("wav", null, "dts", 6, 96000, 0, 0, 0, null)).isNull();
+
+		// Remembered results stay the same
+		assertThat(conf.match("mp4", "h264", "aac", 2, 48000, 20000001, 1920, 1080, null)).isNull();
+		assertThat(conf.match("mp4", "h264", "aac", 2, 48000, 15000000, 1920, 1080, null)).isEqualTo("video/mp4");
+	}
+
+	@Test
+	public void testMatchSameAsUncached() {
+		FormatConfiguration conf = new FormatConfiguration(SUPPORTED);
+
+		for (int pass = 0; pass < 2; pass++) {
+			for (DLNAMediaInfo media : createMedia(1000)) {
+				assertThat(conf.match(media)).isEqualTo(matchSupportSpecs(conf, media));
+			}
+		}
+	}
+
+	/**
+	 * Compares remembered and uncached matching on a folder of 1,000 mixed
+	 * files. Only runs when the "pms.benchmark" system property is set to
+	 * true.
+	 */
+	@Test
+	public void benchmarkMatch() {
+		Assume.assumeTrue(Boolean.getBoolean("pms.benchmark"));
+
+		FormatConfiguration conf = new FormatConfiguration(SUPPORTED);
+		List<DLNAMediaInfo> folder = createMedia(1000);
+		int browses = 200;
+		long uncachedNanos = 0;
+		long cachedNanos = 0;
+
+		// The first round warms up
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+
+			for (int i = 0; i < browses; i++) {
+				for (DLNAMediaInfo media : folder) {
+					matchSupportSpecs(conf, media);
+				}
+			}
+
+			uncachedNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+
+			for (int i = 0; i < browses; i++) {
+				for (DLNAMediaInfo media : folder) {
+					conf.match(media);
+				}
+			}
+
+			cachedNanos = System.nanoTime() - start;
+		}
+
+		LOGGER.info(String.format("Matching a folder of %d files: %d us uncached, %d us remembered",
+				folder.size(), uncachedNanos / browses / 1000, cachedNanos / browses / 1000));
+	}
+}
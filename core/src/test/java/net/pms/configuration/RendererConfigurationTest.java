@@ -19,15 +19,23 @@
 
 package net.pms.configuration;
 
+import static net.pms.configuration.RendererConfiguration.getAllRendererConfigurations;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationBySocketAddress;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationByUA;
 import static net.pms.configuration.RendererConfiguration.getRendererConfigurationByUAAHH;
 import static net.pms.configuration.RendererConfiguration.loadRendererConfigurations;
 import static net.pms.configuration.RendererConfiguration.resetAddressAssociation;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.HashMap;
@@ -38,8 +46,11 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.LoggerFactory;
 
 import ch.qos.logback.classic.LoggerContext;
@@ -51,6 +62,9 @@ import ch.qos.logback.classic.LoggerContext;
 public class RendererConfigurationTest {
 	private final Map<String, String> testCases = new HashMap<String, String>();
 
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 	@Before
 	public void setUp() {
 		// Silence all log messages from the PMS code that is being tested
@@ -366,4 +380,197 @@ public class RendererConfigurationTest {
 		assertEquals("PlayStation 3", conf.getRendererName());
 
 	}
+
+	private RendererConfiguration createRenderer(String content) throws IOException, ConfigurationException {
+		File f = temporaryFolder.newFile();
+		FileWriter writer = new FileWriter(f);
+
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+
+		return new RendererConfiguration(f);
+	}
+
+	/**
+	 * Test {@link RendererConfiguration#getTreeSignature()}: renderers that
+	 * only differ in settings read when browsing share the same tree, and
+	 * with it the running transcodes. Renderers that would be sent
+	 * different transcoded output do not.
+	 */
+	@Test
+	public void testTreeSignature() throws IOException, ConfigurationException {
+		String common = "Supported = f:mpegps\nSupported = f:mp3\n";
+		RendererConfiguration a = createRenderer("RendererName = Renderer A\nUserAgentSearch = A\n" + common);
+		RendererConfiguration b = createRenderer("RendererName = Renderer B\nUserAgentSearch = B\nSeekByTime = true\nChunkedTransfer = true\n" + common);
+		RendererConfiguration c = createRenderer("RendererName = Renderer C\nUserAgentSearch = C\nSupported = f:mpegps\n");
+		RendererConfiguration d = createRenderer("RendererName = Renderer D\nUserAgentSearch = D\nStreamExtensions = mkv\n" + common);
+		RendererConfiguration ps3 = createRenderer("RendererName = PlayStation 3\nUserAgentSearch = PS3\n" + common);
+		RendererConfiguration ps3Slim = createRenderer("RendererName = PS3 Slim\nUserAgentSearch = PS3 Slim\nShowAudioMetadata = false\n" + common);
+
+		assertEquals(a.getTreeSignature(), b.getTreeSignature());
+		assertEquals(ps3.getTreeSignature(), ps3Slim.getTreeSignature());
+		assertFalse(a.getTreeSignature().equals(c.getTreeSignature()));
+		assertFalse(a.getTreeSignature().equals(d.getTreeSignature()));
+
+		// The engines treat the PS3 differently
+		assertFalse(a.getTreeSignature().equals(ps3.getTreeSignature()));
+
+		String[] transcodeSettings = {
+			"TranscodeVideo = MPEGTSAC3",
+			"TranscodeAudio = WAV",
+			"CustomMencoderOptions = -lavdopts fast",
+			"CustomMencoderQualitySettings = keyint=5:vqscale=1:vqmin=2",
+			"CustomFFmpegOptions = -threads 2",
+			"MaxVideoBitrateMbps = 20",
+			"CBRVideoBitrate = 15000",
+			"MaxVideoWidth = 1280"
+		};
+
+		for (String setting : transcodeSettings) {
+			RendererConfiguration e = createRenderer("RendererName = Renderer E\nUserAgentSearch = E\n" + setting + "\n" + common);
+			assertFalse(setting, a.getTreeSignature().equals(e.getTreeSignature()));
+		}
+	}
+
+	/**
+	 * Test {@link RendererConfiguration#getConfigurationChecksum()} and
+	 * {@link PmsConfiguration#getTranscodeSettingsChecksum()}: cached
+	 * transcodes are only reused with the same renderer and encoder settings.
+	 */
+	@Test
+	public void testTranscodeChecksums() throws IOException, ConfigurationException {
+		RendererConfiguration a = createRenderer("RendererName = Renderer A\nSupported = f:mpegps\n");
+		RendererConfiguration same = createRenderer("RendererName = Renderer A\nSupported = f:mpegps\n");
+		RendererConfiguration edited = createRenderer("RendererName = Renderer A\nSupported = f:mpegps\nCustomMencoderOptions = -lavdopts fast\n");
+		assertEquals(a.getConfigurationChecksum(), same.getConfigurationChecksum());
+		assertFalse(a.getConfigurationChecksum().equals(edited.getConfigurationChecksum()));
+
+		PmsConfiguration pmsConf = new PmsConfiguration(false);
+		String checksum = pmsConf.getTranscodeSettingsChecksum();
+		pmsConf.setHostname("192.168.1.2");
+		pmsConf.setFolders("/media");
+		assertEquals(checksum, pmsConf.getTranscodeSettingsChecksum());
+		pmsConf.setMencoderCustomOptions("-lavdopts fast");
+		assertFalse(checksum.equals(pmsConf.getTranscodeSettingsChecksum()));
+		checksum = pmsConf.getTranscodeSettingsChecksum();
+		pmsConf.setMaximumBitrate("50");
+		assertFalse(checksum.equals(pmsConf.getTranscodeSettingsChecksum()));
+	}
+
+	/**
+	 * Test that settings read on hot paths reflect the configuration, also
+	 * after it has been changed.
+	 */
+	@Test
+	public void testSettingsSnapshot() throws IOException, ConfigurationException {
+		RendererConfiguration conf = createRenderer("RendererName = Renderer A\nSeekByTime = exclusive\nChunkedTransfer = true\nShowAudioMetadata = false\n");
+		assertTrue(conf.isSeekByTime());
+		assertTrue(conf.isSeekByTimeExclusive());
+		assertTrue(conf.isChunkedTransfer());
+		assertFalse(conf.isShowAudioMetadata());
+		assertTrue(conf.isShowSubMetadata());
+		assertTrue(conf.isDLNAOrgPNUsed());
+
+		PmsConfiguration pmsConf = new PmsConfiguration(false);
+		assertFalse(pmsConf.getUseCache());
+		assertFalse(pmsConf.isHideEngineNames());
+
+		pmsConf.setUseCache(true);
+		pmsConf.setHideEngineNames(true);
+		assertTrue(pmsConf.getUseCache());
+		assertTrue(pmsConf.isHideEngineNames());
+
+		pmsConf.setHideEngineNames(false);
+		assertFalse(pmsConf.isHideEngineNames());
+	}
+
+	/**
+	 * Test that remembered matches do not survive reloading the renderers.
+	 */
+	@Test
+	public void testDetectionAfterReload() throws ConfigurationException {
+		PmsConfiguration pmsConf = new PmsConfiguration(false);
+		loadRendererConfigurations(pmsConf);
+
+		RendererConfiguration first = getRendererConfigurationByUA("User-Agent: PLAYSTATION 3");
+		assertSame(first, getRendererConfigurationByUA("User-Agent: PLAYSTATION 3"));
+		assertNull(getRendererConfigurationByUAAHH("X-Unknown-Header: Unknown Content"));
+
+		loadRendererConfigurations(pmsConf);
+
+		RendererConfiguration second = getRendererConfigurationByUA("User-Agent: PLAYSTATION 3");
+		assertNotSame(first, second);
+		assertEquals("PlayStation 3", second.getRendererName());
+		assertTrue(getAllRendererConfigurations().contains(second));
+	}
+
+	/**
+	 * Measures the cost of recognizing a renderer from the headers of a
+	 * request, with more than 80 renderer profiles. Only runs when the
+	 * "pms.benchmark" system property is set to true.
+	 */
+	@Test
+	public void benchmarkDetection() throws IOException, ConfigurationException {
+		Assume.assumeTrue(Boolean.getBoolean("pms.benchmark"));
+
+		PmsConfiguration pmsConf = new PmsConfiguration(false);
+		loadRendererConfigurations(pmsConf);
+
+		try {
+			// Profiles that match none of the test headers, tried last
+			for (int i = getAllRendererConfigurations().size(); i < 90; i++) {
+				getAllRendererConfigurations().add(createRenderer(
+					"RendererName = Synthetic " + i + "\n" +
+					"UserAgentSearch = Synthetic-Renderer-" + i + "/[0-9.]+\n" +
+					"UserAgentAdditionalHeader = X-Synthetic-" + i + "\n" +
+					"UserAgentAdditionalHeaderSearch = model=" + i + "\n"
+				));
+			}
+
+			String[] headers = testCases.keySet().toArray(new String[testCases.size()]);
+			int iterations = 1000000;
+
+			// Every header is new: all patterns are tried
+			long start = System.nanoTime();
+
+			for (int i = 0; i < 20000; i++) {
+				String header = headers[i % headers.length] + " " + i;
+
+				if (header.startsWith("User-Agent")) {
+					getRendererConfigurationByUA(header);
+				} else {
+					getRendererConfigurationByUAAHH(header);
+				}
+			}
+
+			long missNanos = (System.nanoTime() - start) / 20000;
+
+			// Headers seen before: remembered matches
+			for (int warmup = 0; warmup < 2; warmup++) {
+				start = System.nanoTime();
+
+				for (int i = 0; i < iterations; i++) {
+					String header = headers[i % headers.length];
+
+					if (header.startsWith("User-Agent")) {
+						getRendererConfigurationByUA(header);
+					} else {
+						getRendererConfigurationByUAAHH(header);
+					}
+				}
+			}
+
+			long hitNanos = (System.nanoTime() - start) / iterations;
+
+			// The log messages are silenced, the results are part of the message
+			assertTrue("Detection with " + getAllRendererConfigurations().size() + " profiles takes "
+				+ missNanos + " ns per new header and " + hitNanos + " ns per known header", hitNanos < 1000);
+		} finally {
+			// Drop the synthetic profiles
+			loadRendererConfigurations(pmsConf);
+		}
+	}
 }
@@ -0,0 +1,85 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import net.pms.dlna.virtual.VirtualFolder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DidlFragmentCacheTest {
+	private DidlFragmentCache cache;
+	private VirtualFolder folder;
+
+	@Before
+	public void setUp() {
+		cache = new DidlFragmentCache(2);
+		folder = new VirtualFolder("folder", null);
+		folder.setId("1");
+	}
+
+	@Test
+	public void testHit() {
+		assertThat(cache.get(folder, null)).isNull();
+		cache.put(folder, null, "didl");
+		assertThat(cache.get(folder, null)).isEqualTo("didl");
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+		assertThat(cache.getHitRate()).isEqualTo(50);
+	}
+
+	@Test
+	public void testStaleAfterUpdate() {
+		cache.put(folder, null, "didl");
+		folder.setUpdateId(folder.getUpdateId() + 1);
+		assertThat(cache.get(folder, null)).isNull();
+
+		cache.put(folder, null, "didl");
+		DLNAResource.setSystemUpdateId(DLNAResource.getSystemUpdateId() + 1);
+		assertThat(cache.get(folder, null)).isNull();
+	}
+
+	@Test
+	public void testStaleAfterChildAdded() {
+		cache.put(folder, null, "didl");
+		folder.getChildren().add(new VirtualFolder("child", null));
+		assertThat(cache.get(folder, null)).isNull();
+	}
+
+	@Test
+	public void testOtherInstanceWithSameId() {
+		VirtualFolder other = new VirtualFolder("other", null);
+		other.setId("1");
+		cache.put(folder, null, "didl");
+		assertThat(cache.get(other, null)).isNull();
+	}
+
+	@Test
+	public void testBounded() {
+		for (int i = 0; i < 5; i++) {
+			VirtualFolder child = new VirtualFolder("child", null);
+			child.setId("c" + i);
+			cache.put(child, null, "didl");
+		}
+
+		assertThat(cache.size()).isEqualTo(2);
+	}
+}
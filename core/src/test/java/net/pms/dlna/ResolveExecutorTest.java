@@ -0,0 +1,124 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.pms.dlna.virtual.VirtualFolder;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ResolveExecutorTest {
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private class Item extends VirtualFolder {
+		private final CountDownLatch release;
+
+		Item(String name, CountDownLatch release) {
+			super(name, null);
+			this.release = release;
+		}
+
+		@Override
+		public void run() {
+			int current = running.incrementAndGet();
+
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			running.decrementAndGet();
+		}
+	}
+
+	private List<Future<?>> submit(ResolveExecutor executor, int count, String device, int deviceLimit, CountDownLatch release) {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (int i = 0; i < count; i++) {
+			futures.add(executor.submit(new Item("item" + i, release), device, deviceLimit));
+		}
+
+		return futures;
+	}
+
+	private void waitForRunning(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+
+		while (running.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void finish(List<Future<?>> futures, CountDownLatch release) throws Exception {
+		release.countDown();
+
+		for (Future<?> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testWithoutDeviceUsesAllThreads() throws Exception {
+		ResolveExecutor executor = new ResolveExecutor(6, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<?>> futures = submit(executor, 10, null, 2, release);
+
+		waitForRunning(6);
+		assertThat(running.get()).isEqualTo(6);
+		assertThat(executor.getQueueDepth()).isEqualTo(4);
+
+		finish(futures, release);
+		assertThat(maxRunning.get()).isEqualTo(6);
+		assertThat(executor.getCompletedCount()).isEqualTo(10);
+	}
+
+	@Test
+	public void testDeviceLimit() throws Exception {
+		ResolveExecutor executor = new ResolveExecutor(6, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		List<Future<?>> futures = submit(executor, 4, "/media/cdrom", 1, release);
+
+		waitForRunning(1);
+		Thread.sleep(100);
+		assertThat(running.get()).isEqualTo(1);
+
+		// A later submission raises the limit of the queued items too
+		futures.addAll(submit(executor, 2, "/media/cdrom", 3, release));
+		waitForRunning(3);
+		Thread.sleep(100);
+		assertThat(running.get()).isEqualTo(3);
+
+		finish(futures, release);
+		assertThat(maxRunning.get()).isEqualTo(3);
+	}
+}
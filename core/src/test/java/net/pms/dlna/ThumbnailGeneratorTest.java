@@ -0,0 +1,139 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.pms.dlna.virtual.VirtualFolder;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ThumbnailGeneratorTest {
+	private final List<String> generated = Collections.synchronizedList(new ArrayList<String>());
+
+	private class Item extends VirtualFolder {
+		private final CountDownLatch release;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile boolean needed = true;
+
+		Item(String name, CountDownLatch release) {
+			super(name, null);
+			this.release = release;
+		}
+
+		@Override
+		public boolean isThumbnailNeeded() {
+			return needed;
+		}
+
+		@Override
+		public void checkThumbnail() {
+			try {
+				if (release != null) {
+					release.await(10, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			needed = false;
+			generated.add(getName());
+			done.countDown();
+		}
+
+		void await() throws InterruptedException {
+			assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+		}
+	}
+
+	@Test
+	public void testDisplayedFirst() throws Exception {
+		ThumbnailGenerator generator = new ThumbnailGenerator(1, 10);
+		CountDownLatch release = new CountDownLatch(1);
+		Item blocking = new Item("blocking", release);
+		Item a = new Item("a", null);
+		Item b = new Item("b", null);
+		Item c = new Item("c", null);
+		Item d = new Item("d", null);
+
+		assertThat(generator.request(blocking)).isTrue();
+		generator.prefetch(Arrays.<DLNAResource> asList(a, b));
+		assertThat(generator.request(c)).isTrue();
+		assertThat(generator.request(d)).isTrue();
+		assertThat(generator.isPending(a)).isTrue();
+
+		release.countDown();
+		b.await();
+
+		assertThat(generated).containsExactly("blocking", "d", "c", "a", "b");
+		assertThat(generator.isPending(b)).isFalse();
+		assertThat(generator.request(b)).isFalse();
+	}
+
+	@Test
+	public void testDeduplicateAndMoveAhead() throws Exception {
+		ThumbnailGenerator generator = new ThumbnailGenerator(1, 10);
+		CountDownLatch release = new CountDownLatch(1);
+		Item blocking = new Item("blocking", release);
+		Item a = new Item("a", null);
+		Item b = new Item("b", null);
+
+		generator.prefetch(blocking);
+		generator.prefetch(Arrays.<DLNAResource> asList(a, b));
+		generator.prefetch(a);
+		assertThat(generator.request(b)).isTrue();
+		assertThat(generator.request(blocking)).isTrue();
+
+		release.countDown();
+		a.await();
+
+		assertThat(generated).containsExactly("blocking", "b", "a");
+		assertThat(generator.getDeduplicatedCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void testDropPrefetchWhenQueueIsFull() throws Exception {
+		ThumbnailGenerator generator = new ThumbnailGenerator(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		Item blocking = new Item("blocking", release);
+		Item a = new Item("a", null);
+		Item b = new Item("b", null);
+		Item c = new Item("c", null);
+
+		generator.request(blocking);
+		generator.prefetch(Arrays.<DLNAResource> asList(a, b));
+		assertThat(generator.isPending(b)).isFalse();
+		assertThat(generator.getDroppedCount()).isEqualTo(1);
+
+		// Thumbnails a renderer asks for are always queued
+		assertThat(generator.request(c)).isTrue();
+
+		release.countDown();
+		a.await();
+
+		assertThat(generated).containsExactly("blocking", "c", "a");
+	}
+}
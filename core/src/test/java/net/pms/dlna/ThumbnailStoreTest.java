@@ -0,0 +1,131 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ThumbnailStoreTest {
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static byte[] createImage(int width, int height) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		ThumbnailStore store = new ThumbnailStore(temporaryFolder.getRoot(), 1048576);
+		byte[] image = createImage(100, 50);
+
+		String key = store.put(image);
+		assertThat(key).isNotNull();
+		assertThat(store.put(image)).isEqualTo(key);
+		assertThat(store.get(key)).isEqualTo(image);
+		assertThat(store.getSize()).isEqualTo(image.length);
+		assertThat(store.get("unknown")).isNull();
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		ThumbnailStore store = new ThumbnailStore(null, 1048576);
+		assertThat(store.isEnabled()).isFalse();
+		assertThat(store.put(createImage(10, 10))).isNull();
+	}
+
+	@Test
+	public void testGetVariantSize() {
+		assertThat(ThumbnailStore.getVariantSize(0)).isEqualTo(0);
+		assertThat(ThumbnailStore.getVariantSize(100)).isEqualTo(160);
+		assertThat(ThumbnailStore.getVariantSize(160)).isEqualTo(160);
+		assertThat(ThumbnailStore.getVariantSize(161)).isEqualTo(320);
+		assertThat(ThumbnailStore.getVariantSize(1000)).isEqualTo(0);
+	}
+
+	@Test
+	public void testScaledVariant() throws Exception {
+		ThumbnailStore store = new ThumbnailStore(temporaryFolder.getRoot(), 1048576);
+		String key = store.put(createImage(800, 400));
+
+		File original = store.getFile(key, 0);
+		File variant = store.getFile(key, 300);
+		assertThat(variant).isNotEqualTo(original);
+
+		BufferedImage scaled = ImageIO.read(variant);
+		assertThat(scaled.getWidth()).isEqualTo(320);
+		assertThat(scaled.getHeight()).isEqualTo(160);
+		assertThat(store.getFile(key, 300)).isEqualTo(variant);
+
+		// Images not larger than the variant are served as they are
+		String smallKey = store.put(createImage(100, 100));
+		assertThat(store.getFile(smallKey, 160)).isEqualTo(store.getFile(smallKey, 0));
+	}
+
+	@Test
+	public void testContentKey() throws Exception {
+		ThumbnailStore store = new ThumbnailStore(temporaryFolder.getRoot(), 1048576);
+		String key = store.put(createImage(800, 400));
+		assertThat(store.contains(key)).isTrue();
+		assertThat(store.contains("unknown")).isFalse();
+		assertThat(store.contains(null)).isFalse();
+
+		assertThat(store.getContentKey(store.getFile(key, 0))).isEqualTo(key);
+		assertThat(store.getContentKey(store.getFile(key, 300))).isEqualTo(key + "-320");
+		assertThat(store.getContentKey(temporaryFolder.newFile("cover.jpg"))).isNull();
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		byte[] first = createImage(10, 10);
+		byte[] second = createImage(20, 20);
+		byte[] third = createImage(30, 30);
+		ThumbnailStore store = new ThumbnailStore(temporaryFolder.getRoot(), first.length + second.length + third.length - 1);
+
+		String firstKey = store.put(first);
+		String secondKey = store.put(second);
+		store.get(firstKey);
+		String thirdKey = store.put(third);
+
+		assertThat(store.get(firstKey)).isEqualTo(first);
+		assertThat(store.get(secondKey)).isNull();
+		assertThat(store.get(thirdKey)).isEqualTo(third);
+	}
+
+	@Test
+	public void testReload() throws Exception {
+		byte[] image = createImage(10, 10);
+		String key = new ThumbnailStore(temporaryFolder.getRoot(), 1048576).put(image);
+		new File(temporaryFolder.getRoot(), "incomplete.img.part").createNewFile();
+
+		ThumbnailStore store = new ThumbnailStore(temporaryFolder.getRoot(), 1048576);
+		assertThat(store.get(key)).isEqualTo(image);
+		assertThat(new File(temporaryFolder.getRoot(), "incomplete.img.part").exists()).isFalse();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.pms.dlna.virtual.VirtualFolder;
+import net.pms.io.ProcessWrapperImpl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TranscodeSessionsTest {
+	private TranscodeSessions sessions;
+	private VirtualFolder folder;
+
+	@Before
+	public void setUp() {
+		sessions = new TranscodeSessions();
+		folder = new VirtualFolder("folder", null);
+	}
+
+	@Test
+	public void testKey() {
+		assertThat(TranscodeSessions.getKey(null, 0, 0)).isNull();
+		assertThat(TranscodeSessions.getKey("a", 0, 0)).isEqualTo(TranscodeSessions.getKey("a", 0, 0));
+		assertThat(TranscodeSessions.getKey("a", 0, 0)).isNotEqualTo(TranscodeSessions.getKey("a", 10, 0));
+		assertThat(TranscodeSessions.getKey("a", 0, 0)).isNotEqualTo(TranscodeSessions.getKey("b", 0, 0));
+	}
+
+	@Test
+	public void testNothingToShare() {
+		assertThat(sessions.join(null, folder, 0)).isNull();
+		assertThat(sessions.join("a", folder, 0)).isNull();
+		assertThat(sessions.release(folder, null)).isFalse();
+		assertThat(sessions.getSharedCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testRegisterWithoutBuffer() {
+		sessions.register("a", folder, null);
+		assertThat(sessions.getLaunchedCount()).isEqualTo(1);
+		assertThat(sessions.join("a", folder, 0)).isNull();
+	}
+
+	@Test
+	public void testSecondConnectionOfJoiningRenderer() {
+		final AtomicInteger sharedReaders = new AtomicInteger();
+		final AtomicInteger ownReaders = new AtomicInteger();
+		ProcessWrapperImpl process = new ProcessWrapperImpl(new String[] { "transcoder" }, null) {
+			@Override
+			public InputStream getInputStream(long seek) {
+				ownReaders.incrementAndGet();
+				return new ByteArrayInputStream(new byte[0]);
+			}
+
+			@Override
+			public InputStream getSharedInputStream(long seek) {
+				sharedReaders.incrementAndGet();
+				return new ByteArrayInputStream(new byte[0]);
+			}
+
+			@Override
+			public boolean isFinished() {
+				return false;
+			}
+		};
+		VirtualFolder other = new VirtualFolder("other", null);
+		sessions.register("a", folder, process);
+
+		// The PS3 connects twice, both connections get their own shared reader
+		assertThat(sessions.join("a", other, 0)).isNotNull();
+		assertThat(sessions.join("a", other, 1000)).isNotNull();
+		assertThat(sharedReaders.get()).isEqualTo(2);
+		assertThat(ownReaders.get()).isEqualTo(0);
+		assertThat(sessions.getSharedCount()).isEqualTo(1);
+
+		// Once the joining renderer starts its own transcode, the first one
+		// can stop the process
+		sessions.register("b", other, null);
+		assertThat(sessions.release(folder, process)).isFalse();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.dlna.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.pms.formats.Format;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SearchCriteriaTest {
+	private static final SearchEntry SONG = new SearchEntry("/music/song.mp3", Format.AUDIO, "Yellow Submarine", "The Beatles", "Revolver", "Rock", 1966);
+	private static final SearchEntry MOVIE = new SearchEntry("/video/movie.mkv", Format.VIDEO, null, "Stanley Kubrick", null, null, 1968);
+
+	@Test
+	public void testWildcard() {
+		assertThat(SearchCriteria.parse("*")).isSameAs(SearchCriteria.ALL);
+		assertThat(SearchCriteria.parse(" ")).isSameAs(SearchCriteria.ALL);
+	}
+
+	@Test
+	public void testRelations() {
+		assertThat(SearchCriteria.parse("dc:title contains \"submarine\"").matches(SONG)).isTrue();
+		assertThat(SearchCriteria.parse("dc:title doesNotContain \"submarine\"").matches(SONG)).isFalse();
+		assertThat(SearchCriteria.parse("upnp:artist = \"the beatles\"").matches(SONG)).isTrue();
+		assertThat(SearchCriteria.parse("upnp:artist != \"The Beatles\"").matches(SONG)).isFalse();
+		assertThat(SearchCriteria.parse("dc:date >= \"1967\"").matches(SONG)).isFalse();
+		assertThat(SearchCriteria.parse("dc:date<\"1967\"").matches(SONG)).isTrue();
+		assertThat(SearchCriteria.parse("upnp:album exists true").matches(SONG)).isTrue();
+		assertThat(SearchCriteria.parse("upnp:album exists false").matches(MOVIE)).isTrue();
+	}
+
+	@Test
+	public void testClass() {
+		SearchCriteria audio = SearchCriteria.parse("upnp:class derivedfrom \"object.item.audioItem\"");
+		assertThat(audio.matches(SONG)).isTrue();
+		assertThat(audio.matches(MOVIE)).isFalse();
+		assertThat(SearchCriteria.parse("upnp:class = \"object.item.videoItem\"").matches(MOVIE)).isTrue();
+	}
+
+	@Test
+	public void testLogicalOperators() {
+		SearchCriteria criteria = SearchCriteria.parse("(upnp:class derivedfrom \"object.item.audioItem\" and dc:title contains \"yellow\") or dc:creator = \"stanley kubrick\"");
+		assertThat(criteria.matches(SONG)).isTrue();
+		assertThat(criteria.matches(MOVIE)).isTrue();
+
+		criteria = SearchCriteria.parse("upnp:class derivedfrom \"object.item.audioItem\" and dc:title contains \"blue\" or dc:title contains \"movie\"");
+		assertThat(criteria.matches(SONG)).isFalse();
+		assertThat(criteria.matches(MOVIE)).isTrue();
+	}
+
+	@Test
+	public void testEscapedQuotes() {
+		SearchEntry entry = new SearchEntry("/music/quote.mp3", Format.AUDIO, "Say \"Hello\"", null, null, null, 0);
+		assertThat(SearchCriteria.parse("dc:title = \"say \\\"hello\\\"\"").matches(entry)).isTrue();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingValue() {
+		SearchCriteria.parse("dc:title contains");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnbalancedParentheses() {
+		SearchCriteria.parse("(dc:title contains \"a\"");
+	}
+
+	@Test
+	public void testIndexPaging() {
+		List<SearchEntry> entries = new ArrayList<SearchEntry>();
+		for (int i = 0; i < 10; i++) {
+			entries.add(new SearchEntry("/music/" + i + ".mp3", Format.AUDIO, "Track " + i, "Artist " + (i % 2), null, null, 0));
+		}
+		entries.add(MOVIE);
+		SearchIndex.Snapshot index = new SearchIndex.Snapshot(entries);
+
+		SearchResult result = index.search(SearchCriteria.parse("upnp:artist = \"artist 1\""), 1, 2);
+		assertThat(result.getTotalMatches()).isEqualTo(5);
+		assertThat(result.getEntries()).hasSize(2);
+		assertThat(result.getEntries().get(0).getTitle()).isEqualTo("track 3");
+
+		result = index.search(SearchCriteria.parse("upnp:class derivedfrom \"object.item.videoItem\""), 0, 0);
+		assertThat(result.getTotalMatches()).isEqualTo(1);
+		assertThat(result.getEntries().get(0).getTitle()).isEqualTo("movie");
+	}
+}
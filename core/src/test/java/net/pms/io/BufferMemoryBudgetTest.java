@@ -0,0 +1,83 @@
+/*
+ * PS3 Media Server, for streaming media to your PS3.
+ * Copyright (C) 2008-2013 A. Brochard.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BufferMemoryBudgetTest {
+	private static final long MB = 1048576L;
+
+	@Test
+	public void testSingleSessionUsesWholeBudget() {
+		BufferMemoryBudget budget = new BufferMemoryBudget(64 * MB);
+		Object session = new Object();
+		budget.register(session);
+
+		assertThat(budget.reserve(session, 60 * MB)).isTrue();
+		assertThat(budget.reserve(session, 4 * MB)).isTrue();
+		assertThat(budget.reserve(session, 4 * MB)).isFalse();
+		assertThat(budget.getUsed()).isEqualTo(64 * MB);
+	}
+
+	@Test
+	public void testFairShare() {
+		BufferMemoryBudget budget = new BufferMemoryBudget(128 * MB);
+		Object first = new Object();
+		Object second = new Object();
+		budget.register(first);
+		budget.register(second);
+
+		assertThat(budget.getFairShare()).isEqualTo(64 * MB);
+		assertThat(budget.reserve(first, 64 * MB)).isTrue();
+		assertThat(budget.reserve(first, 4 * MB)).isFalse();
+		assertThat(budget.reserve(second, 64 * MB)).isTrue();
+	}
+
+	@Test
+	public void testMinimumShareIsAlwaysGranted() {
+		BufferMemoryBudget budget = new BufferMemoryBudget(64 * MB);
+		Object first = new Object();
+		Object second = new Object();
+		budget.register(first);
+
+		assertThat(budget.reserve(first, 64 * MB)).isTrue();
+
+		budget.register(second);
+		assertThat(budget.reserve(second, BufferMemoryBudget.MINIMUM_SHARE)).isTrue();
+		assertThat(budget.reserve(second, 4 * MB)).isFalse();
+	}
+
+	@Test
+	public void testUnregisterReleasesMemory() {
+		BufferMemoryBudget budget = new BufferMemoryBudget(64 * MB);
+		Object session = new Object();
+		budget.register(session);
+		budget.reserve(session, 32 * MB);
+		budget.release(session, 8 * MB);
+
+		assertThat(budget.getUsed()).isEqualTo(24 * MB);
+
+		budget.unregister(session);
+		assertThat(budget.getUsed()).isEqualTo(0);
+		assertThat(budget.getActiveSessions()).isEqualTo(0);
+		assertThat(budget.reserve(session, 4 * MB)).isFalse();
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Tests readers of other renderers sharing the buffer of one transcode.
+ */
+public class BufferedOutputFileImplTest {
+	private static final int TOTAL = 3 * 1048576;
+
+	private final AtomicBoolean stopped = new AtomicBoolean();
+
+	@Before
+	public void setUp() throws ConfigurationException {
+		if (PMS.getConfiguration() == null) {
+			PMS.setConfiguration(new PmsConfiguration(false));
+		}
+
+		PMS.getConfiguration().setBufferEventDriven(true);
+	}
+
+	private static byte valueAt(long position) {
+		return (byte) (position % 251);
+	}
+
+	private BufferedOutputFileImpl createBuffer() {
+		OutputParams params = new OutputParams(PMS.getConfiguration());
+		params.minBufferSize = 0.1;
+		params.maxBufferSize = 1;
+		params.secondread_minsize = 65536;
+		params.hidebuffer = true;
+
+		return new BufferedOutputFileImpl(params) {
+			@Override
+			void showReadValue(long readCount) {
+				// No status tab in tests
+			}
+		};
+	}
+
+	private ProcessWrapper createProcess() {
+		return new ProcessWrapper() {
+			private volatile boolean readyToStop;
+
+			@Override
+			public void stopProcess() {
+				stopped.set(true);
+			}
+
+			@Override
+			public boolean isReadyToStop() {
+				return readyToStop;
+			}
+
+			@Override
+			public void setReadyToStop(boolean value) {
+				readyToStop = value;
+			}
+
+			@Override
+			public InputStream getInputStream(long seek) throws IOException {
+				return null;
+			}
+
+			@Override
+			public List<String> getResults() {
+				return null;
+			}
+
+			@Override
+			public boolean isDestroyed() {
+				return false;
+			}
+
+			@Override
+			public void runInNewThread() {
+			}
+
+			@Override
+			public void runInSameThread() {
+			}
+		};
+	}
+
+	private void write(BufferedOutputFileImpl buffer, long from, long to) throws IOException {
+		byte[] chunk = new byte[4096];
+
+		for (long position = from; position < to; position += chunk.length) {
+			int len = (int) Math.min(chunk.length, to - position);
+
+			for (int i = 0; i < len; i++) {
+				chunk[i] = valueAt(position + i);
+			}
+
+			buffer.write(chunk, 0, len);
+		}
+	}
+
+	private byte[] read(InputStream input, int count, boolean slow) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+
+		while (result.size() < count) {
+			int n = input.read(chunk, 0, Math.min(chunk.length, count - result.size()));
+
+			if (n < 0) {
+				break;
+			}
+
+			result.write(chunk, 0, n);
+
+			if (slow) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		return result.toByteArray();
+	}
+
+	private class Reader extends Thread {
+		private final InputStream input;
+		private final int count;
+		private final boolean slow;
+		private volatile byte[] result;
+		private volatile IOException error;
+
+		Reader(InputStream input, int count, boolean slow) {
+			this.input = input;
+			this.count = count;
+			this.slow = slow;
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = read(input, count, slow);
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+
+		byte[] getResult() throws Exception {
+			join(30000);
+			assertThat(error).isNull();
+			return result;
+		}
+	}
+
+	private void checkData(byte[] data, long from) {
+		for (int i = 0; i < data.length; i++) {
+			if (data[i] != valueAt(from + i)) {
+				throw new AssertionError("Unexpected byte at position " + (from + i));
+			}
+		}
+	}
+
+	@Test
+	public void testSharedReaders() throws Exception {
+		final BufferedOutputFileImpl buffer = createBuffer();
+		buffer.attachThread(createProcess());
+		write(buffer, 0, 200000);
+
+		// The first renderer is already 100,000 bytes ahead when the second
+		// one joins at the start of the transcode
+		InputStream first = buffer.getInputStream(0);
+		checkData(read(first, 100000, false), 0);
+		InputStream second = buffer.getSharedInputStream(0);
+		assertThat(second).isNotNull();
+
+		Reader firstReader = new Reader(first, TOTAL - 100000, false);
+		Reader secondReader = new Reader(second, TOTAL, true);
+		firstReader.start();
+		secondReader.start();
+
+		// The buffer holds only 1 MB, so the writer has to wait for the
+		// slow second reader
+		write(buffer, 200000, TOTAL);
+		buffer.close();
+
+		byte[] firstData = firstReader.getResult();
+		byte[] secondData = secondReader.getResult();
+		assertThat(firstData.length).isEqualTo(TOTAL - 100000);
+		assertThat(secondData.length).isEqualTo(TOTAL);
+		checkData(firstData, 100000);
+		checkData(secondData, 0);
+		assertThat(buffer.getWriterWaitCount()).isGreaterThan(0);
+
+		// The transcode goes on as long as one of the readers is left
+		first.close();
+		Thread.sleep(3000);
+		assertThat(buffer.isReleased()).isFalse();
+		assertThat(stopped.get()).isFalse();
+
+		second.close();
+		long deadline = System.currentTimeMillis() + 10000;
+
+		while (!buffer.isReleased() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+
+		assertThat(buffer.isReleased()).isTrue();
+		assertThat(stopped.get()).isTrue();
+	}
+
+	@Test
+	public void testSharedReaderTooLate() throws Exception {
+		BufferedOutputFileImpl buffer = createBuffer();
+		write(buffer, 0, 300000);
+		InputStream first = buffer.getInputStream(0);
+		read(first, 200000, false);
+		Reader reader = new Reader(first, 948576, false);
+		reader.start();
+		write(buffer, 300000, 1248576);
+		reader.getResult();
+
+		// The start of the transcode has been overwritten
+		assertThat(buffer.getSharedInputStream(0)).isNull();
+		assertThat(buffer.getSharedInputStream(1000000)).isNotNull();
+	}
+
+	@Test
+	public void testSingleByteWrites() throws Exception {
+		BufferedOutputFileImpl buffer = createBuffer();
+		InputStream input = buffer.getInputStream(0);
+		Reader reader = new Reader(input, 300000, false);
+		reader.start();
+
+		// The reader is already waiting, each byte must be able to wake it up
+		for (int position = 0; position < 300000; position++) {
+			buffer.write(valueAt(position));
+		}
+
+		buffer.close();
+		byte[] data = reader.getResult();
+		assertThat(data.length).isEqualTo(300000);
+		checkData(data, 0);
+	}
+}
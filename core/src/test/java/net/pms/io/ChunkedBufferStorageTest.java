@@ -0,0 +1,85 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ChunkedBufferStorageTest {
+	private static final long MB = 1048576L;
+
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testDirectStorage() {
+		BufferMemoryBudget budget = new BufferMemoryBudget(64 * MB);
+		ChunkedBufferStorage storage = new ChunkedBufferStorage(3 * ChunkedBufferStorage.CHUNK_SIZE, null, budget);
+		checkStorage(storage, budget);
+	}
+
+	@Test
+	public void testMappedStorage() throws IOException, InterruptedException {
+		BufferMemoryBudget budget = new BufferMemoryBudget(64 * MB);
+		File folder = temporaryFolder.newFolder("spill");
+		ChunkedBufferStorage storage = new ChunkedBufferStorage(3 * ChunkedBufferStorage.CHUNK_SIZE, folder, budget);
+		checkStorage(storage, budget);
+
+		// The chunks are freed and the spill file deleted after a delay
+		Thread.sleep(2 * ChunkedBufferStorage.FREE_DELAY);
+		assertThat(folder.list()).isEmpty();
+	}
+
+	private void checkStorage(ChunkedBufferStorage storage, BufferMemoryBudget budget) {
+		int chunk = ChunkedBufferStorage.CHUNK_SIZE;
+		assertThat(storage.grow(2 * chunk)).isTrue();
+		assertThat(storage.capacity()).isEqualTo(2 * chunk);
+		assertThat(budget.getUsed()).isEqualTo(2L * chunk);
+
+		// Bulk copies across the chunk boundary
+		byte[] data = new byte[] { 1, 2, 3, 4, 5, 6 };
+		storage.put(chunk - 3, data, 0, data.length);
+		storage.put(0, (byte) 42);
+		byte[] read = new byte[data.length];
+		storage.get(chunk - 3, read, 0, read.length);
+		assertThat(read).isEqualTo(data);
+		assertThat(storage.get(0)).isEqualTo((byte) 42);
+
+		storage.release();
+		assertThat(budget.getUsed()).isEqualTo(0);
+		assertThat(budget.getActiveSessions()).isEqualTo(0);
+		assertThat(storage.capacity()).isEqualTo(0);
+
+		// Released storage ignores writes and reads zeros
+		storage.put(0, (byte) 1);
+		storage.put(chunk - 3, data, 0, data.length);
+		assertThat(storage.get(0)).isEqualTo((byte) 0);
+		storage.get(chunk - 3, read, 0, read.length);
+		assertThat(read).isEqualTo(new byte[data.length]);
+		assertThat(storage.grow(chunk)).isFalse();
+		assertThat(budget.getUsed()).isEqualTo(0);
+		storage.release();
+	}
+}
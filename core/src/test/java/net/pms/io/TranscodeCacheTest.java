@@ -0,0 +1,107 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.io;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TranscodeCacheTest {
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static void store(TranscodeCache cache, String key, String output) {
+		TranscodeCache.Recorder recorder = cache.record(key);
+		byte[] data = output.getBytes();
+		recorder.write(data, 0, data.length);
+		recorder.finish(true);
+	}
+
+	@Test
+	public void testStoreCompleteOutput() throws Exception {
+		TranscodeCache cache = new TranscodeCache(temporaryFolder.getRoot(), 1024);
+		assertThat(cache.get("a")).isNull();
+
+		store(cache, "a", "output");
+
+		File entry = cache.get("a");
+		assertThat(entry).isNotNull();
+		assertThat(FileUtils.readFileToString(entry)).isEqualTo("output");
+
+		// Looking entries up does not count, a play may request it repeatedly
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.getHitCount()).isEqualTo(0);
+		cache.countHit();
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testDiscardIncompleteOutput() {
+		TranscodeCache cache = new TranscodeCache(temporaryFolder.getRoot(), 1024);
+		TranscodeCache.Recorder recorder = cache.record("a");
+		recorder.write(new byte[] { 1, 2, 3 }, 0, 3);
+		recorder.finish(false);
+
+		assertThat(cache.get("a")).isNull();
+		assertThat(temporaryFolder.getRoot().list()).isEmpty();
+	}
+
+	@Test
+	public void testRecordOnce() {
+		TranscodeCache cache = new TranscodeCache(temporaryFolder.getRoot(), 1024);
+		TranscodeCache.Recorder recorder = cache.record("a");
+		assertThat(recorder).isNotNull();
+		assertThat(cache.record("a")).isNull();
+
+		recorder.finish(false);
+		assertThat(cache.record("a")).isNotNull();
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		TranscodeCache cache = new TranscodeCache(temporaryFolder.getRoot(), 10);
+		store(cache, "a", "123456");
+		new File(temporaryFolder.getRoot(), "a.cache").setLastModified(System.currentTimeMillis() - 60000);
+		store(cache, "b", "123456");
+
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isNotNull();
+	}
+
+	@Test
+	public void testOutputLargerThanCache() {
+		TranscodeCache cache = new TranscodeCache(temporaryFolder.getRoot(), 4);
+		store(cache, "a", "123456");
+		assertThat(cache.get("a")).isNull();
+	}
+
+	@Test
+	public void testDisabled() {
+		TranscodeCache cache = new TranscodeCache(null, 0);
+		assertThat(cache.isEnabled()).isFalse();
+		assertThat(cache.record("a")).isNull();
+		assertThat(cache.get("a")).isNull();
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.dlna;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.pms.PMS;
+import net.pms.configuration.PmsConfiguration;
+import net.pms.dlna.DLNAResource;
+import net.pms.dlna.virtual.VirtualFolder;
+import net.pms.medialibrary.commons.dataobjects.DOFileInfo;
+import net.pms.medialibrary.commons.dataobjects.DOMediaLibraryFolder;
+import net.pms.medialibrary.commons.dataobjects.DOVideoFileInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MediaLibraryFolderTest {
+	private static final int NB_FILES = 1000;
+
+	/**
+	 * A folder paging over NB_FILES files named file0, file1, ..., without
+	 * the library behind it.
+	 */
+	private static class TestFolder extends MediaLibraryFolder {
+		private int nbQueries = 0;
+
+		TestFolder() {
+			super(new DOMediaLibraryFolder(1, null, "Movies"));
+		}
+
+		void refresh() {
+			refreshChildren();
+			setDiscovered(true);
+		}
+
+		@Override
+		boolean isPagingEnabled() {
+			return true;
+		}
+
+		@Override
+		int countFiles() {
+			return NB_FILES;
+		}
+
+		@Override
+		List<DOVideoFileInfo> getVideoFiles(int startIndex, int maxResults) {
+			nbQueries++;
+			List<DOVideoFileInfo> res = new ArrayList<DOVideoFileInfo>();
+			for (int i = startIndex; i < Math.min(startIndex + maxResults, NB_FILES); i++) {
+				DOVideoFileInfo fileInfo = new DOVideoFileInfo();
+				fileInfo.setFileName("file" + i);
+				res.add(fileInfo);
+			}
+			return res;
+		}
+
+		@Override
+		void manageFile(DOFileInfo fileInfo) {
+			addChild(new VirtualFolder(fileInfo.getFileName(), null));
+		}
+
+		@Override
+		void updateFolder() {
+		}
+	}
+
+	private TestFolder folder;
+
+	@Before
+	public void setUp() throws Exception {
+		if (PMS.getConfiguration() == null) {
+			PMS.setConfiguration(new PmsConfiguration(false));
+		}
+
+		folder = new TestFolder();
+		new VirtualFolder("Library", null).addChild(folder);
+		folder.refresh();
+	}
+
+	private void checkFiles(List<DLNAResource> files, int first) {
+		for (int i = 0; i < files.size(); i++) {
+			assertThat(files.get(i).getName()).isEqualTo("file" + (first + i));
+			assertThat(files.get(i).getInternalId()).isEqualTo("f" + (first + i));
+		}
+	}
+
+	@Test
+	public void testFileWindow() {
+		assertThat(folder.childrenNumber()).isEqualTo(NB_FILES);
+
+		List<DLNAResource> firstPage = folder.getChildrenRange(0, 10);
+		assertThat(firstPage).hasSize(10);
+		checkFiles(firstPage, 0);
+
+		// The next pages grow the window, the first one is still available
+		checkFiles(folder.getChildrenRange(10, 10), 10);
+		checkFiles(folder.getChildrenRange(30, 10), 30);
+		int nbQueries = folder.nbQueries;
+		assertThat(folder.getChildrenRange(0, 10)).isEqualTo(firstPage);
+		assertThat(folder.nbQueries).isEqualTo(nbQueries);
+
+		// A page far away replaces the window
+		List<DLNAResource> lastPage = folder.getChildrenRange(NB_FILES - 10, 10);
+		assertThat(lastPage).hasSize(10);
+		checkFiles(lastPage, NB_FILES - 10);
+		assertThat(folder.getChildren()).excludes(firstPage.get(0));
+
+		// The files of the first page keep their IDs once loaded again
+		checkFiles(folder.getChildrenRange(0, 10), 0);
+	}
+
+	@Test
+	public void testSearchAfterEviction() {
+		DLNAResource file = folder.getChildrenRange(5, 1).get(0);
+		String id = folder.getInternalId() + "$" + file.getInternalId();
+		assertThat(folder.search(id, 0, null)).isSameAs(file);
+
+		// Another renderer browses elsewhere and replaces the window
+		folder.getChildrenRange(NB_FILES - 10, 10);
+		assertThat(folder.getChildren()).excludes(file);
+
+		DLNAResource found = folder.search(id, 0, null);
+		assertThat(found).isNotNull();
+		assertThat(found.getName()).isEqualTo("file5");
+		assertThat(found.getInternalId()).isEqualTo("f5");
+		assertThat(found.getParent()).isSameAs(folder);
+		assertThat(folder.getChildren()).excludes(found);
+
+		// The file is only loaded once
+		int nbQueries = folder.nbQueries;
+		assertThat(folder.search(id, 0, null)).isSameAs(found);
+		assertThat(folder.nbQueries).isEqualTo(nbQueries);
+
+		assertThat(folder.search(folder.getInternalId() + "$f" + NB_FILES, 0, null)).isNull();
+		assertThat(folder.search(folder.getInternalId() + "$fx", 0, null)).isNull();
+	}
+}
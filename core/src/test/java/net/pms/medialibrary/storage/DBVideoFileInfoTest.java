@@ -0,0 +1,299 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2012  Ph.Waeber
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.medialibrary.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+import net.pms.medialibrary.commons.dataobjects.DOFilter;
+import net.pms.medialibrary.commons.dataobjects.DOVideoFileInfo;
+import net.pms.medialibrary.commons.enumarations.ConditionType;
+import net.pms.medialibrary.commons.enumarations.SortOption;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DBVideoFileInfoTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DBVideoFileInfoTest.class);
+	private static final String[] AUDIO_LANGUAGES = { "eng", "fre", "ger" };
+	private static final String[] SUBTITLE_LANGUAGES = { "eng", "fre" };
+	private static final String[] GENRES = { "Action", "Comedy", "Drama" };
+	private static final String[] ACTORS = { "Actor A", "Actor B" };
+	private static final int NB_PLAYS = 2;
+	private static int dbCount = 0;
+
+	private JdbcConnectionPool cp;
+	private DBVideoFileInfo dbVideoFileInfo;
+
+	@Before
+	public void setUp() throws SQLException {
+		cp = JdbcConnectionPool.create("jdbc:h2:mem:videofileinfo" + dbCount++ + ";DB_CLOSE_DELAY=-1", "sa", "");
+		Connection conn = cp.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			DBInitializer.createFileTables(stmt);
+			stmt.close();
+		} finally {
+			conn.close();
+		}
+		dbVideoFileInfo = new DBVideoFileInfo(cp);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		Connection conn = cp.getConnection();
+		try {
+			conn.createStatement().execute("SHUTDOWN");
+		} finally {
+			conn.close();
+		}
+		cp.dispose();
+	}
+
+	/**
+	 * Inserts the given number of movies, each having 3 audio tracks, 2 subtitles,
+	 * 3 genres, 2 tags and 2 plays.
+	 */
+	private void insertMovies(int nbMovies) throws SQLException {
+		Connection conn = cp.getConnection();
+		try {
+			conn.setAutoCommit(false);
+			PreparedStatement file = conn.prepareStatement("INSERT INTO FILE (ID, FOLDERPATH, FILENAME, TYPE, SIZEBYTE, DATELASTUPDATEDDB, DATEINSERTEDDB, DATEMODIFIEDOS, ENABLED)"
+					+ " VALUES (?, '/movies/', ?, 'VIDEO', 1000, ?, ?, ?, 1)");
+			PreparedStatement video = conn.prepareStatement("INSERT INTO VIDEO (FILEID, NAME) VALUES (?, ?)");
+			PreparedStatement audio = conn.prepareStatement("INSERT INTO VIDEOAUDIO (FILEID, LANG, CODECA) VALUES (?, ?, 'ac3')");
+			PreparedStatement subtitle = conn.prepareStatement("INSERT INTO SUBTITLES (FILEID, LANG, TYPE) VALUES (?, ?, 1)");
+			PreparedStatement tag = conn.prepareStatement("INSERT INTO FILETAGS (FILEID, KEY, VALUE) VALUES (?, ?, ?)");
+			PreparedStatement play = conn.prepareStatement("INSERT INTO FILEPLAYS (FILEID, PLAYTIMESEC, DATEPLAYEND) VALUES (?, 3600, ?)");
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+
+			for (int id = 1; id <= nbMovies; id++) {
+				file.setInt(1, id);
+				file.setString(2, String.format("movie%06d.mkv", id));
+				file.setTimestamp(3, now);
+				file.setTimestamp(4, now);
+				file.setTimestamp(5, now);
+				file.addBatch();
+				video.setInt(1, id);
+				video.setString(2, String.format("Movie %06d", id));
+				video.addBatch();
+				for (String lang : AUDIO_LANGUAGES) {
+					audio.setInt(1, id);
+					audio.setString(2, lang);
+					audio.addBatch();
+				}
+				for (String lang : SUBTITLE_LANGUAGES) {
+					subtitle.setInt(1, id);
+					subtitle.setString(2, lang);
+					subtitle.addBatch();
+				}
+				for (String genre : GENRES) {
+					tag.setInt(1, id);
+					tag.setString(2, DBFileInfo.GENRE_KEY);
+					tag.setString(3, genre);
+					tag.addBatch();
+				}
+				for (String actor : ACTORS) {
+					tag.setInt(1, id);
+					tag.setString(2, "Actor");
+					tag.setString(3, actor);
+					tag.addBatch();
+				}
+				for (int i = 0; i < NB_PLAYS; i++) {
+					play.setInt(1, id);
+					play.setTimestamp(2, new Timestamp(now.getTime() - i * 86400000L));
+					play.addBatch();
+				}
+
+				if (id % 1000 == 0 || id == nbMovies) {
+					file.executeBatch();
+					video.executeBatch();
+					audio.executeBatch();
+					subtitle.executeBatch();
+					tag.executeBatch();
+					play.executeBatch();
+					conn.commit();
+				}
+			}
+		} finally {
+			conn.close();
+		}
+	}
+
+	private List<DOVideoFileInfo> getVideos(int maxResults) throws Exception {
+		return dbVideoFileInfo.getVideoFileInfo(new DOFilter(), true, ConditionType.FILE_FILENAME, SortOption.Unknown, maxResults, true);
+	}
+
+	private static void assertChildrenLoaded(DOVideoFileInfo video) {
+		assertThat(video.getAudioCodes()).hasSize(AUDIO_LANGUAGES.length);
+		assertThat(video.getSubtitlesCodes()).hasSize(SUBTITLE_LANGUAGES.length);
+		assertThat(video.getGenres()).containsOnly((Object[]) GENRES);
+		assertThat(video.getTags().get("Actor")).containsOnly((Object[]) ACTORS);
+		assertThat(video.getPlayHistory()).hasSize(NB_PLAYS);
+		assertThat(video.getPlayHistory().get(0).before(video.getPlayHistory().get(1))).isTrue();
+	}
+
+	@Test
+	public void testGetVideoFileInfoLoadsChildren() throws Exception {
+		insertMovies(1200);
+
+		List<DOVideoFileInfo> videos = getVideos(0);
+
+		assertThat(videos).hasSize(1200);
+		assertThat(videos.get(0).getFileName()).isEqualTo("movie000001.mkv");
+		assertThat(videos.get(1199).getFileName()).isEqualTo("movie001200.mkv");
+		for (DOVideoFileInfo video : videos) {
+			assertChildrenLoaded(video);
+		}
+	}
+
+	@Test
+	public void testGetVideoFileInfoWithMaxResults() throws Exception {
+		insertMovies(20);
+
+		List<DOVideoFileInfo> videos = getVideos(5);
+
+		assertThat(videos).hasSize(5);
+		assertThat(videos.get(4).getFileName()).isEqualTo("movie000005.mkv");
+		for (DOVideoFileInfo video : videos) {
+			assertChildrenLoaded(video);
+		}
+	}
+
+	@Test
+	public void testGetVideoFileInfoPage() throws Exception {
+		insertMovies(30);
+
+		List<DOVideoFileInfo> videos = dbVideoFileInfo.getVideoFileInfo(new DOFilter(), true, ConditionType.FILE_FILENAME, SortOption.Unknown, 10, 10, true);
+
+		assertThat(videos).hasSize(10);
+		assertThat(videos.get(0).getFileName()).isEqualTo("movie000011.mkv");
+		assertThat(videos.get(9).getFileName()).isEqualTo("movie000020.mkv");
+		for (DOVideoFileInfo video : videos) {
+			assertChildrenLoaded(video);
+		}
+
+		videos = dbVideoFileInfo.getVideoFileInfo(new DOFilter(), false, ConditionType.FILE_FILENAME, SortOption.Unknown, 25, 10, true);
+		assertThat(videos).hasSize(5);
+		assertThat(videos.get(0).getFileName()).isEqualTo("movie000005.mkv");
+	}
+
+	@Test
+	public void testGetVideoFileInfoCount() throws Exception {
+		insertMovies(30);
+		Connection conn = cp.getConnection();
+		try {
+			conn.createStatement().executeUpdate("UPDATE FILE SET ENABLED = 0 WHERE ID <= 5");
+		} finally {
+			conn.close();
+		}
+
+		assertThat(dbVideoFileInfo.getVideoFileInfoCount(new DOFilter(), true)).isEqualTo(25);
+		assertThat(dbVideoFileInfo.getVideoFileInfoCount(new DOFilter(), false)).isEqualTo(30);
+	}
+
+	@Test
+	public void testGetVideoFileInfoWithoutChildren() throws Exception {
+		Connection conn = cp.getConnection();
+		try {
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+			PreparedStatement stmt = conn.prepareStatement("INSERT INTO FILE (ID, FOLDERPATH, FILENAME, TYPE, DATELASTUPDATEDDB, DATEINSERTEDDB, DATEMODIFIEDOS, ENABLED)"
+					+ " VALUES (1, '/movies/', 'movie.mkv', 'VIDEO', ?, ?, ?, 1)");
+			stmt.setTimestamp(1, now);
+			stmt.setTimestamp(2, now);
+			stmt.setTimestamp(3, now);
+			stmt.executeUpdate();
+			conn.createStatement().executeUpdate("INSERT INTO VIDEO (FILEID, NAME) VALUES (1, 'Movie')");
+		} finally {
+			conn.close();
+		}
+
+		List<DOVideoFileInfo> videos = getVideos(0);
+
+		assertThat(videos).hasSize(1);
+		assertThat(videos.get(0).getAudioCodes()).isEmpty();
+		assertThat(videos.get(0).getSubtitlesCodes()).isEmpty();
+		assertThat(videos.get(0).getGenres()).isEmpty();
+		assertThat(videos.get(0).getPlayHistory()).isEmpty();
+	}
+
+	/**
+	 * Compares the rows read and the time spent by the former single query joining all
+	 * child tables with the current primary query and batched child queries.
+	 * Only runs with -Dpms.benchmark=true; the number of movies can be set with
+	 * -Dpms.benchmark.movies (default 20000).
+	 */
+	@Test
+	public void benchmarkGetVideoFileInfo() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("pms.benchmark"));
+		int nbMovies = Integer.getInteger("pms.benchmark.movies", 20000);
+		insertMovies(nbMovies);
+
+		String joinedQuery = "SELECT FILE.*, VIDEO.*, FILEPLAYS.DATEPLAYEND"
+				+ ", VIDEOAUDIO.LANG, VIDEOAUDIO.NRAUDIOCHANNELS, VIDEOAUDIO.SAMPLEFREQ, VIDEOAUDIO.CODECA, VIDEOAUDIO.BITSPERSAMPLE, VIDEOAUDIO.DELAYMS, VIDEOAUDIO.MUXINGMODE, VIDEOAUDIO.BITRATE"
+				+ ", SUBTITLES.FILEPATH, SUBTITLES.LANG, SUBTITLES.TYPE, FILETAGS.KEY, FILETAGS.VALUE"
+				+ " FROM FILE, VIDEO"
+				+ " LEFT JOIN VIDEOAUDIO ON VIDEO.FILEID = VIDEOAUDIO.FILEID"
+				+ " LEFT JOIN SUBTITLES ON VIDEO.FILEID = SUBTITLES.FILEID"
+				+ " LEFT JOIN FILETAGS ON VIDEO.FILEID = FILETAGS.FILEID"
+				+ " LEFT JOIN FILEPLAYS ON VIDEO.FILEID = FILEPLAYS.FILEID"
+				+ " WHERE VIDEO.FILEID = FILE.ID AND FILE.ENABLED = 1"
+				+ " ORDER BY FILE.FILENAME ASC, VIDEO.NAME ASC, FILE.DATEINSERTEDDB ASC";
+
+		long joinedRows = 0;
+		long joinedStart = System.currentTimeMillis();
+		Connection conn = cp.getConnection();
+		try {
+			ResultSet rs = conn.createStatement().executeQuery(joinedQuery);
+			int nbColumns = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				for (int i = 1; i <= nbColumns; i++) {
+					rs.getObject(i);
+				}
+				joinedRows++;
+			}
+			rs.close();
+		} finally {
+			conn.close();
+		}
+		long joinedTime = System.currentTimeMillis() - joinedStart;
+
+		long batchedStart = System.currentTimeMillis();
+		List<DOVideoFileInfo> videos = getVideos(0);
+		long batchedTime = System.currentTimeMillis() - batchedStart;
+		long batchedRows = nbMovies * (1L + AUDIO_LANGUAGES.length + SUBTITLE_LANGUAGES.length + GENRES.length + ACTORS.length + NB_PLAYS);
+
+		assertThat(videos).hasSize(nbMovies);
+		assertThat(joinedRows).isEqualTo((long) nbMovies * AUDIO_LANGUAGES.length * SUBTITLE_LANGUAGES.length * (GENRES.length + ACTORS.length) * NB_PLAYS);
+		LOGGER.info(String.format("%d movies: joined query read %d rows in %d ms, batched queries read %d rows in %d ms",
+				nbMovies, joinedRows, joinedTime, batchedRows, batchedTime));
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.network;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DidlWriterTest {
+	private static byte[] written(DidlWriter writer) {
+		byte[] data = new byte[writer.length()];
+		writer.getBuffer().getBytes(writer.getBuffer().readerIndex(), data);
+		return data;
+	}
+
+	@Test
+	public void testAscii() throws Exception {
+		DidlWriter writer = new DidlWriter(0);
+		writer.append("&lt;item id=\"0$1\"&gt;").append(42);
+		assertThat(written(writer)).isEqualTo("&lt;item id=\"0$1\"&gt;42".getBytes("UTF-8"));
+		assertThat(writer.toString()).isEqualTo("&lt;item id=\"0$1\"&gt;42");
+	}
+
+	@Test
+	public void testMultiByteCharacters() throws Exception {
+		String text = "Björk – Jóga 日本 🎵";
+		DidlWriter writer = new DidlWriter(1);
+		writer.append(text);
+		assertThat(written(writer)).isEqualTo(text.getBytes("UTF-8"));
+		assertThat(writer.toString()).isEqualTo(text);
+	}
+
+	@Test
+	public void testUnpairedSurrogate() throws Exception {
+		String text = "a\ud800b\udc00";
+		DidlWriter writer = new DidlWriter(1);
+		writer.append(text);
+		assertThat(written(writer)).isEqualTo(text.getBytes("UTF-8"));
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MpegIndexTest {
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	/**
+	 * Writes a transport stream of the given length, with a video packet
+	 * carrying a PTS every half second followed by 9 packets without one.
+	 */
+	private File createStream(int packetSize, int seconds, long firstPts) throws IOException {
+		File f = temporaryFolder.newFile("test" + packetSize + ".ts");
+		OutputStream out = new FileOutputStream(f);
+
+		try {
+			for (int i = 0; i < seconds * 2; i++) {
+				out.write(createPacket(packetSize, firstPts + i * 45000L));
+
+				for (int j = 0; j < 9; j++) {
+					out.write(createPacket(packetSize, -1));
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		return f;
+	}
+
+	private static byte[] createPacket(int packetSize, long pts) {
+		byte[] packet = new byte[packetSize];
+		int i = packetSize - 188;
+		packet[i] = 0x47;
+		packet[i + 1] = 0x41;
+		packet[i + 2] = 0x00;
+
+		if (pts >= 0) {
+			packet[i + 6] = 0x01;
+			packet[i + 7] = (byte) 0xE0;
+			packet[i + 11] = (byte) 0x80;
+			packet[i + 13] = 0x21;
+			int high = (int) (((pts >> 15) & 0x7fff) << 1 | 1);
+			int low = (int) ((pts & 0x7fff) << 1 | 1);
+			packet[i + 14] = (byte) (high >> 8);
+			packet[i + 15] = (byte) high;
+			packet[i + 16] = (byte) (low >> 8);
+			packet[i + 17] = (byte) low;
+		}
+
+		return packet;
+	}
+
+	@Test
+	public void testTransportStream() throws IOException {
+		File f = createStream(188, 100, 90000);
+		MpegIndex index = MpegIndex.build(f);
+		assertThat(index).isNotNull();
+		assertThat(index.getDurationInSeconds()).isEqualTo(99);
+		assertThat(index.size()).isEqualTo(100);
+		assertThat(index.getPosition(0)).isEqualTo(0);
+		assertThat(index.getPosition(10)).isEqualTo(10 * 20 * 188);
+		assertThat(index.getPosition(1000)).isEqualTo(99 * 20 * 188);
+	}
+
+	@Test
+	public void testM2ts() throws IOException {
+		File f = createStream(192, 10, 0);
+		MpegIndex index = MpegIndex.build(f);
+		assertThat(index).isNotNull();
+		assertThat(index.getDurationInSeconds()).isEqualTo(9);
+		assertThat(index.getPosition(5)).isEqualTo(5 * 20 * 192 + 4);
+	}
+
+	@Test
+	public void testPtsWrap() throws IOException {
+		File f = createStream(188, 20, (1L << 30) - 5 * 90000);
+		MpegIndex index = MpegIndex.build(f);
+		assertThat(index.getDurationInSeconds()).isEqualTo(19);
+		assertThat(index.getPosition(15)).isEqualTo(15 * 20 * 188);
+	}
+
+	@Test
+	public void testSerialization() throws IOException {
+		MpegIndex index = MpegIndex.build(createStream(188, 30, 0));
+		MpegIndex copy = MpegIndex.fromBytes(index.toBytes());
+		assertThat(copy).isNotNull();
+		assertThat(copy.size()).isEqualTo(index.size());
+
+		for (int i = 0; i < 30; i++) {
+			assertThat(copy.getPosition(i)).isEqualTo(index.getPosition(i));
+		}
+
+		assertThat(MpegIndex.fromBytes(null)).isNull();
+		assertThat(MpegIndex.fromBytes(new byte[] { 1, 2, 3 })).isNull();
+	}
+
+	@Test
+	public void testNotTransportStream() throws IOException {
+		File f = temporaryFolder.newFile("test.txt");
+		OutputStream out = new FileOutputStream(f);
+		out.write(new byte[4096]);
+		out.close();
+		assertThat(MpegIndex.build(f)).isNull();
+	}
+}
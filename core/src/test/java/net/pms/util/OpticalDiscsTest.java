@@ -0,0 +1,48 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class OpticalDiscsTest {
+	@Test
+	public void testParseOpticalMount() {
+		assertThat(OpticalDiscs.parseOpticalMount("/dev/sr0 /media/cdrom iso9660 ro,nosuid 0 0")).isEqualTo("/media/cdrom");
+		assertThat(OpticalDiscs.parseOpticalMount("/dev/sr1 /media/My\\040Movie udf ro 0 0")).isEqualTo("/media/My Movie");
+		assertThat(OpticalDiscs.parseOpticalMount("/dev/sda1 / ext4 rw,relatime 0 0")).isNull();
+		assertThat(OpticalDiscs.parseOpticalMount("")).isNull();
+	}
+
+	@Test
+	public void testGetMountPoint() {
+		List<String> mountPoints = Arrays.asList("/media/cdrom", "/media/cdrom/nested", "/mnt/dvd/");
+
+		assertThat(OpticalDiscs.getMountPoint("/media/cdrom/movie.avi", mountPoints)).isEqualTo("/media/cdrom");
+		assertThat(OpticalDiscs.getMountPoint("/media/cdrom", mountPoints)).isEqualTo("/media/cdrom");
+		assertThat(OpticalDiscs.getMountPoint("/media/cdrom/nested/a.avi", mountPoints)).isEqualTo("/media/cdrom/nested");
+		assertThat(OpticalDiscs.getMountPoint("/mnt/dvd/VIDEO_TS", mountPoints)).isEqualTo("/mnt/dvd/");
+		assertThat(OpticalDiscs.getMountPoint("/media/cdrom2/movie.avi", mountPoints)).isNull();
+		assertThat(OpticalDiscs.getMountPoint("/home/user/movie.avi", mountPoints)).isNull();
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * PS3 Media Server, for streaming any medias to your PS3.
+ * Copyright (C) 2008  A.Brochard
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License only.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package net.pms.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SubtitleIndexTest {
+	@Rule
+	public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testGetSubtitles() throws IOException {
+		File folder = temporaryFolder.newFolder("videos");
+		new File(folder, "episode1.avi").createNewFile();
+		new File(folder, "episode1.srt").createNewFile();
+		new File(folder, "Episode1.EN.srt").createNewFile();
+		new File(folder, "episode1.fr.sub").createNewFile();
+		new File(folder, "episode2.srt").createNewFile();
+		new File(folder, "episode1.nfo").createNewFile();
+
+		SubtitleIndex index = new SubtitleIndex(10);
+		List<SubtitleIndex.Subtitle> subtitles = index.getSubtitles(folder, "episode1", false);
+
+		assertThat(subtitles).hasSize(3);
+		assertThat(subtitles.get(0).getName()).isEqualTo("episode1.en.srt");
+		assertThat(subtitles.get(0).getExtension()).isEqualTo("srt");
+		assertThat(subtitles.get(0).getCode("episode1")).isEqualTo("en");
+		assertThat(subtitles.get(1).getCode("episode1")).isEqualTo("fr");
+		assertThat(subtitles.get(1).getExtension()).isEqualTo("sub");
+		assertThat(subtitles.get(2).getCode("episode1")).isEmpty();
+
+		assertThat(index.getSubtitles(folder, "episode3", false)).isEmpty();
+		assertThat(index.getSubtitles(new File(folder, "missing"), "episode1", false)).isEmpty();
+	}
+
+	@Test
+	public void testInvalidatedByModification() throws IOException {
+		File folder = temporaryFolder.newFolder("videos");
+		new File(folder, "movie.srt").createNewFile();
+		folder.setLastModified(System.currentTimeMillis() - 60000);
+
+		SubtitleIndex index = new SubtitleIndex(10);
+		assertThat(index.getSubtitles(folder, "movie", false)).hasSize(1);
+		assertThat(index.getSize()).isEqualTo(1);
+
+		new File(folder, "movie.de.srt").createNewFile();
+		folder.setLastModified(System.currentTimeMillis() - 60000 - 10000);
+		long lastModified = folder.lastModified();
+		assertThat(index.getSubtitles(folder, "movie", false)).hasSize(2);
+
+		// Not noticed as long as the folder appears unchanged
+		new File(folder, "movie.it.srt").createNewFile();
+		folder.setLastModified(lastModified);
+		assertThat(index.getSubtitles(folder, "movie", false)).hasSize(2);
+		assertThat(index.getSubtitles(folder, "movie", true)).hasSize(3);
+	}
+
+	@Test
+	public void testBounded() throws IOException {
+		SubtitleIndex index = new SubtitleIndex(2);
+
+		for (int i = 0; i < 5; i++) {
+			File folder = temporaryFolder.newFolder("folder" + i);
+			new File(folder, "video.srt").createNewFile();
+			folder.setLastModified(System.currentTimeMillis() - 60000);
+			assertThat(index.getSubtitles(folder, "video", false)).hasSize(1);
+		}
+
+		assertThat(index.getSize()).isEqualTo(2);
+	}
+}